@@ -3,8 +3,11 @@ package de.chaffic.collision
 import de.chaffic.collision.bodies.CollisionBodyInterface
 import de.chaffic.dynamics.Physics
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.geometry.ChainShape
 import de.chaffic.geometry.Circle
+import de.chaffic.geometry.CompoundShape
 import de.chaffic.geometry.Polygon
+import de.chaffic.geometry.TileMap
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
 
@@ -36,12 +39,16 @@ class Arbiter(
      */
     private var dynamicFriction = .0
 
-    init {
-        if(a is CollisionBodyInterface && b is CollisionBodyInterface) {
-            staticFriction = (a.staticFriction + b.staticFriction) / 2
-            dynamicFriction = (a.dynamicFriction + b.dynamicFriction) / 2
-        }
-    }
+    /**
+     * Whether the bodies touched in the last narrow phase. Used by [ContactPairs] to generate contact events.
+     */
+    var touching = false
+        internal set
+
+    /**
+     * Step in which the pair was last found by the broad phase.
+     */
+    internal var stamp = 0
 
     /**
      * Array to save the contact points of the objects body's in world space.
@@ -55,12 +62,27 @@ class Arbiter(
      * Conducts a narrow phase detection and creates a contact manifold.
      */
     fun narrowPhase() {
+        contactCount = 0
+        penetration = 0.0
         if(a !is CollisionBodyInterface || b !is CollisionBodyInterface) return
 
+        staticFriction = (a.staticFriction + b.staticFriction) / 2
+        dynamicFriction = (a.dynamicFriction + b.dynamicFriction) / 2
+
         if(a is PhysicalBodyInterface && b is PhysicalBodyInterface) {
             restitution = a.restitution.coerceAtMost(b.restitution)
         }
-        if (a.shape is Circle && b.shape is Circle) {
+        if (a.shape is CompoundShape || b.shape is CompoundShape) {
+            compoundCollision(a, b)
+        } else if (a.shape is ChainShape) {
+            if (b.shape !is ChainShape) chainCollision(a, b, false)
+        } else if (b.shape is ChainShape) {
+            chainCollision(b, a, true)
+        } else if (a.shape is TileMap) {
+            if (b.shape !is TileMap) tileMapCollision(a, b, false)
+        } else if (b.shape is TileMap) {
+            tileMapCollision(b, a, true)
+        } else if (a.shape is Circle && b.shape is Circle) {
             circleCircleCollision(a, b)
         } else if (a.shape is Circle && b.shape is Polygon) {
             circlePolygonCollision(a, b)
@@ -76,6 +98,339 @@ class Arbiter(
 
     private var penetration = 0.0
 
+    /**
+     * Arbiters of the overlapping child shapes if either body has a [CompoundShape] or a [TileMap], or of the touching
+     * segments if either body has a [ChainShape].
+     */
+    private val children = ArrayList<Arbiter>()
+    private var childStamp = 0
+
+    private val clipX = DoubleArray(2)
+    private val clipY = DoubleArray(2)
+    private val aData = AxisData()
+    private val bData = AxisData()
+    private var supportHint = -1
+
+    /**
+     * Polygon owning the face that separated the pair or served as reference face in the last narrow phase.
+     */
+    private var cachedAxis = AXIS_NONE
+    private var cachedFace = 0
+
+    private fun cacheAxis(polygon: Int, face: Int) {
+        cachedAxis = polygon
+        cachedFace = face
+    }
+
+    /**
+     * Collides the children of compound shapes that overlap the other body. Every pair of children keeps its own arbiter,
+     * the deepest contact becomes the contact of this arbiter for penetration resolution.
+     */
+    private fun compoundCollision(a: CollisionBodyInterface, b: CollisionBodyInterface) {
+        childStamp++
+        val compoundA = a.shape as? CompoundShape
+        val compoundB = b.shape as? CompoundShape
+        compoundA?.updateChildren()
+        compoundB?.updateChildren()
+        if (compoundA != null) {
+            val found = compoundA.query(
+                b.position.x + b.aabb.min.x, b.position.y + b.aabb.min.y,
+                b.position.x + b.aabb.max.x, b.position.y + b.aabb.max.y
+            )
+            for (k in 0 until found) {
+                val childA = compoundA.child(compoundA.hits[k])
+                if (compoundB == null) {
+                    collideChildren(childA, b)
+                    continue
+                }
+                val pairs = compoundB.query(
+                    childA.position.x + childA.aabb.min.x, childA.position.y + childA.aabb.min.y,
+                    childA.position.x + childA.aabb.max.x, childA.position.y + childA.aabb.max.y
+                )
+                for (l in 0 until pairs) {
+                    collideChildren(childA, compoundB.child(compoundB.hits[l]))
+                }
+            }
+        } else if (compoundB != null) {
+            val found = compoundB.query(
+                a.position.x + a.aabb.min.x, a.position.y + a.aabb.min.y,
+                a.position.x + a.aabb.max.x, a.position.y + a.aabb.max.y
+            )
+            for (k in 0 until found) {
+                collideChildren(a, compoundB.child(compoundB.hits[k]))
+            }
+        }
+
+        dropStaleChildren()
+        adoptDeepestChild()
+    }
+
+    /**
+     * Collides a body with the rectangles of a tile map under it. Every pair keeps its own arbiter like the children of
+     * compound shapes.
+     *
+     * @param mapBody Body with the tile map.
+     * @param other   Body colliding with the tile map.
+     * @param flip    Whether the tile map is body B of this arbiter.
+     */
+    private fun tileMapCollision(mapBody: CollisionBodyInterface, other: CollisionBodyInterface, flip: Boolean) {
+        childStamp++
+        val map = mapBody.shape as TileMap
+        val found = map.query(
+            other.position.x + other.aabb.min.x, other.position.y + other.aabb.min.y,
+            other.position.x + other.aabb.max.x, other.position.y + other.aabb.max.y
+        )
+        for (k in 0 until found) {
+            val rectangle = map.rectangle(map.hits[k])
+            if (flip) collideChildren(other, rectangle) else collideChildren(rectangle, other)
+        }
+        dropStaleChildren()
+        adoptDeepestChild()
+    }
+
+    /**
+     * Drops the arbiters of children that no longer overlap.
+     */
+    private fun dropStaleChildren() {
+        var i = 0
+        while (i < children.size) {
+            if (children[i].stamp != childStamp) {
+                children[i] = children[children.size - 1]
+                children.removeAt(children.size - 1)
+            } else {
+                i++
+            }
+        }
+    }
+
+    /**
+     * Counts the touching children and takes over the deepest contact for penetration resolution.
+     */
+    private fun adoptDeepestChild() {
+        var deepest: Arbiter? = null
+        for (child in children) {
+            if (child.contactCount > 0) {
+                contactCount++
+                if (deepest == null || child.penetration > deepest.penetration) deepest = child
+            }
+        }
+        if (deepest != null) {
+            contacts[0].set(deepest.contacts[0])
+            contactNormal.set(deepest.contactNormal)
+            penetration = deepest.penetration
+        }
+    }
+
+    private val segmentStart = Vec2()
+    private val segmentEnd = Vec2()
+    private val segmentNormal = Vec2()
+    private val segmentPoint = Vec2()
+    private var segmentPenetration = .0
+
+    /**
+     * Collides a body with the segments of a chain close to it. Every touching segment fills one pooled child arbiter.
+     *
+     * @param chainBody Body with the chain shape.
+     * @param other     Body colliding with the chain.
+     * @param flip      Whether the chain is body B of this arbiter.
+     */
+    private fun chainCollision(chainBody: CollisionBodyInterface, other: CollisionBodyInterface, flip: Boolean) {
+        val chain = chainBody.shape as ChainShape
+        val shape = other.shape
+        val found = chain.query(
+            other.position.x + other.aabb.min.x, other.position.y + other.aabb.min.y,
+            other.position.x + other.aabb.max.x, other.position.y + other.aabb.max.y
+        )
+        var used = 0
+        for (k in 0 until found) {
+            val segment = chain.hits[k]
+            chain.worldVertex(segment, segmentStart)
+            chain.worldVertex(segment + 1, segmentEnd)
+            val touching = when (shape) {
+                is Circle -> circleSegmentCollision(chain, segment, other.position, shape.radius)
+                is Polygon -> polygonSegmentCollision(shape, other.position)
+                else -> false
+            }
+            if (!touching) continue
+            if (used == children.size) children.add(Arbiter(a, b))
+            val child = children[used++]
+            child.contactCount = 1
+            child.contacts[0].set(segmentPoint)
+            child.contactNormal.set(segmentNormal)
+            if (flip) child.contactNormal.unaryMinus()
+            child.penetration = segmentPenetration
+            child.restitution = restitution
+            child.staticFriction = staticFriction
+            child.dynamicFriction = dynamicFriction
+        }
+        for (k in used until children.size) {
+            children[k].contactCount = 0
+        }
+        adoptDeepestChild()
+    }
+
+    /**
+     * Circle vs chain segment collision. Vertices shared with a neighbouring segment are left to that segment when the
+     * circle lies in front of it, which keeps circles rolling over joints from catching on them.
+     *
+     * @return Whether the circle touches the front of the segment.
+     */
+    private fun circleSegmentCollision(chain: ChainShape, segment: Int, centre: Vec2, radius: Double): Boolean {
+        val dx = segmentEnd.x - segmentStart.x
+        val dy = segmentEnd.y - segmentStart.y
+        val length = StrictMath.sqrt(dx * dx + dy * dy)
+        val nx = -dy / length
+        val ny = dx / length
+        val cx = centre.x - segmentStart.x
+        val cy = centre.y - segmentStart.y
+        val front = cx * nx + cy * ny
+        if (front < 0 || front >= radius) return false
+
+        val t = (cx * dx + cy * dy) / (length * length)
+        if (t > 1 && segment + 1 < chain.segmentCount) {
+            //The next segment owns the vertex
+            return false
+        }
+        if (t < 0 && segment > 0) {
+            //The previous segment owns the vertex if the circle lies in front of it
+            chain.worldVertex(segment - 1, segmentPoint)
+            val px = segmentStart.x - segmentPoint.x
+            val py = segmentStart.y - segmentPoint.y
+            if ((centre.x - segmentPoint.x) * px + (centre.y - segmentPoint.y) * py < px * px + py * py) return false
+        }
+        val u = t.coerceIn(.0, 1.0)
+        segmentPoint.set(segmentStart.x + dx * u, segmentStart.y + dy * u)
+        val qx = centre.x - segmentPoint.x
+        val qy = centre.y - segmentPoint.y
+        val distance = StrictMath.sqrt(qx * qx + qy * qy)
+        if (distance >= radius) return false
+        if (u == t || distance == .0) {
+            segmentNormal.set(nx, ny)
+            segmentPenetration = radius - front
+        } else {
+            segmentNormal.set(qx / distance, qy / distance)
+            segmentPenetration = radius - distance
+        }
+        return true
+    }
+
+    /**
+     * Polygon vs chain segment collision by separating axis test of the segment normal and the polygon faces. The segment
+     * normal is preferred so polygons sliding along the chain do not catch on joints.
+     *
+     * @return Whether the polygon touches the front of the segment.
+     */
+    private fun polygonSegmentCollision(polygon: Polygon, position: Vec2): Boolean {
+        val r1 = polygon.orientation.row1
+        val r2 = polygon.orientation.row2
+        val vertices = polygon.vertices
+        val normals = polygon.normals
+        val dx = segmentEnd.x - segmentStart.x
+        val dy = segmentEnd.y - segmentStart.y
+        val length = StrictMath.sqrt(dx * dx + dy * dy)
+        val nx = -dy / length
+        val ny = dx / length
+        if ((position.x - segmentStart.x) * nx + (position.y - segmentStart.y) * ny < 0) return false
+
+        //Segment normal
+        var segmentSeparation = Double.MAX_VALUE
+        for (v in vertices) {
+            val x = r1.x * v.x + r1.y * v.y + position.x
+            val y = r2.x * v.x + r2.y * v.y + position.y
+            segmentSeparation = minOf(segmentSeparation, (x - segmentStart.x) * nx + (y - segmentStart.y) * ny)
+        }
+        if (segmentSeparation > 0) return false
+
+        //Polygon faces
+        var faceSeparation = -Double.MAX_VALUE
+        var faceX = .0
+        var faceY = .0
+        var faceNormalX = .0
+        var faceNormalY = .0
+        for (i in vertices.indices) {
+            val v = vertices[i]
+            val n = normals[i]
+            val mx = r1.x * n.x + r1.y * n.y
+            val my = r2.x * n.x + r2.y * n.y
+            val wx = r1.x * v.x + r1.y * v.y + position.x
+            val wy = r2.x * v.x + r2.y * v.y + position.y
+            val startSeparation = (segmentStart.x - wx) * mx + (segmentStart.y - wy) * my
+            val endSeparation = (segmentEnd.x - wx) * mx + (segmentEnd.y - wy) * my
+            val separation = minOf(startSeparation, endSeparation)
+            if (separation > 0) return false
+            if (separation > faceSeparation) {
+                faceSeparation = separation
+                faceNormalX = mx
+                faceNormalY = my
+                if (startSeparation < endSeparation) {
+                    faceX = segmentStart.x
+                    faceY = segmentStart.y
+                } else {
+                    faceX = segmentEnd.x
+                    faceY = segmentEnd.y
+                }
+            }
+        }
+
+        if (selectionBias(faceSeparation, segmentSeparation)) {
+            segmentNormal.set(-faceNormalX, -faceNormalY)
+            segmentPoint.set(faceX, faceY)
+            segmentPenetration = -faceSeparation
+            return true
+        }
+
+        //Incident face of the polygon clipped to the extent of the segment
+        val incidentFace = polygon.geometry.supportFace(-(r1.x * nx + r2.x * ny), -(r1.y * nx + r2.y * ny))
+        val i1 = vertices[incidentFace]
+        val i2 = vertices[if (incidentFace + 1 == vertices.size) 0 else incidentFace + 1]
+        clipX[0] = r1.x * i1.x + r1.y * i1.y + position.x
+        clipY[0] = r2.x * i1.x + r2.y * i1.y + position.y
+        clipX[1] = r1.x * i2.x + r1.y * i2.y + position.x
+        clipY[1] = r2.x * i2.x + r2.y * i2.y + position.y
+        val tx = dx / length
+        val ty = dy / length
+        if (clipSegment(-tx, -ty, -(tx * segmentStart.x + ty * segmentStart.y)) < 2) return false
+        if (clipSegment(tx, ty, tx * segmentEnd.x + ty * segmentEnd.y) < 2) return false
+
+        //Keeps the points below the segment, reduced to their centre
+        val offset = nx * segmentStart.x + ny * segmentStart.y
+        var totalPen = .0
+        var contactsFound = 0
+        var px = .0
+        var py = .0
+        for (i in 0..1) {
+            val separation = nx * clipX[i] + ny * clipY[i] - offset
+            if (separation <= Physics.EPSILON) {
+                px += clipX[i]
+                py += clipY[i]
+                totalPen -= separation
+                contactsFound++
+            }
+        }
+        if (contactsFound == 0) return false
+        segmentNormal.set(nx, ny)
+        segmentPoint.set(px / contactsFound, py / contactsFound)
+        segmentPenetration = totalPen / contactsFound
+        return true
+    }
+
+    private fun collideChildren(a: CollisionBodyInterface, b: CollisionBodyInterface) {
+        var child: Arbiter? = null
+        for (candidate in children) {
+            if (candidate.a === a && candidate.b === b) {
+                child = candidate
+                break
+            }
+        }
+        if (child == null) {
+            child = Arbiter(a, b)
+            children.add(child)
+        }
+        child.stamp = childStamp
+        child.narrowPhase()
+        child.restitution = restitution
+    }
+
     /**
      * Circle vs circle collision detection method
      */
@@ -114,22 +469,32 @@ class Arbiter(
         //Transpose effectively removes the rotation thus allowing the OBB vs OBB detection to become AABB vs OBB
         val distOfBodies = circleBody.position.minus(polygonBody.position)
         val polyToCircleVec = polygon.orientation.transpose().mul(distOfBodies)
-        var penetration = -Double.MAX_VALUE
         var faceNormalIndex = 0
 
         //Applies SAT to check for potential penetration
         //Retrieves best face of polygon
-        for (i in polygon.vertices.indices) {
-            val v = polyToCircleVec.minus(polygon.vertices[i])
-            val distance = polygon.normals[i].dot(v)
-
-            //If circle is outside of polygon, no collision detected.
-            if (distance > circle.radius) {
+        if (polygon.geometry.isRegular) {
+            //All faces of a regular polygon are equally far from its centre, the face facing the circle is the best one
+            faceNormalIndex = polygon.geometry.supportFace(polyToCircleVec.x, polyToCircleVec.y)
+            val v = polygon.vertices[faceNormalIndex]
+            val n = polygon.normals[faceNormalIndex]
+            if (n.x * (polyToCircleVec.x - v.x) + n.y * (polyToCircleVec.y - v.y) > circle.radius) {
                 return
             }
-            if (distance > penetration) {
-                faceNormalIndex = i
-                penetration = distance
+        } else {
+            var penetration = -Double.MAX_VALUE
+            for (i in polygon.vertices.indices) {
+                val v = polyToCircleVec.minus(polygon.vertices[i])
+                val distance = polygon.normals[i].dot(v)
+
+                //If circle is outside of polygon, no collision detected.
+                if (distance > circle.radius) {
+                    return
+                }
+                if (distance > penetration) {
+                    faceNormalIndex = i
+                    penetration = distance
+                }
             }
         }
 
@@ -190,14 +555,28 @@ class Arbiter(
     private fun polygonPolygonCollision(a: CollisionBodyInterface, b: CollisionBodyInterface) {
         val pa = a.shape as Polygon
         val pb = b.shape as Polygon
-        val aData = AxisData()
+        if (pa.geometry.isBox && pb.geometry.isBox) {
+            boxBoxCollision(a, b, pa, pb)
+            return
+        }
+
+        //Resting and near touching pairs are usually still separated along the axis found last step
+        if (cachedAxis == AXIS_A && cachedFace < pa.vertices.size) {
+            supportHint = -1
+            if (faceSeparation(pa, pb, cachedFace) >= 0) return
+        } else if (cachedAxis == AXIS_B && cachedFace < pb.vertices.size) {
+            supportHint = -1
+            if (faceSeparation(pb, pa, cachedFace) >= 0) return
+        }
+
         findAxisOfMinPenetration(aData, pa, pb)
         if (aData.penetration >= 0) {
+            cacheAxis(AXIS_A, aData.referenceFaceIndex)
             return
         }
-        val bData = AxisData()
         findAxisOfMinPenetration(bData, pb, pa)
         if (bData.penetration >= 0) {
+            cacheAxis(AXIS_B, bData.referenceFaceIndex)
             return
         }
         val referenceFaceIndex: Int
@@ -209,11 +588,13 @@ class Arbiter(
             incidentPoly = pb
             referenceFaceIndex = aData.referenceFaceIndex
             flip = false
+            cacheAxis(AXIS_A, referenceFaceIndex)
         } else {
             referencePoly = pb
             incidentPoly = pa
             referenceFaceIndex = bData.referenceFaceIndex
             flip = true
+            cacheAxis(AXIS_B, referenceFaceIndex)
         }
 
         var referenceNormal = referencePoly.normals[referenceFaceIndex]
@@ -224,15 +605,7 @@ class Arbiter(
 
         //Finds face of incident polygon angled best vs reference poly normal.
         //Best face is the incident face that is the most anti parallel (most negative dot product)
-        var incidentIndex = 0
-        var minDot = Double.MAX_VALUE
-        for (i in incidentPoly.vertices.indices) {
-            val dot = referenceNormal.dot(incidentPoly.normals[i])
-            if (dot < minDot) {
-                minDot = dot
-                incidentIndex = i
-            }
-        }
+        val incidentIndex = incidentPoly.geometry.supportFace(-referenceNormal.x, -referenceNormal.y)
 
         //Incident faces vertexes in world space
         val incidentFaceVertexes = arrayOf(
@@ -291,6 +664,185 @@ class Arbiter(
         contactNormal.set(if (flip) refFaceNormal.unaryMinus() else refFaceNormal)
     }
 
+    /**
+     * Oriented box vs oriented box collision check. Each box only has two face axes, so the separation along all four faces
+     * of a box follows from the distance of the centres and the projected extents of the other box. The incident face is
+     * clipped against the reference face without allocating.
+     */
+    private fun boxBoxCollision(a: CollisionBodyInterface, b: CollisionBodyInterface, pa: Polygon, pb: Polygon) {
+        val dx = b.position.x - a.position.x
+        val dy = b.position.y - a.position.y
+        boxSeparation(aData, pa, pb, dx, dy)
+        if (aData.penetration >= 0) {
+            return
+        }
+        boxSeparation(bData, pb, pa, -dx, -dy)
+        if (bData.penetration >= 0) {
+            return
+        }
+        val reference: Polygon
+        val incident: Polygon
+        val referenceFace: Int
+        val flip: Boolean
+        if (selectionBias(aData.penetration, bData.penetration)) {
+            reference = pa
+            incident = pb
+            referenceFace = aData.referenceFaceIndex
+            flip = false
+        } else {
+            reference = pb
+            incident = pa
+            referenceFace = bData.referenceFaceIndex
+            flip = true
+        }
+
+        //Reference face in world space
+        val rr1 = reference.orientation.row1
+        val rr2 = reference.orientation.row2
+        val rp = reference.body.position
+        val r1 = reference.vertices[referenceFace]
+        val r2 = reference.vertices[if (referenceFace == 3) 0 else referenceFace + 1]
+        val v1x = rr1.x * r1.x + rr1.y * r1.y + rp.x
+        val v1y = rr2.x * r1.x + rr2.y * r1.y + rp.y
+        val v2x = rr1.x * r2.x + rr1.y * r2.y + rp.x
+        val v2y = rr2.x * r2.x + rr2.y * r2.y + rp.y
+        var tx = v2x - v1x
+        var ty = v2y - v1y
+        val length = StrictMath.sqrt(tx * tx + ty * ty)
+        tx /= length
+        ty /= length
+        val nx = ty
+        val ny = -tx
+
+        //Incident face is the face of the other box most anti parallel to the reference normal
+        val ir1 = incident.orientation.row1
+        val ir2 = incident.orientation.row2
+        val ip = incident.body.position
+        val lx = ir1.x * nx + ir2.x * ny
+        val ly = ir1.y * nx + ir2.y * ny
+        val incidentFace = incident.geometry.supportFace(-lx, -ly)
+        val i1 = incident.vertices[incidentFace]
+        val i2 = incident.vertices[if (incidentFace == 3) 0 else incidentFace + 1]
+        clipX[0] = ir1.x * i1.x + ir1.y * i1.y + ip.x
+        clipY[0] = ir2.x * i1.x + ir2.y * i1.y + ip.y
+        clipX[1] = ir1.x * i2.x + ir1.y * i2.y + ip.x
+        clipY[1] = ir2.x * i2.x + ir2.y * i2.y + ip.y
+
+        //Clips the incident face against the side planes of the reference face
+        if (clipSegment(-tx, -ty, -(tx * v1x + ty * v1y)) < 2) {
+            return
+        }
+        if (clipSegment(tx, ty, tx * v2x + ty * v2y) < 2) {
+            return
+        }
+
+        //Keeps the points below the reference face
+        val faceOffset = nx * v1x + ny * v1y
+        var totalPen = 0.0
+        var contactsFound = 0
+        var px = .0
+        var py = .0
+        for (i in 0..1) {
+            val separation = nx * clipX[i] + ny * clipY[i] - faceOffset
+            if (separation <= 0.0 + Physics.EPSILON) {
+                px += clipX[i]
+                py += clipY[i]
+                totalPen += -separation
+                contactsFound++
+            }
+        }
+        if (contactsFound == 0) {
+            return
+        }
+
+        //The solver works on a single contact, the manifold is reduced to its centre
+        penetration = totalPen / contactsFound
+        contactCount = 1
+        contacts[0].set(px / contactsFound, py / contactsFound)
+        contactNormal.set(if (flip) -nx else nx, if (flip) -ny else ny)
+    }
+
+    /**
+     * Finds the face of box A with the greatest separation from box B.
+     *
+     * @param data Receives separation and face index.
+     * @param A    Box owning the faces.
+     * @param B    Other box.
+     * @param dx   X distance from the centre of A to the centre of B.
+     * @param dy   Y distance from the centre of A to the centre of B.
+     */
+    private fun boxSeparation(data: AxisData, A: Polygon, B: Polygon, dx: Double, dy: Double) {
+        val extentA = A.vertices[2]
+        val extentB = B.vertices[2]
+        val a1 = A.orientation.row1
+        val a2 = A.orientation.row2
+        val b1 = B.orientation.row1
+        val b2 = B.orientation.row2
+
+        //Projections of the axes of A onto the axes of B
+        val xx = StrictMath.abs(a1.x * b1.x + a2.x * b2.x)
+        val xy = StrictMath.abs(a1.x * b1.y + a2.x * b2.y)
+        val yx = StrictMath.abs(a1.y * b1.x + a2.y * b2.x)
+        val yy = StrictMath.abs(a1.y * b1.y + a2.y * b2.y)
+        val radiusX = extentB.x * xx + extentB.y * xy
+        val radiusY = extentB.x * yx + extentB.y * yy
+
+        //Centre distance along the axes of A
+        val distanceX = a1.x * dx + a2.x * dy
+        val distanceY = a1.y * dx + a2.y * dy
+
+        //Faces in vertex order, bottom, right, top, left
+        var best = -distanceY - extentA.y - radiusY
+        var face = 0
+        val right = distanceX - extentA.x - radiusX
+        if (right > best) {
+            best = right
+            face = 1
+        }
+        val top = distanceY - extentA.y - radiusY
+        if (top > best) {
+            best = top
+            face = 2
+        }
+        val left = -distanceX - extentA.x - radiusX
+        if (left > best) {
+            best = left
+            face = 3
+        }
+        data.penetration = best
+        data.referenceFaceIndex = face
+    }
+
+    /**
+     * Clips the segment in [clipX] and [clipY] against a plane, keeping the part behind it.
+     *
+     * @param nx     Plane normal x.
+     * @param ny     Plane normal y.
+     * @param offset Plane offset.
+     * @return Number of points left.
+     */
+    private fun clipSegment(nx: Double, ny: Double, offset: Double): Int {
+        val d0 = nx * clipX[0] + ny * clipY[0] - offset
+        val d1 = nx * clipX[1] + ny * clipY[1] - offset
+        if (d0 <= 0.0 && d1 <= 0.0) return 2
+        if (d0 * d1 < 0.0) {
+            val interp = d0 / (d0 - d1)
+            val x = clipX[0] + (clipX[1] - clipX[0]) * interp
+            val y = clipY[0] + (clipY[1] - clipY[0]) * interp
+            if (d0 <= 0.0) {
+                clipX[1] = x
+                clipY[1] = y
+            } else {
+                clipX[0] = clipX[1]
+                clipY[0] = clipY[1]
+                clipX[1] = x
+                clipY[1] = y
+            }
+            return 2
+        }
+        return if (d0 <= 0.0 || d1 <= 0.0) 1 else 0
+    }
+
     /**
      * Clipping for polygon collisions. Clips incident face against side planes of the reference face.
      *
@@ -329,35 +881,9 @@ class Arbiter(
     private fun findAxisOfMinPenetration(data: AxisData, A: Polygon, B: Polygon) {
         var distance = -Double.MAX_VALUE
         var bestIndex = 0
+        supportHint = -1
         for (i in A.vertices.indices) {
-            //Applies polygon A's orientation to its normals for calculation.
-            val polyANormal = A.orientation.mul(A.normals[i], Vec2())
-
-            //Rotates the normal by the clock wise rotation matrix of B to put the normal relative to the object space of polygon B
-            //Polygon b is axis aligned and the normal is located according to this in the correct position in object space
-            val objectPolyANormal = B.orientation.transpose().mul(polyANormal, Vec2())
-            var bestProjection = Double.MAX_VALUE
-            var bestVertex = B.vertices[0]
-
-            //Finds the index of the most negative vertex relative to the normal of polygon A
-            for (x in B.vertices.indices) {
-                val vertex = B.vertices[x]
-                val projection = vertex.dot(objectPolyANormal)
-                if (projection < bestProjection) {
-                    bestVertex = vertex
-                    bestProjection = projection
-                }
-            }
-
-            //Distance of B to A in world space space
-            val distanceOfBA = A.body.position.minus(B.body.position)
-
-            //Best vertex relative to polygon B in object space
-            val polyANormalVertex =
-                B.orientation.transpose().mul(A.orientation.mul(A.vertices[i], Vec2()).plus(distanceOfBA))
-
-            //Distance between best vertex and polygon A's plane in object space
-            val d = objectPolyANormal.dot(bestVertex.minus(polyANormalVertex))
+            val d = faceSeparation(A, B, i)
 
             //Records penetration and vertex
             if (d > distance) {
@@ -369,6 +895,44 @@ class Arbiter(
         data.referenceFaceIndex = bestIndex
     }
 
+    /**
+     * Distance of the deepest vertex of polygon B to a face of polygon A, positive if B lies entirely in front of the face.
+     * Consecutive faces of A turn steadily, so the support vertex found is kept in [supportHint] as the start of the next
+     * search.
+     *
+     * @param A    Polygon owning the face.
+     * @param B    Polygon to test.
+     * @param face Index of the face of A.
+     * @return Separation of B along the face normal.
+     */
+    private fun faceSeparation(A: Polygon, B: Polygon, face: Int): Double {
+        val ra1 = A.orientation.row1
+        val ra2 = A.orientation.row2
+        val rb1 = B.orientation.row1
+        val rb2 = B.orientation.row2
+
+        //Normal of polygon A rotated into the object space of polygon B
+        val n = A.normals[face]
+        val wx = ra1.x * n.x + ra1.y * n.y
+        val wy = ra2.x * n.x + ra2.y * n.y
+        val nx = rb1.x * wx + rb2.x * wy
+        val ny = rb1.y * wx + rb2.y * wy
+
+        //Most negative vertex of B relative to the normal
+        supportHint = B.geometry.support(-nx, -ny, supportHint)
+        val bestVertex = B.vertices[supportHint]
+
+        //Vertex of the face of polygon A in object space of polygon B
+        val v = A.vertices[face]
+        val ox = ra1.x * v.x + ra1.y * v.y + A.body.position.x - B.body.position.x
+        val oy = ra2.x * v.x + ra2.y * v.y + A.body.position.y - B.body.position.y
+        val px = rb1.x * ox + rb2.x * oy
+        val py = rb1.y * ox + rb2.y * oy
+
+        //Distance between best vertex and polygon A's plane in object space
+        return nx * (bestVertex.x - px) + ny * (bestVertex.y - py)
+    }
+
     /**
      * Resolves any penetrations that are left overlapping between shapes. This can be cause due to integration errors of the solvers integration method.
      * Based on linear projection to move the shapes away from each other based on a correction constant and scaled relative to the inverse mass of the objects.
@@ -391,6 +955,30 @@ class Arbiter(
      * Solves the current contact manifold and applies impulses based on any contacts found.
      */
     fun solve() {
+        if (children.isEmpty()) {
+            solveContact(a, b)
+            return
+        }
+        solveChildren(a, b)
+    }
+
+    /**
+     * Solves the contacts of the children, which push the bodies of this arbiter.
+     */
+    private fun solveChildren(a: TranslatableBody, b: TranslatableBody) {
+        for (child in children) {
+            if (child.contactCount == 0) continue
+            if (child.children.isEmpty()) child.solveContact(a, b) else child.solveChildren(a, b)
+        }
+    }
+
+    /**
+     * Applies impulses for the contact of this arbiter to a pair of bodies.
+     *
+     * @param a Body to push against the contact normal.
+     * @param b Body to push along the contact normal.
+     */
+    private fun solveContact(a: TranslatableBody, b: TranslatableBody) {
         val contactA = contacts[0].minus(a.position)
         val contactB = contacts[0].minus(b.position)
 
@@ -438,6 +1026,10 @@ class Arbiter(
     }
 
     companion object {
+        private const val AXIS_NONE = 0
+        private const val AXIS_A = 1
+        private const val AXIS_B = 2
+
         /**
          * Method to check if point is inside a body in world space.
          *
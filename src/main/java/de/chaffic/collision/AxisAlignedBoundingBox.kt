@@ -47,6 +47,21 @@ class AxisAlignedBoundingBox(min: Vec2 = Vec2(), max: Vec2 = Vec2()) {
         max.y = v1.y
     }
 
+    /**
+     * Sets the bounds of the AABB without allocating.
+     *
+     * @param minX Lower x bound.
+     * @param minY Lower y bound.
+     * @param maxX Upper x bound.
+     * @param maxY Upper y bound.
+     */
+    fun set(minX: Double, minY: Double, maxX: Double, maxY: Double) {
+        min.x = minX
+        min.y = minY
+        max.x = maxX
+        max.y = maxY
+    }
+
     /**
      * Method to check if an AABB is valid.
      * Makes sure the bounding volume is not; a point, has order of vertex's backwards and valid values have been used for the bounds.
@@ -108,11 +123,12 @@ class AxisAlignedBoundingBox(min: Vec2 = Vec2(), max: Vec2 = Vec2()) {
          */
         @JvmStatic
         fun aabbOverlap(bodyA: CollisionBodyInterface, bodyB: CollisionBodyInterface): Boolean {
-            val aCopy = bodyA.aabb.copy()
-            val bCopy = bodyB.aabb.copy()
-            aCopy.addOffset(bodyA.position)
-            bCopy.addOffset(bodyB.position)
-            return aabbOverlap(aCopy, bCopy)
+            val a = bodyA.aabb
+            val b = bodyB.aabb
+            val pa = bodyA.position
+            val pb = bodyB.position
+            return a.min.x + pa.x <= b.max.x + pb.x && a.max.x + pa.x >= b.min.x + pb.x &&
+                    a.min.y + pa.y <= b.max.y + pb.y && a.max.y + pa.y >= b.min.y + pb.y
         }
 
         /**
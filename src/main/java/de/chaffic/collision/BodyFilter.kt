@@ -0,0 +1,16 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+
+/**
+ * Predicate applied to the bodies found by region queries.
+ */
+fun interface BodyFilter {
+    /**
+     * Decides whether a body is reported.
+     *
+     * @param body Body found by the query.
+     * @return Boolean value whether the body is reported.
+     */
+    fun accept(body: CollisionBodyInterface): Boolean
+}
@@ -0,0 +1,17 @@
+package de.chaffic.collision
+
+import de.chaffic.geometry.bodies.TranslatableBody
+
+/**
+ * Order independent key of two bodies.
+ */
+internal class BodyPair(var a: TranslatableBody? = null, var b: TranslatableBody? = null) {
+    override fun hashCode(): Int {
+        return System.identityHashCode(a) xor System.identityHashCode(b)
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other !is BodyPair) return false
+        return a === other.a && b === other.b || a === other.b && b === other.a
+    }
+}
@@ -0,0 +1,17 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+
+/**
+ * Receives the bodies found by region queries such as [de.chaffic.dynamics.World.queryAABB].
+ */
+fun interface BodyVisitor {
+    /**
+     * Called for every body found. Other queries may be started from inside this call, but the world must not be modified
+     * until the query returns.
+     *
+     * @param body Body found by the query.
+     * @return False to stop the query.
+     */
+    fun visit(body: CollisionBodyInterface): Boolean
+}
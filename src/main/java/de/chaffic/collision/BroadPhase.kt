@@ -0,0 +1,205 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.bodies.BodyType
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.geometry.bodies.TranslatableBody
+import java.util.IdentityHashMap
+
+/**
+ * Broad phase of a world. Keeps two [DynamicTree]s in sync with the bodies of the world, one for static bodies that is
+ * rarely updated and one for kinematic and dynamic bodies, and reports all pairs of bodies whose bounding boxes overlap.
+ * Only dynamic bodies look for pairs, so the cost of finding pairs scales with the number of dynamic bodies.
+ */
+class BroadPhase {
+    /**
+     * Tree holding the kinematic and dynamic collision bodies of the world.
+     */
+    val tree = DynamicTree()
+
+    /**
+     * Tree holding the static collision bodies of the world.
+     */
+    val staticTree = DynamicTree()
+
+    private val proxies = IdentityHashMap<CollisionBodyInterface, Int>()
+    private val staticProxies = IdentityHashMap<CollisionBodyInterface, Int>()
+    private var queryProxies = IntArray(16)
+    private var queryCount = 0
+    private val pairQuery = PairQuery()
+
+    /**
+     * Handler for the pairs found by [findPairs].
+     */
+    interface PairHandler {
+        /**
+         * Additional filter applied to candidate pairs before their bounding boxes are tested.
+         *
+         * @param a First body.
+         * @param b Second body.
+         * @return Boolean value whether the pair should be tested.
+         */
+        fun shouldCollide(a: CollisionBodyInterface, b: CollisionBodyInterface): Boolean
+
+        /**
+         * Called for every pair whose bounding boxes overlap.
+         *
+         * @param a First body.
+         * @param b Second body.
+         */
+        fun addPair(a: CollisionBodyInterface, b: CollisionBodyInterface)
+    }
+
+    /**
+     * Updates the tree of moving bodies with their current bounds. Bodies that are new to the list get a proxy, bodies that
+     * were removed from the list lose theirs.
+     *
+     * @param bodies All kinematic and dynamic bodies of the world.
+     */
+    fun update(bodies: List<TranslatableBody>) {
+        queryCount = 0
+        sync(tree, proxies, bodies, true)
+    }
+
+    /**
+     * Updates the tree of static bodies with their current bounds. Only needs to be called when static bodies were added,
+     * removed or moved.
+     *
+     * @param bodies All static bodies of the world.
+     */
+    fun updateStatic(bodies: List<TranslatableBody>) {
+        sync(staticTree, staticProxies, bodies, false)
+    }
+
+    private fun sync(tree: DynamicTree, proxies: IdentityHashMap<CollisionBodyInterface, Int>, bodies: List<TranslatableBody>, collectQueries: Boolean) {
+        var collisionBodies = 0
+        for (b in bodies) {
+            if (b !is CollisionBodyInterface) continue
+            collisionBodies++
+            var proxy = proxies[b]
+            val aabb = b.aabb
+            val p = b.position
+            if (proxy == null) {
+                proxy = tree.createProxy(b, aabb.min.x + p.x, aabb.min.y + p.y, aabb.max.x + p.x, aabb.max.y + p.y)
+                proxies[b] = proxy
+            } else {
+                tree.moveProxy(proxy, aabb.min.x + p.x, aabb.min.y + p.y, aabb.max.x + p.x, aabb.max.y + p.y)
+                if (tree.getCategories(proxy) != b.categoryBits) {
+                    tree.updateCategories(proxy)
+                }
+            }
+
+            //Only dynamic bodies with mass look for pairs, the other bodies are found by them
+            if (!collectQueries || !isQuerying(b)) continue
+            if (queryCount == queryProxies.size) {
+                queryProxies = queryProxies.copyOf(queryCount * 2)
+            }
+            queryProxies[queryCount++] = proxy
+        }
+        if (collisionBodies != proxies.size) {
+            removeStaleProxies(tree, proxies, bodies)
+        }
+    }
+
+    private fun isQuerying(b: CollisionBodyInterface): Boolean {
+        return b is PhysicalBodyInterface && b.bodyType == BodyType.DYNAMIC && b.invMass != 0.0
+    }
+
+    /**
+     * Reports every pair of bodies that passes the collision filters and whose bounding boxes overlap. Must be called after
+     * [update].
+     *
+     * @param handler Handler the pairs are reported to.
+     */
+    fun findPairs(handler: PairHandler) {
+        pairQuery.handler = handler
+        for (i in 0 until queryCount) {
+            pairQuery.query(queryProxies[i])
+        }
+        pairQuery.handler = null
+    }
+
+    /**
+     * Gets the proxy of a body.
+     *
+     * @param body Body to look up.
+     * @return The proxy id in [tree] or [staticTree] or [DynamicTree.NULL_NODE] if the body is not in either tree.
+     */
+    fun getProxy(body: CollisionBodyInterface): Int {
+        return proxies[body] ?: staticProxies[body] ?: DynamicTree.NULL_NODE
+    }
+
+    /**
+     * Removes all bodies from the broad phase.
+     */
+    fun clear() {
+        proxies.clear()
+        staticProxies.clear()
+        tree.clear()
+        staticTree.clear()
+        queryCount = 0
+    }
+
+    private fun removeStaleProxies(tree: DynamicTree, proxies: IdentityHashMap<CollisionBodyInterface, Int>, bodies: List<TranslatableBody>) {
+        val current = IdentityHashMap<TranslatableBody, Boolean>(bodies.size)
+        for (b in bodies) {
+            current[b] = true
+        }
+        val iterator = proxies.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (!current.containsKey(entry.key)) {
+                tree.destroyProxy(entry.value)
+                iterator.remove()
+            }
+        }
+    }
+
+    /**
+     * Tree query of a single dynamic body against both trees.
+     */
+    private inner class PairQuery : DynamicTree.QueryCallback {
+        var handler: PairHandler? = null
+        private var proxyId = 0
+        private var searching = tree
+        private lateinit var body: CollisionBodyInterface
+
+        fun query(proxyId: Int) {
+            this.proxyId = proxyId
+            body = tree.getBody(proxyId)
+            val aabb = body.aabb
+            val p = body.position
+
+            //A positive group collides regardless of masks, so the tree can not be pruned by the mask
+            val mask = if (body.groupIndex > 0) CollisionFilter.ALL_CATEGORIES else body.maskBits
+            searching = tree
+            tree.query(aabb.min.x + p.x, aabb.min.y + p.y, aabb.max.x + p.x, aabb.max.y + p.y, mask, this)
+            searching = staticTree
+            staticTree.query(aabb.min.x + p.x, aabb.min.y + p.y, aabb.max.x + p.x, aabb.max.y + p.y, mask, this)
+        }
+
+        override fun found(proxyId: Int): Boolean {
+            val other: CollisionBodyInterface
+            if (searching === tree) {
+                if (proxyId == this.proxyId) return true
+                other = tree.getBody(proxyId)
+
+                //Pairs of two dynamic bodies are found twice, only the body with the lower proxy reports them
+                if (isQuerying(other) && proxyId < this.proxyId) return true
+            } else {
+                other = staticTree.getBody(proxyId)
+            }
+
+            //Ignores particle pairs
+            val a = body
+            if (a is PhysicalBodyInterface && other is PhysicalBodyInterface && a.particle && other.particle) return true
+
+            //Ignores filtered pairs before paying for the AABB test
+            if (!CollisionFilter.shouldCollide(a, other) || !handler!!.shouldCollide(a, other)) return true
+            if (AxisAlignedBoundingBox.aabbOverlap(a, other)) {
+                handler!!.addPair(a, other)
+            }
+            return true
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+
+/**
+ * Decides whether two bodies are allowed to collide based on their category, mask and group.
+ */
+object CollisionFilter {
+    /**
+     * Category every body is in by default.
+     */
+    const val DEFAULT_CATEGORY = 0x0001
+
+    /**
+     * Mask that accepts every category.
+     */
+    const val ALL_CATEGORIES = -1
+
+    /**
+     * Checks whether two bodies should collide.
+     * Bodies sharing a non zero group always collide if the group is positive and never collide if it is negative.
+     * Otherwise, both bodies have to accept the category of the other with their mask.
+     *
+     * @param a First body.
+     * @param b Second body.
+     * @return Boolean value whether the bodies should collide.
+     */
+    @JvmStatic
+    fun shouldCollide(a: CollisionBodyInterface, b: CollisionBodyInterface): Boolean {
+        if (a.groupIndex == b.groupIndex && a.groupIndex != 0) {
+            return a.groupIndex > 0
+        }
+        return a.maskBits and b.categoryBits != 0 && b.maskBits and a.categoryBits != 0
+    }
+}
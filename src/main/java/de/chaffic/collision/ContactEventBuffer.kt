@@ -0,0 +1,90 @@
+package de.chaffic.collision
+
+/**
+ * Ring buffer of contact events. Storage is preallocated and only grows if more events are queued than fit in it.
+ *
+ * @param capacity Initial number of events the buffer can hold. Rounded up to the next power of two.
+ */
+class ContactEventBuffer(capacity: Int = 64) {
+    private var types = IntArray(Integer.highestOneBit((capacity - 1).coerceAtLeast(1)) shl 1)
+    private var arbiters = arrayOfNulls<Arbiter>(types.size)
+    private var head = 0
+
+    /**
+     * Number of queued events.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Queues an event.
+     *
+     * @param type    Type of the event. One of [BEGIN], [PERSIST] or [END].
+     * @param arbiter Contact the event belongs to.
+     */
+    fun push(type: Int, arbiter: Arbiter) {
+        if (size == types.size) {
+            grow()
+        }
+        val index = (head + size) and (types.size - 1)
+        types[index] = type
+        arbiters[index] = arbiter
+        size++
+    }
+
+    /**
+     * Delivers all queued events to the listeners and empties the buffer.
+     *
+     * @param listeners Listeners to notify. Must not be modified during the dispatch.
+     */
+    fun dispatch(listeners: Array<out ContactListener>) {
+        val mask = types.size - 1
+        while (size > 0) {
+            val type = types[head]
+            val arbiter = arbiters[head]!!
+            arbiters[head] = null
+            head = (head + 1) and mask
+            size--
+            for (listener in listeners) {
+                when (type) {
+                    BEGIN -> listener.beginContact(arbiter)
+                    PERSIST -> listener.persistContact(arbiter)
+                    else -> listener.endContact(arbiter)
+                }
+            }
+        }
+        head = 0
+    }
+
+    /**
+     * Removes all queued events without delivering them.
+     */
+    fun clear() {
+        arbiters.fill(null)
+        head = 0
+        size = 0
+    }
+
+    /**
+     * Doubles the capacity while keeping the order of queued events.
+     */
+    private fun grow() {
+        val newTypes = IntArray(types.size * 2)
+        val newArbiters = arrayOfNulls<Arbiter>(newTypes.size)
+        val mask = types.size - 1
+        for (i in 0 until size) {
+            val index = (head + i) and mask
+            newTypes[i] = types[index]
+            newArbiters[i] = arbiters[index]
+        }
+        types = newTypes
+        arbiters = newArbiters
+        head = 0
+    }
+
+    companion object {
+        const val BEGIN = 0
+        const val PERSIST = 1
+        const val END = 2
+    }
+}
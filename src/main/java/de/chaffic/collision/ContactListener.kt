@@ -0,0 +1,28 @@
+package de.chaffic.collision
+
+/**
+ * Listener for contact events of a [de.chaffic.dynamics.World].
+ * Events are collected during [de.chaffic.dynamics.World.step] and delivered as one batch after the step has completed.
+ */
+interface ContactListener {
+    /**
+     * Called when two bodies started touching during the last step.
+     *
+     * @param contact Contact manifold of the two bodies.
+     */
+    fun beginContact(contact: Arbiter)
+
+    /**
+     * Called when two bodies that already touched in the step before are still touching.
+     *
+     * @param contact Contact manifold of the two bodies.
+     */
+    fun persistContact(contact: Arbiter)
+
+    /**
+     * Called when two bodies stopped touching during the last step.
+     *
+     * @param contact Last contact manifold of the two bodies.
+     */
+    fun endContact(contact: Arbiter)
+}
@@ -0,0 +1,103 @@
+package de.chaffic.collision
+
+import de.chaffic.geometry.bodies.TranslatableBody
+
+/**
+ * Persistent state of all body pairs whose bounding boxes overlap. Each pair keeps its [Arbiter] from step to step, so the
+ * pair knows whether it was touching before and the manifold does not have to be reallocated every step.
+ */
+class ContactPairs {
+    private val lookup = HashMap<BodyPair, Arbiter>()
+    private val probe = BodyPair()
+    private var stamp = 0
+
+    /**
+     * All pairs found in the current step.
+     */
+    val pairs = ArrayList<Arbiter>()
+
+    /**
+     * Events queued while [recordEvents] is set.
+     */
+    val events = ContactEventBuffer()
+
+    /**
+     * Whether begin, persist and end events are queued into [events].
+     */
+    var recordEvents = false
+
+    /**
+     * Starts a new step. Pairs that are not requested with [find] until [endStep] is called are removed.
+     */
+    fun beginStep() {
+        stamp++
+    }
+
+    /**
+     * Finds the persistent arbiter of two bodies or creates one if the bodies were not paired in the last step.
+     *
+     * @param a First body.
+     * @param b Second body.
+     * @return Arbiter of the two bodies.
+     */
+    fun find(a: TranslatableBody, b: TranslatableBody): Arbiter {
+        probe.a = a
+        probe.b = b
+        var arbiter = lookup[probe]
+        if (arbiter == null) {
+            arbiter = Arbiter(a, b)
+            lookup[BodyPair(a, b)] = arbiter
+            pairs.add(arbiter)
+        }
+        arbiter.stamp = stamp
+        return arbiter
+    }
+
+    /**
+     * Updates the touching state of a pair after its narrow phase and queues the matching event.
+     *
+     * @param arbiter Arbiter that went through the narrow phase.
+     */
+    fun updateState(arbiter: Arbiter) {
+        val wasTouching = arbiter.touching
+        arbiter.touching = arbiter.contactCount > 0
+        if (!recordEvents) return
+        if (arbiter.touching) {
+            events.push(if (wasTouching) ContactEventBuffer.PERSIST else ContactEventBuffer.BEGIN, arbiter)
+        } else if (wasTouching) {
+            events.push(ContactEventBuffer.END, arbiter)
+        }
+    }
+
+    /**
+     * Removes all pairs that were not found during the current step.
+     */
+    fun endStep() {
+        var i = 0
+        while (i < pairs.size) {
+            val arbiter = pairs[i]
+            if (arbiter.stamp == stamp) {
+                i++
+                continue
+            }
+            probe.a = arbiter.a
+            probe.b = arbiter.b
+            lookup.remove(probe)
+            if (arbiter.touching && recordEvents) {
+                events.push(ContactEventBuffer.END, arbiter)
+            }
+            arbiter.touching = false
+            pairs[i] = pairs[pairs.size - 1]
+            pairs.removeAt(pairs.size - 1)
+        }
+    }
+
+    /**
+     * Removes all pairs and queued events.
+     */
+    fun clear() {
+        lookup.clear()
+        pairs.clear()
+        events.clear()
+    }
+}
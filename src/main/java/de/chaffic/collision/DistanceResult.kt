@@ -0,0 +1,51 @@
+package de.chaffic.collision
+
+import de.chaffic.math.Vec2
+
+/**
+ * Reusable result of a distance query between two shapes. Queries write into an instance supplied by the caller so no
+ * garbage is created.
+ */
+class DistanceResult {
+    /**
+     * Closest point on the first shape in world space. The deepest point if the shapes overlap.
+     */
+    val pointA = Vec2()
+
+    /**
+     * Closest point on the second shape in world space. The deepest point if the shapes overlap.
+     */
+    val pointB = Vec2()
+
+    /**
+     * Unit vector pointing from the first shape towards the second. Moving the second shape along it separates the shapes.
+     */
+    val normal = Vec2()
+
+    /**
+     * Distance between the shapes. Negative if the shapes overlap, the penetration depth is then the negated distance.
+     */
+    var distance = .0
+
+    /**
+     * Number of GJK iterations used.
+     */
+    var iterations = 0
+
+    /**
+     * Whether the shapes overlap.
+     */
+    val overlapping: Boolean
+        get() = distance < 0
+
+    /**
+     * Resets the result.
+     */
+    fun reset() {
+        pointA.set(.0, .0)
+        pointB.set(.0, .0)
+        normal.set(.0, .0)
+        distance = .0
+        iterations = 0
+    }
+}
@@ -0,0 +1,537 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.Physics
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Dynamic AABB tree used as broad phase structure. Leaves hold enlarged ("fat") bounding boxes of bodies so that small
+ * movements do not require the tree to be updated. The tree is kept balanced with tree rotations.
+ *
+ * Nodes are stored in primitive arrays and are addressed by their index. Every internal node also stores the union of the
+ * collision categories of its subtree, so queries with a collision mask can skip whole subtrees.
+ *
+ * Queries are reentrant, a callback may start another query on the same tree. Every nesting level traverses with a stack
+ * of its own. The tree must not be changed while a query runs.
+ *
+ * @param margin Distance the bounding boxes of leaves are enlarged by.
+ */
+class DynamicTree(private val margin: Double = Physics.AABB_MARGIN) {
+    private var capacity = 16
+    private var minX = DoubleArray(capacity)
+    private var minY = DoubleArray(capacity)
+    private var maxX = DoubleArray(capacity)
+    private var maxY = DoubleArray(capacity)
+    private var parent = IntArray(capacity)
+    private var child1 = IntArray(capacity)
+    private var child2 = IntArray(capacity)
+    private var height = IntArray(capacity)
+    private var categories = IntArray(capacity)
+    private var bodies = arrayOfNulls<CollisionBodyInterface>(capacity)
+    private var root = NULL_NODE
+    private var freeList = 0
+    private var stacks = Array(4) { IntArray(64) }
+    private var queryDepth = 0
+
+    /**
+     * Number of bodies in the tree.
+     */
+    var proxyCount = 0
+        private set
+
+    init {
+        linkFreeNodes(0)
+    }
+
+    /**
+     * Callback for AABB queries.
+     */
+    fun interface QueryCallback {
+        /**
+         * Called for every leaf whose fat bounding box overlaps the query box.
+         *
+         * @param proxyId Proxy of the leaf.
+         * @return False to stop the query.
+         */
+        fun found(proxyId: Int): Boolean
+    }
+
+    /**
+     * Callback for ray casts.
+     */
+    fun interface RaycastCallback {
+        /**
+         * Called for every leaf whose fat bounding box is hit by the ray within the current maximum fraction.
+         *
+         * @param proxyId     Proxy of the leaf.
+         * @param maxFraction Current maximum fraction of the ray.
+         * @return Zero to stop the ray cast, otherwise the new maximum fraction. Returning maxFraction continues unchanged.
+         */
+        fun raycast(proxyId: Int, maxFraction: Double): Double
+    }
+
+    /**
+     * Adds a body to the tree.
+     *
+     * @param body Body to add.
+     * @param lowerX Lower x bound of the body in world space.
+     * @param lowerY Lower y bound of the body in world space.
+     * @param upperX Upper x bound of the body in world space.
+     * @param upperY Upper y bound of the body in world space.
+     * @return The proxy id of the body.
+     */
+    fun createProxy(body: CollisionBodyInterface, lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        checkNotQuerying()
+        val proxyId = allocateNode()
+        minX[proxyId] = lowerX - margin
+        minY[proxyId] = lowerY - margin
+        maxX[proxyId] = upperX + margin
+        maxY[proxyId] = upperY + margin
+        bodies[proxyId] = body
+        categories[proxyId] = body.categoryBits
+        height[proxyId] = 0
+        insertLeaf(proxyId)
+        proxyCount++
+        return proxyId
+    }
+
+    /**
+     * Removes a body from the tree.
+     *
+     * @param proxyId Proxy of the body.
+     */
+    fun destroyProxy(proxyId: Int) {
+        checkNotQuerying()
+        removeLeaf(proxyId)
+        freeNode(proxyId)
+        proxyCount--
+    }
+
+    /**
+     * Updates the bounds of a body. The tree is only changed if the body left its fat bounding box.
+     *
+     * @param proxyId Proxy of the body.
+     * @param lowerX Lower x bound of the body in world space.
+     * @param lowerY Lower y bound of the body in world space.
+     * @param upperX Upper x bound of the body in world space.
+     * @param upperY Upper y bound of the body in world space.
+     * @return Boolean value whether the tree had to be changed.
+     */
+    fun moveProxy(proxyId: Int, lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Boolean {
+        if (minX[proxyId] <= lowerX && minY[proxyId] <= lowerY && maxX[proxyId] >= upperX && maxY[proxyId] >= upperY) {
+            return false
+        }
+        checkNotQuerying()
+        removeLeaf(proxyId)
+        minX[proxyId] = lowerX - margin
+        minY[proxyId] = lowerY - margin
+        maxX[proxyId] = upperX + margin
+        maxY[proxyId] = upperY + margin
+        insertLeaf(proxyId)
+        return true
+    }
+
+    /**
+     * Refreshes the collision categories of a body after its category bits changed.
+     *
+     * @param proxyId Proxy of the body.
+     */
+    fun updateCategories(proxyId: Int) {
+        categories[proxyId] = bodies[proxyId]!!.categoryBits
+        var index = parent[proxyId]
+        while (index != NULL_NODE) {
+            categories[index] = categories[child1[index]] or categories[child2[index]]
+            index = parent[index]
+        }
+    }
+
+    /**
+     * Gets the body of a proxy.
+     *
+     * @param proxyId Proxy of the body.
+     * @return The body stored in the leaf.
+     */
+    fun getBody(proxyId: Int): CollisionBodyInterface {
+        return bodies[proxyId]!!
+    }
+
+    /**
+     * Gets the collision categories the tree has stored for a proxy.
+     *
+     * @param proxyId Proxy of the body.
+     * @return Category bits of the leaf.
+     */
+    fun getCategories(proxyId: Int): Int {
+        return categories[proxyId]
+    }
+
+    /**
+     * Finds all leaves whose fat bounding box overlaps the query box.
+     *
+     * @param lowerX Lower x bound of the query box.
+     * @param lowerY Lower y bound of the query box.
+     * @param upperX Upper x bound of the query box.
+     * @param upperY Upper y bound of the query box.
+     * @param maskBits Only leaves with a category in the mask are reported.
+     * @param callback Callback for every leaf found.
+     */
+    fun query(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double, maskBits: Int, callback: QueryCallback) {
+        if (root == NULL_NODE) return
+        val level = enterQuery()
+        try {
+            var stack = stacks[level]
+            var top = 0
+            stack[top++] = root
+            while (top > 0) {
+                val id = stack[--top]
+                if (categories[id] and maskBits == 0) continue
+                if (minX[id] > upperX || maxX[id] < lowerX || minY[id] > upperY || maxY[id] < lowerY) continue
+                if (child1[id] == NULL_NODE) {
+                    if (!callback.found(id)) return
+                } else {
+                    if (top + 2 > stack.size) stack = growStack(level)
+                    stack[top++] = child1[id]
+                    stack[top++] = child2[id]
+                }
+            }
+        } finally {
+            queryDepth--
+        }
+    }
+
+    /**
+     * Casts a ray against the tree. Nodes are rejected with a slab test against the ray interval, which shrinks whenever
+     * the callback reports a closer hit.
+     *
+     * @param startX X coordinate of the ray start.
+     * @param startY Y coordinate of the ray start.
+     * @param endX X coordinate of the ray end.
+     * @param endY Y coordinate of the ray end.
+     * @param maxFraction Maximum fraction of the segment start to end that is searched.
+     * @param maskBits Only leaves with a category in the mask are reported.
+     * @param callback Callback for every leaf hit.
+     */
+    fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, maskBits: Int, callback: RaycastCallback) {
+        if (root == NULL_NODE) return
+        val dx = endX - startX
+        val dy = endY - startY
+        val invDx = 1.0 / dx
+        val invDy = 1.0 / dy
+        var fraction = maxFraction
+        val level = enterQuery()
+        try {
+            var stack = stacks[level]
+            var top = 0
+            stack[top++] = root
+            while (top > 0) {
+                val id = stack[--top]
+                if (categories[id] and maskBits == 0) continue
+
+                //Slab test of the segment against the node bounds
+                var tMin = 0.0
+                var tMax = fraction
+                if (dx == 0.0) {
+                    if (startX < minX[id] || startX > maxX[id]) continue
+                } else {
+                    val t1 = (minX[id] - startX) * invDx
+                    val t2 = (maxX[id] - startX) * invDx
+                    tMin = max(tMin, min(t1, t2))
+                    tMax = min(tMax, max(t1, t2))
+                }
+                if (dy == 0.0) {
+                    if (startY < minY[id] || startY > maxY[id]) continue
+                } else {
+                    val t1 = (minY[id] - startY) * invDy
+                    val t2 = (maxY[id] - startY) * invDy
+                    tMin = max(tMin, min(t1, t2))
+                    tMax = min(tMax, max(t1, t2))
+                }
+                if (tMin > tMax) continue
+
+                if (child1[id] == NULL_NODE) {
+                    val value = callback.raycast(id, fraction)
+                    if (value == 0.0) return
+                    if (value > 0.0) fraction = value
+                } else {
+                    if (top + 2 > stack.size) stack = growStack(level)
+                    stack[top++] = child1[id]
+                    stack[top++] = child2[id]
+                }
+            }
+        } finally {
+            queryDepth--
+        }
+    }
+
+    /**
+     * Starts a query on the next nesting level.
+     *
+     * @return The nesting level of the query.
+     */
+    private fun enterQuery(): Int {
+        val level = queryDepth++
+        if (level == stacks.size) {
+            val old = stacks
+            stacks = Array(old.size * 2) { if (it < old.size) old[it] else IntArray(64) }
+        }
+        return level
+    }
+
+    /**
+     * Doubles the traversal stack of a nesting level.
+     *
+     * @param level Nesting level of the query.
+     * @return The grown stack.
+     */
+    private fun growStack(level: Int): IntArray {
+        val stack = stacks[level].copyOf(stacks[level].size * 2)
+        stacks[level] = stack
+        return stack
+    }
+
+    private fun checkNotQuerying() {
+        check(queryDepth == 0) { "Tree changed during a query" }
+    }
+
+    /**
+     * Removes all bodies from the tree.
+     */
+    fun clear() {
+        checkNotQuerying()
+        bodies.fill(null)
+        root = NULL_NODE
+        proxyCount = 0
+        linkFreeNodes(0)
+    }
+
+    private fun allocateNode(): Int {
+        if (freeList == NULL_NODE) {
+            grow()
+        }
+        val id = freeList
+        freeList = parent[id]
+        parent[id] = NULL_NODE
+        child1[id] = NULL_NODE
+        child2[id] = NULL_NODE
+        height[id] = 0
+        categories[id] = 0
+        return id
+    }
+
+    private fun freeNode(id: Int) {
+        parent[id] = freeList
+        height[id] = -1
+        bodies[id] = null
+        freeList = id
+    }
+
+    private fun grow() {
+        val old = capacity
+        capacity *= 2
+        minX = minX.copyOf(capacity)
+        minY = minY.copyOf(capacity)
+        maxX = maxX.copyOf(capacity)
+        maxY = maxY.copyOf(capacity)
+        parent = parent.copyOf(capacity)
+        child1 = child1.copyOf(capacity)
+        child2 = child2.copyOf(capacity)
+        height = height.copyOf(capacity)
+        categories = categories.copyOf(capacity)
+        bodies = bodies.copyOf(capacity)
+        linkFreeNodes(old)
+    }
+
+    /**
+     * Links all nodes from the given index to the end of the arrays into the free list.
+     */
+    private fun linkFreeNodes(from: Int) {
+        for (i in from until capacity - 1) {
+            parent[i] = i + 1
+            height[i] = -1
+        }
+        parent[capacity - 1] = NULL_NODE
+        height[capacity - 1] = -1
+        freeList = from
+    }
+
+    private fun perimeter(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Double {
+        return 2.0 * (upperX - lowerX + upperY - lowerY)
+    }
+
+    private fun perimeter(id: Int): Double {
+        return perimeter(minX[id], minY[id], maxX[id], maxY[id])
+    }
+
+    private fun unionPerimeter(a: Int, b: Int): Double {
+        return perimeter(min(minX[a], minX[b]), min(minY[a], minY[b]), max(maxX[a], maxX[b]), max(maxY[a], maxY[b]))
+    }
+
+    /**
+     * Sets bounds, categories and height of a node to enclose its two children.
+     */
+    private fun setUnion(id: Int, a: Int, b: Int) {
+        minX[id] = min(minX[a], minX[b])
+        minY[id] = min(minY[a], minY[b])
+        maxX[id] = max(maxX[a], maxX[b])
+        maxY[id] = max(maxY[a], maxY[b])
+        categories[id] = categories[a] or categories[b]
+        height[id] = 1 + max(height[a], height[b])
+    }
+
+    private fun insertLeaf(leaf: Int) {
+        if (root == NULL_NODE) {
+            root = leaf
+            parent[root] = NULL_NODE
+            return
+        }
+
+        //Finds the best sibling by the surface area heuristic
+        var index = root
+        while (child1[index] != NULL_NODE) {
+            val c1 = child1[index]
+            val c2 = child2[index]
+            val area = perimeter(index)
+            val combinedArea = unionPerimeter(index, leaf)
+            val cost = 2.0 * combinedArea
+            val inheritanceCost = 2.0 * (combinedArea - area)
+            val cost1 = if (child1[c1] == NULL_NODE) {
+                unionPerimeter(leaf, c1) + inheritanceCost
+            } else {
+                unionPerimeter(leaf, c1) - perimeter(c1) + inheritanceCost
+            }
+            val cost2 = if (child1[c2] == NULL_NODE) {
+                unionPerimeter(leaf, c2) + inheritanceCost
+            } else {
+                unionPerimeter(leaf, c2) - perimeter(c2) + inheritanceCost
+            }
+            if (cost < cost1 && cost < cost2) break
+            index = if (cost1 < cost2) c1 else c2
+        }
+        val sibling = index
+
+        val oldParent = parent[sibling]
+        val newParent = allocateNode()
+        parent[newParent] = oldParent
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) child1[oldParent] = newParent else child2[oldParent] = newParent
+        } else {
+            root = newParent
+        }
+        child1[newParent] = sibling
+        child2[newParent] = leaf
+        parent[sibling] = newParent
+        parent[leaf] = newParent
+        setUnion(newParent, sibling, leaf)
+
+        refit(parent[leaf])
+    }
+
+    private fun removeLeaf(leaf: Int) {
+        if (leaf == root) {
+            root = NULL_NODE
+            return
+        }
+        val p = parent[leaf]
+        val grandParent = parent[p]
+        val sibling = if (child1[p] == leaf) child2[p] else child1[p]
+        if (grandParent != NULL_NODE) {
+            if (child1[grandParent] == p) child1[grandParent] = sibling else child2[grandParent] = sibling
+            parent[sibling] = grandParent
+            freeNode(p)
+            refit(grandParent)
+        } else {
+            root = sibling
+            parent[sibling] = NULL_NODE
+            freeNode(p)
+        }
+    }
+
+    /**
+     * Walks from a node to the root, balancing the tree and refitting bounds on the way.
+     */
+    private fun refit(start: Int) {
+        var index = start
+        while (index != NULL_NODE) {
+            index = balance(index)
+            setUnion(index, child1[index], child2[index])
+            index = parent[index]
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if the node is imbalanced.
+     *
+     * @param a Node to balance.
+     * @return The node that took the place of a.
+     */
+    private fun balance(a: Int): Int {
+        if (child1[a] == NULL_NODE || height[a] < 2) return a
+        val b = child1[a]
+        val c = child2[a]
+        val imbalance = height[c] - height[b]
+
+        //Rotates c up
+        if (imbalance > 1) {
+            val f = child1[c]
+            val g = child2[c]
+            child1[c] = a
+            parent[c] = parent[a]
+            parent[a] = c
+            replaceChild(parent[c], a, c)
+            if (height[f] > height[g]) {
+                child2[c] = f
+                child2[a] = g
+                parent[g] = a
+                setUnion(a, b, g)
+                setUnion(c, a, f)
+            } else {
+                child2[c] = g
+                child2[a] = f
+                parent[f] = a
+                setUnion(a, b, f)
+                setUnion(c, a, g)
+            }
+            return c
+        }
+
+        //Rotates b up
+        if (imbalance < -1) {
+            val d = child1[b]
+            val e = child2[b]
+            child1[b] = a
+            parent[b] = parent[a]
+            parent[a] = b
+            replaceChild(parent[b], a, b)
+            if (height[d] > height[e]) {
+                child2[b] = d
+                child1[a] = e
+                parent[e] = a
+                setUnion(a, c, e)
+                setUnion(b, a, d)
+            } else {
+                child2[b] = e
+                child1[a] = d
+                parent[d] = a
+                setUnion(a, c, d)
+                setUnion(b, a, e)
+            }
+            return b
+        }
+        return a
+    }
+
+    private fun replaceChild(p: Int, oldChild: Int, newChild: Int) {
+        if (p == NULL_NODE) {
+            root = newChild
+        } else if (child1[p] == oldChild) {
+            child1[p] = newChild
+        } else {
+            child2[p] = newChild
+        }
+    }
+
+    companion object {
+        const val NULL_NODE = -1
+    }
+}
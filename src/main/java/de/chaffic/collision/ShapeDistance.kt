@@ -0,0 +1,604 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.geometry.PolygonGeometry
+import de.chaffic.geometry.Shape
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import kotlin.math.sqrt
+
+/**
+ * Distance, penetration and shape cast queries between circles and convex polygons. GJK finds the closest points of the
+ * cores of two shapes, a circle being a single point and a polygon its vertices, and the radii are added afterwards. If
+ * the cores overlap, EPA expands the final GJK simplex to find the penetration depth. Shape casts advance the moving shape
+ * along its translation by the distance GJK reports until the shapes touch.
+ *
+ * All buffers are reused, so queries allocate nothing. An instance must not be used by several threads at once.
+ */
+class ShapeDistance {
+    private val proxyA = Proxy()
+    private val proxyB = Proxy()
+    private val scratch = DistanceResult()
+
+    //Simplex of up to three vertices of the minkowski difference B - A
+    private val ax = DoubleArray(3)
+    private val ay = DoubleArray(3)
+    private val bx = DoubleArray(3)
+    private val by = DoubleArray(3)
+    private val wx = DoubleArray(3)
+    private val wy = DoubleArray(3)
+    private val weight = DoubleArray(3)
+    private val indexA = IntArray(3)
+    private val indexB = IntArray(3)
+    private val savedA = IntArray(3)
+    private val savedB = IntArray(3)
+    private var count = 0
+
+    //Polytope expanded by EPA, counter clockwise
+    private val polyAx = DoubleArray(EPA_CAPACITY)
+    private val polyAy = DoubleArray(EPA_CAPACITY)
+    private val polyBx = DoubleArray(EPA_CAPACITY)
+    private val polyBy = DoubleArray(EPA_CAPACITY)
+    private val polyWx = DoubleArray(EPA_CAPACITY)
+    private val polyWy = DoubleArray(EPA_CAPACITY)
+    private var polySize = 0
+
+    /**
+     * Computes the distance and the closest points of two bodies, or their penetration depth and deepest points if they
+     * overlap.
+     *
+     * @param a      First body.
+     * @param b      Second body.
+     * @param result Receives distance, closest points and normal.
+     * @return Distance between the shapes, negative if they overlap.
+     * @throws IllegalArgumentException If a shape is not supported.
+     */
+    fun distance(a: CollisionBodyInterface, b: CollisionBodyInterface, result: DistanceResult): Double {
+        proxyA.set(a, .0, .0)
+        proxyB.set(b, .0, .0)
+        compute(result)
+        return result.distance
+    }
+
+    /**
+     * Sweeps the first body along a translation against the second and finds the fraction at which they first touch.
+     * The orientations stay fixed during the sweep.
+     *
+     * @param a           Moving body.
+     * @param translation Translation of the moving body in world space.
+     * @param b           Body swept against.
+     * @param result      Receives body, fraction, contact point and the normal of the second body at the contact.
+     * @param maxFraction Hits at a greater fraction of the translation are ignored.
+     * @return Boolean value whether the bodies touch within the translation. Bodies overlapping at the start touch at
+     * fraction zero.
+     * @throws IllegalArgumentException If a shape is not supported.
+     */
+    @JvmOverloads
+    fun cast(a: CollisionBodyInterface, translation: Vec2, b: CollisionBodyInterface, result: RaycastResult, maxFraction: Double = 1.0): Boolean {
+        proxyB.set(b, .0, .0)
+        if (!cast(a, translation, result, maxFraction)) return false
+        result.body = b
+        return true
+    }
+
+    /**
+     * Sweeps a body along a translation against a segment in world space, like a segment of a chain. The segment is
+     * hit from both sides. The body of the result is left unchanged.
+     *
+     * @return Boolean value whether the body touches the segment within the translation.
+     * @throws IllegalArgumentException If the shape of the body is not supported.
+     */
+    internal fun castSegment(
+        a: CollisionBodyInterface, translation: Vec2, x1: Double, y1: Double, x2: Double, y2: Double,
+        result: RaycastResult, maxFraction: Double
+    ): Boolean {
+        proxyB.setSegment(x1, y1, x2, y2)
+        return cast(a, translation, result, maxFraction)
+    }
+
+    /**
+     * Sweeps the first body against the second proxy.
+     */
+    private fun cast(a: CollisionBodyInterface, translation: Vec2, result: RaycastResult, maxFraction: Double): Boolean {
+        val tx = translation.x
+        val ty = translation.y
+        var fraction = .0
+        for (iteration in 0 until MAX_CAST_ITERATIONS) {
+            proxyA.set(a, tx * fraction, ty * fraction)
+            compute(scratch)
+            val distance = scratch.distance
+            val normal = scratch.normal
+            if (distance < CAST_TOLERANCE) {
+                result.fraction = fraction
+                result.point.set(scratch.pointB)
+                result.normal.set(-normal.x, -normal.y)
+                result.index = -1
+                return true
+            }
+
+            //Every point of the minkowski difference lies beyond the plane of the closest point, so advancing by the
+            //distance along the normal can not tunnel
+            val approach = tx * normal.x + ty * normal.y
+            if (approach <= .0) return false
+            fraction += (distance - CAST_TARGET) / approach
+            if (fraction > maxFraction) return false
+        }
+        return false
+    }
+
+    /**
+     * Runs GJK on the proxies and EPA if their cores overlap.
+     */
+    private fun compute(result: DistanceResult) {
+        count = 1
+        setVertex(0, 0, 0)
+        var iterations = 0
+        while (iterations < MAX_GJK_ITERATIONS) {
+            val saveCount = count
+            for (i in 0 until count) {
+                savedA[i] = indexA[i]
+                savedB[i] = indexB[i]
+            }
+            when (count) {
+                2 -> solve2()
+                3 -> solve3()
+            }
+            //Origin inside the triangle, the cores overlap
+            if (count == 3) break
+
+            val dx: Double
+            val dy: Double
+            if (count == 1) {
+                dx = -wx[0]
+                dy = -wy[0]
+            } else {
+                val ex = wx[1] - wx[0]
+                val ey = wy[1] - wy[0]
+                if (ex * -wy[0] - ey * -wx[0] > 0) {
+                    dx = -ey
+                    dy = ex
+                } else {
+                    dx = ey
+                    dy = -ex
+                }
+            }
+            //Origin on the simplex
+            if (dx * dx + dy * dy < TOLERANCE * TOLERANCE) break
+
+            val ia = proxyA.support(-dx, -dy)
+            val ib = proxyB.support(dx, dy)
+            iterations++
+            var duplicate = false
+            for (i in 0 until saveCount) {
+                if (savedA[i] == ia && savedB[i] == ib) {
+                    duplicate = true
+                    break
+                }
+            }
+            //No progress, the simplex is as close as it gets
+            if (duplicate) break
+            setVertex(count++, ia, ib)
+        }
+        result.iterations = iterations
+
+        //Witness points on the cores
+        var pax = .0
+        var pay = .0
+        var pbx = .0
+        var pby = .0
+        for (i in 0 until count) {
+            pax += weight[i] * ax[i]
+            pay += weight[i] * ay[i]
+            pbx += weight[i] * bx[i]
+            pby += weight[i] * by[i]
+        }
+        val dx = pbx - pax
+        val dy = pby - pay
+        val coreDistance = sqrt(dx * dx + dy * dy)
+        if (count < 3 && coreDistance > TOLERANCE) {
+            val nx = dx / coreDistance
+            val ny = dy / coreDistance
+            result.normal.set(nx, ny)
+            result.pointA.set(pax + nx * proxyA.radius, pay + ny * proxyA.radius)
+            result.pointB.set(pbx - nx * proxyB.radius, pby - ny * proxyB.radius)
+            result.distance = coreDistance - proxyA.radius - proxyB.radius
+        } else {
+            penetration(result, pax, pay)
+        }
+    }
+
+    /**
+     * Expands the GJK simplex into the polytope of the minkowski difference until the edge closest to the origin is found.
+     */
+    private fun penetration(result: DistanceResult, pax: Double, pay: Double) {
+        polySize = 0
+        for (i in 0 until count) {
+            addPolytopeVertex(indexA[i], indexB[i])
+        }
+        //Grows a point or a segment into a triangle
+        var direction = 0
+        while (polySize == 1 && direction < 4) {
+            val dx = if (direction < 2) (if (direction == 0) 1.0 else -1.0) else .0
+            val dy = if (direction < 2) .0 else (if (direction == 2) 1.0 else -1.0)
+            direction++
+            val ia = proxyA.support(-dx, -dy)
+            val ib = proxyB.support(dx, dy)
+            addPolytopeVertex(ia, ib)
+            val ex = polyWx[1] - polyWx[0]
+            val ey = polyWy[1] - polyWy[0]
+            if (ex * ex + ey * ey < TOLERANCE * TOLERANCE) polySize = 1
+        }
+        if (polySize == 2) {
+            val ex = polyWx[1] - polyWx[0]
+            val ey = polyWy[1] - polyWy[0]
+            for (side in 0..1) {
+                val nx = if (side == 0) -ey else ey
+                val ny = if (side == 0) ex else -ex
+                addPolytopeVertex(proxyA.support(-nx, -ny), proxyB.support(nx, ny))
+                val area = ex * (polyWy[2] - polyWy[0]) - ey * (polyWx[2] - polyWx[0])
+                if (area * area > TOLERANCE * TOLERANCE * (ex * ex + ey * ey)) break
+                polySize = 2
+            }
+        }
+        if (polySize < 3) {
+            //Both cores are points on top of each other, any direction separates them
+            result.normal.set(.0, 1.0)
+            result.pointA.set(pax, pay + proxyA.radius)
+            result.pointB.set(pax, pay - proxyB.radius)
+            result.distance = -(proxyA.radius + proxyB.radius)
+            return
+        }
+        if ((polyWx[1] - polyWx[0]) * (polyWy[2] - polyWy[0]) - (polyWy[1] - polyWy[0]) * (polyWx[2] - polyWx[0]) < 0) {
+            swapPolytopeVertices(1, 2)
+        }
+
+        var edge = 0
+        var nx = .0
+        var ny = .0
+        var depth = .0
+        for (iteration in 0 until MAX_EPA_ITERATIONS) {
+            //Edge of the polytope closest to the origin
+            depth = Double.MAX_VALUE
+            for (i in 0 until polySize) {
+                val j = if (i + 1 == polySize) 0 else i + 1
+                val ex = polyWx[j] - polyWx[i]
+                val ey = polyWy[j] - polyWy[i]
+                val length = sqrt(ex * ex + ey * ey)
+                if (length < TOLERANCE) continue
+                val ox = ey / length
+                val oy = -ex / length
+                val d = ox * polyWx[i] + oy * polyWy[i]
+                if (d < depth) {
+                    depth = d
+                    edge = i
+                    nx = ox
+                    ny = oy
+                }
+            }
+            if (polySize == EPA_CAPACITY) break
+            val ia = proxyA.support(-nx, -ny)
+            val ib = proxyB.support(nx, ny)
+            val supportX = proxyB.worldX(ib) - proxyA.worldX(ia)
+            val supportY = proxyB.worldY(ib) - proxyA.worldY(ia)
+            //The polytope reached the boundary in this direction
+            if (nx * supportX + ny * supportY - depth < TOLERANCE) break
+            insertPolytopeVertex(edge + 1, ia, ib)
+            removeReflexNeighbours(edge + 1)
+        }
+
+        //Deepest points from the projection of the origin onto the closest edge
+        val i = edge
+        val j = if (i + 1 == polySize) 0 else i + 1
+        val ex = polyWx[j] - polyWx[i]
+        val ey = polyWy[j] - polyWy[i]
+        val lengthSquared = ex * ex + ey * ey
+        var t = if (lengthSquared > 0) ((depth * nx - polyWx[i]) * ex + (depth * ny - polyWy[i]) * ey) / lengthSquared else .0
+        t = t.coerceIn(.0, 1.0)
+        val coreAx = polyAx[i] + (polyAx[j] - polyAx[i]) * t
+        val coreAy = polyAy[i] + (polyAy[j] - polyAy[i]) * t
+        val coreBx = polyBx[i] + (polyBx[j] - polyBx[i]) * t
+        val coreBy = polyBy[i] + (polyBy[j] - polyBy[i]) * t
+
+        //Moving B against the edge normal separates the cores
+        val normalX = -nx
+        val normalY = -ny
+        result.normal.set(normalX, normalY)
+        result.pointA.set(coreAx + normalX * proxyA.radius, coreAy + normalY * proxyA.radius)
+        result.pointB.set(coreBx - normalX * proxyB.radius, coreBy - normalY * proxyB.radius)
+        result.distance = -(depth.coerceAtLeast(.0) + proxyA.radius + proxyB.radius)
+    }
+
+    private fun setVertex(i: Int, ia: Int, ib: Int) {
+        indexA[i] = ia
+        indexB[i] = ib
+        ax[i] = proxyA.worldX(ia)
+        ay[i] = proxyA.worldY(ia)
+        bx[i] = proxyB.worldX(ib)
+        by[i] = proxyB.worldY(ib)
+        wx[i] = bx[i] - ax[i]
+        wy[i] = by[i] - ay[i]
+        weight[i] = 1.0
+    }
+
+    private fun copyVertex(from: Int, to: Int) {
+        indexA[to] = indexA[from]
+        indexB[to] = indexB[from]
+        ax[to] = ax[from]
+        ay[to] = ay[from]
+        bx[to] = bx[from]
+        by[to] = by[from]
+        wx[to] = wx[from]
+        wy[to] = wy[from]
+        weight[to] = weight[from]
+    }
+
+    /**
+     * Reduces a segment simplex to the feature closest to the origin and computes its barycentric weights.
+     */
+    private fun solve2() {
+        val ex = wx[1] - wx[0]
+        val ey = wy[1] - wy[0]
+        val d2 = -(wx[0] * ex + wy[0] * ey)
+        if (d2 <= 0) {
+            weight[0] = 1.0
+            count = 1
+            return
+        }
+        val d1 = wx[1] * ex + wy[1] * ey
+        if (d1 <= 0) {
+            copyVertex(1, 0)
+            weight[0] = 1.0
+            count = 1
+            return
+        }
+        val inv = 1.0 / (d1 + d2)
+        weight[0] = d1 * inv
+        weight[1] = d2 * inv
+        count = 2
+    }
+
+    /**
+     * Reduces a triangle simplex to the feature closest to the origin and computes its barycentric weights.
+     */
+    private fun solve3() {
+        val e12x = wx[1] - wx[0]
+        val e12y = wy[1] - wy[0]
+        val d12v1 = wx[1] * e12x + wy[1] * e12y
+        val d12v2 = -(wx[0] * e12x + wy[0] * e12y)
+
+        val e13x = wx[2] - wx[0]
+        val e13y = wy[2] - wy[0]
+        val d13v1 = wx[2] * e13x + wy[2] * e13y
+        val d13v2 = -(wx[0] * e13x + wy[0] * e13y)
+
+        val e23x = wx[2] - wx[1]
+        val e23y = wy[2] - wy[1]
+        val d23v1 = wx[2] * e23x + wy[2] * e23y
+        val d23v2 = -(wx[1] * e23x + wy[1] * e23y)
+
+        val n123 = e12x * e13y - e12y * e13x
+        val d123v1 = n123 * (wx[1] * wy[2] - wy[1] * wx[2])
+        val d123v2 = n123 * (wx[2] * wy[0] - wy[2] * wx[0])
+        val d123v3 = n123 * (wx[0] * wy[1] - wy[0] * wx[1])
+
+        if (d12v2 <= 0 && d13v2 <= 0) {
+            weight[0] = 1.0
+            count = 1
+        } else if (d12v1 > 0 && d12v2 > 0 && d123v3 <= 0) {
+            val inv = 1.0 / (d12v1 + d12v2)
+            weight[0] = d12v1 * inv
+            weight[1] = d12v2 * inv
+            count = 2
+        } else if (d13v1 > 0 && d13v2 > 0 && d123v2 <= 0) {
+            val inv = 1.0 / (d13v1 + d13v2)
+            copyVertex(2, 1)
+            weight[0] = d13v1 * inv
+            weight[1] = d13v2 * inv
+            count = 2
+        } else if (d12v1 <= 0 && d23v2 <= 0) {
+            copyVertex(1, 0)
+            weight[0] = 1.0
+            count = 1
+        } else if (d13v1 <= 0 && d23v1 <= 0) {
+            copyVertex(2, 0)
+            weight[0] = 1.0
+            count = 1
+        } else if (d23v1 > 0 && d23v2 > 0 && d123v1 <= 0) {
+            val inv = 1.0 / (d23v1 + d23v2)
+            copyVertex(2, 0)
+            weight[0] = d23v2 * inv
+            weight[1] = d23v1 * inv
+            count = 2
+        } else {
+            val inv = 1.0 / (d123v1 + d123v2 + d123v3)
+            weight[0] = d123v1 * inv
+            weight[1] = d123v2 * inv
+            weight[2] = d123v3 * inv
+            count = 3
+        }
+    }
+
+    private fun addPolytopeVertex(ia: Int, ib: Int) {
+        insertPolytopeVertex(polySize, ia, ib)
+    }
+
+    private fun insertPolytopeVertex(at: Int, ia: Int, ib: Int) {
+        for (i in polySize downTo at + 1) {
+            polyAx[i] = polyAx[i - 1]
+            polyAy[i] = polyAy[i - 1]
+            polyBx[i] = polyBx[i - 1]
+            polyBy[i] = polyBy[i - 1]
+            polyWx[i] = polyWx[i - 1]
+            polyWy[i] = polyWy[i - 1]
+        }
+        polyAx[at] = proxyA.worldX(ia)
+        polyAy[at] = proxyA.worldY(ia)
+        polyBx[at] = proxyB.worldX(ib)
+        polyBy[at] = proxyB.worldY(ib)
+        polyWx[at] = polyBx[at] - polyAx[at]
+        polyWy[at] = polyBy[at] - polyAy[at]
+        polySize++
+    }
+
+    /**
+     * Removes the neighbours of a new vertex that are no longer corners of the convex hull. The first GJK vertex is not a
+     * support point and may lie inside the minkowski difference.
+     */
+    private fun removeReflexNeighbours(at: Int) {
+        var index = at
+        while (polySize > 3) {
+            val previous = if (index == 0) polySize - 1 else index - 1
+            val beforePrevious = if (previous == 0) polySize - 1 else previous - 1
+            if (turn(beforePrevious, previous, index) > TOLERANCE) break
+            removePolytopeVertex(previous)
+            if (previous < index) index--
+        }
+        while (polySize > 3) {
+            val next = if (index + 1 == polySize) 0 else index + 1
+            val afterNext = if (next + 1 == polySize) 0 else next + 1
+            if (turn(index, next, afterNext) > TOLERANCE) break
+            removePolytopeVertex(next)
+            if (next < index) index--
+        }
+    }
+
+    /**
+     * Cross product of the edges i to j and j to k, positive for a counter clockwise turn.
+     */
+    private fun turn(i: Int, j: Int, k: Int): Double {
+        return (polyWx[j] - polyWx[i]) * (polyWy[k] - polyWy[j]) - (polyWy[j] - polyWy[i]) * (polyWx[k] - polyWx[j])
+    }
+
+    private fun removePolytopeVertex(at: Int) {
+        for (i in at until polySize - 1) {
+            polyAx[i] = polyAx[i + 1]
+            polyAy[i] = polyAy[i + 1]
+            polyBx[i] = polyBx[i + 1]
+            polyBy[i] = polyBy[i + 1]
+            polyWx[i] = polyWx[i + 1]
+            polyWy[i] = polyWy[i + 1]
+        }
+        polySize--
+    }
+
+    private fun swapPolytopeVertices(i: Int, j: Int) {
+        swap(polyAx, i, j)
+        swap(polyAy, i, j)
+        swap(polyBx, i, j)
+        swap(polyBy, i, j)
+        swap(polyWx, i, j)
+        swap(polyWy, i, j)
+    }
+
+    private fun swap(array: DoubleArray, i: Int, j: Int) {
+        val t = array[i]
+        array[i] = array[j]
+        array[j] = t
+    }
+
+    /**
+     * Core points, radius and transform of a shape.
+     */
+    private class Proxy {
+        private val segment = arrayOf(Vec2(), Vec2())
+        private var vertices = POINT
+        private var geometry: PolygonGeometry? = null
+        var radius = .0
+        private var x = .0
+        private var y = .0
+        private var r1x = 1.0
+        private var r1y = .0
+        private var r2x = .0
+        private var r2y = 1.0
+        private var hint = -1
+
+        fun set(body: CollisionBodyInterface, offsetX: Double, offsetY: Double) {
+            val shape = body.shape
+            if (shape is Circle) {
+                vertices = POINT
+                geometry = null
+                radius = shape.radius
+            } else if (shape is Polygon) {
+                if (geometry !== shape.geometry) hint = -1
+                vertices = shape.vertices
+                geometry = shape.geometry
+                radius = .0
+            } else {
+                throw IllegalArgumentException("Unsupported shape")
+            }
+            val m = shape.orientation
+            r1x = m.row1.x
+            r1y = m.row1.y
+            r2x = m.row2.x
+            r2y = m.row2.y
+            x = body.position.x + offsetX
+            y = body.position.y + offsetY
+        }
+
+        /**
+         * Sets the proxy to a segment in world space.
+         */
+        fun setSegment(x1: Double, y1: Double, x2: Double, y2: Double) {
+            segment[0].set(x1, y1)
+            segment[1].set(x2, y2)
+            vertices = segment
+            geometry = null
+            radius = .0
+            r1x = 1.0
+            r1y = .0
+            r2x = .0
+            r2y = 1.0
+            x = .0
+            y = .0
+        }
+
+        /**
+         * Index of the core point furthest along a direction in world space.
+         */
+        fun support(dx: Double, dy: Double): Int {
+            val g = geometry
+            if (g == null) {
+                if (vertices !== segment) return 0
+                val s = segment[0]
+                val e = segment[1]
+                return if ((e.x - s.x) * dx + (e.y - s.y) * dy > 0) 1 else 0
+            }
+            hint = g.support(r1x * dx + r2x * dy, r1y * dx + r2y * dy, hint)
+            return hint
+        }
+
+        fun worldX(i: Int): Double {
+            val v = vertices[i]
+            return r1x * v.x + r1y * v.y + x
+        }
+
+        fun worldY(i: Int): Double {
+            val v = vertices[i]
+            return r2x * v.x + r2y * v.y + y
+        }
+    }
+
+    companion object {
+        private const val MAX_GJK_ITERATIONS = 30
+        private const val MAX_EPA_ITERATIONS = 128
+        private const val EPA_CAPACITY = MAX_EPA_ITERATIONS + 3
+        private const val MAX_CAST_ITERATIONS = 30
+        private const val TOLERANCE = 1e-9
+        private const val CAST_TOLERANCE = 1e-4
+        private const val CAST_TARGET = 0.5 * CAST_TOLERANCE
+        private val POINT = arrayOf(Vec2())
+
+        /**
+         * Checks whether queries support a shape.
+         *
+         * @param shape Shape to check.
+         * @return Boolean value whether the shape is a circle or a polygon.
+         */
+        @JvmStatic
+        fun supports(shape: Shape): Boolean {
+            return shape is Circle || shape is Polygon
+        }
+    }
+}
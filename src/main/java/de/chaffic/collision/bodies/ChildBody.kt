@@ -0,0 +1,55 @@
+package de.chaffic.collision.bodies
+
+import de.chaffic.collision.AxisAlignedBoundingBox
+import de.chaffic.geometry.Shape
+import de.chaffic.math.Vec2
+
+/**
+ * Body placing a part of a shape made of several shapes in world space, like a child of a compound shape. Friction and
+ * collision filtering are taken from the body of the owning shape.
+ *
+ * @param owner Shape the part belongs to.
+ * @param shape Shape of the part.
+ */
+class ChildBody internal constructor(private val owner: Shape, override var shape: Shape) : CollisionBodyInterface {
+    override var position = Vec2()
+    override var aabb = AxisAlignedBoundingBox()
+    override var orientation = .0
+
+    /**
+     * Body of the owning shape.
+     */
+    val parent: CollisionBodyInterface
+        get() = owner.body
+
+    override var dynamicFriction: Double
+        get() = parent.dynamicFriction
+        set(value) {
+            parent.dynamicFriction = value
+        }
+    override var staticFriction: Double
+        get() = parent.staticFriction
+        set(value) {
+            parent.staticFriction = value
+        }
+    override var categoryBits: Int
+        get() = parent.categoryBits
+        set(value) {
+            parent.categoryBits = value
+        }
+    override var maskBits: Int
+        get() = parent.maskBits
+        set(value) {
+            parent.maskBits = value
+        }
+    override var groupIndex: Int
+        get() = parent.groupIndex
+        set(value) {
+            parent.groupIndex = value
+        }
+
+    init {
+        shape.body = this
+        shape.orientation.set(orientation)
+    }
+}
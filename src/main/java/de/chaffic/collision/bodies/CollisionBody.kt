@@ -1,6 +1,7 @@
 package de.chaffic.collision.bodies
 
 import de.chaffic.collision.AxisAlignedBoundingBox
+import de.chaffic.collision.CollisionFilter
 import de.chaffic.geometry.Shape
 import de.chaffic.math.Vec2
 
@@ -14,7 +15,10 @@ class CollisionBody(override var shape: Shape, x: Double, y: Double): CollisionB
             shape.orientation.set(orientation)
             shape.createAABB()
         }
-    override lateinit var aabb: AxisAlignedBoundingBox
+    override var aabb = AxisAlignedBoundingBox()
+    override var categoryBits = CollisionFilter.DEFAULT_CATEGORY
+    override var maskBits = CollisionFilter.ALL_CATEGORIES
+    override var groupIndex = 0
 
     init {
         shape.body = this
@@ -10,4 +10,20 @@ interface CollisionBodyInterface : TranslatableBody {
     var staticFriction: Double
     var orientation: Double
     var aabb: AxisAlignedBoundingBox
+
+    /**
+     * Bit field of the collision categories the body belongs to.
+     */
+    var categoryBits: Int
+
+    /**
+     * Bit field of the categories the body collides with.
+     */
+    var maskBits: Int
+
+    /**
+     * Collision group of the body. Bodies in the same positive group always collide, bodies in the same negative group never do.
+     * Zero means no group.
+     */
+    var groupIndex: Int
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package de.chaffic.dynamics
 
 import de.chaffic.collision.AxisAlignedBoundingBox
+import de.chaffic.collision.CollisionFilter
 import de.chaffic.collision.bodies.CollisionBodyInterface
 import de.chaffic.dynamics.bodies.AbstractPhysicalBody
 import de.chaffic.geometry.Shape
@@ -23,7 +24,10 @@ class Body(override var shape: Shape, x: Double, y: Double): AbstractPhysicalBod
             shape.orientation.set(orientation)
             shape.createAABB()
         }
-    override lateinit var aabb: AxisAlignedBoundingBox
+    override var aabb = AxisAlignedBoundingBox()
+    override var categoryBits = CollisionFilter.DEFAULT_CATEGORY
+    override var maskBits = CollisionFilter.ALL_CATEGORIES
+    override var groupIndex = 0
 
     init {
         density = density
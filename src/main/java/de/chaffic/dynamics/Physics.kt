@@ -10,4 +10,9 @@ object Physics {
     const val BIAS_ABSOLUTE = 0.01
     const val ITERATIONS = 100
     const val EPSILON = 1E-12
+    const val AABB_MARGIN = 1.0
+    const val GRAVITATIONAL_CONSTANT = 6.67E-11
+    const val CONSTRAINT_SLOP = 0.01
+    const val MAX_CONSTRAINT_CORRECTION = 5.0
+    const val CONSTRAINT_POSITION_ITERATIONS = 10
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package de.chaffic.dynamics
+
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * World stepped by a [WorldScheduler] at a fixed tick rate. Statistics are written by the thread stepping the world and
+ * may be read from any thread.
+ *
+ * @param world    World to step.
+ * @param tickRate Steps per second.
+ */
+class ScheduledWorld internal constructor(val world: World, val tickRate: Double) {
+    /**
+     * Timestep of every step.
+     */
+    val dt = 1.0 / tickRate
+
+    /**
+     * Length of a tick in nanoseconds.
+     */
+    internal val period = (1e9 / tickRate).toLong()
+
+    /**
+     * Time a single step may take in nanoseconds. Worlds over budget do not catch up on missed ticks.
+     */
+    @Volatile
+    var tickBudget = period / 2
+
+    /**
+     * Whether the world is not stepped.
+     */
+    @Volatile
+    var paused = false
+
+    /**
+     * Error thrown by the last step. The world is paused when a step fails.
+     */
+    @Volatile
+    var failure: Throwable? = null
+        internal set
+
+    /**
+     * Number of steps taken.
+     */
+    @Volatile
+    var ticks = 0L
+        internal set
+
+    /**
+     * Number of ticks skipped because the world fell too far behind.
+     */
+    @Volatile
+    var droppedTicks = 0L
+        internal set
+
+    /**
+     * Number of steps that took longer than [tickBudget].
+     */
+    @Volatile
+    var overBudgetTicks = 0L
+        internal set
+
+    /**
+     * Duration of the last step in nanoseconds.
+     */
+    @Volatile
+    var lastStepTime = 0L
+        internal set
+
+    /**
+     * Longest step in nanoseconds.
+     */
+    @Volatile
+    var maxStepTime = 0L
+        internal set
+
+    /**
+     * Total time spent stepping in nanoseconds.
+     */
+    @Volatile
+    var totalStepTime = 0L
+        internal set
+
+    /**
+     * Whether the last step took longer than [tickBudget].
+     */
+    val overBudget: Boolean
+        get() = lastStepTime > tickBudget
+
+    /**
+     * Due time of the next tick on the clock of [System.nanoTime].
+     */
+    internal var nextTick = 0L
+
+    /**
+     * Set while a task stepping the world is queued or running, so a world never occupies more than one worker.
+     */
+    internal val running = AtomicBoolean()
+
+    /**
+     * Number of steps the queued task takes.
+     */
+    internal var steps = 0
+
+    /**
+     * Task submitted to the workers of the scheduler.
+     */
+    internal lateinit var task: Runnable
+
+    /**
+     * Takes the steps of a tick and records their duration.
+     */
+    internal fun run() {
+        try {
+            for (i in 0 until steps) {
+                val start = System.nanoTime()
+                world.step(dt)
+                val time = System.nanoTime() - start
+                lastStepTime = time
+                if (time > maxStepTime) maxStepTime = time
+                totalStepTime += time
+                if (time > tickBudget) overBudgetTicks++
+                ticks++
+            }
+        } catch (e: Throwable) {
+            failure = e
+            paused = true
+        }
+    }
+}
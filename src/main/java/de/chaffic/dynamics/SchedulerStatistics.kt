@@ -0,0 +1,67 @@
+package de.chaffic.dynamics
+
+/**
+ * Statistics of all worlds of a [WorldScheduler]. Filled by [WorldScheduler.statistics] into an instance supplied by
+ * the caller.
+ */
+class SchedulerStatistics {
+    /**
+     * Number of scheduled worlds.
+     */
+    var worlds = 0
+
+    /**
+     * Number of worlds whose last step took longer than their budget.
+     */
+    var worldsOverBudget = 0
+
+    /**
+     * Number of steps taken by all worlds.
+     */
+    var ticks = 0L
+
+    /**
+     * Number of ticks skipped by all worlds.
+     */
+    var droppedTicks = 0L
+
+    /**
+     * Number of steps of all worlds that took longer than their budget.
+     */
+    var overBudgetTicks = 0L
+
+    /**
+     * Average duration of a step in nanoseconds.
+     */
+    var averageStepTime = .0
+
+    /**
+     * Longest step of any world in nanoseconds.
+     */
+    var maxStepTime = 0L
+
+    /**
+     * Number of ticks queued or running.
+     */
+    var pendingTicks = 0
+
+    /**
+     * Whether the scheduler was overloaded.
+     */
+    var overloaded = false
+
+    /**
+     * Resets the statistics.
+     */
+    fun reset() {
+        worlds = 0
+        worldsOverBudget = 0
+        ticks = 0
+        droppedTicks = 0
+        overBudgetTicks = 0
+        averageStepTime = .0
+        maxStepTime = 0
+        pendingTicks = 0
+        overloaded = false
+    }
+}
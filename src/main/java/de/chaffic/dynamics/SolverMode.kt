@@ -0,0 +1,18 @@
+package de.chaffic.dynamics
+
+/**
+ * How a [World] solves joints and constraints.
+ */
+enum class SolverMode {
+    /**
+     * Joints apply spring forces once per step and constraints are solved with impulses together with the contacts.
+     */
+    IMPULSE,
+
+    /**
+     * Extended position based dynamics. Contacts are still solved with impulses, then the step is split into
+     * [World.substeps] substeps in which joints and constraints move the bodies directly, weighted by their compliance.
+     * Velocities are derived from the resulting positions, so stiff springs stay stable at any timestep.
+     */
+    XPBD
+}
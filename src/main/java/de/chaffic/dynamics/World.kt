@@ -1,13 +1,39 @@
 package de.chaffic.dynamics
 
 import de.chaffic.collision.Arbiter
-import de.chaffic.collision.AxisAlignedBoundingBox
+import de.chaffic.collision.BodyFilter
+import de.chaffic.collision.BodyPair
+import de.chaffic.collision.BodyVisitor
+import de.chaffic.collision.BroadPhase
+import de.chaffic.collision.CollisionFilter
+import de.chaffic.collision.ContactListener
+import de.chaffic.collision.ContactPairs
+import de.chaffic.collision.DistanceResult
+import de.chaffic.collision.DynamicTree
+import de.chaffic.collision.ShapeDistance
 import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.bodies.AbstractPhysicalBody
+import de.chaffic.dynamics.bodies.BodyType
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.dynamics.gravity.BarnesHutGravity
+import de.chaffic.dynamics.gravity.DirectGravity
+import de.chaffic.dynamics.gravity.GravitySolver
+import de.chaffic.dynamics.gravity.ParticleMeshGravity
+import de.chaffic.geometry.ChainShape
+import de.chaffic.geometry.CompoundShape
+import de.chaffic.geometry.TileMap
 import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.joints.Constraint
+import de.chaffic.joints.ConstraintChain
+import de.chaffic.joints.DistanceJoint
 import de.chaffic.joints.Joint
+import de.chaffic.joints.JointToBody
 import de.chaffic.math.Vec2
-import kotlin.math.pow
+import de.chaffic.profiling.StepPhaseEvent
+import de.chaffic.profiling.WorldStepEvent
+import de.chaffic.rays.RaycastHitCallback
+import de.chaffic.rays.RaycastHits
+import de.chaffic.rays.RaycastResult
 
 /**
  * Class for creating a world with iterative solver structure.
@@ -16,6 +42,10 @@ import kotlin.math.pow
  */
 class World(var gravity: Vec2 = Vec2()) {
 
+    /**
+     * Bodies of the world. Bodies added to or removed from this list directly are picked up by the broad phase in the next
+     * step, use [addBody] and [removeBody] to make them visible to queries immediately.
+     */
     var bodies = ArrayList<TranslatableBody>()
 
     /**
@@ -27,6 +57,8 @@ class World(var gravity: Vec2 = Vec2()) {
     fun <T> addBody(b: T): T {
         if(b !is TranslatableBody) throw IllegalArgumentException("Not a translatable body")
         bodies.add(b as TranslatableBody)
+        if (b is AbstractPhysicalBody) b.typeListener = typeListener
+        bodiesDirty = true
         return b
     }
 
@@ -37,10 +69,118 @@ class World(var gravity: Vec2 = Vec2()) {
      */
     fun removeBody(b: TranslatableBody) {
         bodies.remove(b)
+        if (b is AbstractPhysicalBody && b.typeListener === typeListener) b.typeListener = null
+        bodiesDirty = true
+    }
+
+    /**
+     * Makes the broad phase pick up the new bounds of static bodies in the next step. Static bodies are not tracked every
+     * step, call this after moving or rotating one.
+     */
+    fun refreshStaticBodies() {
+        staticBodiesDirty = true
+    }
+
+    /**
+     * Broad phase structure holding all collision bodies of the world.
+     */
+    private val broadPhase = BroadPhase()
+
+    /**
+     * Whether bodies moved since the broad phase was last updated.
+     */
+    private var broadPhaseDirty = true
+
+    /**
+     * Bodies sorted by their type. Only dynamic bodies are integrated, static bodies are kept apart in the broad phase.
+     */
+    private val staticBodies = ArrayList<TranslatableBody>()
+    private val movingBodies = ArrayList<TranslatableBody>()
+    private val kinematicBodies = ArrayList<PhysicalBodyInterface>()
+    private val dynamicBodies = ArrayList<PhysicalBodyInterface>()
+    private var bodiesDirty = true
+    private var staticBodiesDirty = true
+    private var sortedBodies: List<TranslatableBody>? = null
+    private var sortedBodiesSize = 0
+
+    /**
+     * Registered on every body of the world, so only this world sorts its bodies again when one of them changes its type.
+     */
+    private val typeListener = Runnable { bodiesDirty = true }
+
+    private val pairHandler = object : BroadPhase.PairHandler {
+        override fun shouldCollide(a: CollisionBodyInterface, b: CollisionBodyInterface): Boolean {
+            return collideJointedBodies || !areJointed(a, b)
+        }
+
+        override fun addPair(a: CollisionBodyInterface, b: CollisionBodyInterface) {
+            narrowPhaseCheck(a, b)
+        }
+    }
+
+    /**
+     * Brings the broad phase up to date if bodies moved since it was last updated.
+     */
+    private fun updateBroadPhase() {
+        sortBodies()
+        if (staticBodiesDirty) {
+            broadPhase.updateStatic(staticBodies)
+            staticBodiesDirty = false
+        }
+        if (!broadPhaseDirty) return
+        broadPhase.update(movingBodies)
+        broadPhaseDirty = false
+    }
+
+    /**
+     * Sorts the bodies by type again if bodies were added or removed or a body of the world changed its type.
+     */
+    private fun sortBodies() {
+        if (!bodiesDirty && sortedBodies === bodies && sortedBodiesSize == bodies.size) return
+        bodiesDirty = false
+        sortedBodies = bodies
+        sortedBodiesSize = bodies.size
+        staticBodies.clear()
+        movingBodies.clear()
+        kinematicBodies.clear()
+        dynamicBodies.clear()
+        for (b in bodies) {
+            //Bodies added to the list directly are registered here
+            if (b is AbstractPhysicalBody) b.typeListener = typeListener
+            when (if (b is PhysicalBodyInterface) b.bodyType else BodyType.STATIC) {
+                BodyType.STATIC -> staticBodies.add(b)
+                BodyType.KINEMATIC -> {
+                    movingBodies.add(b)
+                    kinematicBodies.add(b as PhysicalBodyInterface)
+                }
+                BodyType.DYNAMIC -> {
+                    movingBodies.add(b)
+                    dynamicBodies.add(b as PhysicalBodyInterface)
+                }
+            }
+        }
+        staticBodiesDirty = true
+        broadPhaseDirty = true
     }
 
-    @JvmField
-    var joints = ArrayList<Joint>()
+    /**
+     * Joints of the world. Changes made to the list directly are passed through the same bookkeeping as [addJoint] and
+     * [removeJoint], but those methods should be preferred.
+     */
+    val joints: MutableList<Joint>
+        get() = jointList
+    private val jointList = TrackedList(::jointAdded, ::jointRemoved)
+
+    /**
+     * Whether bodies connected by a [JointToBody] or a [Constraint] collide with each other.
+     */
+    var collideJointedBodies = true
+
+    /**
+     * Number of joints between each pair of jointed bodies.
+     */
+    private val jointedPairs = HashMap<BodyPair, Int>()
+    private val pairProbe = BodyPair()
 
     /**
      * Adds a joint to the world.
@@ -49,7 +189,7 @@ class World(var gravity: Vec2 = Vec2()) {
      * @return Returns the joint added to the world.
      */
     fun addJoint(j: Joint): Joint {
-        joints.add(j)
+        jointList.add(j)
         return j
     }
 
@@ -59,25 +199,244 @@ class World(var gravity: Vec2 = Vec2()) {
      * @param j The joint to remove from the world.
      */
     fun removeJoint(j: Joint) {
-        joints.remove(j)
+        jointList.remove(j)
+    }
+
+    private fun jointAdded(j: Joint) {
+        if (j is JointToBody) addJointedPair(j.body, j.body2)
+    }
+
+    private fun jointRemoved(j: Joint) {
+        if (j is JointToBody) removeJointedPair(j.body, j.body2)
+    }
+
+    private fun addJointedPair(a: TranslatableBody, b: TranslatableBody) {
+        val pair = BodyPair(a, b)
+        jointedPairs[pair] = (jointedPairs[pair] ?: 0) + 1
+    }
+
+    private fun removeJointedPair(a: TranslatableBody, b: TranslatableBody) {
+        pairProbe.a = a
+        pairProbe.b = b
+        val count = jointedPairs[pairProbe] ?: return
+        if (count > 1) jointedPairs[pairProbe] = count - 1 else jointedPairs.remove(pairProbe)
+    }
+
+    /**
+     * Rigid constraints of the world, solved together with the contacts. Changes made to the list directly are passed
+     * through the same bookkeeping as [addConstraint] and [removeConstraint], but those methods should be preferred.
+     */
+    val constraints: MutableList<Constraint>
+        get() = constraintList
+    private val constraintList = TrackedList(::constraintAdded, ::constraintRemoved)
+
+    /**
+     * Whether constraints start every step with the impulses of the last step.
+     */
+    var warmStarting = true
+
+    /**
+     * How joints and constraints are solved.
+     */
+    var solverMode = SolverMode.IMPULSE
+
+    /**
+     * Number of substeps per step used by [SolverMode.XPBD].
+     */
+    var substeps = 8
+        set(value) {
+            require(value > 0) { "Substeps must be positive" }
+            field = value
+        }
+
+    private var previousX = DoubleArray(16)
+    private var previousY = DoubleArray(16)
+    private var previousOrientation = DoubleArray(16)
+
+    /**
+     * Whether linear sequences of [DistanceJoint]s, like ropes and chains, are detected and solved directly with a
+     * [ConstraintChain] instead of one joint at a time.
+     */
+    var chainSolving = true
+        set(value) {
+            field = value
+            chainsDirty = true
+        }
+
+    /**
+     * Chains detected in [constraints] by the last step.
+     */
+    val constraintChains: List<ConstraintChain>
+        get() = chains
+
+    private val chains = ArrayList<ConstraintChain>()
+    private val unchainedConstraints = ArrayList<Constraint>()
+    private var chainsDirty = true
+
+    /**
+     * Adds a constraint to the world.
+     *
+     * @param c The constraint to add.
+     * @return Returns the constraint added to the world.
+     */
+    fun <T : Constraint> addConstraint(c: T): T {
+        constraintList.add(c)
+        return c
+    }
+
+    /**
+     * Removes a constraint from the world.
+     *
+     * @param c The constraint to remove from the world.
+     */
+    fun removeConstraint(c: Constraint) {
+        constraintList.remove(c)
+    }
+
+    private fun constraintAdded(c: Constraint) {
+        chainsDirty = true
+        addJointedPair(c.bodyA, c.bodyB)
+    }
+
+    private fun constraintRemoved(c: Constraint) {
+        chainsDirty = true
+        removeJointedPair(c.bodyA, c.bodyB)
+    }
+
+    /**
+     * Checks whether two bodies are connected by a [JointToBody] or a [Constraint].
+     *
+     * @param a First body.
+     * @param b Second body.
+     * @return Boolean value whether a joint connects the bodies.
+     */
+    private fun areJointed(a: TranslatableBody, b: TranslatableBody): Boolean {
+        if (jointedPairs.isEmpty()) return false
+        pairProbe.a = a
+        pairProbe.b = b
+        return jointedPairs.containsKey(pairProbe)
     }
 
     var contacts = ArrayList<Arbiter>()
 
+    /**
+     * Persistent state of all pairs of bodies with overlapping bounding boxes.
+     */
+    private val contactPairs = ContactPairs()
+
+    /**
+     * Contact listeners, replaced by a new array on every change so listeners may add or remove listeners while events are
+     * dispatched. Changes take effect with the next batch of events.
+     */
+    private var contactListeners = emptyArray<ContactListener>()
+    private var dispatchingEvents = false
+
+    /**
+     * Adds a contact listener to the world. Contact events of a step are delivered after the step has completed.
+     *
+     * @param listener The listener to add.
+     */
+    fun addContactListener(listener: ContactListener) {
+        contactListeners += listener
+        contactPairs.recordEvents = true
+    }
+
+    /**
+     * Removes a contact listener from the world.
+     *
+     * @param listener The listener to remove.
+     */
+    fun removeContactListener(listener: ContactListener) {
+        val index = contactListeners.indexOf(listener)
+        if (index < 0) return
+        contactListeners = Array(contactListeners.size - 1) { contactListeners[if (it < index) it else it + 1] }
+        contactPairs.recordEvents = contactListeners.isNotEmpty()
+        if (!contactPairs.recordEvents && !dispatchingEvents) {
+            contactPairs.events.clear()
+        }
+    }
+
     /**
      * The main time step method for the world to conduct an iteration of the current world call this method with a desired time step value.
      *
      * @param dt Timestep
      */
     fun step(dt: Double) {
+        val stepEvent = WorldStepEvent()
+        stepEvent.begin()
+
+        var phaseEvent = beginPhase()
         contacts.clear()
+        contactPairs.beginStep()
         broadPhaseCheck()
+        contactPairs.endStep()
+        commitPhase(phaseEvent, StepPhaseEvent.BROAD_PHASE)
+
         semiImplicit(dt)
 
         //Correct positional errors from the discrete collisions
+        phaseEvent = beginPhase()
         for (contact in contacts) {
             contact.penetrationResolution()
         }
+        val positionIterations = if (solverMode == SolverMode.IMPULSE) Physics.CONSTRAINT_POSITION_ITERATIONS else 0
+        for (i in 0 until positionIterations) {
+            var solved = true
+            for (chain in chains) {
+                solved = chain.solvePositionConstraints() && solved
+            }
+            for (c in unchainedConstraints) {
+                solved = c.solvePositionConstraints() && solved
+            }
+            if (solved) break
+        }
+        commitPhase(phaseEvent, StepPhaseEvent.PENETRATION_RESOLUTION)
+        broadPhaseDirty = true
+
+        stepEvent.end()
+        if (stepEvent.shouldCommit()) {
+            stepEvent.dt = dt
+            stepEvent.bodyCount = bodies.size
+            stepEvent.contactCount = contacts.size
+            stepEvent.jointCount = joints.size + constraints.size
+            stepEvent.commit()
+        }
+
+        if (contactPairs.events.size > 0) {
+            dispatchingEvents = true
+            try {
+                contactPairs.events.dispatch(contactListeners)
+            } finally {
+                dispatchingEvents = false
+            }
+        }
+    }
+
+    /**
+     * Starts the flight recorder event of a step phase.
+     *
+     * @return The started event.
+     */
+    private fun beginPhase(): StepPhaseEvent {
+        val event = StepPhaseEvent()
+        event.begin()
+        return event
+    }
+
+    /**
+     * Ends the flight recorder event of a step phase and commits it if the event is enabled.
+     *
+     * @param event The event returned by [beginPhase].
+     * @param phase Name of the phase that was timed.
+     */
+    private fun commitPhase(event: StepPhaseEvent, phase: String) {
+        event.end()
+        if (event.shouldCommit()) {
+            event.phase = phase
+            event.bodyCount = bodies.size
+            event.contactCount = contacts.size
+            event.commit()
+        }
     }
 
     /**
@@ -87,22 +446,49 @@ class World(var gravity: Vec2 = Vec2()) {
      */
     private fun semiImplicit(dt: Double) {
         //Applies tentative velocities
+        var phaseEvent = beginPhase()
         applyForces(dt)
-        solve()
+        commitPhase(phaseEvent, StepPhaseEvent.FORCES)
+
+        phaseEvent = beginPhase()
+        if (solverMode == SolverMode.XPBD) {
+            solveContacts()
+        } else {
+            solve(dt)
+        }
+        commitPhase(phaseEvent, StepPhaseEvent.SOLVE)
 
         //Integrate positions
-        for (b in bodies) {
-            if(b !is PhysicalBodyInterface) continue
+        phaseEvent = beginPhase()
+        if (solverMode == SolverMode.XPBD) {
+            substep(dt)
+        }
+        for (b in dynamicBodies) {
             if (b.invMass == 0.0) {
                 continue
             }
-            b.position.add(b.velocity.scalar(dt))
-            if(b is CollisionBodyInterface) {
-                b.orientation = b.orientation + dt * b.angularVelocity
+            if (solverMode == SolverMode.IMPULSE) {
+                integrate(b, dt)
             }
             b.force[0.0] = 0.0
             b.torque = 0.0
         }
+
+        //Kinematic bodies follow their velocity and ignore forces
+        for (b in kinematicBodies) {
+            integrate(b, dt)
+            b.force[0.0] = 0.0
+            b.torque = 0.0
+        }
+        commitPhase(phaseEvent, StepPhaseEvent.INTEGRATION)
+    }
+
+    private fun integrate(b: PhysicalBodyInterface, dt: Double) {
+        b.position.x += b.velocity.x * dt
+        b.position.y += b.velocity.y * dt
+        if(b is CollisionBodyInterface) {
+            b.orientation = b.orientation + dt * b.angularVelocity
+        }
     }
 
     /**
@@ -111,8 +497,7 @@ class World(var gravity: Vec2 = Vec2()) {
      * @param dt Timestep
      */
     private fun applyForces(dt: Double) {
-        for (b in bodies) {
-            if(b !is PhysicalBodyInterface) continue
+        for (b in dynamicBodies) {
             if (b.invMass == 0.0) {
                 continue
             }
@@ -127,20 +512,49 @@ class World(var gravity: Vec2 = Vec2()) {
 
     /**
      * Method to apply all forces in the world.
+     *
+     * @param dt Timestep
      */
-    private fun solve() {
+    private fun solve(dt: Double) {
         /*
         Resolve joints
         Note: this is removed from the iterations at this stage as the application of forces is different.
         The extra iterations on joints make the forces of the joints multiple times larger equal to the number of iterations.
-        Early out could be used like in the collision solver
-        This may change in the future and will be revised at a later date.
+        Rigid constraints are impulse based and converge inside the iterations instead.
         */
-        for (j in joints) {
+        for (j in jointList.items) {
             j.applyTension()
         }
 
-        //Resolve collisions
+        updateChains()
+        for (c in constraintList.items) {
+            c.initVelocityConstraints(dt, warmStarting)
+        }
+        for (chain in chains) {
+            chain.initVelocityConstraints()
+        }
+
+        //Resolve collisions and constraints. Chains are solved exactly, they only need further passes if other impulses act
+        val coupled = contacts.isNotEmpty() || unchainedConstraints.isNotEmpty()
+        for (i in 0 until Physics.ITERATIONS) {
+            for (contact in contacts) {
+                contact.solve()
+            }
+            if (i == 0 || coupled) {
+                for (chain in chains) {
+                    chain.solveVelocityConstraints()
+                }
+            }
+            for (c in unchainedConstraints) {
+                c.solveVelocityConstraints()
+            }
+        }
+    }
+
+    /**
+     * Resolves the contacts only, used by [SolverMode.XPBD].
+     */
+    private fun solveContacts() {
         for (i in 0 until Physics.ITERATIONS) {
             for (contact in contacts) {
                 contact.solve()
@@ -148,6 +562,71 @@ class World(var gravity: Vec2 = Vec2()) {
         }
     }
 
+    /**
+     * Integrates positions in [substeps] substeps. After every substep joints and constraints move the bodies directly and
+     * the velocities are derived from the distance moved.
+     *
+     * @param dt Timestep
+     */
+    private fun substep(dt: Double) {
+        if (previousX.size < dynamicBodies.size) {
+            previousX = DoubleArray(dynamicBodies.size * 2)
+            previousY = DoubleArray(dynamicBodies.size * 2)
+            previousOrientation = DoubleArray(dynamicBodies.size * 2)
+        }
+        updateChains()
+        val h = dt / substeps
+        for (step in 0 until substeps) {
+            for (i in dynamicBodies.indices) {
+                val b = dynamicBodies[i]
+                if (b.invMass == 0.0) continue
+                previousX[i] = b.position.x
+                previousY[i] = b.position.y
+                b.position.x += b.velocity.x * h
+                b.position.y += b.velocity.y * h
+                if (b is CollisionBodyInterface) {
+                    previousOrientation[i] = b.orientation
+                    b.orientation = b.orientation + h * b.angularVelocity
+                }
+            }
+
+            for (chain in chains) {
+                chain.solveCompliantPosition(h)
+            }
+            for (c in unchainedConstraints) {
+                c.solveCompliantPosition(h)
+            }
+            for (j in jointList.items) {
+                j.solveCompliantPosition(h)
+            }
+
+            for (i in dynamicBodies.indices) {
+                val b = dynamicBodies[i]
+                if (b.invMass == 0.0) continue
+                b.velocity.x = (b.position.x - previousX[i]) / h
+                b.velocity.y = (b.position.y - previousY[i]) / h
+                if (b is CollisionBodyInterface) {
+                    b.angularVelocity = (b.orientation - previousOrientation[i]) / h
+                }
+            }
+        }
+    }
+
+    /**
+     * Detects the chains of the constraints again if constraints were added or removed since the last step.
+     */
+    private fun updateChains() {
+        if (!chainsDirty) return
+        chainsDirty = false
+        if (chainSolving) {
+            ConstraintChain.build(constraintList.items, chains, unchainedConstraints)
+        } else {
+            chains.clear()
+            unchainedConstraints.clear()
+            unchainedConstraints.addAll(constraintList.items)
+        }
+    }
+
     /**
      * Applies linear drag to a body.
      *
@@ -164,23 +643,612 @@ class World(var gravity: Vec2 = Vec2()) {
      * A discrete Broad phase check of collision detection.
      */
     private fun broadPhaseCheck() {
-        for (i in bodies.indices) {
-            val a = bodies[i]
-            for (x in i + 1 until bodies.size) {
-                val b = bodies[x]
-                if(a !is CollisionBodyInterface || b !is CollisionBodyInterface) continue
-
-                //Ignores static or particle objects
-                if (a is PhysicalBodyInterface && b is PhysicalBodyInterface && (a.invMass == 0.0 && b.invMass == 0.0 || a.particle && b.particle)) {
-                    continue
+        broadPhaseDirty = true
+        updateBroadPhase()
+        broadPhase.findPairs(pairHandler)
+    }
+
+    private val closestRaycasts = CallbackPool { ClosestRaycast() }
+
+    /**
+     * Casts a ray segment through the world and finds the closest body it hits. Only bodies whose bounding boxes are hit
+     * are tested, and the search interval shrinks with every hit found. Rays starting inside a body do not hit that body.
+     *
+     * @param start    Start of the ray in world space.
+     * @param end      End of the ray in world space.
+     * @param result   Receives the closest hit. Reset if nothing was hit.
+     * @param maskBits Only bodies with a category in this mask are tested.
+     * @return Boolean value whether anything was hit.
+     */
+    @JvmOverloads
+    fun raycast(start: Vec2, end: Vec2, result: RaycastResult, maskBits: Int = CollisionFilter.ALL_CATEGORIES): Boolean {
+        updateBroadPhase()
+        result.reset()
+        val closestRaycast = closestRaycasts.acquire()
+        try {
+            closestRaycast.result = result
+            closestRaycast.startX = start.x
+            closestRaycast.startY = start.y
+            closestRaycast.endX = end.x
+            closestRaycast.endY = end.y
+            closestRaycast.tree = broadPhase.staticTree
+            broadPhase.staticTree.raycast(start.x, start.y, end.x, end.y, 1.0, maskBits, closestRaycast)
+            closestRaycast.tree = broadPhase.tree
+            val maxFraction = if (result.body != null) result.fraction else 1.0
+            broadPhase.tree.raycast(start.x, start.y, end.x, end.y, maxFraction, maskBits, closestRaycast)
+        } finally {
+            closestRaycast.result = null
+            closestRaycasts.release()
+        }
+        if (result.body == null) return false
+        result.point.set(start.x + (end.x - start.x) * result.fraction, start.y + (end.y - start.y) * result.fraction)
+        return true
+    }
+
+    private val anyRaycasts = CallbackPool { AnyRaycast() }
+
+    /**
+     * Casts a ray segment through the world and stops at the first body it hits, which is not necessarily the closest one.
+     * Intended for occlusion and line of sight tests, which only need to know whether anything blocks the segment.
+     *
+     * @param start    Start of the ray in world space.
+     * @param end      End of the ray in world space.
+     * @param result   Receives the hit. Reset if nothing was hit.
+     * @param maskBits Only bodies with a category in this mask are tested.
+     * @return Boolean value whether anything was hit.
+     */
+    @JvmOverloads
+    fun raycastAny(start: Vec2, end: Vec2, result: RaycastResult, maskBits: Int = CollisionFilter.ALL_CATEGORIES): Boolean {
+        updateBroadPhase()
+        result.reset()
+        val anyRaycast = anyRaycasts.acquire()
+        try {
+            anyRaycast.result = result
+            anyRaycast.startX = start.x
+            anyRaycast.startY = start.y
+            anyRaycast.endX = end.x
+            anyRaycast.endY = end.y
+            anyRaycast.tree = broadPhase.staticTree
+            broadPhase.staticTree.raycast(start.x, start.y, end.x, end.y, 1.0, maskBits, anyRaycast)
+            if (result.body == null) {
+                anyRaycast.tree = broadPhase.tree
+                broadPhase.tree.raycast(start.x, start.y, end.x, end.y, 1.0, maskBits, anyRaycast)
+            }
+        } finally {
+            anyRaycast.result = null
+            anyRaycasts.release()
+        }
+        if (result.body == null) return false
+        result.point.set(start.x + (end.x - start.x) * result.fraction, start.y + (end.y - start.y) * result.fraction)
+        return true
+    }
+
+    private val occlusionResults = CallbackPool { RaycastResult() }
+
+    /**
+     * Checks whether any body blocks the segment between two points.
+     *
+     * @param start    First point in world space.
+     * @param end      Second point in world space.
+     * @param maskBits Only bodies with a category in this mask are tested.
+     * @return Boolean value whether the segment is blocked.
+     */
+    @JvmOverloads
+    fun isOccluded(start: Vec2, end: Vec2, maskBits: Int = CollisionFilter.ALL_CATEGORIES): Boolean {
+        try {
+            return raycastAny(start, end, occlusionResults.acquire(), maskBits)
+        } finally {
+            occlusionResults.release()
+        }
+    }
+
+    private val allRaycasts = CallbackPool { AllRaycast() }
+
+    /**
+     * Casts a ray segment through the world and reports every body it hits, ordered from nearest to farthest.
+     *
+     * @param start    Start of the ray in world space.
+     * @param end      End of the ray in world space.
+     * @param callback Receives the hits in order.
+     * @param maskBits Only bodies with a category in this mask are tested.
+     * @return Number of hits delivered to the callback.
+     */
+    @JvmOverloads
+    fun raycastAll(start: Vec2, end: Vec2, callback: RaycastHitCallback, maskBits: Int = CollisionFilter.ALL_CATEGORIES): Int {
+        updateBroadPhase()
+        val allRaycast = allRaycasts.acquire()
+        val hits = allRaycast.hits
+        try {
+            hits.clear()
+            allRaycast.startX = start.x
+            allRaycast.startY = start.y
+            allRaycast.endX = end.x
+            allRaycast.endY = end.y
+            allRaycast.tree = broadPhase.staticTree
+            broadPhase.staticTree.raycast(start.x, start.y, end.x, end.y, 1.0, maskBits, allRaycast)
+            allRaycast.tree = broadPhase.tree
+            broadPhase.tree.raycast(start.x, start.y, end.x, end.y, 1.0, maskBits, allRaycast)
+            var delivered = 0
+            while (delivered < hits.size) {
+                hits.get(delivered++, start.x, start.y, end.x, end.y, allRaycast.result)
+                if (!callback.hit(allRaycast.result)) break
+            }
+            return delivered
+        } finally {
+            hits.clear()
+            allRaycasts.release()
+        }
+    }
+
+    private val shapeDistance = ShapeDistance()
+    private val shapeCastQueries = CallbackPool { ShapeCastQuery() }
+
+    /**
+     * Computes the distance and the closest points of two bodies with GJK, or their penetration depth and deepest points
+     * with EPA if they overlap. The bodies do not need to be part of the world.
+     *
+     * @param a      First body.
+     * @param b      Second body.
+     * @param result Receives distance, points and the normal pointing from the first body to the second.
+     * @return Distance between the shapes, negative if they overlap.
+     * @throws IllegalArgumentException If a shape is neither a circle nor a polygon.
+     */
+    fun distance(a: CollisionBodyInterface, b: CollisionBodyInterface, result: DistanceResult): Double {
+        return shapeDistance.distance(a, b, result)
+    }
+
+    /**
+     * Sweeps the shape of a body along a translation through the world and finds the first body it touches. The body
+     * itself is never hit and does not need to be part of the world, its orientation stays fixed during the sweep.
+     * Bodies the body already overlaps are hit at fraction zero. Chain segments are hit from both sides.
+     *
+     * @param body        Body whose shape is swept.
+     * @param translation Translation of the body in world space.
+     * @param result      Receives the first hit, with the normal of the body hit at the contact and the index of the chain
+     * segment hit. Reset if nothing was hit.
+     * @param maskBits    Only bodies with a category in this mask are tested.
+     * @return Boolean value whether anything was hit.
+     * @throws IllegalArgumentException If the shape of the body is neither a circle nor a polygon.
+     */
+    @JvmOverloads
+    fun shapeCast(body: CollisionBodyInterface, translation: Vec2, result: RaycastResult, maskBits: Int = CollisionFilter.ALL_CATEGORIES): Boolean {
+        require(ShapeDistance.supports(body.shape)) { "Unsupported shape" }
+        updateBroadPhase()
+        result.reset()
+        val aabb = body.aabb
+        val p = body.position
+        val lowerX = p.x + aabb.min.x + minOf(translation.x, .0)
+        val lowerY = p.y + aabb.min.y + minOf(translation.y, .0)
+        val upperX = p.x + aabb.max.x + maxOf(translation.x, .0)
+        val upperY = p.y + aabb.max.y + maxOf(translation.y, .0)
+        val shapeCastQuery = shapeCastQueries.acquire()
+        try {
+            shapeCastQuery.body = body
+            shapeCastQuery.translation = translation
+            shapeCastQuery.result = result
+            shapeCastQuery.lowerX = lowerX
+            shapeCastQuery.lowerY = lowerY
+            shapeCastQuery.upperX = upperX
+            shapeCastQuery.upperY = upperY
+            shapeCastQuery.tree = broadPhase.staticTree
+            broadPhase.staticTree.query(lowerX, lowerY, upperX, upperY, maskBits, shapeCastQuery)
+            shapeCastQuery.tree = broadPhase.tree
+            broadPhase.tree.query(lowerX, lowerY, upperX, upperY, maskBits, shapeCastQuery)
+        } finally {
+            shapeCastQuery.body = null
+            shapeCastQuery.translation = null
+            shapeCastQuery.result = null
+            shapeCastQueries.release()
+        }
+        return result.body != null
+    }
+
+    /**
+     * Tree callback of [raycast] that narrows the interval to the closest hit.
+     */
+    private inner class ClosestRaycast : DynamicTree.RaycastCallback {
+        var result: RaycastResult? = null
+        var startX = .0
+        var startY = .0
+        var endX = .0
+        var endY = .0
+        var tree = broadPhase.tree
+
+        override fun raycast(proxyId: Int, maxFraction: Double): Double {
+            val body = tree.getBody(proxyId)
+            val result = result!!
+            if (!body.shape.raycast(startX, startY, endX, endY, maxFraction, result)) {
+                return maxFraction
+            }
+            result.body = body
+            return result.fraction
+        }
+    }
+
+    /**
+     * Tree callback of [raycastAny] that terminates on the first hit.
+     */
+    private inner class AnyRaycast : DynamicTree.RaycastCallback {
+        var result: RaycastResult? = null
+        var startX = .0
+        var startY = .0
+        var endX = .0
+        var endY = .0
+        var tree = broadPhase.tree
+
+        override fun raycast(proxyId: Int, maxFraction: Double): Double {
+            val body = tree.getBody(proxyId)
+            val result = result!!
+            if (!body.shape.raycast(startX, startY, endX, endY, maxFraction, result)) {
+                return maxFraction
+            }
+            result.body = body
+            return .0
+        }
+    }
+
+    /**
+     * Tree callback of [raycastAll] that collects every hit without narrowing the interval.
+     */
+    private inner class AllRaycast : DynamicTree.RaycastCallback {
+        val hits = RaycastHits()
+        val result = RaycastResult()
+        var startX = .0
+        var startY = .0
+        var endX = .0
+        var endY = .0
+        var tree = broadPhase.tree
+
+        override fun raycast(proxyId: Int, maxFraction: Double): Double {
+            val body = tree.getBody(proxyId)
+            if (body.shape.raycast(startX, startY, endX, endY, maxFraction, result)) {
+                hits.add(body, result)
+            }
+            return maxFraction
+        }
+    }
+
+    /**
+     * Tree callback of [shapeCast] that keeps the earliest hit.
+     */
+    private inner class ShapeCastQuery : DynamicTree.QueryCallback {
+        var body: CollisionBodyInterface? = null
+        var translation: Vec2? = null
+        var result: RaycastResult? = null
+        var tree = broadPhase.tree
+        var lowerX = .0
+        var lowerY = .0
+        var upperX = .0
+        var upperY = .0
+        private val hit = RaycastResult()
+        private val start = Vec2()
+        private val end = Vec2()
+
+        override fun found(proxyId: Int): Boolean {
+            val other = tree.getBody(proxyId)
+            if (other === body) return true
+            val shape = other.shape
+            if (shape is CompoundShape) {
+                shape.updateChildren()
+                val found = shape.query(lowerX, lowerY, upperX, upperY)
+                for (i in 0 until found) {
+                    castAgainst(other, shape.child(shape.hits[i]))
+                }
+            } else if (shape is ChainShape) {
+                val found = shape.query(lowerX, lowerY, upperX, upperY)
+                for (k in 0 until found) {
+                    val i = shape.hits[k]
+                    shape.worldVertex(i, start)
+                    shape.worldVertex(i + 1, end)
+                    val result = result!!
+                    val maxFraction = if (result.body != null) result.fraction else 1.0
+                    if (shapeDistance.castSegment(body!!, translation!!, start.x, start.y, end.x, end.y, hit, maxFraction)) {
+                        keep(other, i)
+                    }
+                }
+            } else if (shape is TileMap) {
+                val found = shape.query(lowerX, lowerY, upperX, upperY)
+                for (i in 0 until found) {
+                    castAgainst(other, shape.rectangle(shape.hits[i]))
                 }
-                if (AxisAlignedBoundingBox.aabbOverlap(a, b)) {
-                    narrowPhaseCheck(a, b)
+            } else if (ShapeDistance.supports(shape)) {
+                castAgainst(other, other)
+            }
+            return true
+        }
+
+        /**
+         * Casts against a circle or polygon that is part of a body.
+         */
+        private fun castAgainst(other: CollisionBodyInterface, part: CollisionBodyInterface) {
+            val result = result!!
+            val maxFraction = if (result.body != null) result.fraction else 1.0
+            if (shapeDistance.cast(body!!, translation!!, part, hit, maxFraction)) {
+                keep(other, -1)
+            }
+        }
+
+        /**
+         * Keeps the last hit if it is the earliest so far.
+         */
+        private fun keep(other: CollisionBodyInterface, index: Int) {
+            val result = result!!
+            if (result.body == null || hit.fraction < result.fraction) {
+                result.body = other
+                result.fraction = hit.fraction
+                result.point.set(hit.point)
+                result.normal.set(hit.normal)
+                result.index = index
+            }
+        }
+    }
+
+    private val regionQueries = CallbackPool { RegionQuery() }
+    private val listCollectors = CallbackPool { ListCollector() }
+
+    /**
+     * Finds all bodies whose bounding boxes overlap a box.
+     *
+     * @param lowerBound Lower corner of the box in world space.
+     * @param upperBound Upper corner of the box in world space.
+     * @param visitor    Receives every body found.
+     * @param maskBits   Only bodies with a category in this mask are reported.
+     * @param filter     Optional predicate bodies must pass to be reported.
+     * @return Number of bodies reported.
+     */
+    @JvmOverloads
+    fun queryAABB(lowerBound: Vec2, upperBound: Vec2, visitor: BodyVisitor, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        return runRegionQuery(Region.BOX, lowerBound.x, lowerBound.y, upperBound.x, upperBound.y, .0, visitor, maskBits, filter)
+    }
+
+    /**
+     * Finds all bodies whose bounding boxes overlap a box. Same as [queryAABB] with a visitor, but collects the bodies.
+     *
+     * @param lowerBound Lower corner of the box in world space.
+     * @param upperBound Upper corner of the box in world space.
+     * @param result     Cleared and filled with the bodies found.
+     * @param maskBits   Only bodies with a category in this mask are reported.
+     * @param filter     Optional predicate bodies must pass to be reported.
+     * @return Number of bodies found.
+     */
+    @JvmOverloads
+    fun queryAABB(lowerBound: Vec2, upperBound: Vec2, result: MutableList<in CollisionBodyInterface>, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        result.clear()
+        val listCollector = listCollectors.acquire()
+        try {
+            listCollector.list = result
+            return queryAABB(lowerBound, upperBound, listCollector, maskBits, filter)
+        } finally {
+            listCollector.list = null
+            listCollectors.release()
+        }
+    }
+
+    /**
+     * Finds all bodies whose shapes overlap a circle.
+     *
+     * @param centre   Centre of the circle in world space.
+     * @param radius   Radius of the circle.
+     * @param visitor  Receives every body found.
+     * @param maskBits Only bodies with a category in this mask are reported.
+     * @param filter   Optional predicate bodies must pass to be reported.
+     * @return Number of bodies reported.
+     */
+    @JvmOverloads
+    fun queryCircle(centre: Vec2, radius: Double, visitor: BodyVisitor, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        return runRegionQuery(
+            Region.CIRCLE, centre.x - radius, centre.y - radius, centre.x + radius, centre.y + radius, radius, visitor, maskBits, filter
+        )
+    }
+
+    /**
+     * Finds all bodies whose shapes overlap a circle. Same as [queryCircle] with a visitor, but collects the bodies.
+     *
+     * @param centre   Centre of the circle in world space.
+     * @param radius   Radius of the circle.
+     * @param result   Cleared and filled with the bodies found.
+     * @param maskBits Only bodies with a category in this mask are reported.
+     * @param filter   Optional predicate bodies must pass to be reported.
+     * @return Number of bodies found.
+     */
+    @JvmOverloads
+    fun queryCircle(centre: Vec2, radius: Double, result: MutableList<in CollisionBodyInterface>, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        result.clear()
+        val listCollector = listCollectors.acquire()
+        try {
+            listCollector.list = result
+            return queryCircle(centre, radius, listCollector, maskBits, filter)
+        } finally {
+            listCollector.list = null
+            listCollectors.release()
+        }
+    }
+
+    /**
+     * Finds all bodies whose shapes contain a point.
+     *
+     * @param point    Point in world space.
+     * @param visitor  Receives every body found.
+     * @param maskBits Only bodies with a category in this mask are reported.
+     * @param filter   Optional predicate bodies must pass to be reported.
+     * @return Number of bodies reported.
+     */
+    @JvmOverloads
+    fun queryPoint(point: Vec2, visitor: BodyVisitor, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        return runRegionQuery(Region.POINT, point.x, point.y, point.x, point.y, .0, visitor, maskBits, filter)
+    }
+
+    /**
+     * Finds all bodies whose shapes contain a point. Same as [queryPoint] with a visitor, but collects the bodies.
+     *
+     * @param point    Point in world space.
+     * @param result   Cleared and filled with the bodies found.
+     * @param maskBits Only bodies with a category in this mask are reported.
+     * @param filter   Optional predicate bodies must pass to be reported.
+     * @return Number of bodies found.
+     */
+    @JvmOverloads
+    fun queryPoint(point: Vec2, result: MutableList<in CollisionBodyInterface>, maskBits: Int = CollisionFilter.ALL_CATEGORIES, filter: BodyFilter? = null): Int {
+        result.clear()
+        val listCollector = listCollectors.acquire()
+        try {
+            listCollector.list = result
+            return queryPoint(point, listCollector, maskBits, filter)
+        } finally {
+            listCollector.list = null
+            listCollectors.release()
+        }
+    }
+
+    /**
+     * Runs a region query with the callback of the current nesting depth, so visitors may query the world again.
+     */
+    private fun runRegionQuery(
+        region: Region, lowerX: Double, lowerY: Double, upperX: Double, upperY: Double, radius: Double,
+        visitor: BodyVisitor, maskBits: Int, filter: BodyFilter?
+    ): Int {
+        try {
+            return regionQueries.acquire().run(region, lowerX, lowerY, upperX, upperY, radius, visitor, maskBits, filter)
+        } finally {
+            regionQueries.release()
+        }
+    }
+
+    /**
+     * Tree callback of the region queries. Tests the tight bounding box, then the shape, then the filter of every leaf the
+     * tree reports.
+     */
+    private inner class RegionQuery : DynamicTree.QueryCallback {
+        private var region = Region.BOX
+        private var lowerX = .0
+        private var lowerY = .0
+        private var upperX = .0
+        private var upperY = .0
+        private var radius = .0
+        private var visitor: BodyVisitor? = null
+        private var filter: BodyFilter? = null
+        private var count = 0
+        private var stopped = false
+        private var tree = broadPhase.tree
+
+        fun run(
+            region: Region, lowerX: Double, lowerY: Double, upperX: Double, upperY: Double, radius: Double,
+            visitor: BodyVisitor, maskBits: Int, filter: BodyFilter?
+        ): Int {
+            updateBroadPhase()
+            this.region = region
+            this.lowerX = lowerX
+            this.lowerY = lowerY
+            this.upperX = upperX
+            this.upperY = upperY
+            this.radius = radius
+            this.visitor = visitor
+            this.filter = filter
+            count = 0
+            stopped = false
+            try {
+                tree = broadPhase.staticTree
+                broadPhase.staticTree.query(lowerX, lowerY, upperX, upperY, maskBits, this)
+                if (!stopped) {
+                    tree = broadPhase.tree
+                    broadPhase.tree.query(lowerX, lowerY, upperX, upperY, maskBits, this)
                 }
+            } finally {
+                this.visitor = null
+                this.filter = null
+            }
+            return count
+        }
+
+        override fun found(proxyId: Int): Boolean {
+            val body = tree.getBody(proxyId)
+            val aabb = body.aabb
+            val p = body.position
+            if (aabb.min.x + p.x > upperX || aabb.max.x + p.x < lowerX || aabb.min.y + p.y > upperY || aabb.max.y + p.y < lowerY) {
+                return true
             }
+            val inside = when (region) {
+                Region.BOX -> true
+                Region.CIRCLE -> body.shape.overlapsCircle((lowerX + upperX) * 0.5, (lowerY + upperY) * 0.5, radius)
+                Region.POINT -> body.shape.testPoint(lowerX, lowerY)
+            }
+            if (!inside || filter?.accept(body) == false) return true
+            count++
+            stopped = !visitor!!.visit(body)
+            return !stopped
+        }
+    }
+
+    /**
+     * Visitor of the region queries that collects into a list.
+     */
+    private class ListCollector : BodyVisitor {
+        var list: MutableList<in CollisionBodyInterface>? = null
+
+        override fun visit(body: CollisionBodyInterface): Boolean {
+            list!!.add(body)
+            return true
+        }
+    }
+
+    /**
+     * Query callbacks of one kind indexed by nesting depth. A query started from a visitor or callback gets state of its
+     * own instead of overwriting the state of the query it was started from.
+     */
+    private class CallbackPool<T>(private val factory: () -> T) {
+        private val callbacks = ArrayList<T>()
+        private var depth = 0
+
+        fun acquire(): T {
+            if (depth == callbacks.size) callbacks.add(factory())
+            return callbacks[depth++]
+        }
+
+        fun release() {
+            depth--
+        }
+    }
+
+    /**
+     * List of joints or constraints that reports every element added or removed, so changes made through the public list
+     * keep the jointed pairs and chains of the world up to date.
+     */
+    private class TrackedList<T>(private val added: (T) -> Unit, private val removed: (T) -> Unit) : AbstractMutableList<T>() {
+        val items = ArrayList<T>()
+
+        override val size: Int
+            get() = items.size
+
+        override fun get(index: Int): T {
+            return items[index]
+        }
+
+        override fun add(index: Int, element: T) {
+            items.add(index, element)
+            added(element)
+        }
+
+        override fun removeAt(index: Int): T {
+            val element = items.removeAt(index)
+            removed(element)
+            return element
+        }
+
+        override fun set(index: Int, element: T): T {
+            val old = items.set(index, element)
+            removed(old)
+            added(element)
+            return old
         }
     }
 
+    /**
+     * Region a [RegionQuery] tests bodies against.
+     */
+    private enum class Region {
+        BOX, CIRCLE, POINT
+    }
+
     /**
      * If broad phase detection check passes, a narrow phase check is conducted to determine for certain if two objects are intersecting.
      * If two objects are, arbiters of contacts found are generated
@@ -189,8 +1257,9 @@ class World(var gravity: Vec2 = Vec2()) {
      * @param b
      */
     private fun narrowPhaseCheck(a: CollisionBodyInterface, b: CollisionBodyInterface) {
-        val contactQuery = Arbiter(a, b)
+        val contactQuery = contactPairs.find(a, b)
         contactQuery.narrowPhase()
+        contactPairs.updateState(contactQuery)
         if (contactQuery.contactCount > 0) {
             contacts.add(contactQuery)
         }
@@ -200,28 +1269,41 @@ class World(var gravity: Vec2 = Vec2()) {
      * Clears all objects in the current world
      */
     fun clearWorld() {
+        for (b in bodies) {
+            if (b is AbstractPhysicalBody && b.typeListener === typeListener) b.typeListener = null
+        }
         bodies.clear()
+        bodiesDirty = true
         contacts.clear()
-        joints.clear()
+        contactPairs.clear()
+        broadPhase.clear()
+        jointList.items.clear()
+        constraintList.items.clear()
+        chainsDirty = true
+        jointedPairs.clear()
     }
 
     /**
-     * Applies gravitational forces between to objects (force applied to centre of body)
+     * Gravitational constant used by [gravityBetweenObj].
+     */
+    var gravitationalConstant = Physics.GRAVITATIONAL_CONSTANT
+
+    /**
+     * Softening length used by [gravityBetweenObj]. Keeps the attraction between bodies that are very close finite.
+     */
+    var gravitySoftening = 0.0
+
+    /**
+     * Solver used by [gravityBetweenObj]. [BarnesHutGravity] scales to large numbers of bodies, [ParticleMeshGravity] to
+     * very large ones.
+     */
+    var gravitySolver: GravitySolver = DirectGravity()
+
+    /**
+     * Applies gravitational forces between all bodies (force applied to centre of body). The forces are consumed by the
+     * next [step].
      */
     fun gravityBetweenObj() {
-        for (a in bodies.indices) {
-            val bodyA = bodies[a]
-            for (b in a + 1 until bodies.size) {
-                val bodyB = bodies[b]
-                if(bodyB !is PhysicalBodyInterface || bodyA !is PhysicalBodyInterface) continue
-                val distance = bodyA.position.distance(bodyB.position)
-                val force = 6.67.pow(-11.0) * bodyA.mass * bodyB.mass / (distance * distance)
-                var direction: Vec2? = Vec2(bodyB.position.x - bodyA.position.x, bodyB.position.y - bodyA.position.y)
-                direction = direction!!.scalar(force)
-                val oppositeDir = Vec2(-direction.x, -direction.y)
-                bodyA.force.plus(direction)
-                bodyB.force.plus(oppositeDir)
-            }
-        }
-    }
-}
\ No newline at end of file
+        gravitySolver.apply(bodies, gravitationalConstant, gravitySoftening)
+    }
+}
@@ -0,0 +1,216 @@
+package de.chaffic.dynamics
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Steps many independent worlds at fixed tick rates on a work stealing pool, for servers hosting one world per room.
+ *
+ * Every due world is stepped by its own task and a world never has more than one task queued or running, so a slow world
+ * only falls behind itself while the other worlds keep their tick rate. Worlds that miss ticks catch up with a few extra
+ * steps, unless their last step was over budget or the scheduler is overloaded, then the missed ticks are dropped instead
+ * of queueing more work.
+ *
+ * The scheduler is driven by [start] on a thread of its own or by calling [poll] from an existing server loop. Each world
+ * must only be used by the scheduler while it is scheduled.
+ *
+ * @param parallelism     Number of worker threads.
+ * @param maxPendingTicks Number of queued or running ticks at which the scheduler counts as overloaded.
+ */
+class WorldScheduler @JvmOverloads constructor(
+    val parallelism: Int = Runtime.getRuntime().availableProcessors(),
+    val maxPendingTicks: Int = parallelism * 8
+) : AutoCloseable {
+    private val pool = ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true)
+    private val worlds = CopyOnWriteArrayList<ScheduledWorld>()
+    private val pending = AtomicInteger()
+
+    @Volatile
+    private var driver: Thread? = null
+
+    /**
+     * Maximum number of steps a world takes at once to catch up on missed ticks.
+     */
+    var maxCatchUpSteps = 4
+
+    /**
+     * Number of scheduled worlds.
+     */
+    val size: Int
+        get() = worlds.size
+
+    /**
+     * Number of ticks queued or running.
+     */
+    val pendingTicks: Int
+        get() = pending.get()
+
+    /**
+     * Whether the workers cannot keep up with the due ticks. New worlds should be hosted elsewhere.
+     */
+    val overloaded: Boolean
+        get() = pending.get() >= maxPendingTicks
+
+    /**
+     * Schedules a world. The first step is taken on the next [poll].
+     *
+     * @param world    World to step.
+     * @param tickRate Steps per second.
+     * @return Handle of the scheduled world.
+     */
+    fun add(world: World, tickRate: Double): ScheduledWorld {
+        require(tickRate > 0) { "Tick rate must be positive" }
+        val scheduled = ScheduledWorld(world, tickRate)
+        scheduled.nextTick = UNSCHEDULED
+        scheduled.task = Runnable {
+            try {
+                scheduled.run()
+            } finally {
+                scheduled.running.set(false)
+                pending.decrementAndGet()
+            }
+        }
+        worlds.add(scheduled)
+        return scheduled
+    }
+
+    /**
+     * Schedules a world unless the scheduler is overloaded.
+     *
+     * @param world    World to step.
+     * @param tickRate Steps per second.
+     * @return Handle of the scheduled world, null if the scheduler is overloaded.
+     */
+    fun tryAdd(world: World, tickRate: Double): ScheduledWorld? {
+        return if (overloaded) null else add(world, tickRate)
+    }
+
+    /**
+     * Stops stepping a world. A step already running is finished.
+     *
+     * @param scheduled Handle of the world.
+     */
+    fun remove(scheduled: ScheduledWorld) {
+        worlds.remove(scheduled)
+    }
+
+    /**
+     * Submits a task for every world whose tick is due and that is not stepped already.
+     *
+     * @param now Current time on the clock of [System.nanoTime].
+     * @return Number of worlds submitted.
+     */
+    @JvmOverloads
+    fun poll(now: Long = System.nanoTime()): Int {
+        val overloaded = this.overloaded
+        var submitted = 0
+        for (scheduled in worlds) {
+            if (scheduled.paused) continue
+            if (scheduled.nextTick == UNSCHEDULED) scheduled.nextTick = now
+            if (now < scheduled.nextTick || !scheduled.running.compareAndSet(false, true)) continue
+
+            //Ticks due since the last step, the ones that are not caught up on are dropped
+            val due = (now - scheduled.nextTick) / scheduled.period + 1
+            val steps = if (overloaded || scheduled.overBudget) 1 else minOf(due, maxCatchUpSteps.toLong()).toInt()
+            scheduled.droppedTicks += due - steps
+            scheduled.nextTick += due * scheduled.period
+            scheduled.steps = steps
+            pending.incrementAndGet()
+            pool.execute(scheduled.task)
+            submitted++
+        }
+        return submitted
+    }
+
+    /**
+     * Starts polling on a daemon thread of the scheduler.
+     */
+    @Synchronized
+    fun start() {
+        if (driver != null) return
+        val thread = Thread({
+            while (driver === Thread.currentThread()) {
+                val now = System.nanoTime()
+                poll(now)
+                //Sleeps until the next tick is due, but at most a millisecond to notice new worlds
+                var wait = MAX_WAIT
+                for (scheduled in worlds) {
+                    if (scheduled.nextTick != UNSCHEDULED) wait = minOf(wait, scheduled.nextTick - now)
+                }
+                if (wait > 0) LockSupport.parkNanos(wait)
+            }
+        }, "WorldScheduler")
+        thread.isDaemon = true
+        driver = thread
+        thread.start()
+    }
+
+    /**
+     * Stops polling on the thread of the scheduler. Steps already submitted are finished.
+     */
+    @Synchronized
+    fun stop() {
+        val thread = driver ?: return
+        driver = null
+        LockSupport.unpark(thread)
+        thread.join()
+    }
+
+    /**
+     * Waits until all submitted steps are finished.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return Whether all steps finished in time.
+     */
+    fun awaitIdle(timeout: Long, unit: TimeUnit): Boolean {
+        val end = System.nanoTime() + unit.toNanos(timeout)
+        while (pending.get() > 0) {
+            val remaining = end - System.nanoTime()
+            if (remaining <= 0) return false
+            pool.awaitQuiescence(remaining, TimeUnit.NANOSECONDS)
+            if (pending.get() > 0) Thread.yield()
+        }
+        return true
+    }
+
+    /**
+     * Collects the statistics of all worlds.
+     *
+     * @param out Receives the statistics.
+     * @return The statistics.
+     */
+    fun statistics(out: SchedulerStatistics): SchedulerStatistics {
+        out.reset()
+        var totalStepTime = 0L
+        for (scheduled in worlds) {
+            out.worlds++
+            if (scheduled.overBudget) out.worldsOverBudget++
+            out.ticks += scheduled.ticks
+            out.droppedTicks += scheduled.droppedTicks
+            out.overBudgetTicks += scheduled.overBudgetTicks
+            out.maxStepTime = maxOf(out.maxStepTime, scheduled.maxStepTime)
+            totalStepTime += scheduled.totalStepTime
+        }
+        out.averageStepTime = if (out.ticks == 0L) .0 else totalStepTime.toDouble() / out.ticks
+        out.pendingTicks = pending.get()
+        out.overloaded = overloaded
+        return out
+    }
+
+    /**
+     * Stops polling and shuts the workers down.
+     */
+    override fun close() {
+        stop()
+        pool.shutdown()
+    }
+
+    private companion object {
+        const val UNSCHEDULED = Long.MIN_VALUE
+        const val MAX_WAIT = 1_000_000L
+    }
+}
@@ -20,6 +20,9 @@ abstract class AbstractPhysicalBody() :
             field = value
             if (density == .0) {
                 setStatic()
+            } else if (bodyType != BodyType.DYNAMIC) {
+                //Mass is computed once the body becomes dynamic
+                return
             } else if (this is CollisionBodyInterface) {
                 this.shape.body = this
                 this.shape.calcMass(field)
@@ -38,6 +41,22 @@ abstract class AbstractPhysicalBody() :
     override var linearDampening = .0
     override var affectedByGravity = true
     override var particle = false
+    /**
+     * Notified when the body type changes, set by the world holding the body so that it sorts its bodies again.
+     */
+    internal var typeListener: Runnable? = null
+
+    override var bodyType = BodyType.DYNAMIC
+        set(value) {
+            if (field == value) return
+            field = value
+            typeListener?.run()
+            if (value == BodyType.DYNAMIC) {
+                density = density
+            } else {
+                clearMass()
+            }
+        }
 
     /**
      * Applies force ot body.
@@ -66,8 +85,7 @@ abstract class AbstractPhysicalBody() :
      * @param contactPoint The point to apply the force to relative to the body in object space.
      */
     override fun applyLinearImpulse(impulse: Vec2, contactPoint: Vec2) {
-        velocity.add(impulse.scalar(invMass))
-        angularVelocity += invInertia * contactPoint.cross(impulse)
+        applyLinearImpulse(impulse.x, impulse.y, contactPoint.x, contactPoint.y)
     }
 
     /**
@@ -76,13 +94,33 @@ abstract class AbstractPhysicalBody() :
      * @param impulse Magnitude of impulse vector.
      */
     override fun applyLinearImpulse(impulse: Vec2) {
-        velocity.add(impulse.scalar(invMass))
+        velocity.x += impulse.x * invMass
+        velocity.y += impulse.y * invMass
     }
 
     /**
-     * Sets all mass and inertia variables to zero. Object cannot be moved.
+     * Applies impulse to a point relative to the body's center of mass without allocating.
+     *
+     * @param impulseX X component of the impulse.
+     * @param impulseY Y component of the impulse.
+     * @param contactX X coordinate of the point relative to the center of mass in world orientation.
+     * @param contactY Y coordinate of the point relative to the center of mass in world orientation.
+     */
+    fun applyLinearImpulse(impulseX: Double, impulseY: Double, contactX: Double, contactY: Double) {
+        velocity.x += impulseX * invMass
+        velocity.y += impulseY * invMass
+        angularVelocity += invInertia * (contactX * impulseY - contactY * impulseX)
+    }
+
+    /**
+     * Sets all mass and inertia variables to zero and makes the body [BodyType.STATIC]. Object cannot be moved.
      */
     override fun setStatic() {
+        clearMass()
+        bodyType = BodyType.STATIC
+    }
+
+    private fun clearMass() {
         mass = 0.0
         invMass = 0.0
         inertia = 0.0
@@ -0,0 +1,23 @@
+package de.chaffic.dynamics.bodies
+
+/**
+ * How a body takes part in the simulation.
+ */
+enum class BodyType {
+    /**
+     * Never moves and has infinite mass. Static bodies are kept in a broad phase tree of their own that is only updated
+     * when bodies are added, removed or change their type, or on request.
+     */
+    STATIC,
+
+    /**
+     * Moves with the velocity set by the user, unaffected by forces, gravity and contacts. Kinematic bodies push dynamic
+     * bodies but never collide with static or other kinematic bodies.
+     */
+    KINEMATIC,
+
+    /**
+     * Moved by forces, gravity, contacts and joints. The only bodies that are integrated every step.
+     */
+    DYNAMIC
+}
@@ -20,6 +20,11 @@ interface PhysicalBodyInterface :
     var affectedByGravity: Boolean
     var particle: Boolean
 
+    /**
+     * Type of the body. Static and kinematic bodies have infinite mass.
+     */
+    var bodyType: BodyType
+
     /**
      * Applies force ot body.
      *
@@ -51,7 +56,7 @@ interface PhysicalBodyInterface :
     fun applyLinearImpulse(impulse: Vec2)
 
     /**
-     * Sets all mass and inertia variables to zero. Object cannot be moved.
+     * Sets all mass and inertia variables to zero and makes the body [BodyType.STATIC]. Object cannot be moved.
      */
     fun setStatic()
 }
\ No newline at end of file
@@ -0,0 +1,263 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.geometry.bodies.TranslatableBody
+import java.util.stream.IntStream
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Approximate O(n log n) gravity using a Barnes-Hut quadtree. Every node of the tree stores the total mass and centre of
+ * mass of the bodies below it. A node acts on a body as a single point mass if the body is farther from the centre of mass
+ * than the node size divided by [theta] plus the offset of the centre of mass from the node centre, otherwise the node is
+ * opened. Nodes containing the body itself are always opened.
+ *
+ * @param theta    Opening angle. Zero gives the exact sum, larger values are faster and less accurate.
+ * @param parallel Whether the tree is traversed in parallel chunks on the common fork join pool.
+ */
+class BarnesHutGravity @JvmOverloads constructor(var theta: Double = 0.5, var parallel: Boolean = false) : GravitySolver {
+    private val gathered = GravityBodies()
+
+    private var nodeCount = 0
+    private var childBase = IntArray(64)
+    private var firstBody = IntArray(64)
+    private var centreX = DoubleArray(64)
+    private var centreY = DoubleArray(64)
+    private var halfSize = DoubleArray(64)
+    private var nodeMass = DoubleArray(64)
+    private var massX = DoubleArray(64)
+    private var massY = DoubleArray(64)
+    private var openingRadius = DoubleArray(64)
+    private var nextBody = IntArray(16)
+
+    private val stacks = ThreadLocal.withInitial { IntArray(64) }
+    private var gravitationalConstant = 0.0
+    private var softeningSquared = 0.0
+
+    override fun apply(bodies: List<TranslatableBody>, gravitationalConstant: Double, softening: Double) {
+        gathered.gather(bodies)
+        if (gathered.size < 2) return
+        this.gravitationalConstant = gravitationalConstant
+        softeningSquared = softening * softening
+        build()
+
+        val chunks = (gathered.size + CHUNK_SIZE - 1) / CHUNK_SIZE
+        if (parallel && chunks > 1) {
+            IntStream.range(0, chunks).parallel().forEach { computeChunk(it) }
+        } else {
+            for (chunk in 0 until chunks) {
+                computeChunk(chunk)
+            }
+        }
+        gathered.applyForces()
+    }
+
+    /**
+     * Builds the tree over all gathered bodies and computes the mass of every node.
+     */
+    private fun build() {
+        val x = gathered.x
+        val y = gathered.y
+        var minX = Double.POSITIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        for (i in 0 until gathered.size) {
+            minX = min(minX, x[i])
+            minY = min(minY, y[i])
+            maxX = max(maxX, x[i])
+            maxY = max(maxY, y[i])
+        }
+        if (nextBody.size < gathered.size) {
+            nextBody = IntArray(gathered.x.size)
+        }
+        nodeCount = 0
+        val root = allocateNode((minX + maxX) * 0.5, (minY + maxY) * 0.5, max(max(maxX - minX, maxY - minY) * 0.5, MIN_HALF_SIZE))
+        for (i in 0 until gathered.size) {
+            insert(root, i)
+        }
+
+        //Children are always allocated after their parents, so walking backwards visits children first
+        val mass = gathered.mass
+        for (node in nodeCount - 1 downTo 0) {
+            var m = 0.0
+            var mx = 0.0
+            var my = 0.0
+            val base = childBase[node]
+            if (base < 0) {
+                var body = firstBody[node]
+                while (body >= 0) {
+                    m += mass[body]
+                    mx += mass[body] * x[body]
+                    my += mass[body] * y[body]
+                    body = nextBody[body]
+                }
+            } else {
+                for (child in base until base + 4) {
+                    m += nodeMass[child]
+                    mx += nodeMass[child] * massX[child]
+                    my += nodeMass[child] * massY[child]
+                }
+            }
+            nodeMass[node] = m
+            massX[node] = if (m > 0) mx / m else centreX[node]
+            massY[node] = if (m > 0) my / m else centreY[node]
+
+            //Bodies closer than size / theta plus the offset of the centre of mass from the cell centre open the node
+            val ox = massX[node] - centreX[node]
+            val oy = massY[node] - centreY[node]
+            val radius = if (theta > 0) halfSize[node] * 2 / theta + sqrt(ox * ox + oy * oy) else Double.POSITIVE_INFINITY
+            openingRadius[node] = radius * radius
+        }
+    }
+
+    private fun insert(root: Int, body: Int) {
+        val x = gathered.x[body]
+        val y = gathered.y[body]
+        var node = root
+        var depth = 0
+        while (true) {
+            val base = childBase[node]
+            if (base >= 0) {
+                node = base + quadrant(node, x, y)
+                depth++
+                continue
+            }
+            val existing = firstBody[node]
+            if (existing < 0 || depth >= MAX_DEPTH) {
+                //Empty leaf, or bodies too close to be separated share the leaf
+                nextBody[body] = existing
+                firstBody[node] = body
+                return
+            }
+
+            //Splits the leaf and moves its body into the matching child
+            val half = halfSize[node] * 0.5
+            val cx = centreX[node]
+            val cy = centreY[node]
+            val children = allocateNode(cx - half, cy - half, half)
+            allocateNode(cx + half, cy - half, half)
+            allocateNode(cx - half, cy + half, half)
+            allocateNode(cx + half, cy + half, half)
+            childBase[node] = children
+            firstBody[node] = -1
+            val target = children + quadrant(node, gathered.x[existing], gathered.y[existing])
+            firstBody[target] = existing
+            nextBody[existing] = -1
+        }
+    }
+
+    private fun quadrant(node: Int, x: Double, y: Double): Int {
+        var q = 0
+        if (x >= centreX[node]) q += 1
+        if (y >= centreY[node]) q += 2
+        return q
+    }
+
+    private fun allocateNode(cx: Double, cy: Double, half: Double): Int {
+        if (nodeCount == childBase.size) {
+            val capacity = nodeCount * 2
+            childBase = childBase.copyOf(capacity)
+            firstBody = firstBody.copyOf(capacity)
+            centreX = centreX.copyOf(capacity)
+            centreY = centreY.copyOf(capacity)
+            halfSize = halfSize.copyOf(capacity)
+            nodeMass = nodeMass.copyOf(capacity)
+            massX = massX.copyOf(capacity)
+            massY = massY.copyOf(capacity)
+            openingRadius = openingRadius.copyOf(capacity)
+        }
+        val node = nodeCount++
+        childBase[node] = -1
+        firstBody[node] = -1
+        centreX[node] = cx
+        centreY[node] = cy
+        halfSize[node] = half
+        return node
+    }
+
+    private fun computeChunk(chunk: Int) {
+        val end = min(gathered.size, (chunk + 1) * CHUNK_SIZE)
+        for (i in chunk * CHUNK_SIZE until end) {
+            computeForce(i)
+        }
+    }
+
+    /**
+     * Traverses the tree for a single body and stores the force it feels.
+     */
+    private fun computeForce(body: Int) {
+        val x = gathered.x
+        val y = gathered.y
+        val mass = gathered.mass
+        val bx = x[body]
+        val by = y[body]
+        var fx = 0.0
+        var fy = 0.0
+        var stack = stacks.get()
+        var top = 0
+        stack[top++] = 0
+        while (top > 0) {
+            val node = stack[--top]
+            if (nodeMass[node] == 0.0) continue
+            val base = childBase[node]
+            if (base < 0) {
+                var other = firstBody[node]
+                while (other >= 0) {
+                    if (other != body) {
+                        val dx = x[other] - bx
+                        val dy = y[other] - by
+                        val s = attraction(mass[other], dx * dx + dy * dy)
+                        fx += dx * s
+                        fy += dy * s
+                    }
+                    other = nextBody[other]
+                }
+                continue
+            }
+            val dx = massX[node] - bx
+            val dy = massY[node] - by
+            val distanceSquared = dx * dx + dy * dy
+            val inside = abs(bx - centreX[node]) <= halfSize[node] && abs(by - centreY[node]) <= halfSize[node]
+            if (!inside && distanceSquared > openingRadius[node]) {
+                val s = attraction(nodeMass[node], distanceSquared)
+                fx += dx * s
+                fy += dy * s
+            } else {
+                if (top + 4 > stack.size) {
+                    stack = stack.copyOf(stack.size * 2)
+                    stacks.set(stack)
+                }
+                for (child in base until base + 4) {
+                    stack[top++] = child
+                }
+            }
+        }
+        val scale = gravitationalConstant * mass[body]
+        gathered.forceX[body] = fx * scale
+        gathered.forceY[body] = fy * scale
+    }
+
+    /**
+     * Force per unit distance between a unit mass and a mass at a squared distance.
+     */
+    private fun attraction(mass: Double, distanceSquared: Double): Double {
+        val softened = distanceSquared + softeningSquared
+        if (softened == 0.0) return 0.0
+        return mass / (softened * sqrt(softened))
+    }
+
+    companion object {
+        /**
+         * Number of bodies processed by one parallel task.
+         */
+        const val CHUNK_SIZE = 256
+
+        /**
+         * Depth at which leaves stop splitting, bodies at nearly the same position share a leaf below it.
+         */
+        private const val MAX_DEPTH = 48
+        private const val MIN_HALF_SIZE = 1e-9
+    }
+}
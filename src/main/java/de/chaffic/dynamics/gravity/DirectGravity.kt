@@ -0,0 +1,42 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.geometry.bodies.TranslatableBody
+import kotlin.math.sqrt
+
+/**
+ * Exact O(n²) gravity. Every pair of bodies is visited once and the force is applied to both bodies.
+ */
+class DirectGravity : GravitySolver {
+    private val gathered = GravityBodies()
+
+    override fun apply(bodies: List<TranslatableBody>, gravitationalConstant: Double, softening: Double) {
+        gathered.gather(bodies)
+        val x = gathered.x
+        val y = gathered.y
+        val mass = gathered.mass
+        val forceX = gathered.forceX
+        val forceY = gathered.forceY
+        val softeningSquared = softening * softening
+        for (a in 0 until gathered.size) {
+            val ax = x[a]
+            val ay = y[a]
+            val am = gravitationalConstant * mass[a]
+            var fx = 0.0
+            var fy = 0.0
+            for (b in a + 1 until gathered.size) {
+                val dx = x[b] - ax
+                val dy = y[b] - ay
+                val distanceSquared = dx * dx + dy * dy + softeningSquared
+                if (distanceSquared == 0.0) continue
+                val s = am * mass[b] / (distanceSquared * sqrt(distanceSquared))
+                fx += dx * s
+                fy += dy * s
+                forceX[b] -= dx * s
+                forceY[b] -= dy * s
+            }
+            forceX[a] += fx
+            forceY[a] += fy
+        }
+        gathered.applyForces()
+    }
+}
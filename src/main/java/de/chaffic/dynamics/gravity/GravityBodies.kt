@@ -0,0 +1,63 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.geometry.bodies.TranslatableBody
+
+/**
+ * Positions and masses of all attracting bodies copied into primitive arrays, together with the forces accumulated for
+ * them.
+ */
+internal class GravityBodies {
+    var bodies = arrayOfNulls<PhysicalBodyInterface>(16)
+    var x = DoubleArray(16)
+    var y = DoubleArray(16)
+    var mass = DoubleArray(16)
+    var forceX = DoubleArray(16)
+    var forceY = DoubleArray(16)
+    var size = 0
+
+    /**
+     * Copies all bodies with a positive mass and clears their forces.
+     *
+     * @param bodies Bodies to gather.
+     */
+    fun gather(bodies: List<TranslatableBody>) {
+        this.bodies.fill(null, 0, size)
+        size = 0
+        for (b in bodies) {
+            if (b !is PhysicalBodyInterface || b.mass <= 0.0) continue
+            if (size == x.size) {
+                grow()
+            }
+            this.bodies[size] = b
+            x[size] = b.position.x
+            y[size] = b.position.y
+            mass[size] = b.mass
+            size++
+        }
+        forceX.fill(0.0, 0, size)
+        forceY.fill(0.0, 0, size)
+    }
+
+    /**
+     * Adds the accumulated forces to all bodies that are not static.
+     */
+    fun applyForces() {
+        for (i in 0 until size) {
+            val b = bodies[i]!!
+            if (b.invMass == 0.0) continue
+            b.force.x += forceX[i]
+            b.force.y += forceY[i]
+        }
+    }
+
+    private fun grow() {
+        val capacity = x.size * 2
+        bodies = bodies.copyOf(capacity)
+        x = x.copyOf(capacity)
+        y = y.copyOf(capacity)
+        mass = mass.copyOf(capacity)
+        forceX = forceX.copyOf(capacity)
+        forceY = forceY.copyOf(capacity)
+    }
+}
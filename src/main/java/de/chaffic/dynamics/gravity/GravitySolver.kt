@@ -0,0 +1,19 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.geometry.bodies.TranslatableBody
+
+/**
+ * Computes the mutual gravitational attraction of bodies and adds it to their forces.
+ */
+interface GravitySolver {
+    /**
+     * Adds the gravitational force every body feels from all other bodies to its force. Only bodies implementing
+     * [de.chaffic.dynamics.bodies.PhysicalBodyInterface] with a positive mass attract, and only bodies that are not static
+     * are accelerated.
+     *
+     * @param bodies                Bodies to apply gravity to.
+     * @param gravitationalConstant Gravitational constant.
+     * @param softening             Softening length added to every distance, keeps forces between close bodies finite.
+     */
+    fun apply(bodies: List<TranslatableBody>, gravitationalConstant: Double, softening: Double)
+}
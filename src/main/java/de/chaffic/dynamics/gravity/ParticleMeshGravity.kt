@@ -0,0 +1,262 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.math.FFT
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Particle-mesh gravity for very large numbers of bodies in O(n + G log G) for a grid of G cells. The mass of every body is
+ * deposited onto a uniform grid with cloud in cell weights, the grid is convolved with the softened 1 / r potential of a
+ * point mass using fast fourier transforms, and the gradient of the potential is interpolated back to the bodies with the
+ * same weights.
+ *
+ * Forces are only resolved down to about one cell, closer bodies attract each other less than with [DirectGravity]. The
+ * potential kernel is always softened by at least half a cell.
+ *
+ * @param gridSize Number of grid cells along each axis, must be a power of two.
+ * @param boundary Whether the grid is isolated or repeats periodically.
+ */
+class ParticleMeshGravity @JvmOverloads constructor(
+    val gridSize: Int = 128,
+    val boundary: Boundary = Boundary.ISOLATED
+) : GravitySolver {
+    /**
+     * Boundary conditions of the grid.
+     */
+    enum class Boundary {
+        /**
+         * Only the bodies themselves attract. The grid fits the bodies and is zero padded to twice its size, so mass does
+         * not wrap around.
+         */
+        ISOLATED,
+
+        /**
+         * The domain repeats infinitely. Bodies interact with the nearest image of every other body and bodies outside the
+         * domain are wrapped into it.
+         */
+        PERIODIC
+    }
+
+    /**
+     * Lower x bound of the periodic domain. Only used by [Boundary.PERIODIC] if [domainSize] is greater than zero.
+     */
+    var domainX = 0.0
+
+    /**
+     * Lower y bound of the periodic domain. Only used by [Boundary.PERIODIC] if [domainSize] is greater than zero.
+     */
+    var domainY = 0.0
+
+    /**
+     * Side length of the periodic domain. Zero fits the domain to the bodies every update.
+     */
+    var domainSize = 0.0
+
+    private val gathered = GravityBodies()
+    private val transformSize = if (boundary == Boundary.ISOLATED) gridSize * 2 else gridSize
+    private val fft = FFT(transformSize)
+    private val re = DoubleArray(transformSize * transformSize)
+    private val im = DoubleArray(transformSize * transformSize)
+    private val kernelRe = DoubleArray(transformSize * transformSize)
+    private val kernelIm = DoubleArray(transformSize * transformSize)
+    private var kernelSoftening = -1.0
+    private val accelerationX = DoubleArray(gridSize * gridSize)
+    private val accelerationY = DoubleArray(gridSize * gridSize)
+
+    private var originX = 0.0
+    private var originY = 0.0
+    private var cellSize = 1.0
+
+    init {
+        require(gridSize >= 4) { "Grid size must be at least 4" }
+    }
+
+    override fun apply(bodies: List<TranslatableBody>, gravitationalConstant: Double, softening: Double) {
+        gathered.gather(bodies)
+        if (gathered.size < 2) return
+        placeGrid()
+
+        //Kernel in cell units, only rebuilt when the softening relative to the cell size changes
+        val cellSoftening = max(softening / cellSize, 0.5)
+        if (cellSoftening != kernelSoftening) {
+            buildKernel(cellSoftening)
+        }
+
+        re.fill(0.0)
+        im.fill(0.0)
+        deposit()
+        fft.transform2D(re, im)
+        for (i in re.indices) {
+            val r = re[i] * kernelRe[i] - im[i] * kernelIm[i]
+            im[i] = re[i] * kernelIm[i] + im[i] * kernelRe[i]
+            re[i] = r
+        }
+        fft.transform2D(re, im, true)
+        computeAccelerations(gravitationalConstant / cellSize)
+        interpolate()
+        gathered.applyForces()
+    }
+
+    /**
+     * Chooses origin and cell size of the grid.
+     */
+    private fun placeGrid() {
+        val x = gathered.x
+        val y = gathered.y
+        if (boundary == Boundary.PERIODIC && domainSize > 0) {
+            originX = domainX
+            originY = domainY
+            cellSize = domainSize / gridSize
+            return
+        }
+        var minX = Double.POSITIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        for (i in 0 until gathered.size) {
+            minX = min(minX, x[i])
+            minY = min(minY, y[i])
+            maxX = max(maxX, x[i])
+            maxY = max(maxY, y[i])
+        }
+        val extent = max(max(maxX - minX, maxY - minY), MIN_EXTENT)
+        if (boundary == Boundary.PERIODIC) {
+            cellSize = extent / (gridSize - 1)
+            originX = minX
+            originY = minY
+        } else {
+            //One cell of margin on every side keeps the interpolation and the gradient stencil inside the grid
+            cellSize = extent / (gridSize - 3)
+            originX = minX - cellSize
+            originY = minY - cellSize
+        }
+    }
+
+    /**
+     * Builds the transformed potential of a unit mass. Isolated grids store the distances of the padded grid wrapped
+     * around, so the cyclic convolution of the fourier transform equals the open convolution on the unpadded part.
+     */
+    private fun buildKernel(cellSoftening: Double) {
+        kernelSoftening = cellSoftening
+        val softeningSquared = cellSoftening * cellSoftening
+        for (j in 0 until transformSize) {
+            val dj = min(j, transformSize - j).toDouble()
+            for (i in 0 until transformSize) {
+                val di = min(i, transformSize - i).toDouble()
+                kernelRe[j * transformSize + i] = -1.0 / sqrt(di * di + dj * dj + softeningSquared)
+                kernelIm[j * transformSize + i] = 0.0
+            }
+        }
+        fft.transform2D(kernelRe, kernelIm)
+    }
+
+    /**
+     * Spreads the mass of every body over the four grid nodes around it.
+     */
+    private fun deposit() {
+        val mass = gathered.mass
+        for (i in 0 until gathered.size) {
+            val fx = gridX(gathered.x[i])
+            val fy = gridY(gathered.y[i])
+            val ix = floor(fx).toInt()
+            val iy = floor(fy).toInt()
+            val tx = fx - ix
+            val ty = fy - iy
+            val m = mass[i]
+            addMass(ix, iy, m * (1 - tx) * (1 - ty))
+            addMass(ix + 1, iy, m * tx * (1 - ty))
+            addMass(ix, iy + 1, m * (1 - tx) * ty)
+            addMass(ix + 1, iy + 1, m * tx * ty)
+        }
+    }
+
+    private fun addMass(ix: Int, iy: Int, m: Double) {
+        re[wrap(iy) * transformSize + wrap(ix)] += m
+    }
+
+    /**
+     * Computes the acceleration at every grid node from central differences of the potential.
+     *
+     * @param scale Factor turning the convolution result into a potential.
+     */
+    private fun computeAccelerations(scale: Double) {
+        val factor = -scale * 0.5 / cellSize
+        val last = gridSize - 1
+        for (j in 0 until gridSize) {
+            for (i in 0 until gridSize) {
+                val left: Int
+                val right: Int
+                val down: Int
+                val up: Int
+                var dx = factor
+                var dy = factor
+                if (boundary == Boundary.PERIODIC) {
+                    left = if (i == 0) last else i - 1
+                    right = if (i == last) 0 else i + 1
+                    down = if (j == 0) last else j - 1
+                    up = if (j == last) 0 else j + 1
+                } else {
+                    left = max(i - 1, 0)
+                    right = min(i + 1, last)
+                    down = max(j - 1, 0)
+                    up = min(j + 1, last)
+                    if (right - left == 1) dx *= 2
+                    if (up - down == 1) dy *= 2
+                }
+                accelerationX[j * gridSize + i] = dx * (re[j * transformSize + right] - re[j * transformSize + left])
+                accelerationY[j * gridSize + i] = dy * (re[up * transformSize + i] - re[down * transformSize + i])
+            }
+        }
+    }
+
+    /**
+     * Interpolates the grid accelerations to the bodies with the weights used for depositing.
+     */
+    private fun interpolate() {
+        for (i in 0 until gathered.size) {
+            val fx = gridX(gathered.x[i])
+            val fy = gridY(gathered.y[i])
+            val ix = floor(fx).toInt()
+            val iy = floor(fy).toInt()
+            val tx = fx - ix
+            val ty = fy - iy
+            val w00 = (1 - tx) * (1 - ty)
+            val w10 = tx * (1 - ty)
+            val w01 = (1 - tx) * ty
+            val w11 = tx * ty
+            val n00 = node(ix, iy)
+            val n10 = node(ix + 1, iy)
+            val n01 = node(ix, iy + 1)
+            val n11 = node(ix + 1, iy + 1)
+            val ax = w00 * accelerationX[n00] + w10 * accelerationX[n10] + w01 * accelerationX[n01] + w11 * accelerationX[n11]
+            val ay = w00 * accelerationY[n00] + w10 * accelerationY[n10] + w01 * accelerationY[n01] + w11 * accelerationY[n11]
+            gathered.forceX[i] = ax * gathered.mass[i]
+            gathered.forceY[i] = ay * gathered.mass[i]
+        }
+    }
+
+    private fun gridX(x: Double): Double {
+        val fx = (x - originX) / cellSize
+        return if (boundary == Boundary.PERIODIC) fx - floor(fx / gridSize) * gridSize else fx
+    }
+
+    private fun gridY(y: Double): Double {
+        val fy = (y - originY) / cellSize
+        return if (boundary == Boundary.PERIODIC) fy - floor(fy / gridSize) * gridSize else fy
+    }
+
+    private fun wrap(i: Int): Int {
+        return if (boundary == Boundary.PERIODIC) (i + gridSize) % gridSize else i
+    }
+
+    private fun node(ix: Int, iy: Int): Int {
+        return wrap(iy) * gridSize + wrap(ix)
+    }
+
+    companion object {
+        private const val MIN_EXTENT = 1e-9
+    }
+}
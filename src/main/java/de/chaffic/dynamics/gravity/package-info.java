@@ -0,0 +1,4 @@
+/**
+ * Package containing solvers for mutual gravity between bodies.
+ */
+package de.chaffic.dynamics.gravity;
@@ -5,9 +5,15 @@ import de.chaffic.dynamics.World
 import de.chaffic.geometry.Circle
 import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
+import de.chaffic.particles.ParticlePool
+import de.chaffic.profiling.ExplosionUpdateEvent
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
 
 /**
- * Models particle explosions.
+ * Models particle explosions. Particles are emitted into a [ParticlePool] and recycled after [lifespan], so they never
+ * become bodies of the world.
  *
  * @param epicentre     Vector location of explosion epicenter.
  * @param noOfParticles Total number of particles the explosion has.
@@ -15,11 +21,54 @@ import de.chaffic.math.Vec2
  */
 class ParticleExplosion(private val epicentre: Vec2, private val noOfParticles: Int, private val lifespan: Double) {
     /**
-     * Getter to return the list of particles in the world.
+     * Pool holding the particles of the explosion.
+     */
+    val pool = ParticlePool(noOfParticles)
+
+    /**
+     * Getter to return the list of particles in the world. Only filled by [createParticles].
      *
      * @return Array of bodies.
      */
-    val particles = MutableList(noOfParticles) { Body(Circle(.0),.0, .0) }
+    val particles = ArrayList<Body>()
+
+    init {
+        pool.affectedByGravity = false
+        pool.restitution = 1.0
+    }
+
+    /**
+     * Emits all particles into the pool, evenly spread on a circle around the epicentre.
+     *
+     * @param radius The distance away from the epicenter the particles are placed.
+     */
+    fun emitParticles(radius: Double) {
+        pool.clear()
+        val separationAngle = 2 * PI / noOfParticles
+        for (i in 0 until noOfParticles) {
+            val angle = separationAngle * i
+            pool.emit(epicentre.x - radius * sin(angle), epicentre.y + radius * cos(angle), .0, .0, lifespan)
+        }
+    }
+
+    /**
+     * Moves the particles of the pool and recycles expired ones.
+     *
+     * @param world World the particles collide with.
+     * @param dt    Timestep.
+     */
+    fun update(world: World, dt: Double) {
+        val event = ExplosionUpdateEvent()
+        event.begin()
+        pool.update(world, dt)
+        event.end()
+        if (event.shouldCommit()) {
+            event.explosionType = "particle"
+            event.bodyCount = world.bodies.size
+            event.particleCount = pool.size
+            event.commit()
+        }
+    }
 
     /**
      * Creates particles in the supplied world.
@@ -29,8 +78,10 @@ class ParticleExplosion(private val epicentre: Vec2, private val noOfParticles:
      * @param radius  The distance away from the epicenter the particles are placed.
      * @param world   The world the particles are created in.
      */
+    @Deprecated("Particles as bodies are expensive, use emitParticles and update instead")
     fun createParticles(size: Double, density: Int, radius: Int, world: World) {
-        val separationAngle = 6.28319 / noOfParticles
+        particles.clear()
+        val separationAngle = 2 * PI / noOfParticles
         val distanceFromCentre = Vec2(.0, radius.toDouble())
         val rotate = Mat2(separationAngle)
         for (i in 0 until noOfParticles) {
@@ -44,7 +95,7 @@ class ParticleExplosion(private val epicentre: Vec2, private val noOfParticles:
             b.linearDampening = 0.0
             b.particle = true
             world.addBody(b)
-            particles[i] = b
+            particles.add(b)
             rotate.mul(distanceFromCentre)
         }
     }
@@ -55,10 +106,11 @@ class ParticleExplosion(private val epicentre: Vec2, private val noOfParticles:
      * @param blastPower The impulse magnitude.
      */
     fun applyBlastImpulse(blastPower: Double) {
-        var line: Vec2
+        for (i in 0 until pool.size) {
+            pool.setVelocity(i, (pool.xAt(i) - epicentre.x) * blastPower, (pool.yAt(i) - epicentre.y) * blastPower)
+        }
         for (b in particles) {
-            line = b.position.minus(epicentre)
-            b.velocity.set(line.scalar(blastPower))
+            b.velocity.set((b.position.x - epicentre.x) * blastPower, (b.position.y - epicentre.y) * blastPower)
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,11 @@
 package de.chaffic.explosions
 
+import de.chaffic.collision.BodyVisitor
+import de.chaffic.dynamics.World
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
+import de.chaffic.profiling.ExplosionUpdateEvent
 
 /**
  * Models proximity explosions.
@@ -28,6 +31,15 @@ class ProximityExplosion
     }
 
     private var bodiesEffected = ArrayList<TranslatableBody>()
+    private val lowerBound = Vec2()
+    private val upperBound = Vec2()
+
+    private val proximityVisitor = BodyVisitor { b ->
+        if (isInProximity(b)) {
+            bodiesEffected.add(b)
+        }
+        true
+    }
 
     /**
      * Updates the arraylist to reevaluate what bodies are effected/within the proximity.
@@ -35,13 +47,46 @@ class ProximityExplosion
      * @param bodiesToEvaluate Arraylist of bodies in the world to check.
      */
     override fun update(bodiesToEvaluate: ArrayList<TranslatableBody>) {
+        val event = ExplosionUpdateEvent()
+        event.begin()
         bodiesEffected.clear()
         for (b in bodiesToEvaluate) {
-            val blastDist = b.position.minus(epicentre)
-            if (blastDist.length() <= proximity) {
+            if (isInProximity(b)) {
                 bodiesEffected.add(b)
             }
         }
+        commitEvent(event, bodiesToEvaluate.size)
+    }
+
+    /**
+     * Updates the effected bodies using the broad phase of a world. Only collision bodies are found.
+     *
+     * @param world World to search for bodies in.
+     */
+    fun update(world: World) {
+        val event = ExplosionUpdateEvent()
+        event.begin()
+        bodiesEffected.clear()
+        lowerBound.set(epicentre.x - proximity, epicentre.y - proximity)
+        upperBound.set(epicentre.x + proximity, epicentre.y + proximity)
+        world.queryAABB(lowerBound, upperBound, proximityVisitor)
+        commitEvent(event, world.bodies.size)
+    }
+
+    private fun isInProximity(b: TranslatableBody): Boolean {
+        val dx = b.position.x - epicentre.x
+        val dy = b.position.y - epicentre.y
+        return dx * dx + dy * dy <= proximity.toDouble() * proximity
+    }
+
+    private fun commitEvent(event: ExplosionUpdateEvent, bodyCount: Int) {
+        event.end()
+        if (event.shouldCommit()) {
+            event.explosionType = "proximity"
+            event.bodyCount = bodyCount
+            event.effectedBodies = bodiesEffected.size
+            event.commit()
+        }
     }
 
     val linesToBodies = ArrayList<Vec2?>()
@@ -3,6 +3,7 @@ package de.chaffic.explosions
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
+import de.chaffic.rays.BatchRaycaster
 import de.chaffic.rays.Ray
 
 /**
@@ -23,6 +24,20 @@ class RayScatter(epicentre: Vec2, private val noOfRays: Int) {
         }
     }
 
+    /**
+     * Engine that casts all rays of the scatter in one batch.
+     */
+    val raycaster = BatchRaycaster()
+
+    /**
+     * Whether the rays are cast in parallel chunks.
+     */
+    var parallel: Boolean
+        get() = raycaster.parallel
+        set(value) {
+            raycaster.parallel = value
+        }
+
     /**
      * Casts rays in 360 degrees with equal spacing.
      *
@@ -32,20 +47,18 @@ class RayScatter(epicentre: Vec2, private val noOfRays: Int) {
         val angle = 6.28319 / noOfRays
         val direction = Vec2(1.0, 1.0)
         val u = Mat2(angle)
-        for (i in rays.indices) {
+        for (i in 0 until noOfRays) {
             rays.add(Ray(epicentre, direction, distance))
             u.mul(direction)
         }
     }
 
     /**
-     * Updates all rays.
+     * Updates all rays. The bodies are gathered once and all rays are intersected with them in one batch.
      *
      * @param worldBodies Arraylist of all bodies to update ray projections for.
      */
     fun updateRays(worldBodies: ArrayList<TranslatableBody>) {
-        for (ray in rays) {
-            ray.updateProjection(worldBodies)
-        }
+        raycaster.cast(rays, worldBodies)
     }
 }
\ No newline at end of file
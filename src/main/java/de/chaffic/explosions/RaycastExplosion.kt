@@ -3,6 +3,7 @@ package de.chaffic.explosions
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
+import de.chaffic.profiling.ExplosionUpdateEvent
 import de.chaffic.rays.RayInformation
 
 /**
@@ -39,6 +40,8 @@ class RaycastExplosion(epicentre: Vec2, noOfRays: Int, distance: Double, worldBo
      * @param bodiesToEvaluate Arraylist of bodies in the world to check.
      */
     override fun update(bodiesToEvaluate: ArrayList<TranslatableBody>) {
+        val event = ExplosionUpdateEvent()
+        event.begin()
         raysInContact.clear()
         rayScatter.updateRays(bodiesToEvaluate)
         val rayArray = rayScatter.rays
@@ -48,6 +51,14 @@ class RaycastExplosion(epicentre: Vec2, noOfRays: Int, distance: Double, worldBo
                 raysInContact.add(rayInfo)
             }
         }
+        event.end()
+        if (event.shouldCommit()) {
+            event.explosionType = "raycast"
+            event.bodyCount = bodiesToEvaluate.size
+            event.rayCount = rayArray.size
+            event.effectedBodies = raysInContact.size
+            event.commit()
+        }
     }
 
     /**
@@ -0,0 +1,171 @@
+package de.chaffic.geometry
+
+/**
+ * Static bounding volume hierarchy over the parts of a shape in object space, built once by splitting at the median
+ * along the longer axis. Queries write the indices of the parts found into [hits] instead of allocating.
+ *
+ * @param minX Lower x bound of every part.
+ * @param minY Lower y bound of every part.
+ * @param maxX Upper x bound of every part.
+ * @param maxY Upper y bound of every part.
+ */
+internal class BoundsTree(minX: DoubleArray, minY: DoubleArray, maxX: DoubleArray, maxY: DoubleArray) {
+    private val size = minX.size
+    private val nodeMinX = DoubleArray(maxOf(2 * size - 1, 0))
+    private val nodeMinY = DoubleArray(nodeMinX.size)
+    private val nodeMaxX = DoubleArray(nodeMinX.size)
+    private val nodeMaxY = DoubleArray(nodeMinX.size)
+    private val nodeLeft = IntArray(nodeMinX.size)
+    private val nodeRight = IntArray(nodeMinX.size)
+    private val nodePart = IntArray(nodeMinX.size)
+    private var nodeCount = 0
+    private val stack = IntArray(nodeMinX.size + 1)
+
+    /**
+     * Indices of the parts found by the last query.
+     */
+    val hits = IntArray(size)
+
+    /**
+     * Lower x bound of all parts.
+     */
+    val lowerX: Double
+        get() = if (size == 0) .0 else nodeMinX[0]
+
+    /**
+     * Lower y bound of all parts.
+     */
+    val lowerY: Double
+        get() = if (size == 0) .0 else nodeMinY[0]
+
+    /**
+     * Upper x bound of all parts.
+     */
+    val upperX: Double
+        get() = if (size == 0) .0 else nodeMaxX[0]
+
+    /**
+     * Upper y bound of all parts.
+     */
+    val upperY: Double
+        get() = if (size == 0) .0 else nodeMaxY[0]
+
+    init {
+        if (size > 0) {
+            build(IntArray(size) { it }, 0, size, minX, minY, maxX, maxY)
+        }
+    }
+
+    /**
+     * Finds the parts whose bounds overlap a box.
+     *
+     * @return Number of parts stored in [hits].
+     */
+    fun query(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        if (size == 0) return 0
+        var found = 0
+        var top = 0
+        stack[top++] = 0
+        while (top > 0) {
+            val node = stack[--top]
+            if (nodeMinX[node] > upperX || nodeMaxX[node] < lowerX || nodeMinY[node] > upperY || nodeMaxY[node] < lowerY) {
+                continue
+            }
+            if (nodePart[node] >= 0) {
+                hits[found++] = nodePart[node]
+            } else {
+                stack[top++] = nodeLeft[node]
+                stack[top++] = nodeRight[node]
+            }
+        }
+        return found
+    }
+
+    /**
+     * Finds the parts whose bounds are crossed by a ray segment.
+     *
+     * @return Number of parts stored in [hits].
+     */
+    fun queryRay(startX: Double, startY: Double, endX: Double, endY: Double): Int {
+        if (size == 0) return 0
+        val dx = endX - startX
+        val dy = endY - startY
+        var found = 0
+        var top = 0
+        stack[top++] = 0
+        while (top > 0) {
+            val node = stack[--top]
+            if (!crosses(node, startX, startY, dx, dy)) continue
+            if (nodePart[node] >= 0) {
+                hits[found++] = nodePart[node]
+            } else {
+                stack[top++] = nodeLeft[node]
+                stack[top++] = nodeRight[node]
+            }
+        }
+        return found
+    }
+
+    /**
+     * Slab test of the ray segment against the bounds of a node.
+     */
+    private fun crosses(node: Int, startX: Double, startY: Double, dx: Double, dy: Double): Boolean {
+        var lower = .0
+        var upper = 1.0
+        if (dx == .0) {
+            if (startX < nodeMinX[node] || startX > nodeMaxX[node]) return false
+        } else {
+            val t1 = (nodeMinX[node] - startX) / dx
+            val t2 = (nodeMaxX[node] - startX) / dx
+            lower = maxOf(lower, minOf(t1, t2))
+            upper = minOf(upper, maxOf(t1, t2))
+        }
+        if (dy == .0) {
+            if (startY < nodeMinY[node] || startY > nodeMaxY[node]) return false
+        } else {
+            val t1 = (nodeMinY[node] - startY) / dy
+            val t2 = (nodeMaxY[node] - startY) / dy
+            lower = maxOf(lower, minOf(t1, t2))
+            upper = minOf(upper, maxOf(t1, t2))
+        }
+        return lower <= upper
+    }
+
+    /**
+     * Builds the subtree over a range of parts.
+     *
+     * @return Index of the subtree root.
+     */
+    private fun build(order: IntArray, from: Int, to: Int, minX: DoubleArray, minY: DoubleArray, maxX: DoubleArray, maxY: DoubleArray): Int {
+        val node = nodeCount++
+        var lowX = Double.POSITIVE_INFINITY
+        var lowY = Double.POSITIVE_INFINITY
+        var highX = Double.NEGATIVE_INFINITY
+        var highY = Double.NEGATIVE_INFINITY
+        for (k in from until to) {
+            val i = order[k]
+            lowX = minOf(lowX, minX[i])
+            lowY = minOf(lowY, minY[i])
+            highX = maxOf(highX, maxX[i])
+            highY = maxOf(highY, maxY[i])
+        }
+        nodeMinX[node] = lowX
+        nodeMinY[node] = lowY
+        nodeMaxX[node] = highX
+        nodeMaxY[node] = highY
+        if (to - from == 1) {
+            nodePart[node] = order[from]
+            return node
+        }
+        nodePart[node] = -1
+        val alongX = highX - lowX >= highY - lowY
+        val sorted = order.copyOfRange(from, to).sortedBy { if (alongX) minX[it] + maxX[it] else minY[it] + maxY[it] }
+        for (k in sorted.indices) {
+            order[from + k] = sorted[k]
+        }
+        val middle = (from + to) / 2
+        nodeLeft[node] = build(order, from, middle, minX, minY, maxX, maxY)
+        nodeRight[node] = build(order, middle, to, minX, minY, maxX, maxY)
+        return node
+    }
+}
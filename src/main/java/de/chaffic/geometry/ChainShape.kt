@@ -0,0 +1,228 @@
+package de.chaffic.geometry
+
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Shape of a static polyline, for terrain made of thousands of segments. The whole terrain is a single entry of the
+ * broad phase, and collisions and rays only test the segments found by the segment index of the subclass.
+ *
+ * Segments collide on the side to the left of their direction only, so terrain should run from left to right. Bodies
+ * with a chain shape have no mass and are made static.
+ *
+ * @param vertices Vertices of the polyline in object space.
+ */
+abstract class ChainShape(vertices: Array<Vec2>) : Shape() {
+    /**
+     * Vertices of the polyline in object space.
+     */
+    val vertices: Array<Vec2>
+
+    /**
+     * Number of segments.
+     */
+    val segmentCount: Int
+        get() = vertices.size - 1
+
+    //Bounds of all vertices in object space
+    private val lowerX: Double
+    private val lowerY: Double
+    private val upperX: Double
+    private val upperY: Double
+
+    init {
+        require(vertices.size >= 2) { "Chains need at least two vertices" }
+        this.vertices = Array(vertices.size) { vertices[it].copy() }
+        lowerX = this.vertices.minOf { it.x }
+        lowerY = this.vertices.minOf { it.y }
+        upperX = this.vertices.maxOf { it.x }
+        upperY = this.vertices.maxOf { it.y }
+    }
+
+    /**
+     * Indices of the segments found by the last query.
+     */
+    internal abstract val hits: IntArray
+
+    /**
+     * Finds the segments whose bounds overlap a box in object space.
+     *
+     * @return Number of segments stored in [hits].
+     */
+    internal abstract fun findSegments(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int
+
+    /**
+     * Finds the segments whose bounds may be crossed by a ray segment in object space.
+     *
+     * @return Number of segments stored in [hits].
+     */
+    internal abstract fun findCrossedSegments(startX: Double, startY: Double, endX: Double, endY: Double): Int
+
+    /**
+     * Finds the segments whose bounds overlap a box in world space.
+     *
+     * @return Number of segments stored in [hits].
+     */
+    internal fun query(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+
+        //Box in object space
+        val cx = (lowerX + upperX) * 0.5 - body.position.x
+        val cy = (lowerY + upperY) * 0.5 - body.position.y
+        val ex = (upperX - lowerX) * 0.5
+        val ey = (upperY - lowerY) * 0.5
+        val lx = r1.x * cx + r2.x * cy
+        val ly = r1.y * cx + r2.y * cy
+        val hx = abs(r1.x) * ex + abs(r2.x) * ey
+        val hy = abs(r1.y) * ex + abs(r2.y) * ey
+        return findSegments(lx - hx, ly - hy, lx + hx, ly + hy)
+    }
+
+    /**
+     * Gets a vertex in world space without allocating.
+     *
+     * @param i   Index of the vertex.
+     * @param out Receives the vertex.
+     */
+    internal fun worldVertex(i: Int, out: Vec2) {
+        val v = vertices[i]
+        out.set(
+            orientation.row1.x * v.x + orientation.row1.y * v.y + body.position.x,
+            orientation.row2.x * v.x + orientation.row2.y * v.y + body.position.y
+        )
+    }
+
+    /**
+     * Chains are static and have no mass. Makes the body static, so it cannot become dynamic.
+     *
+     * @param density Ignored.
+     */
+    override fun calcMass(density: Double) {
+        (body as? PhysicalBodyInterface)?.setStatic()
+    }
+
+    /**
+     * Generates an AABB around the rotated bounds of the vertices.
+     */
+    override fun createAABB() {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        val cx = (lowerX + upperX) * 0.5
+        val cy = (lowerY + upperY) * 0.5
+        val ex = (upperX - lowerX) * 0.5
+        val ey = (upperY - lowerY) * 0.5
+        val x = r1.x * cx + r1.y * cy
+        val y = r2.x * cx + r2.y * cy
+        val hx = abs(r1.x) * ex + abs(r1.y) * ey
+        val hy = abs(r2.x) * ex + abs(r2.y) * ey
+        body.aabb.set(x - hx, y - hy, x + hx, y + hy)
+    }
+
+    /**
+     * Chains have no inside.
+     */
+    override fun isPointInside(startPoint: Vec2): Boolean {
+        return false
+    }
+
+    /**
+     * Chains have no inside.
+     */
+    override fun testPoint(x: Double, y: Double): Boolean {
+        return false
+    }
+
+    override fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        val ox = x - body.position.x
+        val oy = y - body.position.y
+        val cx = r1.x * ox + r2.x * oy
+        val cy = r1.y * ox + r2.y * oy
+        val found = findSegments(cx - radius, cy - radius, cx + radius, cy + radius)
+        for (k in 0 until found) {
+            val s = vertices[hits[k]]
+            val e = vertices[hits[k] + 1]
+            val dx = e.x - s.x
+            val dy = e.y - s.y
+            val t = (((cx - s.x) * dx + (cy - s.y) * dy) / (dx * dx + dy * dy)).coerceIn(.0, 1.0)
+            val qx = cx - s.x - t * dx
+            val qy = cy - s.y - t * dy
+            if (qx * qx + qy * qy <= radius * radius) return true
+        }
+        return false
+    }
+
+    override fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement {
+        val result = RaycastResult()
+        val length = startPoint.distance(endPoint)
+        if (length == .0 || !raycast(startPoint.x, startPoint.y, endPoint.x, endPoint.y, minOf(1.0, maxDistance / length), result)) {
+            return IntersectionReturnElement(.0, .0, false, null, maxDistance)
+        }
+        return IntersectionReturnElement(
+            startPoint.x + (endPoint.x - startPoint.x) * result.fraction,
+            startPoint.y + (endPoint.y - startPoint.y) * result.fraction,
+            true, body, result.fraction * length
+        )
+    }
+
+    /**
+     * Casts a ray against the segments. Segments are hit from both sides, the normal faces the start of the ray.
+     */
+    override fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+
+        //Ray in object space of the chain
+        val ox = startX - body.position.x
+        val oy = startY - body.position.y
+        val p1x = r1.x * ox + r2.x * oy
+        val p1y = r1.y * ox + r2.y * oy
+        val ex = endX - body.position.x
+        val ey = endY - body.position.y
+        val dx = r1.x * ex + r2.x * ey - p1x
+        val dy = r1.y * ex + r2.y * ey - p1y
+
+        val found = findCrossedSegments(p1x, p1y, p1x + dx * maxFraction, p1y + dy * maxFraction)
+        var fraction = maxFraction
+        var index = -1
+        for (k in 0 until found) {
+            val i = hits[k]
+            val s = vertices[i]
+            val e = vertices[i + 1]
+            val sx = e.x - s.x
+            val sy = e.y - s.y
+            val denominator = dx * sy - dy * sx
+            if (denominator == .0) continue
+            val qx = s.x - p1x
+            val qy = s.y - p1y
+            val t = (qx * sy - qy * sx) / denominator
+            val u = (qx * dy - qy * dx) / denominator
+            if (t < 0 || t > fraction || u < 0 || u > 1) continue
+            fraction = t
+            index = i
+        }
+        if (index < 0) return false
+
+        //Segment normal turned towards the ray
+        val s = vertices[index]
+        val e = vertices[index + 1]
+        var nx = s.y - e.y
+        var ny = e.x - s.x
+        val length = sqrt(nx * nx + ny * ny)
+        nx /= length
+        ny /= length
+        if (nx * dx + ny * dy > 0) {
+            nx = -nx
+            ny = -ny
+        }
+        result.fraction = fraction
+        result.normal.set(r1.x * nx + r1.y * ny, r2.x * nx + r2.y * ny)
+        result.index = index
+        return true
+    }
+}
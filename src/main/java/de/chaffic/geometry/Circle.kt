@@ -1,9 +1,10 @@
 package de.chaffic.geometry
 
-import de.chaffic.collision.AxisAlignedBoundingBox
+import de.chaffic.dynamics.Physics
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
 import kotlin.math.sqrt
 
 /**
@@ -33,7 +34,7 @@ class Circle
      * Generates an AABB and binds it to the body.
      */
     override fun createAABB() {
-        this.body.aabb = AxisAlignedBoundingBox(Vec2(-radius, -radius), Vec2(radius, radius))
+        body.aabb.set(-radius, -radius, radius, radius)
     }
 
     /**
@@ -47,6 +48,19 @@ class Circle
         return d.length() <= radius
     }
 
+    override fun testPoint(x: Double, y: Double): Boolean {
+        val dx = x - body.position.x
+        val dy = y - body.position.y
+        return dx * dx + dy * dy <= radius * radius
+    }
+
+    override fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean {
+        val dx = x - body.position.x
+        val dy = y - body.position.y
+        val r = this.radius + radius
+        return dx * dx + dy * dy <= r * r
+    }
+
     override fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement {
         var minPx = 0.0
         var minPy = 0.0
@@ -77,4 +91,27 @@ class Circle
         }
         return IntersectionReturnElement(minPx, minPy, intersectionFound, closestBody, maxD)
     }
+
+    override fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean {
+        val sx = startX - body.position.x
+        val sy = startY - body.position.y
+        val dx = endX - startX
+        val dy = endY - startY
+        val b = sx * dx + sy * dy
+        val c = sx * sx + sy * sy - radius * radius
+        val rr = dx * dx + dy * dy
+        val sigma = b * b - rr * c
+        if (sigma < 0.0 || rr < Physics.EPSILON) {
+            return false
+        }
+        val a = -(b + sqrt(sigma))
+        if (a < 0.0 || a > maxFraction * rr) {
+            return false
+        }
+        val fraction = a / rr
+        result.fraction = fraction
+        result.normal.set(sx + fraction * dx, sy + fraction * dy).normalize()
+        result.index = -1
+        return true
+    }
 }
\ No newline at end of file
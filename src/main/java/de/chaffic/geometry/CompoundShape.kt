@@ -0,0 +1,314 @@
+package de.chaffic.geometry
+
+import de.chaffic.collision.bodies.ChildBody
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.math.Mat2
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import kotlin.math.abs
+
+/**
+ * Shape made of several convex circles and polygons placed relative to the body, for concave objects that would
+ * otherwise need several jointed bodies. Mass and inertia of all children are combined into the body, and the centroid of
+ * the children becomes the centre of the body when the shape is bound to it.
+ *
+ * Every child is positioned by a lightweight [ChildBody], so the narrow phase collides children like ordinary shapes.
+ * A small bounding volume hierarchy over the children in object space limits the narrow phase to the children that
+ * overlap the other body.
+ *
+ * Children must be added before the shape is bound to a body.
+ */
+class CompoundShape : Shape() {
+    private val shapes = ArrayList<Shape>()
+    private val offsets = ArrayList<Vec2>()
+    private val rotations = ArrayList<Mat2>()
+    private val proxies = ArrayList<ChildBody>()
+    private var bound = false
+
+    //Hierarchy of the children in object space
+    private var tree = BoundsTree(DoubleArray(0), DoubleArray(0), DoubleArray(0), DoubleArray(0))
+
+    /**
+     * Indices of the children found by the last [query].
+     */
+    internal val hits: IntArray
+        get() = tree.hits
+
+    /**
+     * Child shapes in the order they were added.
+     */
+    val children: List<Shape>
+        get() = shapes
+
+    /**
+     * Adds a child shape.
+     *
+     * @param shape Circle or polygon to add, must not be used by any body.
+     * @param x     X offset of the child in object space.
+     * @param y     Y offset of the child in object space.
+     * @param angle Rotation of the child in object space.
+     * @return This shape.
+     */
+    @JvmOverloads
+    fun addChild(shape: Shape, x: Double, y: Double, angle: Double = .0): CompoundShape {
+        require(!bound) { "Children must be added before the shape is bound to a body" }
+        require(shape is Circle || shape is Polygon) { "Children must be circles or polygons" }
+        shapes.add(shape)
+        offsets.add(Vec2(x, y))
+        rotations.add(Mat2(angle))
+        proxies.add(ChildBody(this, shape))
+        return this
+    }
+
+    /**
+     * Gets the offset of a child from the centre of the body in object space.
+     *
+     * @param i Index of the child.
+     * @return Offset of the child.
+     */
+    fun offsetOf(i: Int): Vec2 {
+        return offsets[i]
+    }
+
+    /**
+     * Gets the body positioning a child in world space.
+     *
+     * @param i Index of the child.
+     * @return Body of the child.
+     */
+    internal fun child(i: Int): ChildBody {
+        return proxies[i]
+    }
+
+    /**
+     * Combines area and inertia of all children around the centre of the body. Binding the shape to a body centres the
+     * children and builds the hierarchy.
+     *
+     * @param density The desired density to factor into the calculation.
+     */
+    override fun calcMass(density: Double) {
+        if (!bound) bind()
+        val physicalBody = this.body
+        if (physicalBody !is PhysicalBodyInterface) return
+        var area = .0
+        var inertia = .0
+        for (i in shapes.indices) {
+            val childArea = areaOf(shapes[i])
+            val offset = offsets[i]
+            area += childArea
+            inertia += inertiaOf(shapes[i]) + childArea * offset.lengthSquared()
+        }
+        physicalBody.mass = density * area
+        physicalBody.invMass = if (physicalBody.mass != 0.0) 1.0 / physicalBody.mass else 0.0
+        physicalBody.inertia = inertia * density
+        physicalBody.invInertia = if (physicalBody.inertia != 0.0) 1.0 / physicalBody.inertia else 0.0
+    }
+
+    /**
+     * Updates the AABB of the body to encompass all children. Binding the shape to a body centres the children and builds
+     * the hierarchy.
+     */
+    override fun createAABB() {
+        if (!bound) bind()
+        var minX = Double.POSITIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        for (i in shapes.indices) {
+            val child = proxies[i]
+            orient(i)
+            shapes[i].createAABB()
+            val offset = offsets[i]
+            val ox = r1.x * offset.x + r1.y * offset.y
+            val oy = r2.x * offset.x + r2.y * offset.y
+            val aabb = child.aabb
+            minX = minOf(minX, ox + aabb.min.x)
+            minY = minOf(minY, oy + aabb.min.y)
+            maxX = maxOf(maxX, ox + aabb.max.x)
+            maxY = maxOf(maxY, oy + aabb.max.y)
+        }
+        if (shapes.isEmpty()) {
+            minX = .0
+            minY = .0
+            maxX = .0
+            maxY = .0
+        }
+        body.aabb.set(minX, minY, maxX, maxY)
+    }
+
+    /**
+     * Moves the bodies of all children to their place in world space.
+     */
+    internal fun updateChildren() {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        val p = body.position
+        for (i in shapes.indices) {
+            val offset = offsets[i]
+            proxies[i].position.set(r1.x * offset.x + r1.y * offset.y + p.x, r2.x * offset.x + r2.y * offset.y + p.y)
+            orient(i)
+        }
+    }
+
+    /**
+     * Finds the children whose bounds overlap a box in world space. The indices are stored in [hits].
+     *
+     * @return Number of children found.
+     */
+    internal fun query(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+
+        //Box in object space
+        val cx = (lowerX + upperX) * 0.5 - body.position.x
+        val cy = (lowerY + upperY) * 0.5 - body.position.y
+        val ex = (upperX - lowerX) * 0.5
+        val ey = (upperY - lowerY) * 0.5
+        val lx = r1.x * cx + r2.x * cy
+        val ly = r1.y * cx + r2.y * cy
+        val hx = abs(r1.x) * ex + abs(r2.x) * ey
+        val hy = abs(r1.y) * ex + abs(r2.y) * ey
+
+        return tree.query(lx - hx, ly - hy, lx + hx, ly + hy)
+    }
+
+    /**
+     * Sets the world orientation of a child from the orientation of the body and the rotation of the child.
+     */
+    private fun orient(i: Int) {
+        val m = orientation
+        val l = rotations[i]
+        val c = shapes[i].orientation
+        c.row1.x = m.row1.x * l.row1.x + m.row1.y * l.row2.x
+        c.row1.y = m.row1.x * l.row1.y + m.row1.y * l.row2.y
+        c.row2.x = m.row2.x * l.row1.x + m.row2.y * l.row2.x
+        c.row2.y = m.row2.x * l.row1.y + m.row2.y * l.row2.y
+    }
+
+    /**
+     * Moves the children so their centroid lies on the centre of the body and builds the hierarchy.
+     */
+    private fun bind() {
+        bound = true
+        var area = .0
+        var cx = .0
+        var cy = .0
+        for (i in shapes.indices) {
+            val childArea = areaOf(shapes[i])
+            area += childArea
+            cx += offsets[i].x * childArea
+            cy += offsets[i].y * childArea
+        }
+        if (area > 0) {
+            for (offset in offsets) {
+                offset.set(offset.x - cx / area, offset.y - cy / area)
+            }
+        }
+        buildHierarchy()
+    }
+
+    private fun buildHierarchy() {
+        val n = shapes.size
+        val minX = DoubleArray(n)
+        val minY = DoubleArray(n)
+        val maxX = DoubleArray(n)
+        val maxY = DoubleArray(n)
+        for (i in 0 until n) {
+            val shape = shapes[i]
+            val offset = offsets[i]
+            if (shape is Circle) {
+                minX[i] = offset.x - shape.radius
+                minY[i] = offset.y - shape.radius
+                maxX[i] = offset.x + shape.radius
+                maxY[i] = offset.y + shape.radius
+            } else {
+                val r = rotations[i]
+                minX[i] = Double.POSITIVE_INFINITY
+                minY[i] = Double.POSITIVE_INFINITY
+                maxX[i] = Double.NEGATIVE_INFINITY
+                maxY[i] = Double.NEGATIVE_INFINITY
+                for (v in (shape as Polygon).vertices) {
+                    val x = r.row1.x * v.x + r.row1.y * v.y + offset.x
+                    val y = r.row2.x * v.x + r.row2.y * v.y + offset.y
+                    minX[i] = minOf(minX[i], x)
+                    minY[i] = minOf(minY[i], y)
+                    maxX[i] = maxOf(maxX[i], x)
+                    maxY[i] = maxOf(maxY[i], y)
+                }
+            }
+        }
+        tree = BoundsTree(minX, minY, maxX, maxY)
+    }
+
+    override fun isPointInside(startPoint: Vec2): Boolean {
+        updateChildren()
+        for (shape in shapes) {
+            if (shape.isPointInside(startPoint)) return true
+        }
+        return false
+    }
+
+    override fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement {
+        updateChildren()
+        var closest = IntersectionReturnElement(.0, .0, false, null, maxDistance)
+        for (shape in shapes) {
+            val element = shape.rayIntersect(startPoint, endPoint, closest.maxDistance, rayLength)
+            if (element.intersectionFound) {
+                closest = IntersectionReturnElement(element.minPx, element.minPy, true, body, element.maxDistance)
+            }
+        }
+        return closest
+    }
+
+    override fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean {
+        updateChildren()
+        var fraction = maxFraction
+        var hit = false
+        for (shape in shapes) {
+            if (shape.raycast(startX, startY, endX, endY, fraction, result)) {
+                fraction = result.fraction
+                hit = true
+            }
+        }
+        return hit
+    }
+
+    override fun testPoint(x: Double, y: Double): Boolean {
+        updateChildren()
+        for (shape in shapes) {
+            if (shape.testPoint(x, y)) return true
+        }
+        return false
+    }
+
+    override fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean {
+        updateChildren()
+        for (shape in shapes) {
+            if (shape.overlapsCircle(x, y, radius)) return true
+        }
+        return false
+    }
+
+    private companion object {
+        fun areaOf(shape: Shape): Double {
+            return if (shape is Circle) StrictMath.PI * shape.radius * shape.radius else (shape as Polygon).geometry.area
+        }
+
+        /**
+         * Inertia of a child about its own centre for a density of one, matching [Circle.calcMass] and [Polygon.calcMass].
+         */
+        fun inertiaOf(shape: Shape): Double {
+            return if (shape is Circle) areaOf(shape) * shape.radius * shape.radius else (shape as Polygon).geometry.inertia
+        }
+    }
+}
+
+/**
+ * Gets the squared length of the vector.
+ */
+private fun Vec2.lengthSquared(): Double {
+    return x * x + y * y
+}
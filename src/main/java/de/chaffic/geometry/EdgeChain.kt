@@ -0,0 +1,34 @@
+package de.chaffic.geometry
+
+import de.chaffic.math.Vec2
+
+/**
+ * Static chain of arbitrary segments, for terrain like caves and overhangs. The segments are indexed by a bounding volume
+ * hierarchy in object space.
+ *
+ * @param vertices Vertices of the polyline in object space, at least two.
+ */
+class EdgeChain(vertices: Array<Vec2>) : ChainShape(vertices) {
+    private val tree: BoundsTree
+
+    init {
+        val n = segmentCount
+        tree = BoundsTree(
+            DoubleArray(n) { minOf(this.vertices[it].x, this.vertices[it + 1].x) },
+            DoubleArray(n) { minOf(this.vertices[it].y, this.vertices[it + 1].y) },
+            DoubleArray(n) { maxOf(this.vertices[it].x, this.vertices[it + 1].x) },
+            DoubleArray(n) { maxOf(this.vertices[it].y, this.vertices[it + 1].y) }
+        )
+    }
+
+    override val hits: IntArray
+        get() = tree.hits
+
+    override fun findSegments(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        return tree.query(lowerX, lowerY, upperX, upperY)
+    }
+
+    override fun findCrossedSegments(startX: Double, startY: Double, endX: Double, endY: Double): Int {
+        return tree.queryRay(startX, startY, endX, endY)
+    }
+}
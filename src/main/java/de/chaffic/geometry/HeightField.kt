@@ -0,0 +1,75 @@
+package de.chaffic.geometry
+
+import de.chaffic.math.Vec2
+import kotlin.math.floor
+
+/**
+ * Static terrain of heights sampled at even spacing along the x axis. The segments under a box are found directly from
+ * its x range, so the cost of a query does not depend on the size of the terrain.
+ *
+ * @param heights Heights of the samples in object space, at least two.
+ * @param spacing Distance between two samples.
+ */
+class HeightField(heights: DoubleArray, val spacing: Double) : ChainShape(Array(heights.size) { Vec2(it * spacing, heights[it]) }) {
+    //Height range of every segment
+    private val lowerY = DoubleArray(segmentCount) { minOf(heights[it], heights[it + 1]) }
+    private val upperY = DoubleArray(segmentCount) { maxOf(heights[it], heights[it + 1]) }
+
+    override val hits = IntArray(segmentCount)
+
+    init {
+        require(spacing > 0) { "Spacing must be positive" }
+    }
+
+    /**
+     * Gets the height of the terrain in object space.
+     *
+     * @param x X coordinate in object space.
+     * @return Height of the terrain, clamped to the first and last sample outside the terrain.
+     */
+    fun heightAt(x: Double): Double {
+        val i = floor(x / spacing).toInt().coerceIn(0, segmentCount - 1)
+        val t = (x / spacing - i).coerceIn(.0, 1.0)
+        return vertices[i].y + (vertices[i + 1].y - vertices[i].y) * t
+    }
+
+    override fun findSegments(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        if (upperX < 0 || lowerX > segmentCount * spacing) return 0
+        val first = floor(lowerX / spacing).toInt().coerceIn(0, segmentCount - 1)
+        val last = floor(upperX / spacing).toInt().coerceIn(0, segmentCount - 1)
+        var found = 0
+        for (i in first..last) {
+            if (this.lowerY[i] <= upperY && this.upperY[i] >= lowerY) hits[found++] = i
+        }
+        return found
+    }
+
+    /**
+     * Walks the columns along the ray and keeps the segments whose height range meets the height of the ray within their
+     * column, so long rays only test the segments close to them.
+     */
+    override fun findCrossedSegments(startX: Double, startY: Double, endX: Double, endY: Double): Int {
+        val lowerX = minOf(startX, endX)
+        val upperX = maxOf(startX, endX)
+        if (upperX < 0 || lowerX > segmentCount * spacing) return 0
+        val first = floor(lowerX / spacing).toInt().coerceIn(0, segmentCount - 1)
+        val last = floor(upperX / spacing).toInt().coerceIn(0, segmentCount - 1)
+        val dx = endX - startX
+        val slope = if (dx == .0) .0 else (endY - startY) / dx
+        var found = 0
+        for (i in first..last) {
+            val y1: Double
+            val y2: Double
+            if (dx == .0) {
+                y1 = startY
+                y2 = endY
+            } else {
+                //Part of the ray within the column
+                y1 = startY + (maxOf(lowerX, i * spacing) - startX) * slope
+                y2 = startY + (minOf(upperX, (i + 1) * spacing) - startX) * slope
+            }
+            if (lowerY[i] <= maxOf(y1, y2) && upperY[i] >= minOf(y1, y2)) hits[found++] = i
+        }
+        return found
+    }
+}
@@ -1,28 +1,37 @@
 package de.chaffic.geometry
 
-import de.chaffic.collision.AxisAlignedBoundingBox
 import de.chaffic.dynamics.bodies.PhysicalBodyInterface
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Math.lineIntersect
 import de.chaffic.math.Math.pointIsOnLine
 import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
 
 /**
- * Class for representing polygon shape.
+ * Class for representing polygon shape. The vertices, normals and mass data live in a [PolygonGeometry] that can be
+ * shared by many polygons.
+ *
+ * @param geometry Geometry of the polygon.
  */
-class Polygon : Shape {
-    var vertices: Array<Vec2>
-    lateinit var normals: Array<Vec2>
+class Polygon(val geometry: PolygonGeometry) : Shape() {
+    /**
+     * Vertices of the shared geometry, must not be modified.
+     */
+    val vertices: Array<Vec2>
+        get() = geometry.vertices
+
+    /**
+     * Face normals of the shared geometry, must not be modified.
+     */
+    val normals: Array<Vec2>
+        get() = geometry.normals
 
     /**
      * Constructor takes a supplied list of vertices and generates a convex hull around them.
      *
      * @param vertList Vertices of polygon to create.
      */
-    constructor(vertList: Array<Vec2>) {
-        vertices = generateHull(vertList, vertList.size)
-        calcNormals()
-    }
+    constructor(vertList: Array<Vec2>) : this(PolygonGeometry.hull(vertList))
 
     /**
      * Constructor to generate a rectangle.
@@ -30,20 +39,7 @@ class Polygon : Shape {
      * @param width  Desired width of rectangle
      * @param height Desired height of rectangle
      */
-    constructor(width: Double, height: Double) {
-        vertices = arrayOf(
-            Vec2(-width, -height),
-            Vec2(width, -height),
-            Vec2(width, height),
-            Vec2(-width, height)
-        )
-        normals = arrayOf(
-            Vec2(0.0, -1.0),
-            Vec2(1.0, 0.0),
-            Vec2(0.0, 1.0),
-            Vec2(-1.0, 0.0)
-        )
-    }
+    constructor(width: Double, height: Double) : this(PolygonGeometry.box(width, height))
 
     /**
      * Generate a regular polygon with a specified number of sides and size.
@@ -51,140 +47,41 @@ class Polygon : Shape {
      * @param radius    The maximum distance any vertex is away from the center of mass.
      * @param noOfSides The desired number of face the polygon has.
      */
-    constructor(radius: Int, noOfSides: Int) {
-        val vertices = MutableList(noOfSides) { Vec2() }
-        for (i in 0 until noOfSides) {
-            val angle = 2 * Math.PI / noOfSides * (i + 0.75)
-            val pointX = radius * StrictMath.cos(angle)
-            val pointY = radius * StrictMath.sin(angle)
-            vertices[i] = Vec2(pointX, pointY)
-        }
-        this.vertices = vertices.toList().toTypedArray()
-        calcNormals()
-    }
+    constructor(radius: Int, noOfSides: Int) : this(PolygonGeometry.regular(radius.toDouble(), noOfSides))
 
     /**
-     * Generates normals for each face of the polygon. Positive normals of polygon faces face outward.
-     */
-    private fun calcNormals() {
-        val normals = MutableList(vertices.size) { Vec2() }
-        for (i in vertices.indices) {
-            val face = vertices[if (i + 1 == vertices.size) 0 else i + 1].minus(vertices[i])
-            normals[i] = face.normal().normalize().unaryMinus()
-        }
-        this.normals = normals.toList().toTypedArray()
-    }
-
-    /**
-     * Implementation of calculating the mass of a polygon.
+     * Implementation of calculating the mass of a polygon from the area and inertia of its geometry.
      *
      * @param density The desired density to factor into the calculation.
      */
     override fun calcMass(density: Double) {
         val physicalBody = this.body
         if(physicalBody !is PhysicalBodyInterface) return
-        var centroidDistVec: Vec2? = Vec2(0.0, 0.0)
-        var area = 0.0
-        var inertia = 0.0
-        val k = 1.0 / 3.0
-        for (i in vertices.indices) {
-            val point1 = vertices[i]
-            val point2 = vertices[(i + 1) % vertices.size]
-            val areaOfParallelogram = point1.cross(point2)
-            val triangleArea = 0.5 * areaOfParallelogram
-            area += triangleArea
-            val weight = triangleArea * k
-            centroidDistVec!!.add(point1.scalar(weight))
-            centroidDistVec.add(point2.scalar(weight))
-            val intx2 = point1.x * point1.x + point2.x * point1.x + point2.x * point2.x
-            val inty2 = point1.y * point1.y + point2.y * point1.y + point2.y * point2.y
-            inertia += 0.25 * k * areaOfParallelogram * (intx2 + inty2)
-        }
-        centroidDistVec = centroidDistVec!!.scalar(1.0 / area)
-        for (i in vertices.indices) {
-            vertices[i] = vertices[i].minus(centroidDistVec)
-        }
-        physicalBody.mass = density * area
+        physicalBody.mass = density * geometry.area
         physicalBody.invMass = if (physicalBody.mass != 0.0) 1.0 / physicalBody.mass else 0.0
-        physicalBody.inertia = inertia * density
+        physicalBody.inertia = geometry.inertia * density
         physicalBody.invInertia = if (physicalBody.inertia != 0.0) 1.0 / physicalBody.inertia else 0.0
     }
 
     /**
-     * Generates an AABB encompassing the polygon and binds it to the body.
+     * Updates the AABB of the body in place to encompass the polygon.
      */
     override fun createAABB() {
-        val firstPoint = orientation.mul(vertices[0], Vec2())
-        var minX = firstPoint.x
-        var maxX = firstPoint.x
-        var minY = firstPoint.y
-        var maxY = firstPoint.y
-        for (i in 1 until vertices.size) {
-            val point = orientation.mul(vertices[i], Vec2())
-            val px = point.x
-            val py = point.y
-            if (px < minX) {
-                minX = px
-            } else if (px > maxX) {
-                maxX = px
-            }
-            if (py < minY) {
-                minY = py
-            } else if (py > maxY) {
-                maxY = py
-            }
-        }
-        this.body.aabb = AxisAlignedBoundingBox(Vec2(minX, minY), Vec2(maxX, maxY))
-    }
-
-    /**
-     * Generates a convex hull around the vertices supplied.
-     *
-     * @param vertices List of vertices.
-     * @param n        Number of vertices supplied.
-     * @return Returns a convex hull array.
-     */
-    private fun generateHull(vertices: Array<Vec2>, n: Int): Array<Vec2> {
-        val hull = ArrayList<Vec2>()
-        var firstPointIndex = 0
-        var minX = Double.MAX_VALUE
-        for (i in 0 until n) {
-            val x = vertices[i].x
-            if (x < minX) {
-                firstPointIndex = i
-                minX = x
-            }
-        }
-        var point = firstPointIndex
-        var currentEvalPoint: Int
-        var first = true
-        while (point != firstPointIndex || first) {
-            first = false
-            hull.add(vertices[point])
-            currentEvalPoint = (point + 1) % n
-            for (i in 0 until n) {
-                if (sideOfLine(vertices[point], vertices[i], vertices[currentEvalPoint]) == -1) currentEvalPoint = i
-            }
-            point = currentEvalPoint
-        }
-        val hulls = MutableList(hull.size) { Vec2() }
-        for (i in hull.indices) {
-            hulls[i] = hull[i]
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        var minX = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        for (v in vertices) {
+            val px = r1.x * v.x + r1.y * v.y
+            val py = r2.x * v.x + r2.y * v.y
+            if (px < minX) minX = px
+            if (px > maxX) maxX = px
+            if (py < minY) minY = py
+            if (py > maxY) maxY = py
         }
-        return hulls.toList().toTypedArray()
-    }
-
-    /**
-     * Checks which side of a line a point is on.
-     *
-     * @param p1    Vertex of line to evaluate.
-     * @param p2    Vertex of line to evaluate.
-     * @param point Point to check which side it lies on.
-     * @return Int value - positive = right side of line. Negative = left side of line.
-     */
-    private fun sideOfLine(p1: Vec2, p2: Vec2, point: Vec2): Int {
-        val value = (p2.y - p1.y) * (point.x - p2.x) - (p2.x - p1.x) * (point.y - p2.y)
-        return if (value > 0) 1 else if (value == 0.0) 0 else -1
+        body.aabb.set(minX, minY, maxX, maxY)
     }
 
     /**
@@ -210,6 +107,61 @@ class Polygon : Shape {
         return true
     }
 
+    override fun testPoint(x: Double, y: Double): Boolean {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+        val ox = x - body.position.x
+        val oy = y - body.position.y
+        val px = r1.x * ox + r2.x * oy
+        val py = r1.y * ox + r2.y * oy
+        for (i in vertices.indices) {
+            if (normals[i].x * (px - vertices[i].x) + normals[i].y * (py - vertices[i].y) > 0) {
+                return false
+            }
+        }
+        return true
+    }
+
+    override fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+
+        //Circle centre in object space of the polygon
+        val ox = x - body.position.x
+        val oy = y - body.position.y
+        val cx = r1.x * ox + r2.x * oy
+        val cy = r1.y * ox + r2.y * oy
+
+        //Face of least penetration
+        var separation = -Double.MAX_VALUE
+        var face = 0
+        for (i in vertices.indices) {
+            val s = normals[i].x * (cx - vertices[i].x) + normals[i].y * (cy - vertices[i].y)
+            if (s > radius) {
+                return false
+            }
+            if (s > separation) {
+                separation = s
+                face = i
+            }
+        }
+        if (separation <= 0) {
+            return true
+        }
+
+        //Closest point on the face to the centre
+        val v1 = vertices[face]
+        val v2 = vertices[if (face + 1 == vertices.size) 0 else face + 1]
+        val ex = v2.x - v1.x
+        val ey = v2.y - v1.y
+        val lengthSquared = ex * ex + ey * ey
+        var t = if (lengthSquared > 0) ((cx - v1.x) * ex + (cy - v1.y) * ey) / lengthSquared else 0.0
+        t = t.coerceIn(0.0, 1.0)
+        val dx = cx - (v1.x + ex * t)
+        val dy = cy - (v1.y + ey * t)
+        return dx * dx + dy * dy <= radius * radius
+    }
+
     override fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement {
         var minPx = 0.0
         var minPy = 0.0
@@ -238,4 +190,49 @@ class Polygon : Shape {
         }
         return IntersectionReturnElement(minPx, minPy, intersectionFound, closestBody, maxD)
     }
+
+    override fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean {
+        val r1 = orientation.row1
+        val r2 = orientation.row2
+
+        //Ray in object space of the polygon
+        val ox = startX - body.position.x
+        val oy = startY - body.position.y
+        val p1x = r1.x * ox + r2.x * oy
+        val p1y = r1.y * ox + r2.y * oy
+        val ex = endX - body.position.x
+        val ey = endY - body.position.y
+        val dx = r1.x * ex + r2.x * ey - p1x
+        val dy = r1.y * ex + r2.y * ey - p1y
+
+        //Clips the ray against every face plane
+        var lower = 0.0
+        var upper = maxFraction
+        var index = -1
+        for (i in vertices.indices) {
+            val n = normals[i]
+            val numerator = n.x * (vertices[i].x - p1x) + n.y * (vertices[i].y - p1y)
+            val denominator = n.x * dx + n.y * dy
+            if (denominator == 0.0) {
+                if (numerator < 0.0) {
+                    return false
+                }
+            } else if (denominator < 0.0 && numerator < lower * denominator) {
+                lower = numerator / denominator
+                index = i
+            } else if (denominator > 0.0 && numerator < upper * denominator) {
+                upper = numerator / denominator
+            }
+            if (upper < lower) {
+                return false
+            }
+        }
+        if (index < 0) {
+            return false
+        }
+        result.fraction = lower
+        orientation.mul(normals[index], result.normal)
+        result.index = index
+        return true
+    }
 }
\ No newline at end of file
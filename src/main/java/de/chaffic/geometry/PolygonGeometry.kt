@@ -0,0 +1,265 @@
+package de.chaffic.geometry
+
+import de.chaffic.math.Vec2
+import kotlin.math.atan2
+import kotlin.math.roundToInt
+
+/**
+ * Immutable geometry of a convex polygon, shared by every [Polygon] created from it. Vertices are centred on their
+ * centroid, face normals, area and inertia are computed once on construction, so many identical bodies only store one
+ * copy of their geometry. Per body state like the orientation stays on the [Polygon].
+ *
+ * Extreme vertex and face queries hill climb along the convex boundary from a start index, so repeated queries with
+ * slowly turning directions only take a few steps. Regular polygons find their start index from the angle of the
+ * direction, so their queries take constant time regardless of the number of sides.
+ *
+ * The vertex and normal arrays are shared and must not be modified.
+ */
+class PolygonGeometry private constructor(
+    vertices: Array<Vec2>,
+    private val firstAngle: Double = Double.NaN,
+    box: Boolean = false
+) {
+    /**
+     * Vertices in counter clockwise order, centred on the centroid.
+     */
+    val vertices: Array<Vec2>
+
+    /**
+     * Outward facing normal of the face starting at each vertex.
+     */
+    val normals: Array<Vec2>
+
+    /**
+     * Area of the polygon.
+     */
+    val area: Double
+
+    /**
+     * Rotational inertia about the centroid for a density of one.
+     */
+    val inertia: Double
+
+    /**
+     * Whether the polygon is regular, which allows constant time support queries.
+     */
+    val isRegular: Boolean
+        get() = !firstAngle.isNaN()
+
+    /**
+     * Whether the polygon is a rectangle created by [box], with its faces along the axes of its object space. The vertex
+     * at index 2 then holds the half width and half height.
+     */
+    val isBox = box
+
+    init {
+        //Area and centroid of the vertices as supplied
+        var signedArea = 0.0
+        var cx = 0.0
+        var cy = 0.0
+        for (i in vertices.indices) {
+            val p1 = vertices[i]
+            val p2 = vertices[(i + 1) % vertices.size]
+            val triangleArea = 0.5 * p1.cross(p2)
+            signedArea += triangleArea
+            cx += (p1.x + p2.x) * triangleArea / 3.0
+            cy += (p1.y + p2.y) * triangleArea / 3.0
+        }
+        if (signedArea != 0.0) {
+            cx /= signedArea
+            cy /= signedArea
+        }
+        this.vertices = Array(vertices.size) { Vec2(vertices[it].x - cx, vertices[it].y - cy) }
+
+        //Inertia about the centroid
+        var inertia = 0.0
+        for (i in this.vertices.indices) {
+            val p1 = this.vertices[i]
+            val p2 = this.vertices[(i + 1) % this.vertices.size]
+            val intx2 = p1.x * p1.x + p2.x * p1.x + p2.x * p2.x
+            val inty2 = p1.y * p1.y + p2.y * p1.y + p2.y * p2.y
+            inertia += p1.cross(p2) * (intx2 + inty2) / 12.0
+        }
+        this.area = signedArea
+        this.inertia = inertia
+        this.normals = Array(this.vertices.size) {
+            val face = this.vertices[if (it + 1 == this.vertices.size) 0 else it + 1].minus(this.vertices[it])
+            face.normal().normalize().unaryMinus()
+        }
+    }
+
+    /**
+     * Finds the vertex furthest along a direction.
+     *
+     * @param dx   Direction x in object space.
+     * @param dy   Direction y in object space.
+     * @param hint Index to start the search from, a result of an earlier query for a similar direction. Negative if unknown.
+     * @return Index of the extreme vertex.
+     */
+    @JvmOverloads
+    fun support(dx: Double, dy: Double, hint: Int = -1): Int {
+        val start = if (hint in vertices.indices) hint else startIndex(dx, dy, .0)
+        return climb(vertices, dx, dy, start)
+    }
+
+    /**
+     * Finds the face whose normal points furthest along a direction.
+     *
+     * @param dx   Direction x in object space.
+     * @param dy   Direction y in object space.
+     * @param hint Index to start the search from, a result of an earlier query for a similar direction. Negative if unknown.
+     * @return Index of the face.
+     */
+    @JvmOverloads
+    fun supportFace(dx: Double, dy: Double, hint: Int = -1): Int {
+        val start = if (hint in normals.indices) hint else startIndex(dx, dy, 0.5)
+        return climb(normals, dx, dy, start)
+    }
+
+    /**
+     * Estimates the index closest to a direction from its angle for regular polygons.
+     *
+     * @param offset Angle of the element at index zero relative to the first vertex in steps.
+     */
+    private fun startIndex(dx: Double, dy: Double, offset: Double): Int {
+        if (!isRegular) return 0
+        val n = vertices.size
+        val step = 2 * Math.PI / n
+        val i = ((atan2(dy, dx) - firstAngle) / step - offset).roundToInt() % n
+        return if (i < 0) i + n else i
+    }
+
+    /**
+     * Walks along the boundary while the projection increases. Projections of a convex polygon along its boundary rise
+     * to a single maximum and fall again, so the local maximum found is the global one.
+     */
+    private fun climb(points: Array<Vec2>, dx: Double, dy: Double, start: Int): Int {
+        val n = points.size
+        var i = start
+        var best = points[i].x * dx + points[i].y * dy
+        for (direction in intArrayOf(1, n - 1)) {
+            var moved = false
+            for (steps in 0 until n) {
+                val next = (i + direction) % n
+                val projection = points[next].x * dx + points[next].y * dy
+                if (projection <= best) break
+                best = projection
+                i = next
+                moved = true
+            }
+            if (moved) break
+        }
+        return i
+    }
+
+    companion object {
+        /**
+         * Creates the geometry of the convex hull around the supplied vertices.
+         *
+         * @param vertList Vertices to wrap.
+         * @return Geometry of the hull.
+         */
+        @JvmStatic
+        fun hull(vertList: Array<Vec2>): PolygonGeometry {
+            return PolygonGeometry(removeCollinear(generateHull(vertList, vertList.size)))
+        }
+
+        /**
+         * Creates the geometry of a rectangle.
+         *
+         * @param width  Half width of the rectangle.
+         * @param height Half height of the rectangle.
+         * @return Geometry of the rectangle.
+         */
+        @JvmStatic
+        fun box(width: Double, height: Double): PolygonGeometry {
+            return PolygonGeometry(
+                arrayOf(
+                    Vec2(-width, -height),
+                    Vec2(width, -height),
+                    Vec2(width, height),
+                    Vec2(-width, height)
+                ), box = true
+            )
+        }
+
+        /**
+         * Creates the geometry of a regular polygon.
+         *
+         * @param radius    The maximum distance any vertex is away from the center of mass.
+         * @param noOfSides The number of faces of the polygon.
+         * @return Geometry of the regular polygon.
+         */
+        @JvmStatic
+        fun regular(radius: Double, noOfSides: Int): PolygonGeometry {
+            val step = 2 * Math.PI / noOfSides
+            return PolygonGeometry(Array(noOfSides) {
+                val angle = step * (it + 0.75)
+                Vec2(radius * StrictMath.cos(angle), radius * StrictMath.sin(angle))
+            }, step * 0.75)
+        }
+
+        /**
+         * Generates a convex hull around the vertices supplied.
+         *
+         * @param vertices List of vertices.
+         * @param n        Number of vertices supplied.
+         * @return Returns a convex hull array.
+         */
+        private fun generateHull(vertices: Array<Vec2>, n: Int): Array<Vec2> {
+            val hull = ArrayList<Vec2>()
+            var firstPointIndex = 0
+            var minX = Double.MAX_VALUE
+            for (i in 0 until n) {
+                val x = vertices[i].x
+                if (x < minX) {
+                    firstPointIndex = i
+                    minX = x
+                }
+            }
+            var point = firstPointIndex
+            var currentEvalPoint: Int
+            var first = true
+            while (point != firstPointIndex || first) {
+                first = false
+                hull.add(vertices[point])
+                currentEvalPoint = (point + 1) % n
+                for (i in 0 until n) {
+                    if (sideOfLine(vertices[point], vertices[i], vertices[currentEvalPoint]) == -1) currentEvalPoint = i
+                }
+                point = currentEvalPoint
+            }
+            return hull.toTypedArray()
+        }
+
+        /**
+         * Removes hull vertices lying on the line between their neighbours, which would stall support queries.
+         *
+         * @param hull Convex hull.
+         * @return Hull without collinear vertices.
+         */
+        private fun removeCollinear(hull: Array<Vec2>): Array<Vec2> {
+            if (hull.size <= 3) return hull
+            val kept = ArrayList<Vec2>(hull.size)
+            for (i in hull.indices) {
+                val previous = hull[if (i == 0) hull.size - 1 else i - 1]
+                val next = hull[if (i + 1 == hull.size) 0 else i + 1]
+                if (sideOfLine(previous, next, hull[i]) != 0) kept.add(hull[i])
+            }
+            return if (kept.size >= 3) kept.toTypedArray() else hull
+        }
+
+        /**
+         * Checks which side of a line a point is on.
+         *
+         * @param p1    Vertex of line to evaluate.
+         * @param p2    Vertex of line to evaluate.
+         * @param point Point to check which side it lies on.
+         * @return Int value - positive = right side of line. Negative = left side of line.
+         */
+        private fun sideOfLine(p1: Vec2, p2: Vec2, point: Vec2): Int {
+            val value = (p2.y - p1.y) * (point.x - p2.x) - (p2.x - p1.x) * (point.y - p2.y)
+            return if (value > 0) 1 else if (value == 0.0) 0 else -1
+        }
+    }
+}
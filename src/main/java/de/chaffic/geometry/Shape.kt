@@ -4,6 +4,7 @@ import de.chaffic.collision.bodies.CollisionBodyInterface
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
 
 /**
  * Abstract class presenting a geometric shape.
@@ -37,5 +38,37 @@ abstract class Shape {
      */
     abstract fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement
 
+    /**
+     * Casts a ray segment against the shape without allocating. Rays starting inside the shape do not hit it.
+     *
+     * @param startX X coordinate of the ray start in world space.
+     * @param startY Y coordinate of the ray start in world space.
+     * @param endX X coordinate of the ray end in world space.
+     * @param endY Y coordinate of the ray end in world space.
+     * @param maxFraction Only hits at a fraction of the segment smaller or equal to this are reported.
+     * @param result Receives fraction, normal and face index if the shape was hit.
+     * @return Boolean value whether the shape was hit.
+     */
+    abstract fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean
+
+    /**
+     * Checks whether a point lies inside the shape without allocating.
+     *
+     * @param x X coordinate of the point in world space.
+     * @param y Y coordinate of the point in world space.
+     * @return Boolean value whether the point is inside.
+     */
+    abstract fun testPoint(x: Double, y: Double): Boolean
+
+    /**
+     * Checks whether a circle overlaps the shape without allocating.
+     *
+     * @param x X coordinate of the circle centre in world space.
+     * @param y Y coordinate of the circle centre in world space.
+     * @param radius Radius of the circle.
+     * @return Boolean value whether the circle and the shape overlap.
+     */
+    abstract fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean
+
     class IntersectionReturnElement(val minPx: Double, val minPy: Double, val intersectionFound: Boolean, val closestBody: TranslatableBody?, val maxDistance: Double)
 }
\ No newline at end of file
@@ -0,0 +1,387 @@
+package de.chaffic.geometry
+
+import de.chaffic.collision.bodies.ChildBody
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import kotlin.math.abs
+import kotlin.math.floor
+
+/**
+ * Static collision layer of a tile map. Solid tiles are greedily merged into rectangles, which collide like boxes, so a
+ * level of thousands of tiles is a single body of the broad phase and only the rectangles under another body are tested.
+ * Rays walk the grid tile by tile.
+ *
+ * Column zero and row zero form the lower left tile, which starts at the position of the body. The orientation of the
+ * body is ignored, tile maps are always axis aligned. Bodies with a tile map have no mass and are made static.
+ *
+ * @param columns  Number of columns.
+ * @param rows     Number of rows.
+ * @param tileSize Width and height of a tile.
+ */
+class TileMap(val columns: Int, val rows: Int, val tileSize: Double) : Shape() {
+    private val solid = BooleanArray(columns * rows)
+
+    //Rectangle owning each tile, -1 for empty tiles
+    private val owners = IntArray(columns * rows) { -1 }
+
+    //Bounds of the rectangles in tiles, slots of removed rectangles are reused
+    private var rectangleX = IntArray(16)
+    private var rectangleY = IntArray(16)
+    private var rectangleWidth = IntArray(16)
+    private var rectangleHeight = IntArray(16)
+    private val rectangleBodies = ArrayList<ChildBody?>()
+    private val freeSlots = ArrayList<Int>()
+    private var queryStamps = IntArray(16)
+    private var queryStamp = 0
+
+    /**
+     * Rectangles found by the last query.
+     */
+    internal var hits = IntArray(16)
+        private set
+
+    /**
+     * Number of rectangles the solid tiles are merged into.
+     */
+    var rectangleCount = 0
+        private set
+
+    init {
+        require(columns > 0 && rows > 0) { "Tile maps need at least one tile" }
+        require(tileSize > 0) { "Tile size must be positive" }
+    }
+
+    /**
+     * Checks whether a tile is solid.
+     *
+     * @param column Column of the tile.
+     * @param row    Row of the tile.
+     * @return Whether the tile is solid, false outside the map.
+     */
+    fun isSolid(column: Int, row: Int): Boolean {
+        return column in 0 until columns && row in 0 until rows && solid[row * columns + column]
+    }
+
+    /**
+     * Changes a tile. Only the rectangles around the tile are merged again.
+     *
+     * @param column Column of the tile.
+     * @param row    Row of the tile.
+     * @param solid  Whether the tile is solid.
+     */
+    operator fun set(column: Int, row: Int, solid: Boolean) {
+        require(column in 0 until columns && row in 0 until rows) { "Tile outside of the map" }
+        if (this.solid[row * columns + column] == solid) return
+        this.solid[row * columns + column] = solid
+
+        //Region of the tile and the rectangles touching it
+        var lowerX = column
+        var lowerY = row
+        var upperX = column
+        var upperY = row
+        for (r in maxOf(row - 1, 0)..minOf(row + 1, rows - 1)) {
+            for (c in maxOf(column - 1, 0)..minOf(column + 1, columns - 1)) {
+                val id = owners[r * columns + c]
+                if (id < 0) continue
+                lowerX = minOf(lowerX, rectangleX[id])
+                lowerY = minOf(lowerY, rectangleY[id])
+                upperX = maxOf(upperX, rectangleX[id] + rectangleWidth[id] - 1)
+                upperY = maxOf(upperY, rectangleY[id] + rectangleHeight[id] - 1)
+                removeRectangle(id)
+            }
+        }
+        merge(lowerX, lowerY, upperX, upperY)
+    }
+
+    /**
+     * Gets the bounds of the rectangle owning a tile.
+     *
+     * @param column Column of the tile.
+     * @param row    Row of the tile.
+     * @param out    Receives the column, row, width and height of the rectangle in tiles.
+     * @return Whether the tile is solid.
+     */
+    fun rectangleAt(column: Int, row: Int, out: IntArray): Boolean {
+        if (!isSolid(column, row)) return false
+        val id = owners[row * columns + column]
+        out[0] = rectangleX[id]
+        out[1] = rectangleY[id]
+        out[2] = rectangleWidth[id]
+        out[3] = rectangleHeight[id]
+        return true
+    }
+
+    /**
+     * Merges the solid tiles of a region that belong to no rectangle, row by row from the bottom. Every rectangle grows as
+     * wide as possible first and then as high as its full width allows.
+     */
+    private fun merge(lowerX: Int, lowerY: Int, upperX: Int, upperY: Int) {
+        for (row in lowerY..upperY) {
+            var column = lowerX
+            while (column <= upperX) {
+                if (!free(column, row)) {
+                    column++
+                    continue
+                }
+                var width = 1
+                while (column + width <= upperX && free(column + width, row)) width++
+                var height = 1
+                grow@ while (row + height <= upperY) {
+                    for (c in column until column + width) {
+                        if (!free(c, row + height)) break@grow
+                    }
+                    height++
+                }
+                addRectangle(column, row, width, height)
+                column += width
+            }
+        }
+    }
+
+    private fun free(column: Int, row: Int): Boolean {
+        val i = row * columns + column
+        return solid[i] && owners[i] < 0
+    }
+
+    private fun addRectangle(column: Int, row: Int, width: Int, height: Int) {
+        val id: Int
+        if (freeSlots.isEmpty()) {
+            id = rectangleBodies.size
+            rectangleBodies.add(null)
+            if (id == rectangleX.size) {
+                val size = id * 2
+                rectangleX = rectangleX.copyOf(size)
+                rectangleY = rectangleY.copyOf(size)
+                rectangleWidth = rectangleWidth.copyOf(size)
+                rectangleHeight = rectangleHeight.copyOf(size)
+                queryStamps = queryStamps.copyOf(size)
+                hits = IntArray(size)
+            }
+        } else {
+            id = freeSlots.removeAt(freeSlots.size - 1)
+        }
+        rectangleX[id] = column
+        rectangleY[id] = row
+        rectangleWidth[id] = width
+        rectangleHeight[id] = height
+        val rectangle = ChildBody(this, Polygon(PolygonGeometry.box(width * tileSize * 0.5, height * tileSize * 0.5)))
+        rectangle.shape.createAABB()
+        rectangleBodies[id] = rectangle
+        for (r in row until row + height) {
+            for (c in column until column + width) {
+                owners[r * columns + c] = id
+            }
+        }
+        rectangleCount++
+    }
+
+    private fun removeRectangle(id: Int) {
+        for (r in rectangleY[id] until rectangleY[id] + rectangleHeight[id]) {
+            for (c in rectangleX[id] until rectangleX[id] + rectangleWidth[id]) {
+                owners[r * columns + c] = -1
+            }
+        }
+        rectangleBodies[id] = null
+        freeSlots.add(id)
+        rectangleCount--
+    }
+
+    /**
+     * Finds the rectangles overlapping a box in world space and moves their bodies into place.
+     *
+     * @return Number of rectangles stored in [hits].
+     */
+    internal fun query(lowerX: Double, lowerY: Double, upperX: Double, upperY: Double): Int {
+        val p = body.position
+        val firstColumn = maxOf(floor((lowerX - p.x) / tileSize).toInt(), 0)
+        val lastColumn = minOf(floor((upperX - p.x) / tileSize).toInt(), columns - 1)
+        val firstRow = maxOf(floor((lowerY - p.y) / tileSize).toInt(), 0)
+        val lastRow = minOf(floor((upperY - p.y) / tileSize).toInt(), rows - 1)
+        queryStamp++
+        var found = 0
+        for (row in firstRow..lastRow) {
+            for (column in firstColumn..lastColumn) {
+                val id = owners[row * columns + column]
+                if (id < 0 || queryStamps[id] == queryStamp) continue
+                queryStamps[id] = queryStamp
+                hits[found++] = id
+                rectangleBodies[id]!!.position.set(
+                    p.x + (rectangleX[id] + rectangleWidth[id] * 0.5) * tileSize,
+                    p.y + (rectangleY[id] + rectangleHeight[id] * 0.5) * tileSize
+                )
+            }
+        }
+        return found
+    }
+
+    /**
+     * Gets the body of a rectangle found by [query].
+     *
+     * @param id Rectangle from [hits].
+     * @return Body of the rectangle.
+     */
+    internal fun rectangle(id: Int): ChildBody {
+        return rectangleBodies[id]!!
+    }
+
+    /**
+     * Tile maps are static and have no mass. Makes the body static, so it cannot become dynamic.
+     *
+     * @param density Ignored.
+     */
+    override fun calcMass(density: Double) {
+        (body as? PhysicalBodyInterface)?.setStatic()
+    }
+
+    /**
+     * Generates an AABB around the whole map.
+     */
+    override fun createAABB() {
+        body.aabb.set(.0, .0, columns * tileSize, rows * tileSize)
+    }
+
+    override fun isPointInside(startPoint: Vec2): Boolean {
+        return testPoint(startPoint.x, startPoint.y)
+    }
+
+    override fun testPoint(x: Double, y: Double): Boolean {
+        return isSolid(floor((x - body.position.x) / tileSize).toInt(), floor((y - body.position.y) / tileSize).toInt())
+    }
+
+    override fun overlapsCircle(x: Double, y: Double, radius: Double): Boolean {
+        val cx = x - body.position.x
+        val cy = y - body.position.y
+        for (row in maxOf(floor((cy - radius) / tileSize).toInt(), 0)..minOf(floor((cy + radius) / tileSize).toInt(), rows - 1)) {
+            for (column in maxOf(floor((cx - radius) / tileSize).toInt(), 0)..minOf(floor((cx + radius) / tileSize).toInt(), columns - 1)) {
+                if (!solid[row * columns + column]) continue
+                //Closest point of the tile to the centre
+                val qx = cx - cx.coerceIn(column * tileSize, (column + 1) * tileSize)
+                val qy = cy - cy.coerceIn(row * tileSize, (row + 1) * tileSize)
+                if (qx * qx + qy * qy <= radius * radius) return true
+            }
+        }
+        return false
+    }
+
+    override fun rayIntersect(startPoint: Vec2, endPoint: Vec2, maxDistance: Double, rayLength: Double): IntersectionReturnElement {
+        val result = RaycastResult()
+        val length = startPoint.distance(endPoint)
+        if (length == .0 || !raycast(startPoint.x, startPoint.y, endPoint.x, endPoint.y, minOf(1.0, maxDistance / length), result)) {
+            return IntersectionReturnElement(.0, .0, false, null, maxDistance)
+        }
+        return IntersectionReturnElement(
+            startPoint.x + (endPoint.x - startPoint.x) * result.fraction,
+            startPoint.y + (endPoint.y - startPoint.y) * result.fraction,
+            true, body, result.fraction * length
+        )
+    }
+
+    /**
+     * Walks the tiles along the ray with a digital differential analyser until it enters a solid tile. Rays starting inside
+     * a solid tile do not hit it. The index of the result is the index of the tile, row times columns plus column.
+     */
+    override fun raycast(startX: Double, startY: Double, endX: Double, endY: Double, maxFraction: Double, result: RaycastResult): Boolean {
+        //Ray in tiles
+        val sx = (startX - body.position.x) / tileSize
+        val sy = (startY - body.position.y) / tileSize
+        val dx = (endX - startX) / tileSize
+        val dy = (endY - startY) / tileSize
+
+        //Clips the ray to the map, remembering the axis of the side it enters through
+        var lower = .0
+        var upper = maxFraction
+        var entered = 0
+        if (dx == .0) {
+            if (sx < 0 || sx > columns) return false
+        } else {
+            val t1 = -sx / dx
+            val t2 = (columns - sx) / dx
+            if (minOf(t1, t2) > lower) {
+                lower = minOf(t1, t2)
+                entered = 1
+            }
+            upper = minOf(upper, maxOf(t1, t2))
+        }
+        if (dy == .0) {
+            if (sy < 0 || sy > rows) return false
+        } else {
+            val t1 = -sy / dy
+            val t2 = (rows - sy) / dy
+            if (minOf(t1, t2) > lower) {
+                lower = minOf(t1, t2)
+                entered = 2
+            }
+            upper = minOf(upper, maxOf(t1, t2))
+        }
+        if (lower > upper) return false
+
+        val stepX = if (dx > 0) 1 else -1
+        val stepY = if (dy > 0) 1 else -1
+        var column = floor(sx + dx * lower).toInt().coerceIn(0, columns - 1)
+        var row = floor(sy + dy * lower).toInt().coerceIn(0, rows - 1)
+        val deltaX = if (dx == .0) Double.POSITIVE_INFINITY else abs(1 / dx)
+        val deltaY = if (dy == .0) Double.POSITIVE_INFINITY else abs(1 / dy)
+        var nextX = if (dx == .0) Double.POSITIVE_INFINITY else ((if (dx > 0) column + 1 else column) - sx) / dx
+        var nextY = if (dy == .0) Double.POSITIVE_INFINITY else ((if (dy > 0) row + 1 else row) - sy) / dy
+
+        var fraction = lower
+        var inside = entered == 0 && solid[row * columns + column]
+        while (fraction <= upper) {
+            val isSolid = solid[row * columns + column]
+            if (isSolid && !inside) {
+                result.fraction = fraction
+                if (entered == 1) result.normal.set(-stepX.toDouble(), .0) else result.normal.set(.0, -stepY.toDouble())
+                result.index = row * columns + column
+                return true
+            }
+            inside = inside && isSolid
+            if (nextX < nextY) {
+                fraction = nextX
+                nextX += deltaX
+                column += stepX
+                entered = 1
+                if (column < 0 || column >= columns) return false
+            } else {
+                fraction = nextY
+                nextY += deltaY
+                row += stepY
+                entered = 2
+                if (row < 0 || row >= rows) return false
+            }
+        }
+        return false
+    }
+
+    companion object {
+        /**
+         * Creates a tile map from a grid of tiles.
+         *
+         * @param grid     Tiles by row and column, row zero is the bottom row.
+         * @param tileSize Width and height of a tile.
+         * @return Tile map with the solid tiles merged.
+         */
+        @JvmStatic
+        fun fromGrid(grid: Array<BooleanArray>, tileSize: Double): TileMap {
+            val map = TileMap(grid.firstOrNull()?.size ?: 0, grid.size, tileSize)
+            for (row in grid.indices) {
+                require(grid[row].size == map.columns) { "Rows must have the same length" }
+                grid[row].copyInto(map.solid, row * map.columns)
+            }
+            map.merge(0, 0, map.columns - 1, map.rows - 1)
+            return map
+        }
+
+        /**
+         * Creates a tile map from a grid of tile ids.
+         *
+         * @param grid     Tile ids by row and column, row zero is the bottom row. Tiles other than zero are solid.
+         * @param tileSize Width and height of a tile.
+         * @return Tile map with the solid tiles merged.
+         */
+        @JvmStatic
+        fun fromGrid(grid: Array<IntArray>, tileSize: Double): TileMap {
+            return fromGrid(Array(grid.size) { row -> BooleanArray(grid[row].size) { grid[row][it] != 0 } }, tileSize)
+        }
+    }
+}
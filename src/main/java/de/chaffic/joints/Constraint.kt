@@ -0,0 +1,96 @@
+package de.chaffic.joints
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.Physics
+import de.chaffic.dynamics.SolverMode
+
+/**
+ * Abstract class for rigid constraints between two bodies. Unlike [Joint]s, constraints are solved together with the
+ * contacts in every solver iteration. The effective mass is computed once per step and the impulse accumulated in the
+ * previous step is applied up front (warm starting), so the iterations only have to correct the change.
+ *
+ * The velocity iterations only keep the constraint from drifting further. The remaining position error is corrected after
+ * integration by moving the bodies directly, see [solvePositionConstraints].
+ *
+ * @param bodyA First body of the constraint.
+ * @param bodyB Second body of the constraint.
+ */
+abstract class Constraint protected constructor(val bodyA: Body, val bodyB: Body) {
+    /**
+     * Anchor arms in world space, relative to the centres of the bodies. Updated by [initVelocityConstraints].
+     */
+    protected var rAx = .0
+    protected var rAy = .0
+    protected var rBx = .0
+    protected var rBy = .0
+
+    /**
+     * Inverse stiffness of the constraint used by [SolverMode.XPBD]. Zero is rigid.
+     */
+    var compliance = .0
+
+    /**
+     * Prepares the constraint for a step. Computes anchors and effective mass and applies the warm start impulse.
+     *
+     * @param dt           Timestep.
+     * @param warmStarting Whether the impulse of the last step is reapplied. Otherwise it is reset.
+     */
+    abstract fun initVelocityConstraints(dt: Double, warmStarting: Boolean)
+
+    /**
+     * Solves the velocity constraint once. Called every solver iteration.
+     */
+    abstract fun solveVelocityConstraints()
+
+    /**
+     * Moves the bodies to reduce the position error of the constraint. Called after integration until all constraints
+     * report success or [Physics.CONSTRAINT_POSITION_ITERATIONS] is reached.
+     *
+     * @return Boolean value whether the remaining error is within [Physics.CONSTRAINT_SLOP].
+     */
+    abstract fun solvePositionConstraints(): Boolean
+
+    /**
+     * Moves the bodies to satisfy the constraint softened by [compliance]. Called once per substep by [SolverMode.XPBD].
+     *
+     * @param dt Substep.
+     */
+    abstract fun solveCompliantPosition(dt: Double)
+
+    /**
+     * Rotates local anchors of both bodies into world space arms.
+     */
+    protected fun updateArms(localAx: Double, localAy: Double, localBx: Double, localBy: Double) {
+        val a = bodyA.shape.orientation
+        rAx = a.row1.x * localAx + a.row1.y * localAy
+        rAy = a.row2.x * localAx + a.row2.y * localAy
+        val b = bodyB.shape.orientation
+        rBx = b.row1.x * localBx + b.row1.y * localBy
+        rBy = b.row2.x * localBx + b.row2.y * localBy
+    }
+
+    /**
+     * Applies an impulse at the anchor of body A and the opposite impulse at the anchor of body B.
+     */
+    protected fun applyImpulse(px: Double, py: Double) {
+        bodyA.applyLinearImpulse(-px, -py, rAx, rAy)
+        bodyB.applyLinearImpulse(px, py, rBx, rBy)
+    }
+
+    /**
+     * Applies a position impulse at the anchors like [applyImpulse], moving and rotating the bodies instead of changing
+     * their velocities.
+     */
+    protected fun applyPositionImpulse(px: Double, py: Double) {
+        if (bodyA.invMass != .0) {
+            bodyA.position.x -= px * bodyA.invMass
+            bodyA.position.y -= py * bodyA.invMass
+            bodyA.orientation -= bodyA.invInertia * (rAx * py - rAy * px)
+        }
+        if (bodyB.invMass != .0) {
+            bodyB.position.x += px * bodyB.invMass
+            bodyB.position.y += py * bodyB.invMass
+            bodyB.orientation += bodyB.invInertia * (rBx * py - rBy * px)
+        }
+    }
+}
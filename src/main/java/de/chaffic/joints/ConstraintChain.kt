@@ -0,0 +1,196 @@
+package de.chaffic.joints
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.Physics
+import de.chaffic.dynamics.SolverMode
+import java.util.Collections
+import java.util.IdentityHashMap
+import kotlin.math.abs
+import kotlin.math.max
+
+/**
+ * A linear sequence of [DistanceJoint]s where every inner body is connected to exactly two joints, like a rope or a
+ * chain. Each joint only couples with its neighbours through the shared body, so the effective mass matrix of the whole
+ * sequence is tridiagonal and is solved directly in O(n). A single solve satisfies all joints of the chain at once, so
+ * a tug at one end reaches the other end without extra iterations.
+ */
+class ConstraintChain private constructor(joints: List<DistanceJoint>) {
+    /**
+     * Joints of the chain in order.
+     */
+    val joints: List<DistanceJoint> = ArrayList(joints)
+
+    private val size = joints.size
+
+    //Body shared by joint i and joint i + 1
+    private val shared = Array(size - 1) { sharedBody(joints[it], joints[it + 1]) }
+    private val diagonal = DoubleArray(size)
+    private val offDiagonal = DoubleArray(size - 1)
+    private val rhs = DoubleArray(size)
+    private val upper = DoubleArray(size)
+    private val lambda = DoubleArray(size)
+
+    /**
+     * Builds the effective mass matrix of the chain. Must be called after [DistanceJoint.initVelocityConstraints] of all
+     * joints of the chain.
+     */
+    fun initVelocityConstraints() {
+        buildMatrix()
+    }
+
+    /**
+     * Solves the velocity constraints of all joints of the chain at once.
+     */
+    fun solveVelocityConstraints() {
+        for (i in 0 until size) {
+            rhs[i] = -joints[i].relativeVelocity()
+        }
+        solveTridiagonal()
+        for (i in 0 until size) {
+            joints[i].addImpulse(lambda[i])
+        }
+    }
+
+    /**
+     * Moves the bodies of the chain to correct the position errors of all joints at once.
+     *
+     * @return Boolean value whether the remaining errors are within [Physics.CONSTRAINT_SLOP].
+     */
+    fun solvePositionConstraints(): Boolean {
+        var worst = .0
+        for (i in 0 until size) {
+            val error = joints[i].preparePosition()
+            worst = max(worst, abs(error))
+            rhs[i] = -DistanceJoint.clampCorrection(error)
+        }
+        buildMatrix()
+        solveTridiagonal()
+        for (i in 0 until size) {
+            joints[i].applyPositionImpulse(lambda[i])
+        }
+        return worst < Physics.CONSTRAINT_SLOP
+    }
+
+    /**
+     * Moves the bodies of the chain to satisfy all joints at once, softened by the compliance of every joint. Used by
+     * [SolverMode.XPBD].
+     *
+     * @param dt Substep.
+     */
+    fun solveCompliantPosition(dt: Double) {
+        for (i in 0 until size) {
+            rhs[i] = -joints[i].preparePosition()
+        }
+        buildMatrix()
+        val inverseDtSquared = 1.0 / (dt * dt)
+        for (i in 0 until size) {
+            diagonal[i] += joints[i].compliance * inverseDtSquared
+        }
+        solveTridiagonal()
+        for (i in 0 until size) {
+            joints[i].applyPositionImpulse(lambda[i])
+        }
+    }
+
+    private fun buildMatrix() {
+        for (i in 0 until size) {
+            diagonal[i] = joints[i].inverseMass
+        }
+        for (i in 0 until size - 1) {
+            val body = shared[i]
+            val a = joints[i]
+            val b = joints[i + 1]
+            //Joints push the shared body along +axis if it is their second body and along -axis otherwise
+            val sign = if ((a.bodyB === body) == (b.bodyB === body)) 1.0 else -1.0
+            val axes = a.axisX * b.axisX + a.axisY * b.axisY
+            offDiagonal[i] = sign * (body.invMass * axes + body.invInertia * a.armCross(body) * b.armCross(body))
+        }
+    }
+
+    /**
+     * Solves the symmetric tridiagonal system into [lambda] with the Thomas algorithm. The matrix is positive definite, so
+     * no pivoting is needed. Rows of joints between two static bodies solve to zero.
+     */
+    private fun solveTridiagonal() {
+        var previousUpper = .0
+        var previousLambda = .0
+        for (i in 0 until size) {
+            val lower = if (i > 0) offDiagonal[i - 1] else .0
+            val denominator = diagonal[i] - lower * previousUpper
+            if (denominator == .0) {
+                upper[i] = .0
+                lambda[i] = .0
+            } else {
+                upper[i] = if (i < size - 1) offDiagonal[i] / denominator else .0
+                lambda[i] = (rhs[i] - lower * previousLambda) / denominator
+            }
+            previousUpper = upper[i]
+            previousLambda = lambda[i]
+        }
+        for (i in size - 2 downTo 0) {
+            lambda[i] -= upper[i] * lambda[i + 1]
+        }
+    }
+
+    companion object {
+        /**
+         * Finds all chains of at least two [DistanceJoint]s. Joints that branch or form a closed loop are not part of a
+         * chain.
+         *
+         * @param constraints All constraints to search.
+         * @param chains      Receives the chains found.
+         * @param remaining   Receives all constraints not part of a chain, in their original order.
+         */
+        @JvmStatic
+        fun build(constraints: List<Constraint>, chains: MutableList<ConstraintChain>, remaining: MutableList<Constraint>) {
+            chains.clear()
+            remaining.clear()
+            val adjacent = IdentityHashMap<Body, ArrayList<DistanceJoint>>()
+            for (c in constraints) {
+                if (c !is DistanceJoint || c.bodyA === c.bodyB) continue
+                adjacent.getOrPut(c.bodyA) { ArrayList(2) }.add(c)
+                adjacent.getOrPut(c.bodyB) { ArrayList(2) }.add(c)
+            }
+
+            //Chains start at bodies that are not inner bodies of a chain, found in the order of the constraints
+            val chained = Collections.newSetFromMap(IdentityHashMap<Constraint, Boolean>())
+            val visited = Collections.newSetFromMap(IdentityHashMap<DistanceJoint, Boolean>())
+            val sequence = ArrayList<DistanceJoint>()
+            for (c in constraints) {
+                if (c !is DistanceJoint || c.bodyA === c.bodyB || visited.contains(c)) continue
+                val start = when {
+                    adjacent[c.bodyA]!!.size != 2 -> c.bodyA
+                    adjacent[c.bodyB]!!.size != 2 -> c.bodyB
+                    else -> continue
+                }
+                visited.add(c)
+                sequence.clear()
+                var joint: DistanceJoint = c
+                var body = start
+                while (true) {
+                    sequence.add(joint)
+                    body = if (joint.bodyA === body) joint.bodyB else joint.bodyA
+                    val next = adjacent[body]!!
+                    if (next.size != 2) break
+                    joint = if (next[0] === joint) next[1] else next[0]
+                    if (!visited.add(joint)) break
+                }
+                //A loop back to the first body couples the first and the last joint, which is not tridiagonal
+                if (body === start) {
+                    sequence.removeAt(sequence.size - 1)
+                }
+                if (sequence.size >= 2) {
+                    chains.add(ConstraintChain(sequence))
+                    chained.addAll(sequence)
+                }
+            }
+            for (c in constraints) {
+                if (!chained.contains(c)) remaining.add(c)
+            }
+        }
+
+        private fun sharedBody(a: DistanceJoint, b: DistanceJoint): Body {
+            return if (a.bodyA === b.bodyA || a.bodyA === b.bodyB) a.bodyA else a.bodyB
+        }
+    }
+}
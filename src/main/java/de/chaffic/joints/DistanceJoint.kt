@@ -0,0 +1,192 @@
+package de.chaffic.joints
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.Physics
+import de.chaffic.math.Vec2
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Rigid constraint keeping two anchor points at a fixed distance.
+ *
+ * @param bodyA        First body.
+ * @param bodyB        Second body.
+ * @param localAnchorA Anchor relative to the centre of the first body in object space.
+ * @param localAnchorB Anchor relative to the centre of the second body in object space.
+ * @param length       Distance to keep. Negative values use the current distance of the anchors.
+ */
+class DistanceJoint @JvmOverloads constructor(
+    bodyA: Body,
+    bodyB: Body,
+    val localAnchorA: Vec2 = Vec2(),
+    val localAnchorB: Vec2 = Vec2(),
+    length: Double = -1.0
+) : Constraint(bodyA, bodyB) {
+    /**
+     * Distance kept between the anchors.
+     */
+    var length: Double
+
+    /**
+     * Impulse applied along the joint axis in the last step.
+     */
+    var impulse = .0
+        private set
+
+    private var ux = .0
+    private var uy = .0
+    private var mass = .0
+
+    /**
+     * Unit axis from the anchor of [bodyA] to the anchor of [bodyB].
+     */
+    internal val axisX: Double
+        get() = ux
+    internal val axisY: Double
+        get() = uy
+
+    /**
+     * Inverse effective mass along the joint axis, computed by [initVelocityConstraints] and [preparePosition].
+     */
+    internal var inverseMass = .0
+        private set
+
+    init {
+        if (length < 0) {
+            updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+            val dx = bodyB.position.x + rBx - bodyA.position.x - rAx
+            val dy = bodyB.position.y + rBy - bodyA.position.y - rAy
+            this.length = sqrt(dx * dx + dy * dy)
+        } else {
+            this.length = length
+        }
+    }
+
+    /**
+     * Current distance between the anchors minus [length].
+     */
+    val error: Double
+        get() {
+            updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+            val dx = bodyB.position.x + rBx - bodyA.position.x - rAx
+            val dy = bodyB.position.y + rBy - bodyA.position.y - rAy
+            return sqrt(dx * dx + dy * dy) - length
+        }
+
+    override fun initVelocityConstraints(dt: Double, warmStarting: Boolean) {
+        updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+        val dx = bodyB.position.x + rBx - bodyA.position.x - rAx
+        val dy = bodyB.position.y + rBy - bodyA.position.y - rAy
+        val distance = sqrt(dx * dx + dy * dy)
+        if (distance > LENGTH_EPSILON) {
+            ux = dx / distance
+            uy = dy / distance
+        } else {
+            ux = .0
+            uy = .0
+        }
+
+        updateInverseMass()
+        mass = if (inverseMass != .0) 1.0 / inverseMass else .0
+
+        if (warmStarting) {
+            applyImpulse(impulse * ux, impulse * uy)
+        } else {
+            impulse = .0
+        }
+    }
+
+    override fun solveVelocityConstraints() {
+        addImpulse(-mass * relativeVelocity())
+    }
+
+    override fun solvePositionConstraints(): Boolean {
+        val error = preparePosition()
+        if (inverseMass == .0) return true
+        applyPositionImpulse(-clampCorrection(error) / inverseMass)
+        return abs(error) < Physics.CONSTRAINT_SLOP
+    }
+
+    override fun solveCompliantPosition(dt: Double) {
+        val error = preparePosition()
+        val alpha = compliance / (dt * dt)
+        if (inverseMass + alpha == .0) return
+        applyPositionImpulse(-error / (inverseMass + alpha))
+    }
+
+    private fun updateInverseMass() {
+        val crA = rAx * uy - rAy * ux
+        val crB = rBx * uy - rBy * ux
+        inverseMass = bodyA.invMass + bodyA.invInertia * crA * crA + bodyB.invMass + bodyB.invInertia * crB * crB
+    }
+
+    /**
+     * Cross product of the arm of one of the bodies with the joint axis.
+     *
+     * @param body [bodyA] or [bodyB].
+     */
+    internal fun armCross(body: Body): Double {
+        return if (body === bodyB) rBx * uy - rBy * ux else rAx * uy - rAy * ux
+    }
+
+    /**
+     * Velocity of the anchor of [bodyB] relative to the anchor of [bodyA] along the joint axis.
+     */
+    internal fun relativeVelocity(): Double {
+        val vA = bodyA.velocity
+        val vB = bodyB.velocity
+        val wA = bodyA.angularVelocity
+        val wB = bodyB.angularVelocity
+        val dvx = vB.x - wB * rBy - vA.x + wA * rAy
+        val dvy = vB.y + wB * rBx - vA.y - wA * rAx
+        return dvx * ux + dvy * uy
+    }
+
+    /**
+     * Applies and accumulates an impulse along the joint axis.
+     */
+    internal fun addImpulse(lambda: Double) {
+        impulse += lambda
+        applyImpulse(lambda * ux, lambda * uy)
+    }
+
+    /**
+     * Updates anchors, axis and inverse effective mass for the current positions.
+     *
+     * @return Current distance minus [length].
+     */
+    internal fun preparePosition(): Double {
+        updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+        val dx = bodyB.position.x + rBx - bodyA.position.x - rAx
+        val dy = bodyB.position.y + rBy - bodyA.position.y - rAy
+        val distance = sqrt(dx * dx + dy * dy)
+        if (distance <= LENGTH_EPSILON) {
+            ux = .0
+            uy = .0
+            inverseMass = .0
+            return .0
+        }
+        ux = dx / distance
+        uy = dy / distance
+        updateInverseMass()
+        return distance - length
+    }
+
+    /**
+     * Moves the bodies along the joint axis computed by [preparePosition].
+     */
+    internal fun applyPositionImpulse(lambda: Double) {
+        applyPositionImpulse(lambda * ux, lambda * uy)
+    }
+
+    companion object {
+        private const val LENGTH_EPSILON = 1e-9
+
+        /**
+         * Limits a position error to the largest correction applied in one iteration.
+         */
+        internal fun clampCorrection(error: Double): Double {
+            return error.coerceIn(-Physics.MAX_CONSTRAINT_CORRECTION, Physics.MAX_CONSTRAINT_CORRECTION)
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.chaffic.joints
 
 import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.SolverMode
 import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
 
@@ -15,18 +16,80 @@ import de.chaffic.math.Vec2
  * @param offset       Offset to be applied to the location of the joint relative to b1's object space.
  */
 abstract class Joint protected constructor(
-    protected val body: Body,
+    val body: Body,
     protected val naturalLength: Double,
     protected val springConstant: Double,
     protected val dampeningConstant: Double,
     protected val canGoSlack: Boolean,
     protected val offset: Vec2
 ) {
-    var object1AttachmentPoint: Vec2
+    var object1AttachmentPoint: Vec2 = Vec2()
+
+    /**
+     * Rotation of the first body, reused every step.
+     */
+    protected val rotation1 = Mat2()
+
+    /**
+     * Scratch vectors for the impulse and the attachment arm, reused every step.
+     */
+    protected val impulse = Vec2()
+    protected val arm = Vec2()
 
     init {
-        val u = Mat2(body.orientation)
-        object1AttachmentPoint = body.position.plus(u.mul(offset, Vec2()))
+        updateAttachmentPoint(body, rotation1, offset, object1AttachmentPoint)
+    }
+
+    /**
+     * Compliance of the joint used by [SolverMode.XPBD], the inverse of the spring constant.
+     */
+    val compliance: Double
+        get() = 1.0 / springConstant
+
+    /**
+     * Transforms an offset in object space of a body into a point in world space.
+     *
+     * @param body     Body the offset belongs to.
+     * @param rotation Matrix receiving the rotation of the body.
+     * @param offset   Offset in object space.
+     * @param out      Receives the point in world space.
+     */
+    protected fun updateAttachmentPoint(body: Body, rotation: Mat2, offset: Vec2, out: Vec2) {
+        rotation.set(body.orientation)
+        rotation.mul(offset, out).add(body.position)
+    }
+
+    /**
+     * Computes the position impulse of a damped compliant distance constraint along the joint.
+     *
+     * @param extension   Current length minus the natural length.
+     * @param rate        Rate of change of the extension.
+     * @param inverseMass Inverse effective mass along the joint.
+     * @param dt          Substep.
+     * @return Position impulse along the joint.
+     */
+    protected fun compliantImpulse(extension: Double, rate: Double, inverseMass: Double, dt: Double): Double {
+        val alpha = compliance / (dt * dt)
+        val gamma = compliance * dampeningConstant / dt
+        val denominator = (1 + gamma) * inverseMass + alpha
+        if (denominator == .0) return .0
+        return -(extension + gamma * rate * dt) / denominator
+    }
+
+    /**
+     * Moves and rotates a body by a position impulse applied at an arm.
+     *
+     * @param body Body to move.
+     * @param px   Position impulse x.
+     * @param py   Position impulse y.
+     * @param rx   Arm x relative to the centre of the body.
+     * @param ry   Arm y relative to the centre of the body.
+     */
+    protected fun moveBody(body: Body, px: Double, py: Double, rx: Double, ry: Double) {
+        if (body.invMass == .0) return
+        body.position.x += px * body.invMass
+        body.position.y += py * body.invMass
+        body.orientation += body.invInertia * (rx * py - ry * px)
     }
 
     /**
@@ -34,6 +97,14 @@ abstract class Joint protected constructor(
      */
     abstract fun applyTension()
 
+    /**
+     * Abstract method to move the attached bodies as a damped compliant distance constraint. Called once per substep by
+     * [SolverMode.XPBD] instead of [applyTension].
+     *
+     * @param dt Substep.
+     */
+    abstract fun solveCompliantPosition(dt: Double)
+
     /**
      * Abstract method to calculate tension between the joint
      *
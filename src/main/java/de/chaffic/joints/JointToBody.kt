@@ -3,6 +3,7 @@ package de.chaffic.joints
 import de.chaffic.dynamics.Body
 import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
+import kotlin.math.sqrt
 
 /**
  * Class for a joint between two bodies.
@@ -21,7 +22,7 @@ class JointToBody
  * @param offset2       Offset to be applied to the location of the joint relative to b2's object space
  */(
     body1: Body,
-    private val body2: Body,
+    val body2: Body,
     jointLength: Double,
     jointConstant: Double,
     dampening: Double,
@@ -29,22 +30,60 @@ class JointToBody
     offset1: Vec2,
     private val offset2: Vec2
 ) : Joint(body1, jointLength, jointConstant, dampening, canGoSlack, offset1) {
-    var object2AttachmentPoint: Vec2 = body2.position.plus(Mat2(body2.orientation).mul(offset2, Vec2()))
+    var object2AttachmentPoint: Vec2 = Vec2()
+
+    /**
+     * Rotation of the second body, reused every step.
+     */
+    private val rotation2 = Mat2()
+
+    init {
+        updateAttachmentPoint(body2, rotation2, offset2, object2AttachmentPoint)
+    }
 
     /**
      * Applies tension to the two bodies.
      */
     override fun applyTension() {
-        val mat1 = Mat2(body.orientation)
-        object1AttachmentPoint = body.position.plus(mat1.mul(offset, Vec2()))
-        val mat2 = Mat2(body2.orientation)
-        object2AttachmentPoint = body2.position.plus(mat2.mul(offset2, Vec2()))
+        updateAttachmentPoint(body, rotation1, offset, object1AttachmentPoint)
+        updateAttachmentPoint(body2, rotation2, offset2, object2AttachmentPoint)
         val tension = calculateTension()
-        val distance = object2AttachmentPoint.minus(object1AttachmentPoint)
-        distance.normalize()
-        val impulse = distance.scalar(tension)
-        body.applyLinearImpulse(impulse, object1AttachmentPoint.minus(body.position))
-        body2.applyLinearImpulse(impulse.copyNegative(), object2AttachmentPoint.minus(body2.position))
+        impulse.set(object2AttachmentPoint.x - object1AttachmentPoint.x, object2AttachmentPoint.y - object1AttachmentPoint.y)
+        impulse.normalize()
+        impulse.set(impulse.x * tension, impulse.y * tension)
+        arm.set(object1AttachmentPoint.x - body.position.x, object1AttachmentPoint.y - body.position.y)
+        body.applyLinearImpulse(impulse, arm)
+        impulse.set(-impulse.x, -impulse.y)
+        arm.set(object2AttachmentPoint.x - body2.position.x, object2AttachmentPoint.y - body2.position.y)
+        body2.applyLinearImpulse(impulse, arm)
+    }
+
+    /**
+     * Moves the two bodies towards the natural length of the joint.
+     *
+     * @param dt Substep.
+     */
+    override fun solveCompliantPosition(dt: Double) {
+        updateAttachmentPoint(body, rotation1, offset, object1AttachmentPoint)
+        updateAttachmentPoint(body2, rotation2, offset2, object2AttachmentPoint)
+        val dx = object2AttachmentPoint.x - object1AttachmentPoint.x
+        val dy = object2AttachmentPoint.y - object1AttachmentPoint.y
+        val distance = sqrt(dx * dx + dy * dy)
+        if (distance == .0 || (distance < naturalLength && canGoSlack)) {
+            return
+        }
+        val nx = dx / distance
+        val ny = dy / distance
+        val r1x = object1AttachmentPoint.x - body.position.x
+        val r1y = object1AttachmentPoint.y - body.position.y
+        val r2x = object2AttachmentPoint.x - body2.position.x
+        val r2y = object2AttachmentPoint.y - body2.position.y
+        val cr1 = r1x * ny - r1y * nx
+        val cr2 = r2x * ny - r2y * nx
+        val inverseMass = body.invMass + body.invInertia * cr1 * cr1 + body2.invMass + body2.invInertia * cr2 * cr2
+        val lambda = compliantImpulse(distance - naturalLength, rateOfChangeOfExtension(), inverseMass, dt)
+        moveBody(body, -lambda * nx, -lambda * ny, r1x, r1y)
+        moveBody(body2, lambda * nx, lambda * ny, r2x, r2y)
     }
 
     /**
@@ -53,7 +92,9 @@ class JointToBody
      * @return double value of the tension force between the two bodies attachment points
      */
     override fun calculateTension(): Double {
-        val distance = object1AttachmentPoint.minus(object2AttachmentPoint).length()
+        val dx = object1AttachmentPoint.x - object2AttachmentPoint.x
+        val dy = object1AttachmentPoint.y - object2AttachmentPoint.y
+        val distance = sqrt(dx * dx + dy * dy)
         if (distance < naturalLength && canGoSlack) {
             return .0
         }
@@ -69,13 +110,22 @@ class JointToBody
      * @return double value of the rate of change
      */
     override fun rateOfChangeOfExtension(): Double {
-        val distance = object2AttachmentPoint.minus(object1AttachmentPoint)
-        distance.normalize()
-        val relativeVelocity = body2.velocity.plus(
-            object2AttachmentPoint.minus(body2.position).cross(body2.angularVelocity)
-        ).minus(body.velocity).minus(
-            object1AttachmentPoint.minus(body.position).cross(body.angularVelocity)
-        )
-        return relativeVelocity.dot(distance)
+        var dx = object2AttachmentPoint.x - object1AttachmentPoint.x
+        var dy = object2AttachmentPoint.y - object1AttachmentPoint.y
+        var length = sqrt(dx * dx + dy * dy)
+        if (length == 0.0) {
+            length = 1.0
+        }
+        dx /= length
+        dy /= length
+        val r1x = object1AttachmentPoint.x - body.position.x
+        val r1y = object1AttachmentPoint.y - body.position.y
+        val r2x = object2AttachmentPoint.x - body2.position.x
+        val r2y = object2AttachmentPoint.y - body2.position.y
+
+        //Velocities of the attachment points, v + r x w as in Vec2.cross
+        val relativeX = body2.velocity.x - r2y * body2.angularVelocity - body.velocity.x + r1y * body.angularVelocity
+        val relativeY = body2.velocity.y + r2x * body2.angularVelocity - body.velocity.y - r1x * body.angularVelocity
+        return relativeX * dx + relativeY * dy
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,8 @@
 package de.chaffic.joints
 
 import de.chaffic.dynamics.Body
-import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
+import kotlin.math.sqrt
 
 /**
  * Class for a joint between a body and a point in world space.
@@ -33,13 +33,36 @@ class JointToPoint
      * Applies tension to the body attached to the joint.
      */
     override fun applyTension() {
-        val mat1 = Mat2(body.orientation)
-        object1AttachmentPoint = body.position.plus(mat1.mul(offset, Vec2()))
+        updateAttachmentPoint(body, rotation1, offset, object1AttachmentPoint)
         val tension = calculateTension()
-        val distance = pointAttachedTo.minus(object1AttachmentPoint)
-        distance.normalize()
-        val impulse = distance.scalar(tension)
-        body.applyLinearImpulse(impulse, object1AttachmentPoint.minus(body.position))
+        impulse.set(pointAttachedTo.x - object1AttachmentPoint.x, pointAttachedTo.y - object1AttachmentPoint.y)
+        impulse.normalize()
+        impulse.set(impulse.x * tension, impulse.y * tension)
+        arm.set(object1AttachmentPoint.x - body.position.x, object1AttachmentPoint.y - body.position.y)
+        body.applyLinearImpulse(impulse, arm)
+    }
+
+    /**
+     * Moves the body towards the natural length of the joint.
+     *
+     * @param dt Substep.
+     */
+    override fun solveCompliantPosition(dt: Double) {
+        updateAttachmentPoint(body, rotation1, offset, object1AttachmentPoint)
+        val dx = object1AttachmentPoint.x - pointAttachedTo.x
+        val dy = object1AttachmentPoint.y - pointAttachedTo.y
+        val distance = sqrt(dx * dx + dy * dy)
+        if (distance == .0 || (distance < naturalLength && canGoSlack)) {
+            return
+        }
+        val nx = dx / distance
+        val ny = dy / distance
+        val rx = object1AttachmentPoint.x - body.position.x
+        val ry = object1AttachmentPoint.y - body.position.y
+        val cr = rx * ny - ry * nx
+        val inverseMass = body.invMass + body.invInertia * cr * cr
+        val lambda = compliantImpulse(distance - naturalLength, rateOfChangeOfExtension(), inverseMass, dt)
+        moveBody(body, lambda * nx, lambda * ny, rx, ry)
     }
 
     /**
@@ -48,7 +71,9 @@ class JointToPoint
      * @return double value of the tension force between the point and attached bodies point
      */
     override fun calculateTension(): Double {
-        val distance = object1AttachmentPoint.minus(pointAttachedTo).length()
+        val dx = object1AttachmentPoint.x - pointAttachedTo.x
+        val dy = object1AttachmentPoint.y - pointAttachedTo.y
+        val distance = sqrt(dx * dx + dy * dy)
         if (distance < naturalLength && canGoSlack) {
             return .0
         }
@@ -64,10 +89,20 @@ class JointToPoint
      * @return double value of the rate of change
      */
     override fun rateOfChangeOfExtension(): Double {
-        val distance = pointAttachedTo.minus(object1AttachmentPoint)
-        distance.normalize()
-        val relativeVelocity = body.velocity.copyNegative()
-            .minus(object1AttachmentPoint.minus(body.position).cross(body.angularVelocity))
-        return relativeVelocity.dot(distance)
+        var dx = pointAttachedTo.x - object1AttachmentPoint.x
+        var dy = pointAttachedTo.y - object1AttachmentPoint.y
+        var length = sqrt(dx * dx + dy * dy)
+        if (length == 0.0) {
+            length = 1.0
+        }
+        dx /= length
+        dy /= length
+        val rx = object1AttachmentPoint.x - body.position.x
+        val ry = object1AttachmentPoint.y - body.position.y
+
+        //Negated velocity of the attachment point, v + r x w as in Vec2.cross
+        val relativeX = -body.velocity.x + ry * body.angularVelocity
+        val relativeY = -body.velocity.y - rx * body.angularVelocity
+        return relativeX * dx + relativeY * dy
     }
-}
\ No newline at end of file
+}
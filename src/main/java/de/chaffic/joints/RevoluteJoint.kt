@@ -0,0 +1,109 @@
+package de.chaffic.joints
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.Physics
+import de.chaffic.math.Vec2
+
+/**
+ * Rigid constraint pinning two bodies together at a common point, around which they can rotate freely.
+ *
+ * @param bodyA  First body.
+ * @param bodyB  Second body.
+ * @param anchor Pin point in world space at the time of construction.
+ */
+class RevoluteJoint(bodyA: Body, bodyB: Body, anchor: Vec2) : Constraint(bodyA, bodyB) {
+    /**
+     * Pin point relative to the centre of the first body in object space.
+     */
+    val localAnchorA = Vec2()
+
+    /**
+     * Pin point relative to the centre of the second body in object space.
+     */
+    val localAnchorB = Vec2()
+
+    /**
+     * Impulse applied at the pin in the last step.
+     */
+    val impulse = Vec2()
+
+    private var k11 = .0
+    private var k12 = .0
+    private var k22 = .0
+
+    init {
+        toLocal(bodyA, anchor, localAnchorA)
+        toLocal(bodyB, anchor, localAnchorB)
+    }
+
+    private fun toLocal(body: Body, anchor: Vec2, out: Vec2) {
+        val m = body.shape.orientation
+        val dx = anchor.x - body.position.x
+        val dy = anchor.y - body.position.y
+        out.set(m.row1.x * dx + m.row2.x * dy, m.row1.y * dx + m.row2.y * dy)
+    }
+
+    override fun initVelocityConstraints(dt: Double, warmStarting: Boolean) {
+        updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+        computeMass()
+
+        if (warmStarting) {
+            applyImpulse(impulse.x, impulse.y)
+        } else {
+            impulse.set(.0, .0)
+        }
+    }
+
+    /**
+     * Computes the inverse of the 2x2 effective mass matrix for the current arms.
+     *
+     * @param alpha Compliance added to the diagonal.
+     */
+    private fun computeMass(alpha: Double = .0) {
+        val mA = bodyA.invMass
+        val mB = bodyB.invMass
+        val iA = bodyA.invInertia
+        val iB = bodyB.invInertia
+        val a11 = mA + mB + iA * rAy * rAy + iB * rBy * rBy + alpha
+        val a12 = -iA * rAx * rAy - iB * rBx * rBy
+        val a22 = mA + mB + iA * rAx * rAx + iB * rBx * rBx + alpha
+        var determinant = a11 * a22 - a12 * a12
+        if (determinant != .0) {
+            determinant = 1.0 / determinant
+        }
+        k11 = determinant * a22
+        k12 = -determinant * a12
+        k22 = determinant * a11
+    }
+
+    override fun solveVelocityConstraints() {
+        val vA = bodyA.velocity
+        val vB = bodyB.velocity
+        val wA = bodyA.angularVelocity
+        val wB = bodyB.angularVelocity
+        val cx = vB.x - wB * rBy - vA.x + wA * rAy
+        val cy = vB.y + wB * rBx - vA.y - wA * rAx
+        val px = -(k11 * cx + k12 * cy)
+        val py = -(k12 * cx + k22 * cy)
+        impulse.x += px
+        impulse.y += py
+        applyImpulse(px, py)
+    }
+
+    override fun solvePositionConstraints(): Boolean {
+        updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+        computeMass()
+        val cx = bodyB.position.x + rBx - bodyA.position.x - rAx
+        val cy = bodyB.position.y + rBy - bodyA.position.y - rAy
+        applyPositionImpulse(-(k11 * cx + k12 * cy), -(k12 * cx + k22 * cy))
+        return cx * cx + cy * cy < Physics.CONSTRAINT_SLOP * Physics.CONSTRAINT_SLOP
+    }
+
+    override fun solveCompliantPosition(dt: Double) {
+        updateArms(localAnchorA.x, localAnchorA.y, localAnchorB.x, localAnchorB.y)
+        computeMass(compliance / (dt * dt))
+        val cx = bodyB.position.x + rBx - bodyA.position.x - rAx
+        val cy = bodyB.position.y + rBy - bodyA.position.y - rAy
+        applyPositionImpulse(-(k11 * cx + k12 * cy), -(k12 * cx + k22 * cy))
+    }
+}
@@ -0,0 +1,103 @@
+package de.chaffic.math
+
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * In place radix 2 fast fourier transform of a fixed size. Twiddle factors and the bit reversal permutation are computed
+ * once on construction. The inverse transform is scaled, so a forward and an inverse transform give back the input.
+ *
+ * @param size Number of points, must be a power of two.
+ */
+class FFT(val size: Int) {
+    private val cosTable: DoubleArray
+    private val sinTable: DoubleArray
+    private val reversed: IntArray
+
+    init {
+        require(size > 0 && size and (size - 1) == 0) { "Size must be a power of two" }
+        cosTable = DoubleArray(size / 2) { cos(2 * PI * it / size) }
+        sinTable = DoubleArray(size / 2) { sin(2 * PI * it / size) }
+        reversed = IntArray(size)
+        val bits = Integer.numberOfTrailingZeros(size)
+        for (i in 0 until size) {
+            reversed[i] = if (bits == 0) 0 else Integer.reverse(i) ushr (32 - bits)
+        }
+    }
+
+    /**
+     * Transforms a sequence of complex values stored in two arrays.
+     *
+     * @param re      Real parts.
+     * @param im      Imaginary parts.
+     * @param offset  Index of the first value.
+     * @param stride  Distance between two consecutive values.
+     * @param inverse Whether the inverse transform is computed.
+     */
+    @JvmOverloads
+    fun transform(re: DoubleArray, im: DoubleArray, offset: Int = 0, stride: Int = 1, inverse: Boolean = false) {
+        for (i in 0 until size) {
+            val j = reversed[i]
+            if (j > i) {
+                val a = offset + i * stride
+                val b = offset + j * stride
+                var t = re[a]
+                re[a] = re[b]
+                re[b] = t
+                t = im[a]
+                im[a] = im[b]
+                im[b] = t
+            }
+        }
+
+        val sign = if (inverse) 1.0 else -1.0
+        var length = 2
+        while (length <= size) {
+            val half = length / 2
+            val step = size / length
+            var start = 0
+            while (start < size) {
+                for (k in 0 until half) {
+                    val wr = cosTable[k * step]
+                    val wi = sign * sinTable[k * step]
+                    val a = offset + (start + k) * stride
+                    val b = a + half * stride
+                    val xr = re[b] * wr - im[b] * wi
+                    val xi = re[b] * wi + im[b] * wr
+                    re[b] = re[a] - xr
+                    im[b] = im[a] - xi
+                    re[a] += xr
+                    im[a] += xi
+                }
+                start += length
+            }
+            length *= 2
+        }
+
+        if (inverse) {
+            val scale = 1.0 / size
+            for (i in 0 until size) {
+                re[offset + i * stride] *= scale
+                im[offset + i * stride] *= scale
+            }
+        }
+    }
+
+    /**
+     * Transforms a square grid of complex values stored row by row, first every row and then every column.
+     *
+     * @param re      Real parts, size * size values.
+     * @param im      Imaginary parts, size * size values.
+     * @param inverse Whether the inverse transform is computed.
+     */
+    @JvmOverloads
+    fun transform2D(re: DoubleArray, im: DoubleArray, inverse: Boolean = false) {
+        for (row in 0 until size) {
+            transform(re, im, row * size, 1, inverse)
+        }
+        for (column in 0 until size) {
+            transform(re, im, column, size, inverse)
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package de.chaffic.particles
+
+import de.chaffic.collision.BodyVisitor
+import de.chaffic.collision.CollisionFilter
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.World
+import de.chaffic.dynamics.bodies.PhysicalBodyInterface
+import de.chaffic.geometry.ChainShape
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.CompoundShape
+import de.chaffic.geometry.Polygon
+import de.chaffic.geometry.TileMap
+import de.chaffic.math.Vec2
+import kotlin.math.sqrt
+
+/**
+ * Fixed capacity pool of point particles stored in primitive arrays. Particles have a position, a velocity and an age, but
+ * no mass, shape or rotation, and are never added to the bodies of a world.
+ *
+ * Particles collide one way with the collision bodies of a world: they bounce off bodies found through the broad phase
+ * without pushing them. Chain segments only push particles back that cross them from their colliding side. A particle is
+ * recycled once its age reaches its lifespan, the last particle then takes its index.
+ *
+ * @param capacity Maximum number of live particles.
+ */
+class ParticlePool(val capacity: Int) {
+    private val x = DoubleArray(capacity)
+    private val y = DoubleArray(capacity)
+    private val velocityX = DoubleArray(capacity)
+    private val velocityY = DoubleArray(capacity)
+    private val age = DoubleArray(capacity)
+    private val lifespan = DoubleArray(capacity)
+
+    /**
+     * Number of live particles.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Whether particles are accelerated by the gravity of the world.
+     */
+    var affectedByGravity = true
+
+    /**
+     * Whether particles bounce off the collision bodies of the world.
+     */
+    var collides = true
+
+    /**
+     * Fraction of the normal velocity kept when a particle bounces off a body.
+     */
+    var restitution = 0.5
+
+    /**
+     * Collision categories particles collide with.
+     */
+    var maskBits = CollisionFilter.ALL_CATEGORIES
+
+    private val lower = Vec2()
+    private val upper = Vec2()
+    private val start = Vec2()
+    private val end = Vec2()
+    private var current = 0
+    private var previousX = .0
+    private var previousY = .0
+
+    private val collider = BodyVisitor { b ->
+        resolve(b)
+        true
+    }
+
+    /**
+     * Adds a particle.
+     *
+     * @param x         Position x.
+     * @param y         Position y.
+     * @param velocityX Velocity x.
+     * @param velocityY Velocity y.
+     * @param lifespan  Time until the particle is recycled.
+     * @return Index of the particle or -1 if the pool is full.
+     */
+    fun emit(x: Double, y: Double, velocityX: Double, velocityY: Double, lifespan: Double): Int {
+        if (size == capacity) return -1
+        val i = size++
+        this.x[i] = x
+        this.y[i] = y
+        this.velocityX[i] = velocityX
+        this.velocityY[i] = velocityY
+        age[i] = .0
+        this.lifespan[i] = lifespan
+        return i
+    }
+
+    /**
+     * Removes all particles.
+     */
+    fun clear() {
+        size = 0
+    }
+
+    /**
+     * Gets the x coordinate of a particle.
+     *
+     * @param i Index of the particle.
+     * @return x coordinate.
+     */
+    fun xAt(i: Int): Double {
+        return x[i]
+    }
+
+    /**
+     * Gets the y coordinate of a particle.
+     *
+     * @param i Index of the particle.
+     * @return y coordinate.
+     */
+    fun yAt(i: Int): Double {
+        return y[i]
+    }
+
+    /**
+     * Gets the x velocity of a particle.
+     *
+     * @param i Index of the particle.
+     * @return x velocity.
+     */
+    fun velocityXAt(i: Int): Double {
+        return velocityX[i]
+    }
+
+    /**
+     * Gets the y velocity of a particle.
+     *
+     * @param i Index of the particle.
+     * @return y velocity.
+     */
+    fun velocityYAt(i: Int): Double {
+        return velocityY[i]
+    }
+
+    /**
+     * Gets the time a particle has been alive.
+     *
+     * @param i Index of the particle.
+     * @return Age of the particle.
+     */
+    fun ageAt(i: Int): Double {
+        return age[i]
+    }
+
+    /**
+     * Sets the velocity of a particle.
+     *
+     * @param i         Index of the particle.
+     * @param velocityX Velocity x.
+     * @param velocityY Velocity y.
+     */
+    fun setVelocity(i: Int, velocityX: Double, velocityY: Double) {
+        this.velocityX[i] = velocityX
+        this.velocityY[i] = velocityY
+    }
+
+    /**
+     * Ages, moves and collides all particles and recycles the ones that reached their lifespan.
+     *
+     * @param world World providing gravity and the bodies to collide with.
+     * @param dt    Timestep.
+     */
+    fun update(world: World, dt: Double) {
+        val gx = if (affectedByGravity) world.gravity.x * dt else .0
+        val gy = if (affectedByGravity) world.gravity.y * dt else .0
+        val collide = collides && world.bodies.isNotEmpty()
+        var i = 0
+        while (i < size) {
+            age[i] += dt
+            if (age[i] >= lifespan[i]) {
+                remove(i)
+                continue
+            }
+            velocityX[i] += gx
+            velocityY[i] += gy
+            previousX = x[i]
+            previousY = y[i]
+            x[i] += velocityX[i] * dt
+            y[i] += velocityY[i] * dt
+            if (collide) {
+                //Chains have no inside, so the bodies along the whole path are visited
+                current = i
+                lower.set(minOf(previousX, x[i]), minOf(previousY, y[i]))
+                upper.set(maxOf(previousX, x[i]), maxOf(previousY, y[i]))
+                world.queryAABB(lower, upper, collider, maskBits)
+            }
+            i++
+        }
+    }
+
+    /**
+     * Moves the last particle into a free index.
+     */
+    private fun remove(i: Int) {
+        val last = --size
+        x[i] = x[last]
+        y[i] = y[last]
+        velocityX[i] = velocityX[last]
+        velocityY[i] = velocityY[last]
+        age[i] = age[last]
+        lifespan[i] = lifespan[last]
+    }
+
+    /**
+     * Pushes the current particle out of a body it entered and reflects its velocity relative to the body.
+     */
+    private fun resolve(b: CollisionBodyInterface) {
+        val shape = b.shape
+        if (shape is CompoundShape) {
+            shape.updateChildren()
+            val i = current
+            val found = shape.query(x[i], y[i], x[i], y[i])
+            for (k in 0 until found) {
+                pushOut(shape.child(shape.hits[k]), b)
+            }
+        } else if (shape is TileMap) {
+            val i = current
+            val found = shape.query(x[i], y[i], x[i], y[i])
+            for (k in 0 until found) {
+                pushOut(shape.rectangle(shape.hits[k]), b)
+            }
+        } else if (shape is ChainShape) {
+            val i = current
+            //A push out of one segment can move the particle behind its neighbour in a concave corner
+            for (pass in 0 until MAX_CHAIN_PASSES) {
+                val found = shape.query(minOf(previousX, x[i]), minOf(previousY, y[i]), maxOf(previousX, x[i]), maxOf(previousY, y[i]))
+                var pushed = false
+                for (k in 0 until found) {
+                    val segment = shape.hits[k]
+                    shape.worldVertex(segment, start)
+                    shape.worldVertex(segment + 1, end)
+                    if (pushOutOfSegment(b)) pushed = true
+                }
+                if (!pushed) break
+            }
+        } else {
+            pushOut(b, b)
+        }
+    }
+
+    /**
+     * Pushes the current particle out of a circle or polygon that is part of a body.
+     *
+     * @param part Body placing the circle or polygon.
+     * @param b    Body the particle bounces off.
+     */
+    private fun pushOut(part: CollisionBodyInterface, b: CollisionBodyInterface) {
+        val i = current
+        val shape = part.shape
+        val px = x[i] - part.position.x
+        val py = y[i] - part.position.y
+        val normalX: Double
+        val normalY: Double
+        val depth: Double
+        if (shape is Circle) {
+            val distance = sqrt(px * px + py * py)
+            if (distance == .0) {
+                normalX = .0
+                normalY = 1.0
+            } else {
+                normalX = px / distance
+                normalY = py / distance
+            }
+            depth = shape.radius - distance
+        } else if (shape is Polygon) {
+            //The face with the least penetration gives the shortest way out
+            val m = shape.orientation
+            val lx = m.row1.x * px + m.row2.x * py
+            val ly = m.row1.y * px + m.row2.y * py
+            var face = 0
+            var separation = Double.NEGATIVE_INFINITY
+            for (f in shape.vertices.indices) {
+                val n = shape.normals[f]
+                val v = shape.vertices[f]
+                val s = n.x * (lx - v.x) + n.y * (ly - v.y)
+                if (s > separation) {
+                    separation = s
+                    face = f
+                }
+            }
+            val n = shape.normals[face]
+            normalX = m.row1.x * n.x + m.row1.y * n.y
+            normalY = m.row2.x * n.x + m.row2.y * n.y
+            depth = -separation
+        } else {
+            return
+        }
+        if (depth > 0) bounce(b, normalX, normalY, depth)
+    }
+
+    /**
+     * Pushes the current particle back if its last move crossed the segment between [start] and [end] from the left, or
+     * if it ended up behind the segment after starting on its left.
+     *
+     * @return Boolean value whether the particle was pushed.
+     */
+    private fun pushOutOfSegment(b: CollisionBodyInterface): Boolean {
+        val i = current
+        val sx = end.x - start.x
+        val sy = end.y - start.y
+        val lengthSquared = sx * sx + sy * sy
+        if (lengthSquared == .0) return false
+        val length = sqrt(lengthSquared)
+        val normalX = -sy / length
+        val normalY = sx / length
+
+        //Signed distances to the line of the segment, positive on the colliding side
+        val previousDistance = normalX * (previousX - start.x) + normalY * (previousY - start.y)
+        val distance = normalX * (x[i] - start.x) + normalY * (y[i] - start.y)
+        if (previousDistance < -SLOP || distance >= 0) return false
+
+        //The path has to cross the segment itself or end right behind it
+        val t = if (previousDistance > 0) previousDistance / (previousDistance - distance) else .0
+        val crossX = previousX + (x[i] - previousX) * t
+        val crossY = previousY + (y[i] - previousY) * t
+        val u = ((crossX - start.x) * sx + (crossY - start.y) * sy) / lengthSquared
+        val behind = ((x[i] - start.x) * sx + (y[i] - start.y) * sy) / lengthSquared
+        if ((u < 0 || u > 1) && (behind < 0 || behind > 1)) return false
+        bounce(b, normalX, normalY, -distance)
+        return true
+    }
+
+    /**
+     * Moves the current particle along a normal and reflects its velocity relative to a body.
+     */
+    private fun bounce(b: CollisionBodyInterface, normalX: Double, normalY: Double, depth: Double) {
+        val i = current
+        x[i] += normalX * depth
+        y[i] += normalY * depth
+        var bodyVelocityX = .0
+        var bodyVelocityY = .0
+        if (b is PhysicalBodyInterface) {
+            bodyVelocityX = b.velocity.x
+            bodyVelocityY = b.velocity.y
+        }
+        val relativeX = velocityX[i] - bodyVelocityX
+        val relativeY = velocityY[i] - bodyVelocityY
+        val normalVelocity = relativeX * normalX + relativeY * normalY
+        if (normalVelocity < 0) {
+            val j = (1 + restitution) * normalVelocity
+            velocityX[i] -= j * normalX
+            velocityY[i] -= j * normalY
+        }
+    }
+
+    companion object {
+        /**
+         * Distance a particle may lie behind a chain segment and still be pushed back, so rounding after a push out does
+         * not let it fall through.
+         */
+        private const val SLOP = 1e-9
+
+        /**
+         * Maximum number of times the segments under a particle are tested in one update.
+         */
+        private const val MAX_CHAIN_PASSES = 3
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package containing lightweight particles that are simulated apart from the bodies of a world.
+ */
+package de.chaffic.particles;
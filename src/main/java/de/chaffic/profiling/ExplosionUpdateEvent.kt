@@ -0,0 +1,29 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted for every update of an [de.chaffic.explosions.Explosion].
+ */
+@Name("de.chaffic.ExplosionUpdate")
+@Label("Explosion Update")
+@Description("Reevaluation of the bodies effected by an explosion")
+class ExplosionUpdateEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Ray Count")
+    var rayCount = 0
+
+    @JvmField
+    @Label("Explosion Type")
+    var explosionType: String? = null
+
+    @JvmField
+    @Label("Effected Bodies")
+    var effectedBodies = 0
+
+    @JvmField
+    @Label("Particle Count")
+    var particleCount = 0
+}
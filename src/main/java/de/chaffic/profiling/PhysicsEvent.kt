@@ -0,0 +1,25 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Category
+import jdk.jfr.Event
+import jdk.jfr.Label
+import jdk.jfr.StackTrace
+
+/**
+ * Base class of all flight recorder events emitted by KPhysics.
+ * Carries the counts that are needed to correlate physics spikes with the rest of a recording.
+ *
+ * Events follow the usual pattern of begin, work, commit. Fields are only filled in if [shouldCommit] returns true so
+ * that a disabled event costs next to nothing.
+ */
+@Category("KPhysics")
+@StackTrace(false)
+abstract class PhysicsEvent : Event() {
+    @JvmField
+    @Label("Body Count")
+    var bodyCount = 0
+
+    @JvmField
+    @Label("Contact Count")
+    var contactCount = 0
+}
@@ -0,0 +1,21 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted for every [de.chaffic.rays.Ray.updateProjection] call.
+ */
+@Name("de.chaffic.RayProjection")
+@Label("Ray Projection")
+@Description("Projection of a single ray against a list of bodies")
+class RayProjectionEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Ray Count")
+    var rayCount = 0
+
+    @JvmField
+    @Label("Hit")
+    var hit = false
+}
@@ -0,0 +1,17 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted for every [de.chaffic.rays.ShadowCasting.updateProjections] call.
+ */
+@Name("de.chaffic.ShadowCasting")
+@Label("Shadow Casting")
+@Description("Update of a shadow casting light")
+class ShadowCastingEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Ray Count")
+    var rayCount = 0
+}
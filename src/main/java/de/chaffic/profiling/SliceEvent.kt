@@ -0,0 +1,21 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted for every [de.chaffic.rays.Slice.sliceObjects] call.
+ */
+@Name("de.chaffic.Slice")
+@Label("Slice")
+@Description("Slicing of all bodies intersecting a slice")
+class SliceEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Ray Count")
+    var rayCount = 0
+
+    @JvmField
+    @Label("Sliced Bodies")
+    var slicedBodies = 0
+}
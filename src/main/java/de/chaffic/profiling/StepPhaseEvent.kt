@@ -0,0 +1,25 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted for every phase of [de.chaffic.dynamics.World.step].
+ */
+@Name("de.chaffic.StepPhase")
+@Label("World Step Phase")
+@Description("A single phase of a world time step")
+class StepPhaseEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Phase")
+    var phase: String? = null
+
+    companion object {
+        const val BROAD_PHASE = "broadphase"
+        const val FORCES = "forces"
+        const val SOLVE = "solve"
+        const val INTEGRATION = "integration"
+        const val PENETRATION_RESOLUTION = "penetrationResolution"
+    }
+}
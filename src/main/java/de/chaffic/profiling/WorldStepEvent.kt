@@ -0,0 +1,21 @@
+package de.chaffic.profiling
+
+import jdk.jfr.Description
+import jdk.jfr.Label
+import jdk.jfr.Name
+
+/**
+ * Emitted once per call of [de.chaffic.dynamics.World.step].
+ */
+@Name("de.chaffic.WorldStep")
+@Label("World Step")
+@Description("A complete time step of a world")
+class WorldStepEvent : PhysicsEvent() {
+    @JvmField
+    @Label("Timestep")
+    var dt = .0
+
+    @JvmField
+    @Label("Joint Count")
+    var jointCount = 0
+}
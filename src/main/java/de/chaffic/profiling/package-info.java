@@ -0,0 +1,4 @@
+/**
+ * Package containing Java Flight Recorder events emitted by the engine.
+ */
+package de.chaffic.profiling;
@@ -0,0 +1,132 @@
+package de.chaffic.rays
+
+import de.chaffic.geometry.bodies.TranslatableBody
+import java.util.stream.IntStream
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sqrt
+
+/**
+ * Casts many rays at once. The geometry of all candidate bodies is gathered into an [OccluderBuffer] a single time, then
+ * every ray is intersected with the packed edges and circles. Results are written into the reusable
+ * [RayInformation] slot of every ray.
+ *
+ * Polygon edges are hit from both sides, like [Ray.updateProjection]. Circles are only hit from the outside.
+ *
+ * @param parallel Whether rays are processed in parallel chunks on the common fork join pool.
+ */
+class BatchRaycaster @JvmOverloads constructor(var parallel: Boolean = false) {
+    /**
+     * Geometry of the last batch.
+     */
+    val occluders = OccluderBuffer()
+
+    private var rays: List<Ray> = emptyList()
+
+    /**
+     * Casts all rays against the bodies. Only bodies overlapping the bounds of all rays are gathered.
+     *
+     * @param rays             Rays to cast.
+     * @param bodiesToEvaluate Bodies to cast the rays against.
+     */
+    fun cast(rays: List<Ray>, bodiesToEvaluate: List<TranslatableBody>) {
+        if (rays.isEmpty()) return
+        var minX = Double.POSITIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        for (ray in rays) {
+            val sx = ray.startPoint.x
+            val sy = ray.startPoint.y
+            val ex = sx + ray.direction.x * ray.distance
+            val ey = sy + ray.direction.y * ray.distance
+            minX = min(minX, min(sx, ex))
+            minY = min(minY, min(sy, ey))
+            maxX = max(maxX, max(sx, ex))
+            maxY = max(maxY, max(sy, ey))
+        }
+        occluders.gather(bodiesToEvaluate, minX, minY, maxX, maxY)
+
+        this.rays = rays
+        val chunks = (rays.size + CHUNK_SIZE - 1) / CHUNK_SIZE
+        if (parallel && chunks > 1) {
+            IntStream.range(0, chunks).parallel().forEach { castChunk(it) }
+        } else {
+            for (chunk in 0 until chunks) {
+                castChunk(chunk)
+            }
+        }
+        this.rays = emptyList()
+    }
+
+    private fun castChunk(chunk: Int) {
+        val end = min(rays.size, (chunk + 1) * CHUNK_SIZE)
+        for (i in chunk * CHUNK_SIZE until end) {
+            castRay(rays[i])
+        }
+    }
+
+    /**
+     * Finds the closest intersection of a single ray with the gathered geometry.
+     */
+    private fun castRay(ray: Ray) {
+        val ox = ray.startPoint.x
+        val oy = ray.startPoint.y
+        val dx = ray.direction.x * ray.distance
+        val dy = ray.direction.y * ray.distance
+        var best = Double.POSITIVE_INFINITY
+        var bestBody = -1
+        var bestFace = -1
+
+        val edges = occluders.edges
+        for (i in 0 until occluders.edgeCount) {
+            val offset = i * 4
+            val px = edges[offset]
+            val py = edges[offset + 1]
+            val ex = edges[offset + 2] - px
+            val ey = edges[offset + 3] - py
+            val denominator = dx * ey - dy * ex
+            if (denominator == 0.0) continue
+            val qx = px - ox
+            val qy = py - oy
+            val t = (qx * ey - qy * ex) / denominator
+            if (t < 0.0 || t > 1.0 || t >= best) continue
+            val u = (qx * dy - qy * dx) / denominator
+            if (u < 0.0 || u > 1.0) continue
+            best = t
+            bestBody = occluders.edgeBodies[i]
+            bestFace = occluders.edgeFaces[i]
+        }
+
+        val circles = occluders.circles
+        val a = dx * dx + dy * dy
+        for (i in 0 until occluders.circleCount) {
+            val offset = i * 3
+            val fx = ox - circles[offset]
+            val fy = oy - circles[offset + 1]
+            val r = circles[offset + 2]
+            val b = 2 * (fx * dx + fy * dy)
+            val c = fx * fx + fy * fy - r * r
+            val discriminant = b * b - 4 * a * c
+            if (discriminant < 0) continue
+            val t = (-b - sqrt(discriminant)) / (2 * a)
+            if (t < 0.0 || t > 1.0 || t >= best) continue
+            best = t
+            bestBody = occluders.circleBodies[i]
+            bestFace = -1
+        }
+
+        if (bestBody < 0) {
+            ray.clearHit()
+        } else {
+            ray.setHit(occluders.bodies[bestBody], ox + dx * best, oy + dy * best, bestFace)
+        }
+    }
+
+    companion object {
+        /**
+         * Number of rays processed by one parallel task.
+         */
+        const val CHUNK_SIZE = 64
+    }
+}
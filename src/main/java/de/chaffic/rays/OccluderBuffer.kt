@@ -0,0 +1,240 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.geometry.ChainShape
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.CompoundShape
+import de.chaffic.geometry.Polygon
+import de.chaffic.geometry.Shape
+import de.chaffic.geometry.TileMap
+import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.math.Vec2
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Packed world space geometry of occluding bodies. Polygon edges are transformed once when gathered and stored as
+ * primitive arrays, so many rays can be tested against them without touching the bodies or allocating vectors.
+ */
+class OccluderBuffer {
+    /**
+     * Edge start and end points, four values per edge: x1, y1, x2, y2.
+     */
+    internal var edges = DoubleArray(64)
+
+    /**
+     * Index into [bodies] of the body every edge belongs to.
+     */
+    internal var edgeBodies = IntArray(16)
+
+    /**
+     * Polygon face or chain segment index of every edge. -1 for edges of tessellated circles and tile maps.
+     */
+    internal var edgeFaces = IntArray(16)
+
+    /**
+     * Circle centres and radii, three values per circle: x, y, radius.
+     */
+    internal var circles = DoubleArray(24)
+
+    /**
+     * Index into [bodies] of the body every circle belongs to.
+     */
+    internal var circleBodies = IntArray(8)
+
+    /**
+     * Bodies the stored geometry was gathered from.
+     */
+    val bodies = ArrayList<CollisionBodyInterface>()
+
+    private val start = Vec2()
+    private val end = Vec2()
+
+    /**
+     * Number of stored edges.
+     */
+    var edgeCount = 0
+        private set
+
+    /**
+     * Number of stored circles.
+     */
+    var circleCount = 0
+        private set
+
+    /**
+     * Removes all stored geometry.
+     */
+    fun clear() {
+        edgeCount = 0
+        circleCount = 0
+        bodies.clear()
+    }
+
+    /**
+     * Gathers the geometry of all bodies whose bounding boxes overlap a region. Previously stored geometry is removed.
+     *
+     * @param bodiesToEvaluate Bodies to gather geometry from.
+     * @param minX Lower x bound of the region.
+     * @param minY Lower y bound of the region.
+     * @param maxX Upper x bound of the region.
+     * @param maxY Upper y bound of the region.
+     * @param circleSegments If greater than zero, circles are stored as regular polygons with this many edges instead of
+     * as circles.
+     */
+    @JvmOverloads
+    fun gather(
+        bodiesToEvaluate: List<TranslatableBody>,
+        minX: Double = Double.NEGATIVE_INFINITY,
+        minY: Double = Double.NEGATIVE_INFINITY,
+        maxX: Double = Double.POSITIVE_INFINITY,
+        maxY: Double = Double.POSITIVE_INFINITY,
+        circleSegments: Int = 0
+    ) {
+        clear()
+        for (body in bodiesToEvaluate) {
+            if (body !is CollisionBodyInterface) continue
+            val aabb = body.aabb
+            val p = body.position
+            if (aabb.min.x + p.x > maxX || aabb.max.x + p.x < minX || aabb.min.y + p.y > maxY || aabb.max.y + p.y < minY) {
+                continue
+            }
+            addBody(body, circleSegments, minX, minY, maxX, maxY)
+        }
+    }
+
+    /**
+     * Adds the geometry of a single body. Children of compound shapes are added as part of the body, and so are the
+     * segments of chains and the merged rectangles of tile maps.
+     *
+     * @param body Body to add.
+     * @param circleSegments If greater than zero, circles are stored as regular polygons with this many edges.
+     */
+    @JvmOverloads
+    fun addBody(body: CollisionBodyInterface, circleSegments: Int = 0) {
+        addBody(
+            body, circleSegments,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY
+        )
+    }
+
+    /**
+     * Adds the geometry of a single body. Of chains and tile maps only the parts overlapping the region are added.
+     */
+    private fun addBody(body: CollisionBodyInterface, circleSegments: Int, minX: Double, minY: Double, maxX: Double, maxY: Double) {
+        val shape = body.shape
+        val bodyIndex = bodies.size
+        if (shape is Polygon || shape is Circle) {
+            bodies.add(body)
+            addShape(shape, body.position, bodyIndex, circleSegments)
+        } else if (shape is CompoundShape) {
+            bodies.add(body)
+            shape.updateChildren()
+            for (i in shape.children.indices) {
+                val child = shape.child(i)
+                addShape(child.shape, child.position, bodyIndex, circleSegments)
+            }
+        } else if (shape is ChainShape) {
+            //The region is clamped to the body, queries need finite bounds
+            val aabb = body.aabb
+            val p = body.position
+            val found = shape.query(
+                maxOf(minX, aabb.min.x + p.x), maxOf(minY, aabb.min.y + p.y),
+                minOf(maxX, aabb.max.x + p.x), minOf(maxY, aabb.max.y + p.y)
+            )
+            if (found == 0) return
+            bodies.add(body)
+            for (k in 0 until found) {
+                val i = shape.hits[k]
+                shape.worldVertex(i, start)
+                shape.worldVertex(i + 1, end)
+                addEdge(start.x, start.y, end.x, end.y, bodyIndex, i)
+            }
+        } else if (shape is TileMap) {
+            val aabb = body.aabb
+            val p = body.position
+            val found = shape.query(
+                maxOf(minX, aabb.min.x + p.x), maxOf(minY, aabb.min.y + p.y),
+                minOf(maxX, aabb.max.x + p.x), minOf(maxY, aabb.max.y + p.y)
+            )
+            if (found == 0) return
+            bodies.add(body)
+            for (k in 0 until found) {
+                val rectangle = shape.rectangle(shape.hits[k])
+                addShape(rectangle.shape, rectangle.position, bodyIndex, circleSegments, false)
+            }
+        }
+    }
+
+    /**
+     * Adds the geometry of a circle or polygon placed at a position.
+     *
+     * @param faces Whether polygon edges keep their face index, otherwise it is -1.
+     */
+    private fun addShape(shape: Shape, position: Vec2, bodyIndex: Int, circleSegments: Int, faces: Boolean = true) {
+        val px = position.x
+        val py = position.y
+        if (shape is Polygon) {
+            val r1 = shape.orientation.row1
+            val r2 = shape.orientation.row2
+            val vertices = shape.vertices
+            val first = vertices[0]
+            val firstX = r1.x * first.x + r1.y * first.y + px
+            val firstY = r2.x * first.x + r2.y * first.y + py
+            var startX = firstX
+            var startY = firstY
+            for (i in vertices.indices) {
+                val endX: Double
+                val endY: Double
+                if (i + 1 == vertices.size) {
+                    endX = firstX
+                    endY = firstY
+                } else {
+                    val v = vertices[i + 1]
+                    endX = r1.x * v.x + r1.y * v.y + px
+                    endY = r2.x * v.x + r2.y * v.y + py
+                }
+                addEdge(startX, startY, endX, endY, bodyIndex, if (faces) i else -1)
+                startX = endX
+                startY = endY
+            }
+        } else if (shape is Circle) {
+            if (circleSegments > 0) {
+                val step = 2 * Math.PI / circleSegments
+                var startX = px + shape.radius
+                var startY = py
+                for (i in 1..circleSegments) {
+                    val endX = px + shape.radius * cos(step * i)
+                    val endY = py + shape.radius * sin(step * i)
+                    addEdge(startX, startY, endX, endY, bodyIndex, -1)
+                    startX = endX
+                    startY = endY
+                }
+            } else {
+                if (circleCount == circleBodies.size) {
+                    circles = circles.copyOf(circles.size * 2)
+                    circleBodies = circleBodies.copyOf(circleBodies.size * 2)
+                }
+                circles[circleCount * 3] = px
+                circles[circleCount * 3 + 1] = py
+                circles[circleCount * 3 + 2] = shape.radius
+                circleBodies[circleCount++] = bodyIndex
+            }
+        }
+    }
+
+    private fun addEdge(x1: Double, y1: Double, x2: Double, y2: Double, bodyIndex: Int, face: Int) {
+        if (edgeCount == edgeBodies.size) {
+            edges = edges.copyOf(edges.size * 2)
+            edgeBodies = edgeBodies.copyOf(edgeBodies.size * 2)
+            edgeFaces = edgeFaces.copyOf(edgeFaces.size * 2)
+        }
+        val offset = edgeCount * 4
+        edges[offset] = x1
+        edges[offset + 1] = y1
+        edges[offset + 2] = x2
+        edges[offset + 3] = y2
+        edgeBodies[edgeCount] = bodyIndex
+        edgeFaces[edgeCount++] = face
+    }
+}
@@ -1,8 +1,10 @@
 package de.chaffic.rays
 
 import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.World
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
+import de.chaffic.profiling.RayProjectionEvent
 
 /**
  * Ray class to define and project rays in a world.
@@ -60,12 +62,96 @@ class Ray(var startPoint: Vec2, direction: Vec2, distance: Double) {
         this.distance = distance
     }
 
+    private val raycastResult = RaycastResult()
+    private val endPoint = Vec2()
+
+    /**
+     * Reusable slot [rayInformation] points to after a batch or world update.
+     */
+    private var informationSlot: RayInformation? = null
+
+    /**
+     * Stores a hit found by a [BatchRaycaster] or a world in the reusable information slot.
+     */
+    internal fun setHit(body: TranslatableBody, x: Double, y: Double, index: Int) {
+        val slot = informationSlot
+        if (slot == null) {
+            informationSlot = RayInformation(body, x, y, index)
+        } else {
+            slot.set(body, x, y, index)
+        }
+        rayInformation = informationSlot
+    }
+
+    /**
+     * Clears the hit after a batch or world update found nothing.
+     */
+    internal fun clearHit() {
+        rayInformation = null
+    }
+
+    /**
+     * Checks whether any of the bodies blocks the ray. Stops at the first body hit instead of searching for the closest one
+     * and leaves [rayInformation] untouched.
+     *
+     * @param bodiesToEvaluate Arraylist of bodies to check if they intersect with the ray projection.
+     * @return Boolean value whether the ray is blocked.
+     */
+    fun isObstructed(bodiesToEvaluate: ArrayList<TranslatableBody>): Boolean {
+        val endX = startPoint.x + direction.x * distance
+        val endY = startPoint.y + direction.y * distance
+        for (body in bodiesToEvaluate) {
+            if (body !is CollisionBodyInterface) continue
+            if (body.shape.raycast(startPoint.x, startPoint.y, endX, endY, 1.0, raycastResult)) {
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * Checks whether any body of a world blocks the ray using the broad phase of the world.
+     *
+     * @param world World to project the ray in.
+     * @return Boolean value whether the ray is blocked.
+     */
+    fun isObstructed(world: World): Boolean {
+        endPoint.set(startPoint.x + direction.x * distance, startPoint.y + direction.y * distance)
+        return world.raycastAny(startPoint, endPoint, raycastResult)
+    }
+
+    /**
+     * Updates the projection in world space using the broad phase of a world. Only bodies whose bounding boxes the ray
+     * passes through are tested. A hit is stored in the same [RayInformation] on every update.
+     *
+     * @param world World to project the ray in.
+     */
+    fun updateProjection(world: World) {
+        val event = RayProjectionEvent()
+        event.begin()
+        endPoint.set(startPoint.x + direction.x * distance, startPoint.y + direction.y * distance)
+        if (world.raycast(startPoint, endPoint, raycastResult)) {
+            setHit(raycastResult.body!!, raycastResult.point.x, raycastResult.point.y, raycastResult.index)
+        } else {
+            clearHit()
+        }
+        event.end()
+        if (event.shouldCommit()) {
+            event.bodyCount = world.bodies.size
+            event.rayCount = 1
+            event.hit = rayInformation != null
+            event.commit()
+        }
+    }
+
     /**
      * Updates the projection in world space and acquires information about the closest intersecting object with the ray projection.
      *
      * @param bodiesToEvaluate Arraylist of bodies to check if they intersect with the ray projection.
      */
     fun updateProjection(bodiesToEvaluate: ArrayList<TranslatableBody>) {
+        val event = RayProjectionEvent()
+        event.begin()
         rayInformation = null
         val endPoint = direction.scalar(distance).plus(startPoint)
         var minT1 = Double.POSITIVE_INFINITY
@@ -88,5 +174,12 @@ class Ray(var startPoint: Vec2, direction: Vec2, distance: Double) {
         if (intersectionFound) {
             rayInformation = closestBody?.let { RayInformation(it, minPx, minPy, -1) }
         }
+        event.end()
+        if (event.shouldCommit()) {
+            event.bodyCount = bodiesToEvaluate.size
+            event.rayCount = 1
+            event.hit = intersectionFound
+            event.commit()
+        }
     }
 }
\ No newline at end of file
@@ -12,7 +12,8 @@ class RayInformation {
      *
      * @return returns b variable of type Body.
      */
-    val b: TranslatableBody
+    var b: TranslatableBody
+        private set
 
     /**
      * Getter for coords variable.
@@ -27,7 +28,8 @@ class RayInformation {
      * @return returns index variable of type int.
      */
     // Poly index is the first index of the line of intersection found
-    val index: Int
+    var index: Int
+        private set
 
     /**
      * Constructor to store information about a ray intersection.
@@ -56,4 +58,18 @@ class RayInformation {
         coordinates = v.copy()
         this.index = index
     }
+
+    /**
+     * Overwrites the stored intersection so the object can be reused.
+     *
+     * @param b     Body involved with ray intersection.
+     * @param x     x position of intersection.
+     * @param y     y position of intersection.
+     * @param index Index of shapes side that intersection intersects.
+     */
+    internal fun set(b: TranslatableBody, x: Double, y: Double, index: Int) {
+        this.b = b
+        coordinates.set(x, y)
+        this.index = index
+    }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package de.chaffic.rays
+
+/**
+ * Callback receiving the hits of [de.chaffic.dynamics.World.raycastAll] ordered from nearest to farthest.
+ */
+fun interface RaycastHitCallback {
+    /**
+     * Called for every hit. The result object is reused for the next hit, copy what needs to be kept.
+     *
+     * @param result The hit.
+     * @return False to stop receiving hits.
+     */
+    fun hit(result: RaycastResult): Boolean
+}
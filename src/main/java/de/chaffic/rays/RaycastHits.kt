@@ -0,0 +1,83 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+
+/**
+ * Growable buffer of ray hits that is kept sorted by fraction while hits are added.
+ */
+internal class RaycastHits {
+    private var bodies = arrayOfNulls<CollisionBodyInterface>(16)
+    private var fractions = DoubleArray(16)
+    private var normalsX = DoubleArray(16)
+    private var normalsY = DoubleArray(16)
+    private var indices = IntArray(16)
+
+    var size = 0
+        private set
+
+    /**
+     * Inserts a hit at its sorted position.
+     *
+     * @param body     Body that was hit.
+     * @param hit      Fraction, normal and index of the hit.
+     */
+    fun add(body: CollisionBodyInterface, hit: RaycastResult) {
+        if (size == fractions.size) {
+            val capacity = size * 2
+            bodies = bodies.copyOf(capacity)
+            fractions = fractions.copyOf(capacity)
+            normalsX = normalsX.copyOf(capacity)
+            normalsY = normalsY.copyOf(capacity)
+            indices = indices.copyOf(capacity)
+        }
+
+        //Binary search for the insertion point
+        var low = 0
+        var high = size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (fractions[mid] <= hit.fraction) low = mid + 1 else high = mid
+        }
+        val moved = size - low
+        if (moved > 0) {
+            System.arraycopy(bodies, low, bodies, low + 1, moved)
+            System.arraycopy(fractions, low, fractions, low + 1, moved)
+            System.arraycopy(normalsX, low, normalsX, low + 1, moved)
+            System.arraycopy(normalsY, low, normalsY, low + 1, moved)
+            System.arraycopy(indices, low, indices, low + 1, moved)
+        }
+        bodies[low] = body
+        fractions[low] = hit.fraction
+        normalsX[low] = hit.normal.x
+        normalsY[low] = hit.normal.y
+        indices[low] = hit.index
+        size++
+    }
+
+    /**
+     * Copies a stored hit into a result.
+     *
+     * @param i      Position of the hit, 0 is the nearest.
+     * @param startX X coordinate of the ray start.
+     * @param startY Y coordinate of the ray start.
+     * @param endX   X coordinate of the ray end.
+     * @param endY   Y coordinate of the ray end.
+     * @param result Result to write into.
+     */
+    fun get(i: Int, startX: Double, startY: Double, endX: Double, endY: Double, result: RaycastResult) {
+        val fraction = fractions[i]
+        result.body = bodies[i]
+        result.fraction = fraction
+        result.normal.set(normalsX[i], normalsY[i])
+        result.index = indices[i]
+        result.point.set(startX + (endX - startX) * fraction, startY + (endY - startY) * fraction)
+    }
+
+    /**
+     * Removes all hits.
+     */
+    fun clear() {
+        bodies.fill(null, 0, size)
+        size = 0
+    }
+}
@@ -0,0 +1,51 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.math.Vec2
+
+/**
+ * Reusable result of a ray cast. Ray casts write into an instance supplied by the caller so no garbage is created.
+ */
+class RaycastResult {
+    /**
+     * Body that was hit. Null if nothing was hit.
+     */
+    var body: CollisionBodyInterface? = null
+
+    /**
+     * Point of intersection in world space.
+     */
+    val point = Vec2()
+
+    /**
+     * Surface normal at the point of intersection in world space.
+     */
+    val normal = Vec2()
+
+    /**
+     * Fraction of the ray segment at which the intersection lies.
+     */
+    var fraction = 1.0
+
+    /**
+     * Index of the polygon face that was hit. -1 for circles.
+     */
+    var index = -1
+
+    /**
+     * Whether the ray hit anything.
+     */
+    val hasHit: Boolean
+        get() = body != null
+
+    /**
+     * Resets the result to "no hit".
+     */
+    fun reset() {
+        body = null
+        point.set(.0, .0)
+        normal.set(.0, .0)
+        fraction = 1.0
+        index = -1
+    }
+}
@@ -1,17 +1,13 @@
 package de.chaffic.rays
 
 import de.chaffic.collision.Arbiter.Companion.isPointInside
-import de.chaffic.collision.bodies.CollisionBodyInterface
-import de.chaffic.geometry.Circle
-import de.chaffic.geometry.Polygon
 import de.chaffic.geometry.bodies.TranslatableBody
-import de.chaffic.math.Mat2
 import de.chaffic.math.Vec2
-import kotlin.math.asin
-import kotlin.math.atan2
+import de.chaffic.profiling.ShadowCastingEvent
 
 /**
- * A class for generating polygons that can mimic line of sight around objects and cast shadows.
+ * A class for generating polygons that can mimic line of sight around objects and cast shadows. The polygon is computed
+ * with an angular sweep over the edges of all bodies in range, see [VisibilitySweep].
  */
 class ShadowCasting
 /**
@@ -21,67 +17,91 @@ class ShadowCasting
  * @param distance   The desired distance to project the rays.
  */(var startPoint: Vec2, private val distance: Double) {
 
-    val rayData = ArrayList<RayAngleInformation>()
+    /**
+     * Edges of the bodies in range gathered by the last update.
+     */
+    val occluders = OccluderBuffer()
 
     /**
-     * Updates the all projections in world space and acquires information about all intersecting rays.
-     *
-     * @param bodiesToEvaluate Arraylist of bodies to check if they intersect with the ray projection.
+     * Visibility polygon of the last update. Empty if the start point lies inside a body.
      */
-    fun updateProjections(bodiesToEvaluate: ArrayList<TranslatableBody>) {
-        rayData.clear()
-        for (B in bodiesToEvaluate) {
-            if(B !is CollisionBodyInterface) continue
+    val visibility = VisibilityPolygon()
 
-            if (isPointInside(B, startPoint)) {
-                rayData.clear()
-                break
-            }
-            if (B.shape is Polygon) {
-                val poly1 = B.shape as Polygon
-                for (v in poly1.vertices) {
-                    val direction = poly1.orientation.mul(v, Vec2()).plus(B.position).minus(startPoint)
-                    projectRays(direction, bodiesToEvaluate)
+    /**
+     * Number of edges circles are approximated with.
+     */
+    var circleSegments = DEFAULT_CIRCLE_SEGMENTS
+
+    private val sweep = VisibilitySweep()
+    private var compatibilityRays: ArrayList<RayAngleInformation>? = null
+
+    /**
+     * Points of the visibility polygon as rays sorted by descending angle. Built on first access after every update.
+     */
+    @Deprecated("Allocates a ray per point, read the points from visibility instead.")
+    val rayData: ArrayList<RayAngleInformation>
+        get() {
+            var rays = compatibilityRays
+            if (rays == null) {
+                rays = ArrayList(visibility.size)
+                for (i in visibility.size - 1 downTo 0) {
+                    val ray = Ray(startPoint, Vec2(visibility.xAt(i) - startPoint.x, visibility.yAt(i) - startPoint.y), distance)
+                    val body = visibility.bodyAt(i)
+                    if (body != null) {
+                        ray.setHit(body, visibility.xAt(i), visibility.yAt(i), -1)
+                    }
+                    rays.add(RayAngleInformation(ray, visibility.angleAt(i)))
                 }
-            } else {
-                val circle = B.shape as Circle
-                val d = B.position.minus(startPoint)
-                val angle = asin(circle.radius / d.length())
-                val u = Mat2(angle)
-                projectRays(u.mul(d.normalize(), Vec2()), bodiesToEvaluate)
-                val u2 = Mat2(-angle)
-                projectRays(u2.mul(d.normalize(), Vec2()), bodiesToEvaluate)
+                compatibilityRays = rays
             }
+            return rays
         }
-        rayData.sortWith { lhs: RayAngleInformation, rhs: RayAngleInformation ->
-            rhs.angle.compareTo(lhs.angle)
-        }
-    }
 
     /**
-     * Projects a ray and evaluates it against all objects supplied in world space.
+     * Updates the visibility polygon in world space.
      *
-     * @param direction        Direction of ray to project.
-     * @param bodiesToEvaluate Arraylist of bodies to check if they intersect with the ray projection.
+     * @param bodiesToEvaluate Arraylist of bodies that can block the light.
      */
-    private fun projectRays(direction: Vec2, bodiesToEvaluate: ArrayList<TranslatableBody>) {
-        val m = Mat2(0.001)
-        m.transpose().mul(direction)
-        for (i in 0..2) {
-            val ray = Ray(startPoint, direction, distance)
-            ray.updateProjection(bodiesToEvaluate)
-            rayData.add(RayAngleInformation(ray, atan2(direction.y, direction.x)))
-            m.mul(direction)
+    fun updateProjections(bodiesToEvaluate: ArrayList<TranslatableBody>) {
+        val event = ShadowCastingEvent()
+        event.begin()
+        compatibilityRays = null
+        visibility.clear()
+        val x = startPoint.x
+        val y = startPoint.y
+        occluders.gather(bodiesToEvaluate, x - distance, y - distance, x + distance, y + distance, circleSegments)
+        var inside = false
+        for (b in occluders.bodies) {
+            if (isPointInside(b, startPoint)) {
+                inside = true
+                break
+            }
+        }
+        if (!inside) {
+            sweep.compute(x, y, distance, occluders, visibility)
+        }
+        event.end()
+        if (event.shouldCommit()) {
+            event.bodyCount = bodiesToEvaluate.size
+            event.rayCount = visibility.size
+            event.commit()
         }
     }
 
     /**
      * Getter for number of rays projected.
      *
-     * @return Returns size of raydata.
+     * @return Returns the number of points of the visibility polygon.
      */
     val noOfRays: Int
-        get() = rayData.size
+        get() = visibility.size
+
+    companion object {
+        /**
+         * Default number of edges circles are approximated with.
+         */
+        const val DEFAULT_CIRCLE_SEGMENTS = 16
+    }
 }
 
 /**
@@ -0,0 +1,253 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.math.Vec2
+import de.chaffic.profiling.ShadowCastingEvent
+import java.util.IdentityHashMap
+import java.util.stream.IntStream
+
+/**
+ * Computes the visibility polygons of many lights at once. The edges of all bodies in range of any light are gathered a
+ * single time per update and shared by all lights, which are then swept in parallel.
+ *
+ * Static lights keep their polygon until a body whose bounding box overlaps the range of the light moves, is added or is
+ * removed.
+ *
+ * @param parallel Whether lights are computed in parallel on the common fork join pool.
+ */
+class ShadowService @JvmOverloads constructor(var parallel: Boolean = true) {
+    /**
+     * Edges of all bodies in range of a light gathered by the last update.
+     */
+    val occluders = OccluderBuffer()
+
+    /**
+     * Number of edges circles are approximated with.
+     */
+    var circleSegments = ShadowCasting.DEFAULT_CIRCLE_SEGMENTS
+        set(value) {
+            field = value
+            invalidate()
+        }
+
+    private val lightList = ArrayList<Light>()
+    private var pending = arrayOfNulls<Light>(16)
+    private var pendingCount = 0
+    private val sweeps = ThreadLocal.withInitial { VisibilitySweep() }
+    private val snapshots = IdentityHashMap<CollisionBodyInterface, BoundsSnapshot>()
+    private var stamp = 0
+
+    /**
+     * All lights of the service.
+     */
+    val lights: List<Light>
+        get() = lightList
+
+    /**
+     * A point light.
+     *
+     * @param position Position of the light in world space.
+     * @param range    Half size of the lit square around the light.
+     * @param isStatic Whether the visibility polygon is cached while nothing in range moves.
+     */
+    class Light(var position: Vec2, var range: Double, val isStatic: Boolean) {
+        /**
+         * Visibility polygon of the last update. Empty if the light lies inside a body.
+         */
+        val visibility = VisibilityPolygon()
+
+        internal var valid = false
+        internal var cachedX = 0.0
+        internal var cachedY = 0.0
+        internal var cachedRange = 0.0
+
+        internal fun isCached(): Boolean {
+            return isStatic && valid && cachedX == position.x && cachedY == position.y && cachedRange == range
+        }
+
+        internal fun overlaps(minX: Double, minY: Double, maxX: Double, maxY: Double): Boolean {
+            return !(minX > cachedX + cachedRange || maxX < cachedX - cachedRange ||
+                    minY > cachedY + cachedRange || maxY < cachedY - cachedRange)
+        }
+    }
+
+    /**
+     * Adds a light.
+     *
+     * @param position Position of the light in world space.
+     * @param range    Half size of the lit square around the light.
+     * @param isStatic Whether the visibility polygon is cached while nothing in range moves.
+     * @return The added light.
+     */
+    @JvmOverloads
+    fun addLight(position: Vec2, range: Double, isStatic: Boolean = false): Light {
+        val light = Light(position, range, isStatic)
+        lightList.add(light)
+        return light
+    }
+
+    /**
+     * Removes a light.
+     *
+     * @param light Light to remove.
+     */
+    fun removeLight(light: Light) {
+        lightList.remove(light)
+    }
+
+    /**
+     * Forces all static lights to be recomputed on the next update.
+     */
+    fun invalidate() {
+        for (light in lightList) {
+            light.valid = false
+        }
+    }
+
+    /**
+     * Updates the visibility polygons of all lights using the bodies of a world.
+     *
+     * @param world World whose bodies block the light.
+     */
+    fun update(world: World) {
+        update(world.bodies)
+    }
+
+    /**
+     * Updates the visibility polygons of all lights.
+     *
+     * @param bodiesToEvaluate Bodies that block the light.
+     */
+    fun update(bodiesToEvaluate: List<TranslatableBody>) {
+        val event = ShadowCastingEvent()
+        event.begin()
+        invalidateMovedBodies(bodiesToEvaluate)
+
+        pendingCount = 0
+        var minX = Double.POSITIVE_INFINITY
+        var minY = Double.POSITIVE_INFINITY
+        var maxX = Double.NEGATIVE_INFINITY
+        var maxY = Double.NEGATIVE_INFINITY
+        for (light in lightList) {
+            if (light.isCached()) continue
+            if (pendingCount == pending.size) {
+                pending = pending.copyOf(pendingCount * 2)
+            }
+            pending[pendingCount++] = light
+            minX = minOf(minX, light.position.x - light.range)
+            minY = minOf(minY, light.position.y - light.range)
+            maxX = maxOf(maxX, light.position.x + light.range)
+            maxY = maxOf(maxY, light.position.y + light.range)
+        }
+
+        var points = 0
+        if (pendingCount > 0) {
+            occluders.gather(bodiesToEvaluate, minX, minY, maxX, maxY, circleSegments)
+            if (parallel && pendingCount > 1) {
+                IntStream.range(0, pendingCount).parallel().forEach { computeLight(pending[it]!!) }
+            } else {
+                for (i in 0 until pendingCount) {
+                    computeLight(pending[i]!!)
+                }
+            }
+            for (i in 0 until pendingCount) {
+                points += pending[i]!!.visibility.size
+            }
+            pending.fill(null, 0, pendingCount)
+        }
+
+        event.end()
+        if (event.shouldCommit()) {
+            event.bodyCount = bodiesToEvaluate.size
+            event.rayCount = points
+            event.commit()
+        }
+    }
+
+    private fun computeLight(light: Light) {
+        val x = light.position.x
+        val y = light.position.y
+        light.cachedX = x
+        light.cachedY = y
+        light.cachedRange = light.range
+        light.valid = true
+
+        for (body in occluders.bodies) {
+            val aabb = body.aabb
+            val p = body.position
+            if (x < aabb.min.x + p.x || x > aabb.max.x + p.x || y < aabb.min.y + p.y || y > aabb.max.y + p.y) continue
+            if (body.shape.testPoint(x, y)) {
+                light.visibility.clear()
+                return
+            }
+        }
+        sweeps.get().compute(x, y, light.range, occluders, light.visibility)
+    }
+
+    /**
+     * Compares the bounds of every body with the bounds of the last update and invalidates the static lights overlapping
+     * the old or new bounds of a body that changed.
+     */
+    private fun invalidateMovedBodies(bodies: List<TranslatableBody>) {
+        stamp++
+        var collisionBodies = 0
+        for (b in bodies) {
+            if (b !is CollisionBodyInterface) continue
+            collisionBodies++
+            val aabb = b.aabb
+            val p = b.position
+            val minX = aabb.min.x + p.x
+            val minY = aabb.min.y + p.y
+            val maxX = aabb.max.x + p.x
+            val maxY = aabb.max.y + p.y
+            var snapshot = snapshots[b]
+            if (snapshot == null) {
+                snapshot = BoundsSnapshot()
+                snapshots[b] = snapshot
+                invalidateStatic(minX, minY, maxX, maxY)
+            } else if (snapshot.minX != minX || snapshot.minY != minY || snapshot.maxX != maxX || snapshot.maxY != maxY ||
+                snapshot.orientation != b.orientation) {
+                invalidateStatic(snapshot.minX, snapshot.minY, snapshot.maxX, snapshot.maxY)
+                invalidateStatic(minX, minY, maxX, maxY)
+            }
+            snapshot.minX = minX
+            snapshot.minY = minY
+            snapshot.maxX = maxX
+            snapshot.maxY = maxY
+            snapshot.orientation = b.orientation
+            snapshot.stamp = stamp
+        }
+        if (snapshots.size != collisionBodies) {
+            val iterator = snapshots.values.iterator()
+            while (iterator.hasNext()) {
+                val snapshot = iterator.next()
+                if (snapshot.stamp != stamp) {
+                    invalidateStatic(snapshot.minX, snapshot.minY, snapshot.maxX, snapshot.maxY)
+                    iterator.remove()
+                }
+            }
+        }
+    }
+
+    private fun invalidateStatic(minX: Double, minY: Double, maxX: Double, maxY: Double) {
+        for (light in lightList) {
+            if (light.valid && light.isStatic && light.overlaps(minX, minY, maxX, maxY)) {
+                light.valid = false
+            }
+        }
+    }
+
+    /**
+     * World space bounds of a body at the last update.
+     */
+    private class BoundsSnapshot {
+        var minX = 0.0
+        var minY = 0.0
+        var maxX = 0.0
+        var maxY = 0.0
+        var orientation = 0.0
+        var stamp = 0
+    }
+}
@@ -8,6 +8,7 @@ import de.chaffic.geometry.Circle
 import de.chaffic.geometry.Polygon
 import de.chaffic.geometry.bodies.TranslatableBody
 import de.chaffic.math.Vec2
+import de.chaffic.profiling.SliceEvent
 import kotlin.math.sqrt
 
 /**
@@ -113,6 +114,9 @@ class Slice(val startPoint: Vec2, direction: Vec2, distance: Double) {
      * @param world World object for the slice to effect.
      */
     fun sliceObjects(world: World) {
+        val event = SliceEvent()
+        event.begin()
+        var slicedBodies = 0
         val k = intersectingBodiesInfo.size % 2
         var i = 0
         while (i < intersectingBodiesInfo.size - k) {
@@ -154,8 +158,17 @@ class Slice(val startPoint: Vec2, direction: Vec2, distance: Double) {
                 world.addBody(b2)
             }
             world.removeBody(b)
+            slicedBodies++
             i += 2
         }
+        event.end()
+        if (event.shouldCommit()) {
+            event.bodyCount = world.bodies.size
+            event.contactCount = world.contacts.size
+            event.rayCount = 1
+            event.slicedBodies = slicedBodies
+            event.commit()
+        }
     }
 
     /**
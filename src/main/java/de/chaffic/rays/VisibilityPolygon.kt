@@ -0,0 +1,91 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+
+/**
+ * Visibility polygon of a light stored in primitive buffers. Points are ordered by ascending angle around the light and
+ * connecting them in order gives the lit area.
+ */
+class VisibilityPolygon {
+    private var angles = DoubleArray(64)
+    private var points = DoubleArray(128)
+    private var bodies = arrayOfNulls<CollisionBodyInterface>(64)
+
+    /**
+     * Number of points of the polygon.
+     */
+    var size = 0
+        private set
+
+    /**
+     * Gets the angle of a point around the light in radians.
+     *
+     * @param i Index of the point.
+     * @return Angle in the range -PI to PI.
+     */
+    fun angleAt(i: Int): Double {
+        return angles[i]
+    }
+
+    /**
+     * Gets the x coordinate of a point in world space.
+     *
+     * @param i Index of the point.
+     * @return x coordinate.
+     */
+    fun xAt(i: Int): Double {
+        return points[i * 2]
+    }
+
+    /**
+     * Gets the y coordinate of a point in world space.
+     *
+     * @param i Index of the point.
+     * @return y coordinate.
+     */
+    fun yAt(i: Int): Double {
+        return points[i * 2 + 1]
+    }
+
+    /**
+     * Gets the body a point lies on.
+     *
+     * @param i Index of the point.
+     * @return The occluding body or null if the point lies on the boundary of the light range.
+     */
+    fun bodyAt(i: Int): CollisionBodyInterface? {
+        return bodies[i]
+    }
+
+    /**
+     * Removes all points.
+     */
+    fun clear() {
+        bodies.fill(null, 0, size)
+        size = 0
+    }
+
+    /**
+     * Copies the points of another polygon.
+     *
+     * @param other Polygon to copy.
+     */
+    fun set(other: VisibilityPolygon) {
+        clear()
+        for (i in 0 until other.size) {
+            add(other.angles[i], other.points[i * 2], other.points[i * 2 + 1], other.bodies[i])
+        }
+    }
+
+    internal fun add(angle: Double, x: Double, y: Double, body: CollisionBodyInterface?) {
+        if (size == angles.size) {
+            angles = angles.copyOf(size * 2)
+            points = points.copyOf(size * 4)
+            bodies = bodies.copyOf(size * 2)
+        }
+        angles[size] = angle
+        points[size * 2] = x
+        points[size * 2 + 1] = y
+        bodies[size++] = body
+    }
+}
@@ -0,0 +1,304 @@
+package de.chaffic.rays
+
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.atan2
+import kotlin.math.cos
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.sin
+
+/**
+ * Computes visibility polygons with an angular sweep. Every occluder edge covers an angular interval around the light,
+ * the interval ends are sorted once and swept in order while the active edges are kept in a binary heap ordered by their
+ * distance to the light. Whenever the closest edge changes a point is emitted, which gives the polygon in O(n log n) for
+ * n edges.
+ *
+ * The sweep keeps its scratch buffers between calls. A single instance must not be used by several threads at once.
+ */
+class VisibilitySweep {
+    private var segments = DoubleArray(64)
+    private var starts = DoubleArray(16)
+    private var spans = DoubleArray(16)
+    private var segmentBodies = arrayOfNulls<CollisionBodyInterface>(16)
+    private var segmentCount = 0
+
+    private var events = LongArray(32)
+    private var eventCount = 0
+
+    private var lightX = 0.0
+    private var lightY = 0.0
+    private var clipStart = 0.0
+    private var clipEnd = 1.0
+
+    /**
+     * Binary heap of the edges crossed by the sweep ray, closest edge first, and the heap position of every edge or -1.
+     */
+    private var active = IntArray(16)
+    private var activeCount = 0
+    private var heapPositions = IntArray(16)
+
+    /**
+     * Computes the visibility polygon of a light. Directions without an occluder end at a square of half size range around
+     * the light.
+     *
+     * @param x         x coordinate of the light.
+     * @param y         y coordinate of the light.
+     * @param range     Half size of the lit square.
+     * @param occluders Edges blocking the light. Circles that were not tessellated are ignored.
+     * @param out       Polygon the result is written to.
+     */
+    fun compute(x: Double, y: Double, range: Double, occluders: OccluderBuffer, out: VisibilityPolygon) {
+        out.clear()
+        lightX = x
+        lightY = y
+        segmentCount = 0
+        eventCount = 0
+        activeCount = 0
+
+        val edges = occluders.edges
+        for (i in 0 until occluders.edgeCount) {
+            val offset = i * 4
+            val x1 = edges[offset]
+            val y1 = edges[offset + 1]
+            val x2 = edges[offset + 2]
+            val y2 = edges[offset + 3]
+
+            //The buffer may be shared by several lights. Edges are clipped to the lit square so they never cross its border
+            val dx = x2 - x1
+            val dy = y2 - y1
+            clipStart = 0.0
+            clipEnd = 1.0
+            if (!clip(-dx, x1 - x + range) || !clip(dx, x + range - x1) || !clip(-dy, y1 - y + range) || !clip(dy, y + range - y1)) {
+                continue
+            }
+            addSegment(
+                x1 + dx * clipStart, y1 + dy * clipStart, x1 + dx * clipEnd, y1 + dy * clipEnd,
+                occluders.bodies[occluders.edgeBodies[i]]
+            )
+        }
+        addSegment(x - range, y - range, x + range, y - range, null)
+        addSegment(x + range, y - range, x + range, y + range, null)
+        addSegment(x + range, y + range, x - range, y + range, null)
+        addSegment(x - range, y + range, x - range, y - range, null)
+
+        java.util.Arrays.sort(events, 0, eventCount)
+        for (i in 0 until segmentCount) {
+            if (starts[i] + spans[i] > PI) activate(i)
+        }
+
+        var i = 0
+        while (i < eventCount) {
+            val key = events[i] ushr EVENT_BITS
+            val angle = key / ANGLE_SCALE - PI
+            val before = if (activeCount == 0) -1 else active[0]
+            var batchEnd = i
+            while (batchEnd < eventCount && events[batchEnd] ushr EVENT_BITS == key) batchEnd++
+            //Edges ending at this angle leave the heap before the edges beginning at it are ordered against the others
+            for (e in i until batchEnd) {
+                val event = (events[e] and EVENT_MASK).toInt()
+                if (event and 1 == END) deactivate(event shr 1)
+            }
+            for (e in i until batchEnd) {
+                val event = (events[e] and EVENT_MASK).toInt()
+                if (event and 1 == BEGIN) activate(event shr 1)
+            }
+            i = batchEnd
+            val after = if (activeCount == 0) -1 else active[0]
+            if (before != after) {
+                if (before >= 0) emit(before, angle, out)
+                if (after >= 0) emit(after, angle, out)
+            }
+        }
+        activeCount = 0
+    }
+
+    /**
+     * Clips the parameter range [clipStart, clipEnd] of an edge against one side of the lit square.
+     *
+     * @param p Change of the distance to the side along the edge, negative when moving towards the outside.
+     * @param q Distance of the edge start to the side, negative if the start is outside.
+     * @return Boolean value whether part of the edge is left.
+     */
+    private fun clip(p: Double, q: Double): Boolean {
+        if (p == 0.0) return q >= 0
+        val t = q / p
+        if (p < 0) {
+            if (t > clipEnd) return false
+            if (t > clipStart) clipStart = t
+        } else {
+            if (t < clipStart) return false
+            if (t < clipEnd) clipEnd = t
+        }
+        return true
+    }
+
+    /**
+     * Stores an edge oriented counter clockwise around the light together with its begin and end events.
+     */
+    private fun addSegment(x1: Double, y1: Double, x2: Double, y2: Double, body: CollisionBodyInterface?) {
+        val a1 = atan2(y1 - lightY, x1 - lightX)
+        val a2 = atan2(y2 - lightY, x2 - lightX)
+        var span = a2 - a1
+        if (span > PI) span -= 2 * PI else if (span <= -PI) span += 2 * PI
+
+        //Edges pointing at the light or passing through it do not occlude anything
+        if (abs(span) < EPSILON || abs(span) > PI - EPSILON) return
+        if (segmentCount == starts.size) {
+            segments = segments.copyOf(segmentCount * 8)
+            starts = starts.copyOf(segmentCount * 2)
+            spans = spans.copyOf(segmentCount * 2)
+            segmentBodies = segmentBodies.copyOf(segmentCount * 2)
+            active = active.copyOf(segmentCount * 2)
+            heapPositions = heapPositions.copyOf(segmentCount * 2)
+        }
+        val s = segmentCount
+        val offset = s * 4
+        if (span > 0) {
+            segments[offset] = x1
+            segments[offset + 1] = y1
+            segments[offset + 2] = x2
+            segments[offset + 3] = y2
+            starts[s] = a1
+        } else {
+            segments[offset] = x2
+            segments[offset + 1] = y2
+            segments[offset + 2] = x1
+            segments[offset + 3] = y1
+            starts[s] = a2
+            span = -span
+        }
+        spans[s] = span
+        segmentBodies[s] = body
+        heapPositions[s] = -1
+        segmentCount++
+
+        var end = starts[s] + span
+        if (end > PI) end -= 2 * PI
+        addEvent(starts[s], s shl 1 or BEGIN)
+        addEvent(end, s shl 1 or END)
+    }
+
+    private fun addEvent(angle: Double, event: Int) {
+        if (eventCount == events.size) {
+            events = events.copyOf(eventCount * 2)
+        }
+        val key = ((angle + PI) * ANGLE_SCALE).toLong().coerceIn(0L, MAX_ANGLE_KEY)
+        events[eventCount++] = key shl EVENT_BITS or event.toLong()
+    }
+
+    private fun activate(segment: Int) {
+        if (heapPositions[segment] >= 0) return
+        active[activeCount] = segment
+        heapPositions[segment] = activeCount
+        siftUp(activeCount++)
+    }
+
+    private fun deactivate(segment: Int) {
+        val position = heapPositions[segment]
+        if (position < 0) return
+        heapPositions[segment] = -1
+        val last = active[--activeCount]
+        if (position == activeCount) return
+        active[position] = last
+        heapPositions[last] = position
+        siftUp(position)
+        siftDown(heapPositions[last])
+    }
+
+    private fun siftUp(position: Int) {
+        var child = position
+        val segment = active[child]
+        while (child > 0) {
+            val parent = (child - 1) shr 1
+            if (compareSegments(active[parent], segment) <= 0) break
+            active[child] = active[parent]
+            heapPositions[active[child]] = child
+            child = parent
+        }
+        active[child] = segment
+        heapPositions[segment] = child
+    }
+
+    private fun siftDown(position: Int) {
+        var parent = position
+        val segment = active[parent]
+        while (true) {
+            var child = parent * 2 + 1
+            if (child >= activeCount) break
+            if (child + 1 < activeCount && compareSegments(active[child + 1], active[child]) < 0) child++
+            if (compareSegments(segment, active[child]) <= 0) break
+            active[parent] = active[child]
+            heapPositions[active[parent]] = parent
+            parent = child
+        }
+        active[parent] = segment
+        heapPositions[segment] = parent
+    }
+
+    /**
+     * Orders two edges by their distance to the light. The distances are compared in the middle of the angular range both
+     * edges share, which only depends on the absolute angles of the edges. The order of two edges therefore never changes
+     * while they are in the heap, and edges that do not cross keep the order they have along every ray of the range. Ties
+     * are broken by the edge index.
+     */
+    private fun compareSegments(a: Int, b: Int): Int {
+        if (a == b) return 0
+        //Range of b relative to the start of a, a single range as both spans are below pi
+        var offset = starts[b] - starts[a]
+        if (offset > PI) offset -= 2 * PI else if (offset <= -PI) offset += 2 * PI
+        val lo = max(.0, offset)
+        val hi = min(spans[a], offset + spans[b])
+        val angle = starts[a] + (lo + hi) * 0.5
+        val dx = cos(angle)
+        val dy = sin(angle)
+        val da = distanceAlong(a, dx, dy)
+        val db = distanceAlong(b, dx, dy)
+        return if (da < db) -1 else if (da > db) 1 else a.compareTo(b)
+    }
+
+    /**
+     * Distance from the light to an edge along a direction.
+     */
+    private fun distanceAlong(segment: Int, dx: Double, dy: Double): Double {
+        val offset = segment * 4
+        val x1 = segments[offset]
+        val y1 = segments[offset + 1]
+        val ex = segments[offset + 2] - x1
+        val ey = segments[offset + 3] - y1
+        val denominator = dx * ey - dy * ex
+        if (abs(denominator) < EPSILON) {
+            return min(
+                (x1 - lightX) * dx + (y1 - lightY) * dy,
+                (x1 + ex - lightX) * dx + (y1 + ey - lightY) * dy
+            )
+        }
+        return ((x1 - lightX) * ey - (y1 - lightY) * ex) / denominator
+    }
+
+    private fun emit(segment: Int, angle: Double, out: VisibilityPolygon) {
+        val dx = cos(angle)
+        val dy = sin(angle)
+        val t = distanceAlong(segment, dx, dy)
+        val x = lightX + dx * t
+        val y = lightY + dy * t
+        val last = out.size - 1
+        if (last >= 0 && abs(out.xAt(last) - x) < EPSILON && abs(out.yAt(last) - y) < EPSILON) return
+        out.add(angle, x, y, segmentBodies[segment])
+    }
+
+    companion object {
+        private const val EPSILON = 1e-9
+        private const val BEGIN = 0
+        private const val END = 1
+
+        /**
+         * Low bits of an event holding the edge index and the event type, the high bits hold the quantised angle.
+         */
+        private const val EVENT_BITS = 22
+        private const val EVENT_MASK = (1L shl EVENT_BITS) - 1
+        private const val MAX_ANGLE_KEY = (1L shl 40) - 1
+        private const val ANGLE_SCALE = (1L shl 40) / (2 * PI)
+    }
+}
@@ -0,0 +1,87 @@
+package de.chaffic.collision
+
+import de.chaffic.dynamics.Body
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import java.util.Random
+
+class ArbiterTest : TestCase() {
+
+    fun testCachedAxisMatchesFullTest() {
+        val random = Random(3)
+        val a = Body(Polygon(2.0, 1.0), .0, .0)
+        val b = Body(Polygon(3, 7), 5.0, .0)
+        val persistent = Arbiter(a, b)
+        var touching = 0
+        var separated = 0
+        for (step in 0 until 2000) {
+            //Slow random walk around the first polygon, like debris settling next to it
+            b.position.set(b.position.x + random.nextGaussian() * .2, b.position.y + random.nextGaussian() * .2)
+            if (b.position.length() > 6.0) b.position.set(b.position.scalar(.9))
+            b.orientation = b.orientation + random.nextGaussian() * .05
+            a.orientation = a.orientation + random.nextGaussian() * .02
+
+            persistent.narrowPhase()
+            val fresh = Arbiter(a, b)
+            fresh.narrowPhase()
+            assertEquals(fresh.contactCount, persistent.contactCount)
+            if (fresh.contactCount > 0) {
+                touching++
+                assertEquals(fresh.contactNormal.x, persistent.contactNormal.x, 1e-12)
+                assertEquals(fresh.contactNormal.y, persistent.contactNormal.y, 1e-12)
+                assertEquals(fresh.contacts[0].x, persistent.contacts[0].x, 1e-12)
+                assertEquals(fresh.contacts[0].y, persistent.contacts[0].y, 1e-12)
+            } else {
+                separated++
+            }
+        }
+        assertTrue(touching > 100)
+        assertTrue(separated > 100)
+    }
+
+    fun testBoxKernelMatchesPolygonPath() {
+        val random = Random(8)
+        var touching = 0
+        for (test in 0 until 2000) {
+            val wa = 1 + random.nextDouble() * 3
+            val ha = 1 + random.nextDouble() * 3
+            val wb = 1 + random.nextDouble() * 3
+            val hb = 1 + random.nextDouble() * 3
+            val x = random.nextDouble() * 12 - 6
+            val y = random.nextDouble() * 12 - 6
+            val angleA = if (test % 4 == 0) .0 else random.nextDouble() * Math.PI * 2
+            val angleB = if (test % 4 == 0) .0 else random.nextDouble() * Math.PI * 2
+
+            val boxA = Body(Polygon(wa, ha), .0, .0)
+            val boxB = Body(Polygon(wb, hb), x, y)
+            //Same rectangles built from vertices take the generic polygon path
+            val hullA = Body(Polygon(rectangle(wa, ha)), .0, .0)
+            val hullB = Body(Polygon(rectangle(wb, hb)), x, y)
+            boxA.orientation = angleA
+            hullA.orientation = angleA
+            boxB.orientation = angleB
+            hullB.orientation = angleB
+            assertTrue((boxA.shape as Polygon).geometry.isBox)
+            assertFalse((hullA.shape as Polygon).geometry.isBox)
+
+            val box = Arbiter(boxA, boxB)
+            val generic = Arbiter(hullA, hullB)
+            box.narrowPhase()
+            generic.narrowPhase()
+            assertEquals(generic.contactCount, box.contactCount)
+            if (box.contactCount > 0) {
+                touching++
+                assertEquals(generic.contactNormal.x, box.contactNormal.x, 1e-9)
+                assertEquals(generic.contactNormal.y, box.contactNormal.y, 1e-9)
+                assertEquals(generic.contacts[0].x, box.contacts[0].x, 1e-9)
+                assertEquals(generic.contacts[0].y, box.contacts[0].y, 1e-9)
+            }
+        }
+        assertTrue(touching > 200)
+    }
+
+    private fun rectangle(width: Double, height: Double): Array<Vec2> {
+        return arrayOf(Vec2(-width, -height), Vec2(width, -height), Vec2(width, height), Vec2(-width, height))
+    }
+}
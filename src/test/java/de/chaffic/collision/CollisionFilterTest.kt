@@ -0,0 +1,107 @@
+package de.chaffic.collision
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Circle
+import de.chaffic.joints.DistanceJoint
+import de.chaffic.joints.JointToBody
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+
+class CollisionFilterTest : TestCase() {
+    private val a = Body(Circle(1.0), .0, .0)
+    private val b = Body(Circle(1.0), 1.0, .0)
+
+    fun testCategoryAndMask() {
+        assertTrue(CollisionFilter.shouldCollide(a, b))
+        a.categoryBits = 0x0002
+        b.maskBits = 0x0001
+        assertFalse(CollisionFilter.shouldCollide(a, b))
+        assertFalse(CollisionFilter.shouldCollide(b, a))
+        b.maskBits = 0x0003
+        assertTrue(CollisionFilter.shouldCollide(a, b))
+        a.maskBits = 0x0002
+        assertFalse(CollisionFilter.shouldCollide(a, b))
+    }
+
+    fun testGroupsOverrideMasks() {
+        a.maskBits = 0
+        b.maskBits = 0
+        assertFalse(CollisionFilter.shouldCollide(a, b))
+        a.groupIndex = 3
+        b.groupIndex = 3
+        assertTrue(CollisionFilter.shouldCollide(a, b))
+        //Different groups fall back to the masks
+        b.groupIndex = 4
+        assertFalse(CollisionFilter.shouldCollide(a, b))
+
+        a.maskBits = CollisionFilter.ALL_CATEGORIES
+        b.maskBits = CollisionFilter.ALL_CATEGORIES
+        assertTrue(CollisionFilter.shouldCollide(a, b))
+        a.groupIndex = -3
+        b.groupIndex = -3
+        assertFalse(CollisionFilter.shouldCollide(a, b))
+    }
+
+    fun testJointedBodies() {
+        val world = World(Vec2(.0, .0))
+        world.addBody(a)
+        world.addBody(b)
+        val joint = world.addJoint(JointToBody(a, b, 1.0, 1.0, .0, true, Vec2(), Vec2()))
+        world.step(1.0 / 60)
+        assertEquals(1, world.contacts.size)
+
+        world.collideJointedBodies = false
+        world.step(1.0 / 60)
+        assertTrue(world.contacts.isEmpty())
+
+        world.removeJoint(joint)
+        world.step(1.0 / 60)
+        assertEquals(1, world.contacts.size)
+        assertTrue(world.joints.isEmpty())
+    }
+
+    fun testConstrainedBodies() {
+        val world = World(Vec2(.0, .0))
+        world.addBody(a)
+        world.addBody(b)
+        world.collideJointedBodies = false
+        val first = world.addConstraint(DistanceJoint(a, b))
+        val second = world.addConstraint(DistanceJoint(a, b))
+        world.step(1.0 / 60)
+        assertTrue(world.contacts.isEmpty())
+
+        //The pair stays filtered while one constraint is left
+        world.removeConstraint(first)
+        world.step(1.0 / 60)
+        assertTrue(world.contacts.isEmpty())
+
+        world.removeConstraint(second)
+        world.step(1.0 / 60)
+        assertEquals(1, world.contacts.size)
+
+        world.collideJointedBodies = true
+        world.addConstraint(first)
+        world.step(1.0 / 60)
+        assertEquals(1, world.contacts.size)
+    }
+
+    fun testJointListStaysInSync() {
+        val world = World(Vec2(.0, .0))
+        world.addBody(a)
+        world.addBody(b)
+        world.collideJointedBodies = false
+        val joint = JointToBody(a, b, 1.0, 1.0, .0, true, Vec2(), Vec2())
+        world.joints.add(joint)
+        world.constraints.add(DistanceJoint(a, b))
+        world.step(1.0 / 60)
+        assertTrue(world.contacts.isEmpty())
+
+        world.joints.remove(joint)
+        world.step(1.0 / 60)
+        assertTrue(world.contacts.isEmpty())
+        world.constraints.clear()
+        world.step(1.0 / 60)
+        assertEquals(1, world.contacts.size)
+    }
+}
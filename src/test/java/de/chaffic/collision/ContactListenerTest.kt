@@ -0,0 +1,125 @@
+package de.chaffic.collision
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+
+class ContactListenerTest : TestCase() {
+
+    private class CountingListener : ContactListener {
+        var begins = 0
+        var persists = 0
+        var ends = 0
+
+        override fun beginContact(contact: Arbiter) {
+            begins++
+        }
+
+        override fun persistContact(contact: Arbiter) {
+            persists++
+        }
+
+        override fun endContact(contact: Arbiter) {
+            ends++
+        }
+    }
+
+    fun testBeginPersistEnd() {
+        val world = World()
+        val ground = Body(Polygon(100.0, 10.0), .0, .0)
+        ground.density = .0
+        val ball = Body(Circle(5.0), .0, 14.0)
+        world.addBody(ground)
+        world.addBody(ball)
+
+        val listener = CountingListener()
+        world.addContactListener(listener)
+
+        world.step(1.0 / 60)
+        assertEquals(1, listener.begins)
+        assertEquals(0, listener.persists)
+
+        ball.velocity.set(.0, .0)
+        ball.position.set(.0, 14.0)
+        world.step(1.0 / 60)
+        assertEquals(1, listener.begins)
+        assertEquals(1, listener.persists)
+
+        world.removeBody(ball)
+        world.step(1.0 / 60)
+        assertEquals(1, listener.ends)
+    }
+
+    fun testNoEventsWithoutListener() {
+        val world = World()
+        val listener = CountingListener()
+        world.addContactListener(listener)
+        world.removeContactListener(listener)
+        val ground = Body(Polygon(100.0, 10.0), .0, .0)
+        ground.density = .0
+        world.addBody(ground)
+        world.addBody(Body(Circle(5.0), .0, 14.0))
+
+        world.step(1.0 / 60)
+        assertEquals(0, listener.begins)
+    }
+
+    fun testEventBufferGrowsInOrder() {
+        val buffer = ContactEventBuffer(2)
+        val a = Arbiter(Body(Circle(1.0), .0, .0), Body(Circle(1.0), .0, .0))
+        val order = ArrayList<Int>()
+        for (i in 0 until 5) {
+            buffer.push(if (i % 2 == 0) ContactEventBuffer.BEGIN else ContactEventBuffer.END, a)
+        }
+        buffer.dispatch(arrayOf(object : ContactListener {
+            override fun beginContact(contact: Arbiter) {
+                order.add(ContactEventBuffer.BEGIN)
+            }
+
+            override fun persistContact(contact: Arbiter) {
+                order.add(ContactEventBuffer.PERSIST)
+            }
+
+            override fun endContact(contact: Arbiter) {
+                order.add(ContactEventBuffer.END)
+            }
+        }))
+        assertEquals(listOf(0, 2, 0, 2, 0), order)
+        assertEquals(0, buffer.size)
+    }
+
+    fun testListenersChangedDuringDispatch() {
+        val world = World()
+        val ground = Body(Polygon(100.0, 10.0), .0, .0)
+        ground.density = .0
+        world.addBody(ground)
+        world.addBody(Body(Circle(5.0), -20.0, 14.0))
+        world.addBody(Body(Circle(5.0), 20.0, 14.0))
+
+        val added = CountingListener()
+        val removing = object : ContactListener {
+            var begins = 0
+
+            override fun beginContact(contact: Arbiter) {
+                begins++
+                world.removeContactListener(this)
+                if (begins == 1) world.addContactListener(added)
+            }
+
+            override fun persistContact(contact: Arbiter) {}
+            override fun endContact(contact: Arbiter) {}
+        }
+        world.addContactListener(removing)
+
+        //Changes take effect with the next batch, no event of this one is lost
+        world.step(1.0 / 60)
+        assertEquals(2, removing.begins)
+        assertEquals(0, added.begins)
+        world.step(1.0 / 60)
+        assertEquals(2, removing.begins)
+        assertEquals(2, added.persists)
+    }
+}
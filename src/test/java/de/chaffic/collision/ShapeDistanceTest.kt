@@ -0,0 +1,136 @@
+package de.chaffic.collision
+
+import de.chaffic.collision.bodies.CollisionBody
+import de.chaffic.dynamics.Body
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+import java.util.Random
+import kotlin.math.min
+import kotlin.math.sqrt
+
+class ShapeDistanceTest : TestCase() {
+    private val query = ShapeDistance()
+    private val result = DistanceResult()
+
+    fun testSeparatedBoxes() {
+        val a = Body(Polygon(1.0, 1.0), .0, .0)
+        val b = Body(Polygon(1.0, 1.0), 5.0, .5)
+        assertEquals(3.0, query.distance(a, b, result), 1e-9)
+        assertEquals(1.0, result.normal.x, 1e-9)
+        assertEquals(1.0, result.pointA.x, 1e-9)
+        assertEquals(4.0, result.pointB.x, 1e-9)
+        assertFalse(result.overlapping)
+    }
+
+    fun testCircleAgainstBox() {
+        val box = Body(Polygon(1.0, 1.0), .0, .0)
+        val circle = Body(Circle(1.0), .0, 5.0)
+        assertEquals(3.0, query.distance(box, circle, result), 1e-9)
+        assertEquals(1.0, result.normal.y, 1e-9)
+        assertEquals(4.0, result.pointB.y, 1e-9)
+
+        //Centre inside the box, the core of the circle overlaps
+        circle.position.set(.0, .5)
+        assertEquals(-1.5, query.distance(box, circle, result), 1e-9)
+        assertEquals(1.0, result.normal.y, 1e-9)
+    }
+
+    fun testPenetration() {
+        val a = Body(Polygon(1.0, 1.0), .0, .0)
+        val b = Body(Polygon(1.0, 1.0), 1.5, .2)
+        assertEquals(-.5, query.distance(a, b, result), 1e-9)
+        assertEquals(1.0, result.normal.x, 1e-9)
+        assertTrue(result.overlapping)
+
+        val c = Body(Circle(1.0), .0, .0)
+        val d = Body(Circle(2.0), .0, .0)
+        assertEquals(-3.0, query.distance(c, d, result), 1e-9)
+    }
+
+    fun testMatchesBruteForce() {
+        val random = Random(5)
+        for (test in 0 until 200) {
+            val a = CollisionBody(Polygon(1 + random.nextInt(3), 3 + random.nextInt(30)), .0, .0)
+            val b = CollisionBody(Polygon(1 + random.nextInt(3), 3 + random.nextInt(30)), random.nextDouble() * 16 - 8, random.nextDouble() * 16 - 8)
+            a.orientation = random.nextDouble() * Math.PI * 2
+            b.orientation = random.nextDouble() * Math.PI * 2
+            val distance = query.distance(a, b, result)
+            val expected = min(bruteForce(a, b), bruteForce(b, a))
+            if (distance > 0) {
+                assertFalse(overlaps(a, b))
+                assertEquals(expected, distance, 1e-6)
+                assertEquals(distance, result.pointA.distance(result.pointB), 1e-6)
+            } else {
+                assertTrue(expected < 1e-6 || overlaps(a, b))
+                //Moving b out along the normal by the depth makes the shapes touch
+                b.position.add(result.normal.scalar(-distance + 1e-6))
+                assertTrue(query.distance(a, b, result) > -1e-9)
+            }
+        }
+    }
+
+    fun testCast() {
+        val ground = Body(Polygon(10.0, 1.0), .0, .0)
+        val ball = Body(Circle(1.0), .0, 10.0)
+        val hit = RaycastResult()
+        assertTrue(query.cast(ball, Vec2(.0, -20.0), ground, hit))
+        assertEquals(.4, hit.fraction, 1e-3)
+        assertEquals(1.0, hit.normal.y, 1e-9)
+        assertEquals(1.0, hit.point.y, 1e-3)
+        assertFalse(query.cast(ball, Vec2(.0, -5.0), ground, hit))
+        assertFalse(query.cast(ball, Vec2(.0, 20.0), ground, hit))
+
+        //Boxes sliding past each other
+        val box = Body(Polygon(1.0, 1.0), -10.0, 2.5)
+        assertFalse(query.cast(box, Vec2(20.0, .0), ground, hit))
+    }
+
+    /**
+     * Checks whether the edges of the polygons cross or one contains the other.
+     */
+    private fun overlaps(a: CollisionBody, b: CollisionBody): Boolean {
+        if (a.shape.testPoint(b.position.x, b.position.y) || b.shape.testPoint(a.position.x, a.position.y)) return true
+        val pa = a.shape as Polygon
+        val pb = b.shape as Polygon
+        for (i in pa.vertices.indices) {
+            val s1 = pa.orientation.mul(pa.vertices[i], Vec2()).plus(a.position)
+            val e1 = pa.orientation.mul(pa.vertices[(i + 1) % pa.vertices.size], Vec2()).plus(a.position)
+            for (j in pb.vertices.indices) {
+                val s2 = pb.orientation.mul(pb.vertices[j], Vec2()).plus(b.position)
+                val e2 = pb.orientation.mul(pb.vertices[(j + 1) % pb.vertices.size], Vec2()).plus(b.position)
+                if (side(s1, e1, s2) * side(s1, e1, e2) < 0 && side(s2, e2, s1) * side(s2, e2, e1) < 0) return true
+            }
+        }
+        return false
+    }
+
+    private fun side(s: Vec2, e: Vec2, p: Vec2): Double {
+        return (e.x - s.x) * (p.y - s.y) - (e.y - s.y) * (p.x - s.x)
+    }
+
+    /**
+     * Smallest distance of the vertices of a to the edges of b.
+     */
+    private fun bruteForce(a: CollisionBody, b: CollisionBody): Double {
+        val pa = a.shape as Polygon
+        val pb = b.shape as Polygon
+        var best = Double.MAX_VALUE
+        for (v in pa.vertices) {
+            val p = pa.orientation.mul(v, Vec2()).plus(a.position)
+            for (i in pb.vertices.indices) {
+                val s = pb.orientation.mul(pb.vertices[i], Vec2()).plus(b.position)
+                val e = pb.orientation.mul(pb.vertices[(i + 1) % pb.vertices.size], Vec2()).plus(b.position)
+                val ex = e.x - s.x
+                val ey = e.y - s.y
+                val t = (((p.x - s.x) * ex + (p.y - s.y) * ey) / (ex * ex + ey * ey)).coerceIn(.0, 1.0)
+                val dx = p.x - s.x - ex * t
+                val dy = p.y - s.y - ey * t
+                best = min(best, sqrt(dx * dx + dy * dy))
+            }
+        }
+        return best
+    }
+}
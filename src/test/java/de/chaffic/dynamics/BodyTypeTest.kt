@@ -0,0 +1,87 @@
+package de.chaffic.dynamics
+
+import de.chaffic.dynamics.bodies.BodyType
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+
+class BodyTypeTest : TestCase() {
+
+    fun testStaticTerrainHoldsDynamicBody() {
+        val world = World(Vec2(.0, -100.0))
+        for (i in -20..20) {
+            val ground = world.addBody(Body(Polygon(5.0, 5.0), i * 10.0, -5.0))
+            ground.setStatic()
+            ground.restitution = .0
+        }
+        val ball = world.addBody(Body(Circle(5.0), .0, 20.0))
+        ball.restitution = .0
+        for (step in 0 until 300) {
+            world.step(1.0 / 60)
+        }
+        assertEquals(5.0, ball.position.y, .5)
+        assertEquals(BodyType.STATIC, (world.bodies[0] as Body).bodyType)
+        assertEquals(-200.0, world.bodies[0].position.x)
+    }
+
+    fun testKinematicIgnoresStaticAndPushesDynamic() {
+        val world = World()
+        val wall = world.addBody(Body(Polygon(5.0, 50.0), 50.0, .0))
+        wall.setStatic()
+        val platform = world.addBody(Body(Polygon(10.0, 10.0), .0, .0))
+        platform.bodyType = BodyType.KINEMATIC
+        platform.velocity.set(60.0, .0)
+        val box = world.addBody(Body(Polygon(5.0, 5.0), 100.0, .0))
+
+        for (step in 0 until 120) {
+            world.step(1.0 / 60)
+        }
+        //The platform passes through the wall at its own speed and pushes the box ahead of it
+        assertEquals(120.0, platform.position.x, 1e-9)
+        assertEquals(60.0, platform.velocity.x)
+        assertEquals(.0, platform.invMass)
+        assertTrue(box.position.x >= 134.0)
+        assertEquals(50.0, wall.position.x)
+    }
+
+    fun testTypeChangeIsPickedUp() {
+        val world = World(Vec2(.0, -10.0))
+        val body = world.addBody(Body(Circle(1.0), .0, .0))
+        world.step(1.0)
+        assertEquals(-10.0, body.position.y, 1e-9)
+
+        body.setStatic()
+        body.velocity.set(.0, .0)
+        world.step(1.0)
+        assertEquals(-10.0, body.position.y, 1e-9)
+
+        //Density only gives mass once the body is dynamic again
+        body.density = 2.0
+        assertEquals(.0, body.mass)
+        body.bodyType = BodyType.DYNAMIC
+        assertTrue(body.mass > 0)
+        world.step(1.0)
+        assertEquals(-20.0, body.position.y, 1e-9)
+    }
+
+    fun testTypeChangeIsPickedUpByOwningWorld() {
+        val first = World(Vec2(.0, -10.0))
+        val second = World(Vec2(.0, -10.0))
+        val body = first.addBody(Body(Circle(1.0), .0, .0))
+        first.step(1.0)
+        first.removeBody(body)
+        //Bodies added to the list directly are tracked from the next step on
+        second.bodies.add(body)
+        second.step(1.0)
+        assertEquals(-30.0, body.position.y, 1e-9)
+
+        body.setStatic()
+        body.velocity.set(.0, .0)
+        second.step(1.0)
+        assertEquals(-30.0, body.position.y, 1e-9)
+        body.bodyType = BodyType.DYNAMIC
+        second.step(1.0)
+        assertEquals(-40.0, body.position.y, 1e-9)
+    }
+}
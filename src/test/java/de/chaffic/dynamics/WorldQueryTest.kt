@@ -0,0 +1,157 @@
+package de.chaffic.dynamics
+
+import de.chaffic.collision.BodyFilter
+import de.chaffic.collision.DistanceResult
+import de.chaffic.collision.bodies.CollisionBody
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.explosions.ProximityExplosion
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+import java.util.Random
+
+class WorldQueryTest : TestCase() {
+
+    private fun createWorld(): World {
+        val random = Random(11)
+        val world = World()
+        for (i in 0 until 200) {
+            val x = random.nextDouble() * 1000 - 500
+            val y = random.nextDouble() * 1000 - 500
+            val body = if (i % 2 == 0) {
+                Body(Polygon(5 + random.nextDouble() * 20, 5 + random.nextDouble() * 20), x, y)
+            } else {
+                Body(Circle(5 + random.nextDouble() * 20), x, y)
+            }
+            body.orientation = random.nextDouble() * Math.PI
+            world.addBody(body)
+        }
+        return world
+    }
+
+    fun testQueryPoint() {
+        val world = createWorld()
+        val random = Random(5)
+        val found = ArrayList<CollisionBodyInterface>()
+        for (n in 0 until 200) {
+            val point = Vec2(random.nextDouble() * 1000 - 500, random.nextDouble() * 1000 - 500)
+            world.queryPoint(point, found)
+            val expected = world.bodies.filter { (it as CollisionBodyInterface).shape.isPointInside(point) }
+            assertEquals(expected.toSet(), found.toSet())
+        }
+    }
+
+    fun testQueryCircleAndFilter() {
+        val world = createWorld()
+        val centre = Vec2(30.0, -20.0)
+        val found = ArrayList<CollisionBodyInterface>()
+        world.queryCircle(centre, 150.0, found)
+        for (b in world.bodies) {
+            b as CollisionBodyInterface
+            val inside = b.shape.overlapsCircle(centre.x, centre.y, 150.0)
+            assertEquals(inside, found.contains(b))
+        }
+        assertTrue(found.isNotEmpty())
+
+        val circles = world.queryCircle(centre, 150.0, found, filter = BodyFilter { it.shape is Circle })
+        assertEquals(found.size, circles)
+        assertTrue(found.all { it.shape is Circle })
+    }
+
+    fun testQueryAABBStops() {
+        val world = createWorld()
+        var visited = 0
+        val count = world.queryAABB(Vec2(-500.0, -500.0), Vec2(500.0, 500.0), { visited++ < 4 })
+        assertEquals(5, count)
+        assertEquals(5, visited)
+    }
+
+    fun testNestedQueries() {
+        val world = createWorld()
+        val centre = Vec2(30.0, -20.0)
+        val outer = ArrayList<CollisionBodyInterface>()
+        world.queryCircle(centre, 150.0, outer)
+        val inner = ArrayList<CollisionBodyInterface>()
+        val visited = ArrayList<CollisionBodyInterface>()
+        world.queryCircle(centre, 150.0, { body ->
+            visited.add(body)
+            world.queryCircle(body.position, 60.0, inner)
+            val expected = world.bodies.filter {
+                (it as CollisionBodyInterface).shape.overlapsCircle(body.position.x, body.position.y, 60.0)
+            }
+            assertEquals(expected.toSet(), inner.toSet())
+            true
+        })
+        assertEquals(outer.toSet(), visited.toSet())
+
+        //Hits of a ray cast from the callback of another ray
+        val hits = ArrayList<CollisionBodyInterface>()
+        world.raycastAll(Vec2(-500.0, .0), Vec2(500.0, .0), { result ->
+            hits.add(result.body!!)
+            world.raycastAll(Vec2(.0, -500.0), Vec2(.0, 500.0), { true })
+            true
+        })
+        val expected = ArrayList<CollisionBodyInterface>()
+        world.raycastAll(Vec2(-500.0, .0), Vec2(500.0, .0), { expected.add(it.body!!) })
+        assertEquals(expected, hits)
+        assertTrue(hits.isNotEmpty())
+
+        //The trees must not change while a query runs
+        try {
+            world.queryCircle(centre, 150.0, {
+                world.addBody(Body(Circle(1.0), 1000.0, 1000.0))
+                world.queryPoint(Vec2(1000.0, 1000.0), inner)
+                true
+            })
+            fail()
+        } catch (e: IllegalStateException) {
+        }
+    }
+
+    fun testProximityExplosion() {
+        val world = createWorld()
+        val fromList = ProximityExplosion(Vec2(), 200)
+        val fromWorld = ProximityExplosion(Vec2(), 200)
+        fromList.update(world.bodies)
+        fromWorld.update(world)
+        fromList.updateLinesToBody()
+        fromWorld.updateLinesToBody()
+        assertEquals(fromList.linesToBodies.toSet(), fromWorld.linesToBodies.toSet())
+        assertTrue(fromList.linesToBodies.isNotEmpty())
+    }
+
+    fun testShapeCast() {
+        val world = World()
+        val ground = world.addBody(Body(Polygon(50.0, 1.0), .0, .0))
+        ground.setStatic()
+        val wall = world.addBody(Body(Polygon(1.0, 20.0), 30.0, 21.0))
+        wall.setStatic()
+        val probe = CollisionBody(Circle(2.0), .0, 10.0)
+        val result = RaycastResult()
+
+        assertTrue(world.shapeCast(probe, Vec2(.0, -20.0), result))
+        assertSame(ground, result.body)
+        assertEquals(.35, result.fraction, 1e-3)
+        assertEquals(1.0, result.normal.y, 1e-9)
+
+        //The wall is hit before the ground
+        assertTrue(world.shapeCast(probe, Vec2(60.0, -12.0), result))
+        assertSame(wall, result.body)
+        assertEquals(-1.0, result.normal.x, 1e-9)
+
+        assertFalse(world.shapeCast(probe, Vec2(20.0, .0), result))
+        assertNull(result.body)
+    }
+
+    fun testDistance() {
+        val world = createWorld()
+        val result = DistanceResult()
+        val a = world.bodies[0] as Body
+        val b = world.bodies[1] as Body
+        val distance = world.distance(a, b, result)
+        assertEquals(distance, world.distance(b, a, result), 1e-6)
+        assertTrue(distance < a.position.distance(b.position))
+    }
+}
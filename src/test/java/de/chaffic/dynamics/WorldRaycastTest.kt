@@ -0,0 +1,97 @@
+package de.chaffic.dynamics
+
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+import java.util.Random
+
+class WorldRaycastTest : TestCase() {
+
+    fun testClosestPolygon() {
+        val world = World()
+        val near = world.addBody(Body(Polygon(50.0, 100.0), 300.0, .0))
+        world.addBody(Body(Polygon(50.0, 100.0), 600.0, .0))
+
+        val result = RaycastResult()
+        assertTrue(world.raycast(Vec2(), Vec2(800.0, .0), result))
+        assertSame(near, result.body)
+        assertEquals(250.0, result.point.x, 1e-9)
+        assertEquals(.0, result.point.y, 1e-9)
+        assertEquals(-1.0, result.normal.x, 1e-9)
+    }
+
+    fun testCircleAndMiss() {
+        val world = World()
+        val circle = world.addBody(Body(Circle(10.0), .0, 100.0))
+
+        val result = RaycastResult()
+        assertTrue(world.raycast(Vec2(), Vec2(.0, 200.0), result))
+        assertSame(circle, result.body)
+        assertEquals(90.0, result.point.y, 1e-9)
+        assertEquals(1.0, result.normal.y.let { -it }, 1e-9)
+
+        assertFalse(world.raycast(Vec2(), Vec2(200.0, .0), result))
+        assertNull(result.body)
+    }
+
+    fun testMatchesBruteForce() {
+        val random = Random(7)
+        val world = World()
+        for (i in 0 until 200) {
+            val shape = if (i % 2 == 0) Circle(2.0 + random.nextDouble() * 5) else Polygon(1.0 + random.nextDouble() * 5, 1.0 + random.nextDouble() * 5)
+            val body = Body(shape, random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200)
+            body.orientation = random.nextDouble() * 6.28
+            world.addBody(body)
+        }
+        world.step(1.0 / 60)
+
+        val result = RaycastResult()
+        val expected = RaycastResult()
+        for (i in 0 until 100) {
+            val start = Vec2(random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200)
+            val end = Vec2(random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200)
+            world.raycast(start, end, result)
+
+            expected.reset()
+            var best = 1.0
+            for (b in world.bodies) {
+                b as Body
+                if (b.shape.raycast(start.x, start.y, end.x, end.y, best, expected)) {
+                    best = expected.fraction
+                    expected.body = b
+                }
+            }
+            assertSame(expected.body, result.body)
+            if (expected.body != null) {
+                assertEquals(best, result.fraction, 1e-9)
+            }
+        }
+    }
+
+    fun testAnyAndAllHits() {
+        val world = World()
+        val bodies = ArrayList<Body>()
+        for (i in 1..5) {
+            bodies.add(world.addBody(Body(Circle(5.0), i * 100.0, .0)))
+        }
+
+        assertTrue(world.isOccluded(Vec2(), Vec2(1000.0, .0)))
+        assertFalse(world.isOccluded(Vec2(), Vec2(.0, 1000.0)))
+
+        val fractions = ArrayList<Double>()
+        val hitBodies = ArrayList<Any?>()
+        val count = world.raycastAll(Vec2(), Vec2(1000.0, .0), { hit ->
+            fractions.add(hit.fraction)
+            hitBodies.add(hit.body)
+            true
+        })
+        assertEquals(5, count)
+        assertEquals(bodies, hitBodies)
+        assertEquals(fractions.sorted(), fractions)
+
+        val stopped = world.raycastAll(Vec2(), Vec2(1000.0, .0), { false })
+        assertEquals(1, stopped)
+    }
+}
@@ -0,0 +1,141 @@
+package de.chaffic.dynamics
+
+import de.chaffic.collision.Arbiter
+import de.chaffic.collision.ContactListener
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import java.util.concurrent.TimeUnit
+
+class WorldSchedulerTest : TestCase() {
+    private val period = (1e9 / 60).toLong()
+
+    fun testWorldsMatchSerialStepping() {
+        val reference = room()
+        for (tick in 0 until 60) {
+            reference.step(1.0 / 60)
+        }
+        val expected = reference.bodies[1].position
+
+        WorldScheduler(4).use { scheduler ->
+            val rooms = Array(100) { scheduler.add(room(), 60.0) }
+            for (tick in 0 until 60) {
+                assertEquals(100, scheduler.poll(tick * period))
+                assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS))
+            }
+            for (room in rooms) {
+                assertEquals(60L, room.ticks)
+                assertEquals(expected.x, room.world.bodies[1].position.x)
+                assertEquals(expected.y, room.world.bodies[1].position.y)
+            }
+            val statistics = scheduler.statistics(SchedulerStatistics())
+            assertEquals(100, statistics.worlds)
+            assertEquals(6000L, statistics.ticks)
+            assertEquals(0L, statistics.droppedTicks)
+        }
+    }
+
+    fun testMissedTicksAreCaughtUpOrDropped() {
+        WorldScheduler(1).use { scheduler ->
+            val room = scheduler.add(room(), 60.0)
+            room.tickBudget = Long.MAX_VALUE
+            scheduler.poll(0)
+            scheduler.awaitIdle(10, TimeUnit.SECONDS)
+            scheduler.poll(3 * period)
+            scheduler.awaitIdle(10, TimeUnit.SECONDS)
+            assertEquals(4L, room.ticks)
+            assertEquals(0L, room.droppedTicks)
+            //Seven ticks due, four are caught up on
+            scheduler.poll(10 * period)
+            scheduler.awaitIdle(10, TimeUnit.SECONDS)
+            assertEquals(8L, room.ticks)
+            assertEquals(3L, room.droppedTicks)
+            assertEquals(0, scheduler.poll(10 * period + 1))
+        }
+    }
+
+    fun testSlowWorldDoesNotDelayOthers() {
+        WorldScheduler(2).use { scheduler ->
+            val slow = scheduler.add(slowRoom(200), 60.0)
+            val rooms = Array(20) { scheduler.add(room(), 60.0) }
+            for (tick in 0 until 10) {
+                scheduler.poll(tick * period)
+                val end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+                while (rooms.any { it.ticks < tick + 1 } && System.nanoTime() < end) {
+                    Thread.yield()
+                }
+            }
+            for (room in rooms) {
+                assertEquals(10L, room.ticks)
+            }
+            assertTrue(slow.ticks < 10)
+            assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS))
+        }
+    }
+
+    fun testOverloadedSchedulerRejectsWorlds() {
+        WorldScheduler(1, 1).use { scheduler ->
+            scheduler.add(slowRoom(100), 60.0)
+            scheduler.poll(0)
+            assertTrue(scheduler.overloaded)
+            assertNull(scheduler.tryAdd(room(), 60.0))
+            assertTrue(scheduler.statistics(SchedulerStatistics()).overloaded)
+            assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS))
+            assertNotNull(scheduler.tryAdd(room(), 60.0))
+        }
+    }
+
+    fun testFailingWorldIsPaused() {
+        WorldScheduler(1).use { scheduler ->
+            val world = room()
+            world.addContactListener(object : ContactListener {
+                override fun beginContact(contact: Arbiter) {
+                    throw IllegalStateException()
+                }
+
+                override fun persistContact(contact: Arbiter) {}
+                override fun endContact(contact: Arbiter) {}
+            })
+            val room = scheduler.add(world, 60.0)
+            var tick = 0L
+            while (!room.paused && tick < 200) {
+                scheduler.poll(tick++ * period)
+                scheduler.awaitIdle(10, TimeUnit.SECONDS)
+            }
+            assertTrue(room.failure is IllegalStateException)
+            assertEquals(0, scheduler.poll(tick * period))
+        }
+    }
+
+    /**
+     * Small room of a ball falling onto the ground.
+     */
+    private fun room(): World {
+        val world = World(Vec2(.0, -10.0))
+        world.addBody(Body(Polygon(10.0, 1.0), .0, .0)).setStatic()
+        world.addBody(Body(Circle(1.0), .0, 3.0))
+        return world
+    }
+
+    /**
+     * Room with a ball resting on the ground whose every step takes a while.
+     */
+    private fun slowRoom(millis: Long): World {
+        val world = World(Vec2(.0, -10.0))
+        world.addBody(Body(Polygon(10.0, 1.0), .0, .0)).setStatic()
+        world.addBody(Body(Circle(1.0), .0, 1.9))
+        world.addContactListener(object : ContactListener {
+            override fun beginContact(contact: Arbiter) {
+                Thread.sleep(millis)
+            }
+
+            override fun persistContact(contact: Arbiter) {
+                Thread.sleep(millis)
+            }
+
+            override fun endContact(contact: Arbiter) {}
+        })
+        return world
+    }
+}
@@ -0,0 +1,145 @@
+package de.chaffic.dynamics.gravity
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.bodies.TranslatableBody
+import junit.framework.TestCase
+import java.util.Random
+import kotlin.math.sqrt
+
+class GravityTest : TestCase() {
+
+    private fun createBodies(count: Int): ArrayList<TranslatableBody> {
+        val random = Random(17)
+        val bodies = ArrayList<TranslatableBody>()
+        for (i in 0 until count) {
+            //Clustered distribution, the hard case for the tree
+            val cluster = i % 4
+            val x = cluster * 3000.0 + random.nextGaussian() * 400
+            val y = (cluster % 2) * 2000.0 + random.nextGaussian() * 400
+            val body = Body(Circle(1.0 + random.nextDouble() * 4), x, y)
+            bodies.add(body)
+        }
+        return bodies
+    }
+
+    private fun forces(bodies: List<TranslatableBody>, solver: GravitySolver): DoubleArray {
+        for (b in bodies) {
+            (b as Body).force.set(.0, .0)
+        }
+        solver.apply(bodies, 1.0, 1.0)
+        val result = DoubleArray(bodies.size * 2)
+        for (i in bodies.indices) {
+            result[i * 2] = (bodies[i] as Body).force.x
+            result[i * 2 + 1] = (bodies[i] as Body).force.y
+        }
+        return result
+    }
+
+    fun testPairAttracts() {
+        val world = World()
+        val a = world.addBody(Body(Circle(1.0), .0, .0))
+        val b = world.addBody(Body(Circle(1.0), 10.0, .0))
+        world.gravitationalConstant = 1.0
+        world.gravityBetweenObj()
+        val expected = a.mass * b.mass / 100.0
+        assertEquals(expected, a.force.x, 1e-9)
+        assertEquals(-expected, b.force.x, 1e-9)
+        assertEquals(.0, a.force.y, 1e-12)
+    }
+
+    fun testExactWithZeroTheta() {
+        val bodies = createBodies(300)
+        val direct = forces(bodies, DirectGravity())
+        val tree = forces(bodies, BarnesHutGravity(.0))
+        for (i in direct.indices) {
+            assertEquals(direct[i], tree[i], 1e-9 * (1 + Math.abs(direct[i])))
+        }
+    }
+
+    fun testParticleMesh() {
+        val random = Random(23)
+        val bodies = ArrayList<TranslatableBody>()
+        for (gx in 0 until 20) {
+            for (gy in 0 until 20) {
+                bodies.add(Body(Circle(1.0 + random.nextDouble() * 4), gx * 100.0 + random.nextDouble() * 30, gy * 100.0 + random.nextDouble() * 30))
+            }
+        }
+        val direct = forces(bodies, DirectGravity())
+        val mesh = forces(bodies, ParticleMeshGravity(256))
+
+        var errorSquared = .0
+        var forceSquared = .0
+        var totalX = .0
+        var totalY = .0
+        for (i in direct.indices step 2) {
+            val dx = mesh[i] - direct[i]
+            val dy = mesh[i + 1] - direct[i + 1]
+            errorSquared += dx * dx + dy * dy
+            forceSquared += direct[i] * direct[i] + direct[i + 1] * direct[i + 1]
+            totalX += mesh[i]
+            totalY += mesh[i + 1]
+        }
+        assertTrue(sqrt(errorSquared / forceSquared) < .01)
+
+        //Interpolating with the deposit weights keeps the total force close to zero
+        assertTrue(sqrt(totalX * totalX + totalY * totalY) < .01 * sqrt(forceSquared))
+    }
+
+    fun testPeriodicLatticeIsBalanced() {
+        val bodies = ArrayList<TranslatableBody>()
+        for (gx in 0 until 8) {
+            for (gy in 0 until 8) {
+                bodies.add(Body(Circle(2.0), gx * 50.0, gy * 50.0))
+            }
+        }
+        val solver = ParticleMeshGravity(64, ParticleMeshGravity.Boundary.PERIODIC)
+        solver.domainSize = 400.0
+        val mesh = forces(bodies, solver)
+        val single = (bodies[0] as Body).mass * (bodies[0] as Body).mass / (50.0 * 50.0)
+        for (f in mesh) {
+            assertEquals(.0, f, 1e-9 * single)
+        }
+    }
+
+    /**
+     * Sum of the magnitudes of all pairwise forces on every body. Net forces inside a cluster nearly cancel, so errors are
+     * bounded relative to this instead of the net force.
+     */
+    private fun grossForces(bodies: List<TranslatableBody>): DoubleArray {
+        val result = DoubleArray(bodies.size)
+        for (i in bodies.indices) {
+            val a = bodies[i] as Body
+            for (j in bodies.indices) {
+                if (i == j) continue
+                val b = bodies[j] as Body
+                val dx = b.position.x - a.position.x
+                val dy = b.position.y - a.position.y
+                result[i] += a.mass * b.mass / (dx * dx + dy * dy + 1.0)
+            }
+        }
+        return result
+    }
+
+    fun testErrorBound() {
+        val bodies = createBodies(3000)
+        val direct = forces(bodies, DirectGravity())
+        val tree = forces(bodies, BarnesHutGravity(.5))
+        val parallel = forces(bodies, BarnesHutGravity(.5, true))
+        val gross = grossForces(bodies)
+
+        var errorSquared = .0
+        var forceSquared = .0
+        for (i in 0 until bodies.size) {
+            val dx = tree[i * 2] - direct[i * 2]
+            val dy = tree[i * 2 + 1] - direct[i * 2 + 1]
+            val error = sqrt(dx * dx + dy * dy)
+            assertTrue("body $i error $error gross ${gross[i]}", error <= .03 * gross[i])
+            errorSquared += dx * dx + dy * dy
+            forceSquared += direct[i * 2] * direct[i * 2] + direct[i * 2 + 1] * direct[i * 2 + 1]
+            assertEquals(tree[i * 2], parallel[i * 2], 1e-12 * (1 + Math.abs(tree[i * 2])))
+        }
+        assertTrue(sqrt(errorSquared / forceSquared) < .01)
+    }
+}
@@ -0,0 +1,36 @@
+package de.chaffic.explosions
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+
+class RayScatterTest : TestCase() {
+
+    fun testCastRaysCreatesEvenlySpacedRays() {
+        val scatter = RayScatter(Vec2(), 36)
+        scatter.castRays(100.0)
+        assertEquals(36, scatter.rays.size)
+        for (i in scatter.rays.indices) {
+            val a = scatter.rays[i].direction
+            val b = scatter.rays[(i + 1) % scatter.rays.size].direction
+            assertEquals(2 * Math.PI / 36, Math.acos((a.x * b.x + a.y * b.y).coerceIn(-1.0, 1.0)), 1e-4)
+            assertEquals(100.0, scatter.rays[i].distance)
+        }
+    }
+
+    fun testUpdateRaysHitsBodies() {
+        val world = World()
+        val wall = world.addBody(Body(Polygon(10.0, 200.0), 50.0, .0))
+        for (parallel in listOf(false, true)) {
+            val scatter = RayScatter(Vec2(), 360)
+            scatter.parallel = parallel
+            scatter.castRays(100.0)
+            scatter.updateRays(world.bodies)
+            val hits = scatter.rays.filter { it.rayInformation != null }
+            assertFalse(hits.isEmpty())
+            assertTrue(hits.all { it.rayInformation!!.b === wall && it.direction.x > 0 })
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package de.chaffic.geometry
+
+import de.chaffic.collision.bodies.CollisionBody
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.dynamics.bodies.BodyType
+import de.chaffic.math.Vec2
+import de.chaffic.particles.ParticlePool
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+import java.util.Random
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+class ChainShapeTest : TestCase() {
+
+    fun testBodiesRestOnHeightField() {
+        val world = World(Vec2(.0, -100.0))
+        val field = HeightField(DoubleArray(5001) { .0 }, 1.0)
+        world.addBody(Body(field, -2500.0, .0)).setStatic()
+        val ball = world.addBody(Body(Circle(1.0), 10.3, 5.0))
+        val box = world.addBody(Body(Polygon(1.0, 1.0), -20.5, 5.0))
+        ball.restitution = .0
+        box.restitution = .0
+        for (step in 0 until 240) {
+            world.step(1.0 / 60)
+        }
+        assertEquals(1.0, ball.position.y, .05)
+        assertEquals(1.0, box.position.y, .05)
+        assertEquals(.0, box.orientation, .01)
+        //Only the segments under the bodies are tested
+        assertTrue(field.query(-21.5, -1.0, -19.5, 1.0) <= 3)
+    }
+
+    fun testChainBodiesAreStatic() {
+        val world = World(Vec2(.0, -100.0))
+        val body = world.addBody(Body(EdgeChain(arrayOf(Vec2(), Vec2(10.0, .0))), .0, .0))
+        assertEquals(BodyType.STATIC, body.bodyType)
+        body.bodyType = BodyType.DYNAMIC
+        body.density = 2.0
+        assertEquals(BodyType.STATIC, body.bodyType)
+        assertEquals(.0, body.invMass)
+        world.step(1.0 / 60)
+        assertEquals(.0, body.position.y)
+    }
+
+    fun testBallRollsOverJoints() {
+        val world = World(Vec2(.0, -100.0))
+        //Slope made of many short segments
+        val slope = EdgeChain(Array(201) { Vec2(it * .5, -it * .25) })
+        world.addBody(Body(slope, .0, .0)).setStatic()
+        val ball = world.addBody(Body(Circle(1.0), 2.0, 1.0))
+        ball.restitution = .0
+        for (step in 0 until 180) {
+            world.step(1.0 / 60)
+            //Never below the slope
+            val x = ball.position.x
+            if (x > 0 && x < 100) {
+                assertTrue(ball.position.y > -x * .5)
+            }
+        }
+        assertTrue(ball.position.x > 10)
+        assertTrue(ball.angularVelocity < 0)
+    }
+
+    fun testRaycast() {
+        val world = World(Vec2(.0, .0))
+        val field = HeightField(DoubleArray(1001) { if (it == 500) 10.0 else .0 }, 2.0)
+        val body = world.addBody(Body(field, -1000.0, .0))
+        body.setStatic()
+        assertEquals(5.0, field.heightAt(999.0), 1e-9)
+
+        val result = RaycastResult()
+        assertTrue(world.raycast(Vec2(-5.0, 5.0), Vec2(5.0, 5.0), result))
+        assertSame(body, result.body)
+        assertEquals(-1.0, result.point.x, 1e-9)
+        assertEquals(499, result.index)
+        //Rays from below see the segment too
+        assertTrue(world.raycast(Vec2(-300.0, -5.0), Vec2(-300.0, 5.0), result))
+        assertEquals(.0, result.point.y, 1e-9)
+        assertEquals(-1.0, result.normal.y, 1e-9)
+        assertFalse(world.raycast(Vec2(-300.0, 5.0), Vec2(300.0, 5.0), result) && result.point.x < -2)
+        assertTrue(world.queryCircle(Vec2(.0, 10.5), 1.0, ArrayList()) == 1)
+        assertTrue(world.queryPoint(Vec2(.0, -1.0), ArrayList()) == 0)
+    }
+
+    fun testLongRaysOnlyTestNearbySegments() {
+        val field = HeightField(DoubleArray(1001) { (it % 7) * .5 }, 2.0)
+        Body(field, .0, .0)
+        //Shallow ray across the whole field, high above it until the end
+        assertEquals(0, field.findCrossedSegments(-10.0, 100.0, 2010.0, 4.0))
+        assertEquals(1, field.findCrossedSegments(-10.0, 100.0, 2010.0, 2.0))
+        //The bounding box of this ray covers a hundred segments
+        val found = field.findCrossedSegments(900.0, -50.0, 1100.0, 50.0)
+        assertTrue(found in 1..5)
+
+        //Hits stay the same as testing every segment
+        val random = Random(13)
+        val result = RaycastResult()
+        for (n in 0 until 200) {
+            val sx = random.nextDouble() * 2000
+            val sy = random.nextDouble() * 20 - 5
+            val ex = random.nextDouble() * 2000
+            val ey = random.nextDouble() * 20 - 5
+            var expected = Double.POSITIVE_INFINITY
+            for (i in 0 until field.segmentCount) {
+                val a = field.vertices[i]
+                val b = field.vertices[i + 1]
+                val denominator = (ex - sx) * (b.y - a.y) - (ey - sy) * (b.x - a.x)
+                if (denominator == .0) continue
+                val t = ((a.x - sx) * (b.y - a.y) - (a.y - sy) * (b.x - a.x)) / denominator
+                val u = ((a.x - sx) * (ey - sy) - (a.y - sy) * (ex - sx)) / denominator
+                if (t in .0..1.0 && u in .0..1.0) expected = minOf(expected, t)
+            }
+            if (expected.isInfinite()) {
+                assertFalse(field.raycast(sx, sy, ex, ey, 1.0, result))
+            } else {
+                assertTrue(field.raycast(sx, sy, ex, ey, 1.0, result))
+                assertEquals(expected, result.fraction, 1e-9)
+            }
+        }
+    }
+
+    fun testShapeCastHitsSegments() {
+        val world = World()
+        val valley = world.addBody(Body(EdgeChain(arrayOf(Vec2(-50.0, 10.0), Vec2(), Vec2(50.0, 10.0))), .0, .0))
+        val result = RaycastResult()
+        assertTrue(world.shapeCast(CollisionBody(Circle(1.0), 20.0, 30.0), Vec2(.0, -40.0), result))
+        assertSame(valley, result.body)
+        assertEquals(1, result.index)
+        assertEquals((30 - 4 - sqrt(26.0) / 5) / 40, result.fraction, 1e-3)
+        assertEquals(-1 / sqrt(26.0), result.normal.x, 1e-6)
+        assertEquals(5 / sqrt(26.0), result.normal.y, 1e-6)
+
+        //Casts hit segments from both sides, like rays
+        assertTrue(world.shapeCast(CollisionBody(Polygon(1.0, 1.0), -20.0, -10.0), Vec2(.0, 30.0), result))
+        assertEquals(0, result.index)
+        assertTrue(result.normal.y < 0)
+        assertFalse(world.shapeCast(CollisionBody(Circle(1.0), 60.0, 30.0), Vec2(.0, -40.0), result))
+    }
+
+    fun testParticlesRestOnChains() {
+        val world = World(Vec2(.0, -100.0))
+        world.addBody(Body(EdgeChain(arrayOf(Vec2(-50.0, 10.0), Vec2(), Vec2(50.0, 10.0))), .0, .0))
+        val field = HeightField(DoubleArray(11) { (it - 5) * (it - 5) * 2.0 }, 5.0)
+        world.addBody(Body(field, 100.0, .0))
+        val pool = ParticlePool(200)
+        pool.restitution = .0
+        for (i in 0 until 90) {
+            pool.emit(i - 45.0, 30.0, .0, .0, 100.0)
+            pool.emit(110.0 + i / 3.0, 30.0, .0, .0, 100.0)
+        }
+        //Segments only collide from their left side, which is above
+        pool.emit(10.0, -20.0, .0, 80.0, 100.0)
+        var highest = Double.NEGATIVE_INFINITY
+        for (step in 0 until 120) {
+            pool.update(world, 1.0 / 60)
+            highest = maxOf(highest, pool.yAt(180))
+        }
+        assertTrue(highest > 10)
+        for (i in 0 until 180) {
+            val x = pool.xAt(i)
+            if (x < 100) {
+                assertTrue(pool.yAt(i) >= abs(x) / 5 - 1e-6)
+            } else {
+                assertTrue(x > 100 && x < 150)
+                assertTrue(pool.yAt(i) >= field.heightAt(x - 100) - 1e-6)
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package de.chaffic.geometry
+
+import de.chaffic.collision.bodies.CollisionBody
+import de.chaffic.collision.bodies.CollisionBodyInterface
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.math.Vec2
+import de.chaffic.particles.ParticlePool
+import de.chaffic.rays.BatchRaycaster
+import de.chaffic.rays.OccluderBuffer
+import de.chaffic.rays.Ray
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+
+class CompoundShapeTest : TestCase() {
+
+    fun testMassMatchesSingleShape() {
+        //Two halves of a 4x2 box have the mass and inertia of the whole box
+        val compound = CompoundShape()
+            .addChild(Polygon(1.0, 1.0), 11.0, 5.0)
+            .addChild(Polygon(1.0, 1.0), 13.0, 5.0)
+        val a = Body(compound, .0, .0)
+        val b = Body(Polygon(2.0, 1.0), .0, .0)
+        a.density = 2.0
+        b.density = 2.0
+
+        assertEquals(b.mass, a.mass, 1e-9)
+        assertEquals(b.inertia, a.inertia, 1e-9)
+        //Children are centred on the body
+        assertEquals(-1.0, compound.offsetOf(0).x, 1e-9)
+        assertEquals(1.0, compound.offsetOf(1).x, 1e-9)
+        assertEquals(.0, compound.offsetOf(0).y, 1e-9)
+        assertEquals(-2.0, a.aabb.min.x, 1e-9)
+        assertEquals(2.0, a.aabb.max.x, 1e-9)
+    }
+
+    fun testChildrenFixedOnceBound() {
+        val compound = CompoundShape().addChild(Circle(1.0), .0, .0)
+        Body(compound, .0, .0)
+        try {
+            compound.addChild(Circle(1.0), 2.0, .0)
+            fail()
+        } catch (e: IllegalArgumentException) {
+        }
+        try {
+            CompoundShape().addChild(CompoundShape(), .0, .0)
+            fail()
+        } catch (e: IllegalArgumentException) {
+        }
+    }
+
+    fun testCompoundRestsOnGround() {
+        val world = World(Vec2(.0, -100.0))
+        val ground = world.addBody(Body(Polygon(20.0, 1.0), .0, .0))
+        ground.setStatic()
+        //Table made of a top and two legs
+        val table = world.addBody(Body(
+            CompoundShape()
+                .addChild(Polygon(3.0, .5), .0, 2.5)
+                .addChild(Polygon(.5, 1.0), -2.5, 1.0)
+                .addChild(Polygon(.5, 1.0), 2.5, 1.0), .0, 6.0
+        ))
+        table.restitution = .0
+        for (step in 0 until 300) {
+            world.step(1.0 / 60)
+        }
+        //The legs stand on the ground, the table does not tip over
+        assertEquals(1.0, table.position.y + table.aabb.min.y, .1)
+        assertEquals(.0, table.orientation, .05)
+    }
+
+    fun testBallStaysInsideBowl() {
+        val world = World(Vec2(.0, -100.0))
+        val bowl = world.addBody(Body(
+            CompoundShape()
+                .addChild(Polygon(4.0, .5), .0, .0)
+                .addChild(Polygon(.5, 3.0), -4.5, 2.5)
+                .addChild(Polygon(.5, 3.0), 4.5, 2.5), .0, .0
+        ))
+        bowl.setStatic()
+        val ball = world.addBody(Body(Circle(1.0), .0, 1.0))
+        ball.velocity.set(40.0, .0)
+        ball.restitution = .5
+        for (step in 0 until 300) {
+            world.step(1.0 / 60)
+        }
+        assertTrue(ball.position.x > -4.0 && ball.position.x < 4.0)
+        assertTrue(ball.position.y > -1.0 && ball.position.y < 3.0)
+    }
+
+    fun testQueriesHitChildren() {
+        val world = World(Vec2(.0, .0))
+        val compound = CompoundShape()
+            .addChild(Circle(1.0), -3.0, .0)
+            .addChild(Circle(1.0), 3.0, .0)
+        val body = world.addBody(Body(compound, .0, .0))
+        body.orientation = Math.PI / 2
+
+        //The children now lie above and below the centre
+        val found = ArrayList<CollisionBodyInterface>()
+        assertEquals(1, world.queryPoint(Vec2(.0, 3.0), found))
+        assertSame(body, found[0])
+        assertEquals(0, world.queryPoint(Vec2(.0, .0), found))
+        val result = RaycastResult()
+        assertTrue(world.raycast(Vec2(-10.0, -3.0), Vec2(10.0, -3.0), result))
+        assertSame(body, result.body)
+        assertEquals(-1.0, result.point.x, 1e-6)
+        assertFalse(world.raycast(Vec2(-10.0, .0), Vec2(10.0, .0), result))
+    }
+
+    fun testChildrenBlockCastsAndParticles() {
+        val world = World(Vec2(.0, .0))
+        val compound = CompoundShape()
+            .addChild(Polygon(5.0, 5.0), .0, .0)
+            .addChild(Circle(5.0), 20.0, .0)
+        val body = world.addBody(Body(compound, 100.0, .0))
+        val boxX = 100 + compound.offsetOf(0).x
+        val circleX = 100 + compound.offsetOf(1).x
+        val gapX = (boxX + circleX) / 2
+
+        val result = RaycastResult()
+        assertTrue(world.shapeCast(CollisionBody(Circle(1.0), circleX, 20.0), Vec2(.0, -30.0), result))
+        assertSame(body, result.body)
+        assertEquals(14.0 / 30, result.fraction, 1e-3)
+        assertEquals(1.0, result.normal.y, 1e-6)
+        assertTrue(world.shapeCast(CollisionBody(Circle(1.0), boxX, 20.0), Vec2(.0, -30.0), result))
+        assertEquals(14.0 / 30, result.fraction, 1e-3)
+        //The bounds of the compound cover the gap between the children
+        assertFalse(world.shapeCast(CollisionBody(Circle(1.0), gapX, 20.0), Vec2(.0, -30.0), result))
+
+        val pool = ParticlePool(3)
+        pool.restitution = .0
+        pool.emit(boxX, 20.0, .0, -30.0, 10.0)
+        pool.emit(circleX, 20.0, .0, -30.0, 10.0)
+        pool.emit(gapX, 20.0, .0, -30.0, 10.0)
+        for (step in 0 until 60) {
+            pool.update(world, 1.0 / 60)
+        }
+        assertEquals(5.0, pool.yAt(0), 1e-9)
+        assertEquals(5.0, pool.yAt(1), 1e-6)
+        assertEquals(.0, pool.velocityYAt(0), 1e-9)
+        assertEquals(-10.0, pool.yAt(2), 1e-9)
+    }
+
+    fun testOccluderBufferAddsChildren() {
+        val compound = CompoundShape()
+            .addChild(Polygon(5.0, 5.0), .0, .0)
+            .addChild(Circle(5.0), 20.0, .0)
+        val body = Body(compound, 100.0, .0)
+        body.orientation = Math.PI / 2
+        val buffer = OccluderBuffer()
+        buffer.addBody(body)
+        assertEquals(1, buffer.bodies.size)
+        assertEquals(4, buffer.edgeCount)
+        assertEquals(1, buffer.circleCount)
+        //The circle lies above the centre after the rotation
+        assertEquals(100.0, buffer.circles[0], 1e-9)
+        assertEquals(compound.offsetOf(1).x, buffer.circles[1], 1e-9)
+        for (i in 0 until buffer.edgeCount) {
+            assertEquals(i, buffer.edgeFaces[i])
+            assertEquals(0, buffer.edgeBodies[i])
+        }
+
+        //Rays stop at the children
+        val ray = Ray(Vec2(100.0, 50.0), Vec2(.0, -1.0), 100.0)
+        BatchRaycaster().cast(listOf(ray), listOf(body))
+        assertSame(body, ray.rayInformation?.b)
+        assertEquals(compound.offsetOf(1).x + 5, ray.rayInformation!!.coordinates.y, 1e-9)
+    }
+}
@@ -0,0 +1,106 @@
+package de.chaffic.geometry
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import java.util.Random
+
+class PolygonGeometryTest : TestCase() {
+
+    fun testBodiesShareGeometry() {
+        val geometry = PolygonGeometry.box(2.0, 1.0)
+        val a = Body(Polygon(geometry), .0, .0)
+        val b = Body(Polygon(geometry), 10.0, .0)
+        b.orientation = 1.0
+        a.density = 2.0
+        b.density = 2.0
+
+        assertSame((a.shape as Polygon).vertices, (b.shape as Polygon).vertices)
+        assertSame((a.shape as Polygon).normals, (b.shape as Polygon).normals)
+        assertEquals(16.0, a.mass, 1e-9)
+        assertEquals(a.inertia, b.inertia, 1e-9)
+        //Rotating one body does not change the other
+        assertEquals(-2.0, a.aabb.min.x, 1e-9)
+        assertEquals(2.0, a.aabb.max.x, 1e-9)
+        assertFalse(b.aabb.max.x == 2.0)
+    }
+
+    fun testHullIsCentred() {
+        val geometry = PolygonGeometry.hull(arrayOf(Vec2(10.0, 10.0), Vec2(14.0, 10.0), Vec2(14.0, 12.0), Vec2(10.0, 12.0), Vec2(12.0, 11.0)))
+        assertEquals(4, geometry.vertices.size)
+        assertEquals(8.0, geometry.area, 1e-9)
+        var x = .0
+        var y = .0
+        for (v in geometry.vertices) {
+            x += v.x
+            y += v.y
+        }
+        assertEquals(.0, x, 1e-9)
+        assertEquals(.0, y, 1e-9)
+        //Same inertia as a box of the same size about its centre
+        assertEquals(PolygonGeometry.box(2.0, 1.0).inertia, geometry.inertia, 1e-9)
+    }
+
+    fun testAabbUpdatedInPlace() {
+        val body = Body(Polygon(PolygonGeometry.box(1.0, 1.0)), .0, .0)
+        val aabb = body.aabb
+        body.orientation = Math.PI / 4
+        assertSame(aabb, body.aabb)
+        assertEquals(Math.sqrt(2.0), aabb.max.x, 1e-9)
+    }
+
+    fun testSharedGeometryCollides() {
+        val world = World(Vec2(.0, -100.0))
+        val crate = PolygonGeometry.box(1.0, 1.0)
+        val ground = world.addBody(Body(Polygon(20.0, 1.0), .0, .0))
+        ground.setStatic()
+        val boxes = Array(5) {
+            val b = world.addBody(Body(Polygon(crate), -8.0 + it * 4.0, 5.0))
+            b.restitution = .0
+            b
+        }
+        for (step in 0 until 240) {
+            world.step(1.0 / 60)
+        }
+        for (b in boxes) {
+            assertEquals(2.0, b.position.y, .1)
+        }
+    }
+
+    fun testSupportMatchesLinearSearch() {
+        val random = Random(42)
+        val points = Array(40) { Vec2(random.nextDouble() * 10, random.nextDouble() * 10) }
+        for (geometry in arrayOf(PolygonGeometry.regular(5.0, 64), PolygonGeometry.hull(points), PolygonGeometry.box(2.0, 1.0))) {
+            for (query in 0 until 200) {
+                val angle = random.nextDouble() * 2 * Math.PI
+                val dx = Math.cos(angle)
+                val dy = Math.sin(angle)
+                val hint = random.nextInt(geometry.vertices.size + 1) - 1
+                val v = geometry.vertices[geometry.support(dx, dy, hint)]
+                val n = geometry.normals[geometry.supportFace(dx, dy, hint)]
+                for (i in geometry.vertices.indices) {
+                    assertTrue(v.x * dx + v.y * dy >= geometry.vertices[i].x * dx + geometry.vertices[i].y * dy - 1e-9)
+                    assertTrue(n.x * dx + n.y * dy >= geometry.normals[i].x * dx + geometry.normals[i].y * dy - 1e-9)
+                }
+            }
+        }
+    }
+
+    fun testWheelDoesNotSinkIntoWheel() {
+        val world = World(Vec2(.0, -100.0))
+        val hub = world.addBody(Body(Polygon(10, 64), .0, .0))
+        hub.setStatic()
+        val wheel = world.addBody(Body(Polygon(4, 48), 1.0, 20.0))
+        wheel.restitution = .0
+        var closest = Double.MAX_VALUE
+        for (step in 0 until 120) {
+            world.step(1.0 / 60)
+            closest = Math.min(closest, wheel.position.distance(hub.position))
+        }
+        //The wheel rolls off the hub without passing through it
+        assertTrue(closest > 13.0)
+        assertTrue(closest < 14.5)
+        assertTrue(wheel.position.x > 1.0)
+    }
+}
@@ -0,0 +1,209 @@
+package de.chaffic.geometry
+
+import de.chaffic.collision.bodies.CollisionBody
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.dynamics.bodies.BodyType
+import de.chaffic.math.Vec2
+import de.chaffic.particles.ParticlePool
+import de.chaffic.rays.BatchRaycaster
+import de.chaffic.rays.OccluderBuffer
+import de.chaffic.rays.Ray
+import de.chaffic.rays.RaycastResult
+import junit.framework.TestCase
+import java.util.Random
+
+class TileMapTest : TestCase() {
+
+    fun testSolidBlockIsOneRectangle() {
+        val map = TileMap.fromGrid(Array(50) { IntArray(80) { 1 } }, 1.0)
+        assertEquals(1, map.rectangleCount)
+        map[40, 25] = false
+        assertTrue(map.rectangleCount in 2..4)
+        assertCovered(map)
+        map[40, 25] = true
+        assertEquals(1, map.rectangleCount)
+    }
+
+    fun testEditsOnlyMergeRegion() {
+        val random = Random(7)
+        val map = TileMap.fromGrid(Array(30) { BooleanArray(40) { random.nextInt(3) > 0 } }, 1.0)
+        assertCovered(map)
+        //Wall far away from the edits
+        for (row in 0 until 30) {
+            map[0, row] = true
+            map[1, row] = false
+        }
+        val wall = IntArray(4)
+        assertTrue(map.rectangleAt(0, 0, wall))
+        for (edit in 0 until 500) {
+            map[10 + random.nextInt(30), random.nextInt(30)] = random.nextBoolean()
+            assertCovered(map)
+        }
+        val after = IntArray(4)
+        map.rectangleAt(0, 0, after)
+        assertTrue(wall.contentEquals(after))
+    }
+
+    fun testBodiesRestOnTiles() {
+        val world = World(Vec2(.0, -100.0))
+        //Floor with a step, made of single tiles
+        val map = TileMap(200, 4, 1.0)
+        for (column in 0 until 200) {
+            map[column, 0] = true
+            if (column >= 120) map[column, 1] = true
+        }
+        world.addBody(Body(map, -100.0, -1.0)).setStatic()
+        val box = world.addBody(Body(Polygon(1.0, 1.0), -30.5, 5.0))
+        val ball = world.addBody(Body(Circle(1.0), 40.3, 5.0))
+        box.restitution = .0
+        ball.restitution = .0
+        for (step in 0 until 240) {
+            world.step(1.0 / 60)
+        }
+        assertEquals(2, map.rectangleCount)
+        assertEquals(1.0, box.position.y, .05)
+        assertEquals(.0, box.orientation, .01)
+        assertEquals(2.0, ball.position.y, .05)
+    }
+
+    fun testTileMapBodiesAreStatic() {
+        val world = World(Vec2(.0, -100.0))
+        val map = TileMap(4, 4, 1.0)
+        map[0, 0] = true
+        val body = world.addBody(Body(map, .0, .0))
+        assertEquals(BodyType.STATIC, body.bodyType)
+        body.bodyType = BodyType.DYNAMIC
+        assertEquals(BodyType.STATIC, body.bodyType)
+        assertEquals(.0, body.invMass)
+        world.step(1.0 / 60)
+        assertEquals(.0, body.position.y)
+    }
+
+    fun testRaycast() {
+        val world = World(Vec2(.0, .0))
+        val map = TileMap(20, 10, 2.0)
+        map[5, 3] = true
+        map[0, 0] = true
+        val body = world.addBody(Body(map, .0, .0))
+        body.setStatic()
+
+        val result = RaycastResult()
+        assertTrue(world.raycast(Vec2(1.0, 7.0), Vec2(30.0, 7.0), result))
+        assertSame(body, result.body)
+        assertEquals(10.0, result.point.x, 1e-9)
+        assertEquals(-1.0, result.normal.x, 1e-9)
+        assertEquals(3 * 20 + 5, result.index)
+        //Diagonal ray entering through the top of the tile
+        assertTrue(world.raycast(Vec2(10.5, 20.0), Vec2(11.5, 0.0), result))
+        assertEquals(8.0, result.point.y, 1e-9)
+        assertEquals(1.0, result.normal.y, 1e-9)
+        //Ray from outside the map into a tile on the border
+        assertTrue(world.raycast(Vec2(-5.0, 1.0), Vec2(5.0, 1.0), result))
+        assertEquals(.0, result.point.x, 1e-9)
+        //Rays starting inside a tile do not hit it
+        assertFalse(world.raycast(Vec2(1.0, 1.0), Vec2(1.0, 15.0), result))
+        assertTrue(map.testPoint(11.0, 7.0))
+        assertTrue(map.overlapsCircle(9.5, 7.0, 0.6))
+        assertFalse(map.overlapsCircle(9.0, 7.0, 0.9))
+    }
+
+    /**
+     * Checks that every solid tile belongs to exactly one rectangle made of solid tiles only.
+     */
+    private fun assertCovered(map: TileMap) {
+        val bounds = IntArray(4)
+        val other = IntArray(4)
+        var area = 0
+        var solid = 0
+        for (row in 0 until map.rows) {
+            for (column in 0 until map.columns) {
+                if (!map.rectangleAt(column, row, bounds)) continue
+                solid++
+                assertTrue(column in bounds[0] until bounds[0] + bounds[2] && row in bounds[1] until bounds[1] + bounds[3])
+                //Count every rectangle once at its lower left tile
+                if (column != bounds[0] || row != bounds[1]) continue
+                area += bounds[2] * bounds[3]
+                for (r in row until row + bounds[3]) {
+                    for (c in column until column + bounds[2]) {
+                        assertTrue(map.rectangleAt(c, r, other))
+                        assertTrue(bounds.contentEquals(other))
+                    }
+                }
+            }
+        }
+        assertEquals(solid, area)
+    }
+
+    /**
+     * Floor with a pillar of two columns at columns 20 and 21.
+     */
+    private fun createLevel(): TileMap {
+        val map = TileMap(40, 10, 1.0)
+        for (column in 0 until 40) {
+            map[column, 0] = true
+        }
+        for (row in 1..5) {
+            map[20, row] = true
+            map[21, row] = true
+        }
+        return map
+    }
+
+    fun testRectanglesBlockCastsAndParticles() {
+        val world = World(Vec2(.0, -100.0))
+        val level = world.addBody(Body(createLevel(), .0, .0))
+        val result = RaycastResult()
+        assertTrue(world.shapeCast(CollisionBody(Circle(.5), 5.0, 8.0), Vec2(.0, -10.0), result))
+        assertSame(level, result.body)
+        assertEquals(.65, result.fraction, 1e-3)
+        assertEquals(1.0, result.normal.y, 1e-6)
+        assertTrue(world.shapeCast(CollisionBody(Polygon(.5, .5), 10.0, 3.0), Vec2(20.0, .0), result))
+        assertEquals(9.5 / 20, result.fraction, 1e-3)
+        assertEquals(-1.0, result.normal.x, 1e-6)
+
+        val pool = ParticlePool(40)
+        pool.restitution = .0
+        for (column in 0 until 40) {
+            pool.emit(column + .5, 8.0, .0, .0, 100.0)
+        }
+        for (step in 0 until 120) {
+            pool.update(world, 1.0 / 60)
+        }
+        for (i in 0 until 40) {
+            val x = pool.xAt(i)
+            assertEquals(if (x > 20 && x < 22) 6.0 else 1.0, pool.yAt(i), 1e-9)
+        }
+    }
+
+    fun testRectanglesOcclude() {
+        val world = World()
+        val level = world.addBody(Body(createLevel(), .0, .0))
+        world.addBody(Body(Circle(1.0), 30.0, 4.0))
+        val buffer = OccluderBuffer()
+        buffer.gather(world.bodies, .0, .0, 5.0, 5.0)
+        assertEquals(1, buffer.bodies.size)
+        assertEquals(4, buffer.edgeCount)
+        assertEquals(-1, buffer.edgeFaces[0])
+
+        val random = Random(11)
+        val rays = List(300) { Ray(Vec2(10.0, 4.0), random.nextDouble() * 2 * Math.PI, 60.0) }
+        BatchRaycaster().cast(rays, world.bodies)
+        var levelHits = 0
+        for (ray in rays) {
+            val single = Ray(ray.startPoint, ray.direction, ray.distance)
+            single.updateProjection(world)
+            val expected = single.rayInformation
+            if (expected == null) {
+                assertNull(ray.rayInformation)
+                continue
+            }
+            val actual = ray.rayInformation!!
+            assertSame(expected.b, actual.b)
+            assertEquals(expected.coordinates.x, actual.coordinates.x, 1e-6)
+            assertEquals(expected.coordinates.y, actual.coordinates.y, 1e-6)
+            if (actual.b === level) levelHits++
+        }
+        assertTrue(levelHits > 100)
+    }
+}
@@ -0,0 +1,143 @@
+package de.chaffic.joints
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.SolverMode
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import kotlin.math.abs
+import kotlin.math.max
+
+class ConstraintTest : TestCase() {
+
+    fun testChainHoldsTogether() {
+        val world = World(Vec2(.0, -100.0))
+        val anchor = world.addBody(Body(Circle(2.0), .0, .0))
+        anchor.setStatic()
+        val links = ArrayList<DistanceJoint>()
+        var previous = anchor
+        for (i in 1..20) {
+            val link = world.addBody(Body(Circle(2.0), i * 10.0, .0))
+            links.add(world.addConstraint(DistanceJoint(previous, link)))
+            previous = link
+        }
+        world.collideJointedBodies = false
+
+        var worst = .0
+        for (step in 0 until 600) {
+            world.step(1.0 / 60)
+            for (link in links) {
+                worst = max(worst, abs(link.error))
+            }
+        }
+        assertTrue("worst error $worst", worst < .5)
+        assertTrue(previous.position.y < -100.0)
+    }
+
+    fun testRevolutePin() {
+        val world = World(Vec2(.0, -100.0))
+        val ground = world.addBody(Body(Circle(2.0), .0, .0))
+        ground.setStatic()
+        val box = world.addBody(Body(Polygon(20.0, 5.0), 20.0, .0))
+        val pin = Vec2(.0, .0)
+        world.addConstraint(RevoluteJoint(ground, box, pin))
+        world.collideJointedBodies = false
+
+        for (step in 0 until 300) {
+            world.step(1.0 / 60)
+            val m = box.shape.orientation
+            val anchorX = box.position.x + m.row1.x * -20.0
+            val anchorY = box.position.y + m.row2.x * -20.0
+            assertEquals(.0, anchorX, .5)
+            assertEquals(.0, anchorY, .5)
+        }
+        assertTrue(box.angularVelocity != .0)
+    }
+
+    fun testChainSolvedDirectly() {
+        val anchor = Body(Circle(2.0), .0, .0)
+        anchor.setStatic()
+        val constraints = ArrayList<Constraint>()
+        val links = ArrayList<DistanceJoint>()
+        var previous = anchor
+        for (i in 1..200) {
+            val link = Body(Circle(2.0), i * 10.0, (i % 3) * 2.0)
+            links.add(DistanceJoint(previous, link))
+            previous = link
+        }
+        constraints.addAll(links)
+        val branch = DistanceJoint(links[100].bodyB, Body(Circle(2.0), 1000.0, 50.0))
+        constraints.add(branch)
+
+        val chains = ArrayList<ConstraintChain>()
+        val remaining = ArrayList<Constraint>()
+        ConstraintChain.build(constraints, chains, remaining)
+        //The branch splits the rope into two chains and stays on its own
+        assertEquals(2, chains.size)
+        assertEquals(201, chains[0].joints.size + chains[1].joints.size + remaining.size)
+        assertEquals(listOf<Constraint>(branch), remaining)
+
+        //A tug at the free end is transmitted along the whole rope in one solve
+        previous.velocity.set(Vec2(500.0, -300.0))
+        for (c in constraints) {
+            c.initVelocityConstraints(1.0 / 60, false)
+        }
+        for (chain in chains) {
+            chain.initVelocityConstraints()
+            chain.solveVelocityConstraints()
+        }
+        for (link in links) {
+            //The two chains meet at the branch body, only the one solved last is exact there
+            if (link === links[100]) continue
+            assertEquals(.0, link.relativeVelocity(), 1e-6)
+        }
+        assertTrue(links[101].impulse != .0)
+    }
+
+    fun testXpbdStiffSpring() {
+        val world = World(Vec2(.0, -100.0))
+        world.solverMode = SolverMode.XPBD
+        world.substeps = 4
+        val ceiling = world.addBody(Body(Circle(2.0), .0, .0))
+        ceiling.setStatic()
+        val weight = world.addBody(Body(Circle(2.0), 30.0, -10.0))
+        world.addJoint(JointToBody(ceiling, weight, 20.0, 1e9, 10.0, false, Vec2(), Vec2()))
+        world.collideJointedBodies = false
+
+        //Explicit springs this stiff explode at this timestep
+        for (step in 0 until 300) {
+            world.step(1.0 / 30)
+            assertTrue(weight.velocity.length() < 1000.0)
+        }
+        assertEquals(20.0, weight.position.length(), .5)
+    }
+
+    fun testXpbdChain() {
+        val world = World(Vec2(.0, -100.0))
+        world.solverMode = SolverMode.XPBD
+        val anchor = world.addBody(Body(Circle(2.0), .0, .0))
+        anchor.setStatic()
+        val links = ArrayList<DistanceJoint>()
+        var previous = anchor
+        for (i in 1..20) {
+            val link = world.addBody(Body(Circle(2.0), i * 10.0, .0))
+            links.add(world.addConstraint(DistanceJoint(previous, link)))
+            previous = link
+        }
+        world.collideJointedBodies = false
+
+        var worst = .0
+        for (step in 0 until 300) {
+            world.step(1.0 / 60)
+            for (link in links) {
+                worst = max(worst, abs(link.error))
+            }
+        }
+        assertTrue("worst error $worst", worst < .5)
+        //The rope swings freely, its end stays within reach of the anchor
+        assertTrue(previous.position.y < .0)
+        assertTrue(previous.position.length() < 200.5)
+    }
+}
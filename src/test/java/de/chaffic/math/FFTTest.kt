@@ -0,0 +1,54 @@
+package de.chaffic.math
+
+import junit.framework.TestCase
+import java.util.Random
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+class FFTTest : TestCase() {
+
+    fun testMatchesDiscreteTransform() {
+        val random = Random(1)
+        val n = 64
+        val re = DoubleArray(n) { random.nextDouble() - 0.5 }
+        val im = DoubleArray(n) { random.nextDouble() - 0.5 }
+        val expectedRe = DoubleArray(n)
+        val expectedIm = DoubleArray(n)
+        for (k in 0 until n) {
+            for (t in 0 until n) {
+                val angle = -2 * PI * k * t / n
+                expectedRe[k] += re[t] * cos(angle) - im[t] * sin(angle)
+                expectedIm[k] += re[t] * sin(angle) + im[t] * cos(angle)
+            }
+        }
+        FFT(n).transform(re, im)
+        for (k in 0 until n) {
+            assertEquals(expectedRe[k], re[k], 1e-9)
+            assertEquals(expectedIm[k], im[k], 1e-9)
+        }
+    }
+
+    fun testInverse2D() {
+        val random = Random(2)
+        val n = 16
+        val re = DoubleArray(n * n) { random.nextDouble() }
+        val im = DoubleArray(n * n)
+        val original = re.copyOf()
+        val fft = FFT(n)
+        fft.transform2D(re, im)
+        fft.transform2D(re, im, true)
+        for (i in re.indices) {
+            assertEquals(original[i], re[i], 1e-12)
+            assertEquals(.0, im[i], 1e-12)
+        }
+    }
+
+    fun testRejectsNonPowerOfTwo() {
+        try {
+            FFT(12)
+            fail()
+        } catch (expected: IllegalArgumentException) {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.chaffic.particles
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.explosions.ParticleExplosion
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+
+class ParticlePoolTest : TestCase() {
+
+    fun testLifespanRecycles() {
+        val world = World()
+        val pool = ParticlePool(3)
+        pool.emit(.0, .0, 1.0, .0, 1.0)
+        pool.emit(.0, .0, 2.0, .0, 3.0)
+        pool.emit(.0, .0, 3.0, .0, 2.0)
+        assertEquals(-1, pool.emit(.0, .0, .0, .0, 1.0))
+
+        for (i in 0 until 25) {
+            pool.update(world, .1)
+        }
+        //Only the longest living particle is left and moved to the front
+        assertEquals(1, pool.size)
+        assertEquals(2.0, pool.velocityXAt(0))
+        assertEquals(5.0, pool.xAt(0), 1e-9)
+        assertEquals(1, pool.emit(.0, .0, .0, .0, 1.0))
+    }
+
+    fun testBouncesOffBodiesOneWay() {
+        val world = World(Vec2(.0, -10.0))
+        val ground = world.addBody(Body(Polygon(100.0, 10.0), .0, -10.0))
+        ground.setStatic()
+        val pool = ParticlePool(100)
+        pool.restitution = .0
+        for (i in 0 until 100) {
+            pool.emit(i - 50.0, 20.0, .0, -50.0, 100.0)
+        }
+        for (step in 0 until 120) {
+            pool.update(world, 1.0 / 60)
+        }
+        for (i in 0 until pool.size) {
+            assertTrue(pool.yAt(i) >= -1e-9)
+            assertEquals(.0, pool.velocityYAt(i), 1e-9)
+        }
+        assertEquals(1, world.bodies.size)
+        assertEquals(.0, ground.velocity.y)
+    }
+
+    fun testExplosionDoesNotAddBodies() {
+        val world = World()
+        world.addBody(Body(Circle(10.0), 500.0, .0)).setStatic()
+        val explosion = ParticleExplosion(Vec2(), 50000, 2.0)
+        explosion.emitParticles(1.0)
+        explosion.applyBlastImpulse(100.0)
+        assertEquals(50000, explosion.pool.size)
+        for (step in 0 until 60) {
+            explosion.update(world, 1.0 / 60)
+        }
+        assertEquals(1, world.bodies.size)
+        assertTrue(explosion.particles.isEmpty())
+        assertEquals(101.0, explosion.pool.yAt(0), 1e-6)
+        for (step in 0 until 70) {
+            explosion.update(world, 1.0 / 60)
+        }
+        assertEquals(0, explosion.pool.size)
+    }
+}
@@ -0,0 +1,110 @@
+package de.chaffic.profiling
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.explosions.ParticleExplosion
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import de.chaffic.rays.Ray
+import de.chaffic.rays.ShadowCasting
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingFile
+import junit.framework.TestCase
+import java.nio.file.Files
+
+class ProfilingEventsTest : TestCase() {
+
+    /**
+     * Runs an action while recording all KPhysics events and returns the recorded events by name.
+     */
+    private fun record(action: () -> Unit): Map<String, List<RecordedEvent>> {
+        val file = Files.createTempFile("kphysics", ".jfr")
+        try {
+            Recording().use { recording ->
+                for (name in NAMES) {
+                    recording.enable(name).withoutThreshold()
+                }
+                recording.start()
+                action()
+                recording.stop()
+                recording.dump(file)
+            }
+            return RecordingFile.readAllEvents(file).groupBy { it.eventType.name }
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    fun testStepAndQueryEvents() {
+        val world = World(Vec2(.0, -10.0))
+        world.addBody(Body(Polygon(50.0, 1.0), .0, .0)).setStatic()
+        for (i in 0 until 3) {
+            world.addBody(Body(Polygon(1.0, 1.0), i * 3.0, 1.5))
+        }
+        lateinit var shadowCasting: ShadowCasting
+        val events = record {
+            for (step in 0 until 3) {
+                world.step(1.0 / 60)
+            }
+            Ray(Vec2(.0, 20.0), Vec2(.0, -1.0), 50.0).updateProjection(world)
+            Ray(Vec2(.0, 20.0), Vec2(.0, 1.0), 50.0).updateProjection(world)
+            shadowCasting = ShadowCasting(Vec2(.0, 20.0), 100.0)
+            shadowCasting.updateProjections(world.bodies)
+        }
+
+        val steps = events["de.chaffic.WorldStep"]!!
+        assertEquals(3, steps.size)
+        for (step in steps) {
+            assertEquals(1.0 / 60, step.getDouble("dt"))
+            assertEquals(4, step.getInt("bodyCount"))
+            assertEquals(3, step.getInt("contactCount"))
+            assertFalse(step.hasField("rayCount"))
+        }
+        //Every step has five phases
+        val phases = events["de.chaffic.StepPhase"]!!.groupBy { it.getString("phase") }
+        assertEquals(5, phases.size)
+        for (phase in listOf(
+            StepPhaseEvent.BROAD_PHASE, StepPhaseEvent.FORCES, StepPhaseEvent.SOLVE, StepPhaseEvent.INTEGRATION,
+            StepPhaseEvent.PENETRATION_RESOLUTION
+        )) {
+            assertEquals(3, phases[phase]!!.size)
+        }
+
+        val rays = events["de.chaffic.RayProjection"]!!
+        assertEquals(2, rays.size)
+        assertEquals(listOf(true, false), rays.sortedBy { it.startTime }.map { it.getBoolean("hit") })
+        assertTrue(rays.all { it.getInt("rayCount") == 1 })
+
+        val shadows = events["de.chaffic.ShadowCasting"]!!
+        assertEquals(1, shadows.size)
+        assertEquals(shadowCasting.noOfRays, shadows[0].getInt("rayCount"))
+        assertEquals(4, shadows[0].getInt("bodyCount"))
+    }
+
+    fun testParticleExplosionEvents() {
+        val world = World()
+        world.addBody(Body(Polygon(5.0, 5.0), 100.0, .0))
+        val explosion = ParticleExplosion(Vec2(), 500, 1.0)
+        explosion.emitParticles(1.0)
+        val events = record {
+            explosion.update(world, .6)
+            explosion.update(world, .6)
+        }
+
+        //The particles reach their lifespan in the second update
+        val updates = events["de.chaffic.ExplosionUpdate"]!!.sortedBy { it.startTime }
+        assertEquals(2, updates.size)
+        assertEquals("particle", updates[0].getString("explosionType"))
+        assertEquals(1, updates[0].getInt("bodyCount"))
+        assertEquals(500, updates[0].getInt("particleCount"))
+        assertEquals(0, updates[1].getInt("particleCount"))
+    }
+
+    companion object {
+        private val NAMES = listOf(
+            "de.chaffic.WorldStep", "de.chaffic.StepPhase", "de.chaffic.RayProjection", "de.chaffic.ShadowCasting",
+            "de.chaffic.ExplosionUpdate"
+        )
+    }
+}
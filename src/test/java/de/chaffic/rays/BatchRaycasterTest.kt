@@ -0,0 +1,156 @@
+package de.chaffic.rays
+
+import de.chaffic.dynamics.Body
+import de.chaffic.dynamics.World
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.HeightField
+import de.chaffic.geometry.Polygon
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import java.util.Random
+
+class BatchRaycasterTest : TestCase() {
+    private val origins = listOf(Vec2(), Vec2(150.0, -200.0), Vec2(-250.0, 100.0))
+
+    /**
+     * World of rotated polygons and circles that keeps the ray origins clear.
+     */
+    private fun createWorld(): World {
+        val random = Random(3)
+        val world = World()
+        while (world.bodies.size < 80) {
+            val x = random.nextDouble() * 800 - 400
+            val y = random.nextDouble() * 800 - 400
+            if (origins.any { Vec2(x, y).distance(it) < 80 }) continue
+            val body = if (world.bodies.size % 2 == 0) {
+                Body(Polygon(5 + random.nextDouble() * 25, 5 + random.nextDouble() * 25), x, y)
+            } else {
+                Body(Circle(5 + random.nextDouble() * 25), x, y)
+            }
+            body.orientation = random.nextDouble() * Math.PI
+            world.addBody(body)
+        }
+        return world
+    }
+
+    private fun createRays(): List<Ray> {
+        val random = Random(9)
+        return List(600) { Ray(origins[it % origins.size].copy(), random.nextDouble() * 2 * Math.PI, 600.0) }
+    }
+
+    private fun assertSameAsSingleRays(parallel: Boolean) {
+        val world = createWorld()
+        val rays = createRays()
+        BatchRaycaster(parallel).cast(rays, world.bodies)
+
+        var hits = 0
+        for (ray in rays) {
+            val single = Ray(ray.startPoint, ray.direction, ray.distance)
+            single.updateProjection(world)
+            val expected = single.rayInformation
+            if (expected == null) {
+                assertNull(ray.rayInformation)
+                continue
+            }
+            hits++
+            val actual = ray.rayInformation!!
+            assertSame(expected.b, actual.b)
+            assertEquals(expected.coordinates.x, actual.coordinates.x, 1e-6)
+            assertEquals(expected.coordinates.y, actual.coordinates.y, 1e-6)
+            //Faces are only reported for polygons
+            val polygon = (actual.b as Body).shape is Polygon
+            assertEquals(if (polygon) expected.index else -1, actual.index)
+        }
+        assertTrue(hits > 100)
+        assertTrue(hits < rays.size)
+    }
+
+    fun testSerialMatchesSingleRays() {
+        assertSameAsSingleRays(false)
+    }
+
+    fun testParallelMatchesSingleRays() {
+        assertSameAsSingleRays(true)
+    }
+
+    fun testHitSlotIsReused() {
+        val world = World()
+        val box = world.addBody(Body(Polygon(10.0, 10.0), 50.0, .0))
+        val ray = Ray(Vec2(), Vec2.RIGHT, 100.0)
+        val raycaster = BatchRaycaster()
+        raycaster.cast(listOf(ray), world.bodies)
+        val information = ray.rayInformation
+        assertSame(box, information?.b)
+        assertEquals(40.0, information!!.coordinates.x, 1e-9)
+
+        box.position.set(70.0, .0)
+        raycaster.cast(listOf(ray), world.bodies)
+        assertSame(information, ray.rayInformation)
+        assertEquals(60.0, information.coordinates.x, 1e-9)
+
+        box.position.set(70.0, 50.0)
+        raycaster.cast(listOf(ray), world.bodies)
+        assertNull(ray.rayInformation)
+    }
+
+    fun testOccluderBufferGathersOverlappingBodies() {
+        val world = World()
+        world.addBody(Body(Polygon(10.0, 10.0), .0, .0))
+        world.addBody(Body(Circle(5.0), 30.0, .0))
+        world.addBody(Body(Circle(5.0), 500.0, .0))
+        val buffer = OccluderBuffer()
+
+        buffer.gather(world.bodies, -50.0, -50.0, 50.0, 50.0)
+        assertEquals(2, buffer.bodies.size)
+        assertEquals(4, buffer.edgeCount)
+        assertEquals(1, buffer.circleCount)
+        //Edges are stored in world space in the order of the faces
+        for (i in 0 until buffer.edgeCount) {
+            assertEquals(i, buffer.edgeFaces[i])
+            assertEquals(10 * Math.sqrt(2.0), Vec2(buffer.edges[i * 4], buffer.edges[i * 4 + 1]).length(), 1e-9)
+        }
+
+        buffer.gather(world.bodies, circleSegments = 16)
+        assertEquals(3, buffer.bodies.size)
+        assertEquals(4 + 2 * 16, buffer.edgeCount)
+        assertEquals(0, buffer.circleCount)
+        for (i in 4 until buffer.edgeCount) {
+            assertEquals(-1, buffer.edgeFaces[i])
+        }
+
+        buffer.clear()
+        assertEquals(0, buffer.edgeCount)
+        assertTrue(buffer.bodies.isEmpty())
+    }
+
+    fun testHeightFieldOccludes() {
+        val random = Random(5)
+        val world = World()
+        val field = world.addBody(Body(HeightField(DoubleArray(301) { random.nextDouble() * 40 }, 4.0), -600.0, -100.0))
+        world.addBody(Body(Circle(10.0), 30.0, -20.0))
+        val origin = Vec2(.0, 50.0)
+        val rays = List(400) { Ray(origin.copy(), random.nextDouble() * 2 * Math.PI, 400.0) }
+        BatchRaycaster().cast(rays, world.bodies)
+
+        var terrainHits = 0
+        for (ray in rays) {
+            val single = Ray(ray.startPoint, ray.direction, ray.distance)
+            single.updateProjection(world)
+            val expected = single.rayInformation
+            if (expected == null) {
+                assertNull(ray.rayInformation)
+                continue
+            }
+            val actual = ray.rayInformation!!
+            assertSame(expected.b, actual.b)
+            assertEquals(expected.coordinates.x, actual.coordinates.x, 1e-6)
+            assertEquals(expected.coordinates.y, actual.coordinates.y, 1e-6)
+            if (actual.b === field) {
+                //Segments are reported like faces
+                assertEquals(expected.index, actual.index)
+                terrainHits++
+            }
+        }
+        assertTrue(terrainHits > 100)
+    }
+}
@@ -272,4 +272,24 @@ class RayTest : TestCase() {
 
         assertEquals(plattform, ray.rayInformation?.b)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testWorldUpdateReusesHit() {
+        val world = World()
+        val box = world.addBody(Body(Polygon(10.0, 10.0), 50.0, .0))
+        val ray = Ray(Vec2(), Vec2.RIGHT, 100.0)
+        ray.updateProjection(world)
+        val information = ray.rayInformation
+        assertSame(box, information?.b)
+        assertEquals(40.0, information!!.coordinates.x, 1e-9)
+
+        box.position.set(70.0, .0)
+        ray.updateProjection(world)
+        assertSame(information, ray.rayInformation)
+        assertEquals(60.0, information.coordinates.x, 1e-9)
+
+        box.position.set(70.0, 50.0)
+        ray.updateProjection(world)
+        assertNull(ray.rayInformation)
+    }
+}
@@ -0,0 +1,186 @@
+package de.chaffic.rays
+
+import de.chaffic.dynamics.Body
+import de.chaffic.geometry.Circle
+import de.chaffic.geometry.HeightField
+import de.chaffic.geometry.Polygon
+import de.chaffic.geometry.bodies.TranslatableBody
+import de.chaffic.math.Vec2
+import junit.framework.TestCase
+import java.util.Random
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.min
+import kotlin.math.sin
+
+class ShadowCastingTest : TestCase() {
+
+    fun testInsideBody() {
+        val bodies = ArrayList<TranslatableBody>()
+        bodies.add(Body(Polygon(50.0, 50.0), .0, .0))
+        val shadowCasting = ShadowCasting(Vec2(), 500.0)
+        shadowCasting.updateProjections(bodies)
+        assertEquals(0, shadowCasting.noOfRays)
+    }
+
+    fun testEmptyRangeIsSquare() {
+        val shadowCasting = ShadowCasting(Vec2(10.0, 20.0), 100.0)
+        shadowCasting.updateProjections(ArrayList())
+        val visibility = shadowCasting.visibility
+        assertEquals(4, visibility.size)
+        for (i in 0 until visibility.size) {
+            assertEquals(100.0, abs(visibility.xAt(i) - 10.0), 1e-9)
+            assertEquals(100.0, abs(visibility.yAt(i) - 20.0), 1e-9)
+            assertNull(visibility.bodyAt(i))
+            if (i > 0) assertTrue(visibility.angleAt(i) > visibility.angleAt(i - 1))
+        }
+    }
+
+    fun testMatchesRays() {
+        val random = Random(3)
+        val bodies = ArrayList<TranslatableBody>()
+        for (gx in -4..4) {
+            for (gy in -4..4) {
+                if (gx == 0 && gy == 0) continue
+                val x = gx * 100.0 + random.nextDouble() * 20
+                val y = gy * 100.0 + random.nextDouble() * 20
+                val body = if (random.nextBoolean()) {
+                    Body(Polygon(10 + random.nextDouble() * 20, 10 + random.nextDouble() * 20), x, y)
+                } else {
+                    Body(Circle(10 + random.nextDouble() * 20), x, y)
+                }
+                body.orientation = random.nextDouble() * 2 * PI
+                bodies.add(body)
+            }
+        }
+
+        assertMatchesRays(bodies, 15.0, -5.0, 350.0, random)
+    }
+
+    fun testDenseOccludersMatchRays() {
+        val random = Random(17)
+        val bodies = ArrayList<TranslatableBody>()
+        //Long thin walls close to each other, so many edges are crossed by the sweep ray at once
+        for (gx in -7..7) {
+            for (gy in -7..7) {
+                val body = Body(Polygon(20 + random.nextDouble() * 8, 1 + random.nextDouble() * 2), gx * 60.0, gy * 60.0)
+                body.orientation = random.nextDouble() * 2 * PI
+                bodies.add(body)
+            }
+        }
+        for (light in 0 until 8) {
+            val x = (random.nextInt(12) - 6) * 60.0 + 30.0
+            val y = (random.nextInt(12) - 6) * 60.0 + 30.0
+            assertMatchesRays(bodies, x, y, 450.0, random)
+        }
+    }
+
+    fun testHeightFieldOccludes() {
+        val random = Random(23)
+        val bodies = ArrayList<TranslatableBody>()
+        bodies.add(Body(HeightField(DoubleArray(401) { random.nextDouble() * 60 }, 5.0), -1000.0, -100.0))
+        bodies.add(Body(Polygon(10.0, 30.0), 40.0, 20.0))
+        assertMatchesRays(bodies, .0, 60.0, 250.0, random)
+
+        //Only the segments around the light are gathered
+        val shadowCasting = ShadowCasting(Vec2(.0, 60.0), 250.0)
+        shadowCasting.updateProjections(bodies)
+        val occluders = shadowCasting.occluders
+        assertEquals(2, occluders.bodies.size)
+        assertTrue(occluders.edgeCount in 4 + 50..4 + 102)
+    }
+
+    /**
+     * Checks the visibility polygon of a light against rays cast in random directions.
+     */
+    private fun assertMatchesRays(bodies: ArrayList<TranslatableBody>, x: Double, y: Double, range: Double, random: Random) {
+        val shadowCasting = ShadowCasting(Vec2(x, y), range)
+        shadowCasting.updateProjections(bodies)
+        val visibility = shadowCasting.visibility
+        val occluders = shadowCasting.occluders
+        assertTrue(visibility.size > 4)
+
+        for (n in 0 until 2000) {
+            val angle = random.nextDouble() * 2 * PI - PI
+            val dx = cos(angle)
+            val dy = sin(angle)
+
+            var expected = Double.POSITIVE_INFINITY
+            for (i in 0 until occluders.edgeCount) {
+                val e = occluders.edges
+                expected = min(expected, hit(x, y, dx, dy, e[i * 4], e[i * 4 + 1], e[i * 4 + 2], e[i * 4 + 3]))
+            }
+            expected = min(expected, hit(x, y, dx, dy, x - range, y - range, x + range, y - range))
+            expected = min(expected, hit(x, y, dx, dy, x + range, y - range, x + range, y + range))
+            expected = min(expected, hit(x, y, dx, dy, x + range, y + range, x - range, y + range))
+            expected = min(expected, hit(x, y, dx, dy, x - range, y + range, x - range, y - range))
+
+            var actual = Double.POSITIVE_INFINITY
+            for (i in 0 until visibility.size) {
+                val j = (i + 1) % visibility.size
+                actual = min(actual, hit(x, y, dx, dy, visibility.xAt(i), visibility.yAt(i), visibility.xAt(j), visibility.yAt(j)))
+            }
+            assertEquals(expected, actual, 1e-6)
+        }
+    }
+
+    fun testServiceMatchesShadowCasting() {
+        val bodies = ArrayList<TranslatableBody>()
+        for (i in 0 until 20) {
+            bodies.add(Body(Polygon(20.0, 10.0), (i % 5) * 80.0 - 160.0, (i / 5) * 80.0 - 120.0))
+        }
+        val service = ShadowService()
+        val positions = arrayOf(Vec2(-40.0, -40.0), Vec2(40.0, 15.0), Vec2(100.0, -70.0), Vec2(-120.0, 90.0))
+        for (position in positions) {
+            service.addLight(position, 200.0)
+        }
+        service.update(bodies)
+
+        for (light in service.lights) {
+            val shadowCasting = ShadowCasting(light.position, 200.0)
+            shadowCasting.updateProjections(bodies)
+            assertEquals(shadowCasting.visibility.size, light.visibility.size)
+            for (i in 0 until light.visibility.size) {
+                assertEquals(shadowCasting.visibility.xAt(i), light.visibility.xAt(i), 1e-9)
+                assertEquals(shadowCasting.visibility.yAt(i), light.visibility.yAt(i), 1e-9)
+            }
+        }
+    }
+
+    fun testStaticLightCache() {
+        val near = Body(Polygon(20.0, 20.0), 100.0, .0)
+        val far = Body(Polygon(20.0, 20.0), 1000.0, .0)
+        val bodies = ArrayList<TranslatableBody>(listOf(near, far))
+        val service = ShadowService(false)
+        val light = service.addLight(Vec2(), 300.0, true)
+        service.update(bodies)
+        val size = light.visibility.size
+        assertEquals(1, service.occluders.bodies.size)
+
+        //A body out of range moving keeps the cached polygon, the occluders are not gathered again
+        service.occluders.clear()
+        far.position.x += 50.0
+        service.update(bodies)
+        assertEquals(0, service.occluders.bodies.size)
+        assertEquals(size, light.visibility.size)
+
+        //A body in range moving recomputes it
+        near.position.y += 200.0
+        service.update(bodies)
+        assertEquals(1, service.occluders.bodies.size)
+        assertTrue(light.visibility.size > 4)
+    }
+
+    private fun hit(ox: Double, oy: Double, dx: Double, dy: Double, x1: Double, y1: Double, x2: Double, y2: Double): Double {
+        val ex = x2 - x1
+        val ey = y2 - y1
+        val denominator = dx * ey - dy * ex
+        if (abs(denominator) < 1e-12) return Double.POSITIVE_INFINITY
+        val qx = x1 - ox
+        val qy = y1 - oy
+        val t = (qx * ey - qy * ex) / denominator
+        val u = (qx * dy - qy * dx) / denominator
+        return if (t < 0 || u < -1e-9 || u > 1 + 1e-9) Double.POSITIVE_INFINITY else t
+    }
+}